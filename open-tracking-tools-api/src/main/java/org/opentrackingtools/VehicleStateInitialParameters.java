@@ -2,6 +2,8 @@ package org.opentrackingtools;
 
 import gov.sandia.cognition.math.matrix.Vector;
 
+import com.google.common.base.Preconditions;
+
 public class VehicleStateInitialParameters {
 
   protected Vector initialMotionState;
@@ -26,6 +28,47 @@ public class VehicleStateInitialParameters {
   protected Double stateCovarianceThreshold;
 
   protected double pathDistanceSearchUpperBound;
+
+  /**
+   * The most path-search nodes kept open at once; the least likely are
+   * dropped past it.
+   */
+  protected int pathSearchBeamWidth = Integer.MAX_VALUE;
+
+  /**
+   * How far, in log-likelihood, a path-search node can fall below the best
+   * node seen before it's pruned.
+   */
+  protected double pathSearchLogLikelihoodCutoff = Double.POSITIVE_INFINITY;
+
+  /**
+   * The largest speed, reported or else estimated, of a vehicle that's taken
+   * to be stationary.
+   */
+  protected double stationaryMaxVelocity = 0.5d;
+
+  /**
+   * When positive, an observation that's within this many standard
+   * deviations of observation noise of where a particle is predicted to be,
+   * and that reports a speed of at most {@link #stationaryMaxVelocity} (or,
+   * when it doesn't report one, whose particle is estimated to move no
+   * faster), is taken to be of a stationary vehicle, which is updated
+   * without a path search.
+   */
+  protected double stationaryObsNoiseMultiple = 0d;
+
+  /**
+   * When positive, an observation that's more than this many standard
+   * deviations (in Mahalanobis distance) from the particles' predictive
+   * observation distribution is taken to be a gross outlier, and skipped.
+   */
+  protected double outlierNoiseMultiple = 0d;
+
+  /**
+   * The most consecutive observations skipped as outliers; the next one is
+   * filtered regardless, so that the filter can follow a real jump.
+   */
+  protected int outlierMaxConsecutive = 2;
   
   public VehicleStateInitialParameters(Vector initialMotionState,
     Vector obsCov, int obsCovDof, Vector onRoadStateCov,
@@ -73,6 +116,18 @@ public class VehicleStateInitialParameters {
     this.onTransitionProbsPrior = parameters.onTransitionProbsPrior;
     this.seed = parameters.seed;
     this.initialObsFreq = parameters.initialObsFreq;
+    this.obsCovarianceThreshold = parameters.obsCovarianceThreshold;
+    this.stateCovarianceThreshold = parameters.stateCovarianceThreshold;
+    this.pathDistanceSearchUpperBound =
+        parameters.pathDistanceSearchUpperBound;
+    this.pathSearchBeamWidth = parameters.pathSearchBeamWidth;
+    this.pathSearchLogLikelihoodCutoff =
+        parameters.pathSearchLogLikelihoodCutoff;
+    this.stationaryMaxVelocity = parameters.stationaryMaxVelocity;
+    this.stationaryObsNoiseMultiple =
+        parameters.stationaryObsNoiseMultiple;
+    this.outlierNoiseMultiple = parameters.outlierNoiseMultiple;
+    this.outlierMaxConsecutive = parameters.outlierMaxConsecutive;
   }
 
   @Override
@@ -337,4 +392,60 @@ public class VehicleStateInitialParameters {
   public void setPathDistanceSearchUpperBound(double pathDistanceSearchUpperBound) {
     this.pathDistanceSearchUpperBound = pathDistanceSearchUpperBound;
   }
-}
\ No newline at end of file
+
+  public int getPathSearchBeamWidth() {
+    return this.pathSearchBeamWidth;
+  }
+
+  public void setPathSearchBeamWidth(int pathSearchBeamWidth) {
+    Preconditions.checkArgument(pathSearchBeamWidth > 0);
+    this.pathSearchBeamWidth = pathSearchBeamWidth;
+  }
+
+  public double getPathSearchLogLikelihoodCutoff() {
+    return this.pathSearchLogLikelihoodCutoff;
+  }
+
+  public void setPathSearchLogLikelihoodCutoff(
+    double pathSearchLogLikelihoodCutoff) {
+    Preconditions.checkArgument(pathSearchLogLikelihoodCutoff >= 0d);
+    this.pathSearchLogLikelihoodCutoff = pathSearchLogLikelihoodCutoff;
+  }
+
+  public int getOutlierMaxConsecutive() {
+    return this.outlierMaxConsecutive;
+  }
+
+  public void setOutlierMaxConsecutive(int outlierMaxConsecutive) {
+    Preconditions.checkArgument(outlierMaxConsecutive >= 0);
+    this.outlierMaxConsecutive = outlierMaxConsecutive;
+  }
+
+  public double getOutlierNoiseMultiple() {
+    return this.outlierNoiseMultiple;
+  }
+
+  public void setOutlierNoiseMultiple(double outlierNoiseMultiple) {
+    Preconditions.checkArgument(outlierNoiseMultiple >= 0d);
+    this.outlierNoiseMultiple = outlierNoiseMultiple;
+  }
+
+  public double getStationaryMaxVelocity() {
+    return this.stationaryMaxVelocity;
+  }
+
+  public void setStationaryMaxVelocity(double stationaryMaxVelocity) {
+    Preconditions.checkArgument(stationaryMaxVelocity >= 0d);
+    this.stationaryMaxVelocity = stationaryMaxVelocity;
+  }
+
+  public double getStationaryObsNoiseMultiple() {
+    return this.stationaryObsNoiseMultiple;
+  }
+
+  public void setStationaryObsNoiseMultiple(
+    double stationaryObsNoiseMultiple) {
+    Preconditions.checkArgument(stationaryObsNoiseMultiple >= 0d);
+    this.stationaryObsNoiseMultiple = stationaryObsNoiseMultiple;
+  }
+}
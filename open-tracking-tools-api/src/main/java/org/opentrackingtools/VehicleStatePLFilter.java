@@ -6,6 +6,7 @@ import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
 import gov.sandia.cognition.statistics.DataDistribution;
 import gov.sandia.cognition.statistics.bayesian.AbstractParticleFilter;
+import gov.sandia.cognition.statistics.DistributionWithMean;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
 import java.util.ArrayList;
@@ -29,9 +30,12 @@ import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.SimpleBayesianParameter;
 import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateParticleArray;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathState;
 import org.opentrackingtools.updater.VehicleStatePLUpdater;
+import org.opentrackingtools.util.OutlierGate;
 import org.opentrackingtools.util.PathUtils;
 import org.opentrackingtools.util.model.MutableDoubleCount;
 import org.slf4j.Logger;
@@ -60,6 +64,10 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
    */
   protected CountedDataDistribution<VehicleStateDistribution<O>> lastResampleDistribution;
 
+  protected final OutlierGate<O> outlierGate;
+
+  protected VehicleStateInitialParameters parameters;
+
   protected VehicleStateDistributionFactory<O, G> vehicleStateFactory;
 
   public VehicleStatePLFilter(O obs, G inferredGraph,
@@ -69,6 +77,8 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     this.vehicleStateFactory = vehicleStateFactory;
     this.inferredGraph = inferredGraph;
     this.isDebug = isDebug;
+    this.parameters = parameters;
+    this.outlierGate = new OutlierGate<O>(parameters);
     this.setUpdater(new VehicleStatePLUpdater<O, G>(obs,
         inferredGraph, vehicleStateFactory, parameters, rng));
     this.setNumParticles(parameters.getNumParticles());
@@ -92,6 +102,14 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     return this.lastResampleDistribution;
   }
 
+  /**
+   * The number of observations skipped as outliers; see
+   * {@link OutlierGate}.
+   */
+  public long getNumOutliers() {
+    return this.outlierGate.getNumOutliers();
+  }
+
   protected RoadMeasurementCovarianceEstimatorPredictor
       getRoadMeasurementCovarianceEstimatorPredictor(
         VehicleStateDistribution<O> updatedState,
@@ -188,6 +206,28 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     return childDist;
   }
 
+  /**
+   * Predicts the given state forward to the observation, and sets the
+   * resulting distribution over its possible transition states, from
+   * {@link #internalPriorPrediction}, as its transition state distribution.
+   * 
+   * @param state
+   * @param obs
+   * @return
+   */
+  protected VehicleStateDistribution<O> internalPredict(
+    VehicleStateDistribution<O> state, O obs) {
+    VehicleStateDistribution<O> predictedState = state.clone();
+    predictedState.setParentState(state);
+    predictedState.setObservation(obs);
+    predictedState = this.updater.update(predictedState);
+
+    final CountedDataDistribution<VehicleStateDistribution<O>> childDist =
+        this.internalPriorPrediction(predictedState, obs);
+    predictedState.setTransitionStateDistribution(childDist);
+    return predictedState;
+  }
+
   /**
    * This method performs the Bayes update for a single vehicle state.
    * 
@@ -256,10 +296,11 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     /*
      * Update parameters
      */
-    updatedState.getPathStateParam().setValue(
-        posteriorPathStateDist.getPathState());
-    updatedState.getPathStateParam().setParameterPrior(
-        posteriorPathStateDist);
+    updatedState.setPathStateParam(
+        SimpleBayesianParameter.<PathState, PathStateMixtureDensityModel, PathStateDistribution>create(
+            posteriorPathStateDist.getPathState(), updatedState
+                .getPathStateParam().getConditionalDistribution(),
+            posteriorPathStateDist));
 
     Vector newObsStateSample;
 
@@ -281,27 +322,19 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
      * back and forth, then we'd really only have one.
      */
     if (posteriorPathStateDist.getPathState().isOnRoad()) {
-      updatedState.getOnRoadModelCovarianceParam()
-          .setParameterPrior(currentModelCovDistribution);
       final Matrix stateCovSample =
           currentModelCovDistribution.sample(this.random);
-      updatedState.getOnRoadModelCovarianceParam().setValue(
-          stateCovSample);
-      updatedState.getOnRoadModelCovarianceParam()
-          .setConditionalDistribution(
+      updatedState.setOnRoadModelCovarianceParam(
+          SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(stateCovSample,
               new MultivariateGaussian(VectorFactory.getDefault()
-                  .createVector1D(), stateCovSample));
+                  .createVector1D(), stateCovSample), currentModelCovDistribution));
     } else {
-      updatedState.getOffRoadModelCovarianceParam()
-          .setParameterPrior(currentModelCovDistribution);
       final Matrix stateCovSample =
           currentModelCovDistribution.sample(this.random);
-      updatedState.getOffRoadModelCovarianceParam().setValue(
-          stateCovSample);
-      updatedState.getOffRoadModelCovarianceParam()
-          .setConditionalDistribution(
+      updatedState.setOffRoadModelCovarianceParam(
+          SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(stateCovSample,
               new MultivariateGaussian(VectorFactory.getDefault()
-                  .createVector1D(), stateCovSample));
+                  .createVector1D(), stateCovSample), currentModelCovDistribution));
     }
     newObsStateSample =
         MotionStateEstimatorPredictor.getOg().times(
@@ -317,29 +350,23 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     measurementCovarianceEstimator.update(
         currentObsCovDistribution, obs.getProjectedPoint());
 
-    updatedState.getObservationCovarianceParam().setParameterPrior(
-        currentObsCovDistribution);
     final Matrix obsCovSample =
         currentObsCovDistribution.sample(this.random);
-    updatedState.getObservationCovarianceParam().setValue(
-        obsCovSample);
-    updatedState.getObservationCovarianceParam()
-        .setConditionalDistribution(
+    updatedState.setObservationCovarianceParam(
+        SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(obsCovSample,
             new MultivariateGaussian(VectorFactory.getDefault()
                 .createVector(obsCovSample.getNumColumns()),
-                obsCovSample));
+                obsCovSample), currentObsCovDistribution));
 
-    updatedState.getMotionStateParam().setParameterPrior(
-        posteriorPathStateDist.getMotionDistribution());
     final MultivariateGaussian obsMotionDist =
         updatedState.getMotionStateEstimatorPredictor()
             .getObservationDistribution(
                 posteriorPathStateDist.getMotionDistribution(),
                 posteriorPathStateDist.getPathState().getEdge());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsMotionDist);
-    updatedState.getMotionStateParam().setValue(
-        obsMotionDist.getMean());
+    updatedState.setMotionStateParam(
+        SimpleBayesianParameter.<Vector, MultivariateGaussian, MultivariateGaussian>create(
+            obsMotionDist.getMean(), obsMotionDist,
+            posteriorPathStateDist.getMotionDistribution()));
 
     final OnOffEdgeTransPriorDistribution updatedEdgeTransPrior =
         updatedState.getEdgeTransitionParam().getParameterPrior()
@@ -431,61 +458,94 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     this.lastResampleDistribution = lastResampleDistribution;
   }
 
+  /**
+   * Updates the particles through a {@link VehicleStateParticleArray}; see
+   * {@link #update(VehicleStateParticleArray, GpsObservation)}.
+   */
   @Override
   public void update(
     DataDistribution<VehicleStateDistribution<O>> target, O obs) {
+    final VehicleStateParticleArray<O> particleArray =
+        VehicleStateParticleArray.fromDistribution(target);
+    this.update(particleArray, obs);
 
-    /*
-     * Compute predictive distributions, and create a distribution out of those and
-     * their likelihoods for the new observation.
-     */
-    final CountedDataDistribution<VehicleStateDistribution<O>> resampleDist =
-        new CountedDataDistribution<VehicleStateDistribution<O>>(true);
-
-    for (final VehicleStateDistribution<O> state : target.getDomain()) {
-
-      final int count;
-      if (target instanceof CountedDataDistribution<?>) {
-        count = ((CountedDataDistribution) target).getCount(state);
-      } else {
-        count = 1;
+    target.clear();
+    for (int i = 0; i < particleArray.size(); i++) {
+      for (int c = 0; c < particleArray.getCount(i); c++) {
+        target.increment(particleArray.getState(i));
       }
-      Preconditions.checkState(count > 0);
-
-      final double logCount = Math.log(count);
-
-      VehicleStateDistribution<O> predictedState = state.clone();
-      predictedState.setParentState(state);
-      predictedState.setObservation(obs);
-      predictedState = this.updater.update(predictedState);
-
-      final CountedDataDistribution<VehicleStateDistribution<O>> childDist =
-          this.internalPriorPrediction(predictedState, obs);
-      predictedState.setTransitionStateDistribution(childDist);
+    }
 
-      resampleDist.increment(predictedState, childDist.getTotal()
-          + logCount);
+    Preconditions.checkState(target.getDomainSize() > 0);
+    if (target instanceof CountedDataDistribution<?>) {
+      Preconditions.checkState(((CountedDataDistribution<?>) target)
+          .getTotalCount() == this.numParticles);
+    }
+  }
 
+  /**
+   * Predicts each particle forward to the observation, weights it by its
+   * prior predictive likelihood, resamples the particles, and updates each
+   * resampled one with the observation. The weighting and resampling work
+   * over the array's weight and likelihood arrays. The updated particles
+   * replace the old ones, each with a count of one.
+   * 
+   * @param target
+   * @param obs
+   */
+  public void update(VehicleStateParticleArray<O> target, O obs) {
+    Preconditions.checkArgument(target.size() > 0);
+
+    if (this.outlierGate.isEnabled()) {
+      final List<VehicleStateDistribution<O>> states =
+          new ArrayList<VehicleStateDistribution<O>>(target.size());
+      for (int i = 0; i < target.size(); i++) {
+        states.add(target.getState(i));
+      }
+      if (this.outlierGate.skip(states, target.getFractions(), obs,
+          this.random)) {
+        return;
+      }
     }
 
-    Preconditions.checkState(!resampleDist.isEmpty());
+    /*
+     * Predict each particle in place, keeping its prior predictive
+     * likelihood alongside its weight.
+     */
+    for (int i = 0; i < target.size(); i++) {
+      final VehicleStateDistribution<O> predictedState =
+          this.internalPredict(target.getState(i), obs);
+      target.setState(i, predictedState);
+      target.setLogLikelihood(i, predictedState
+          .getTransitionStateDistribution().getTotal());
+    }
 
     if (this.isDebug) {
+      final CountedDataDistribution<VehicleStateDistribution<O>> resampleDist =
+          new CountedDataDistribution<VehicleStateDistribution<O>>(true);
+      for (int i = 0; i < target.size(); i++) {
+        resampleDist.increment(target.getState(i), target.getLogWeight(i)
+            + target.getLogLikelihood(i));
+      }
       this.lastResampleDistribution = resampleDist;
     }
 
     /*
-     * Resample the predictive distributions.  Now we're dealing with the "best" states.
+     * Resample the predictive distributions.  Now we're dealing with the
+     * "best" states.
      */
-    final ArrayList<VehicleStateDistribution<O>> smoothedStates =
-        resampleDist.sample(this.random, this.getNumParticles());
-
-    final List<VehicleStateDistribution<O>> updatedStates =
-        Lists.newArrayList();
+    final int[] sampledIndices =
+        target.sample(this.random, this.getNumParticles());
+    final List<VehicleStateDistribution<O>> smoothedStates =
+        new ArrayList<VehicleStateDistribution<O>>(sampledIndices.length);
+    for (final int index : sampledIndices) {
+      smoothedStates.add(target.getState(index));
+    }
 
     /*
      * Propagate/smooth the best states. 
      */
+    target.clear();
     for (final VehicleStateDistribution<O> state : smoothedStates) {
       final VehicleStateDistribution<O> sampledTransitionState =
           state.getTransitionStateDistribution().sample(this.random);
@@ -496,18 +556,10 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
             .getTransitionStateDistribution());
         updatedState.setPriorPredictiveState(sampledTransitionState);
       }
-      updatedStates.add(updatedState);
-    }
-
-    target.clear();
-    target.incrementAll(updatedStates);
-
-    Preconditions.checkState(target.getDomainSize() > 0);
-    if (target instanceof CountedDataDistribution<?>) {
-      Preconditions.checkState(((CountedDataDistribution<?>) target)
-          .getTotalCount() == this.numParticles);
+      target.add(updatedState, 1, 0d);
     }
 
+    Preconditions.checkState(target.getTotalCount() == this.numParticles);
   }
 
-}
\ No newline at end of file
+}
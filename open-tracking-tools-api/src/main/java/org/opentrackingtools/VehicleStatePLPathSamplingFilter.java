@@ -34,7 +34,9 @@ import org.opentrackingtools.model.SimpleBayesianParameter;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathState;
 import org.opentrackingtools.updater.VehicleStatePLPathSamplingUpdater;
+import org.opentrackingtools.util.OutlierGate;
 import org.opentrackingtools.util.PathUtils;
 import org.opentrackingtools.util.model.MutableDoubleCount;
 import org.slf4j.Logger;
@@ -63,6 +65,8 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
    */
   protected CountedDataDistribution<VehicleStateDistribution<O>> lastResampleDistribution;
 
+  protected final OutlierGate<O> outlierGate;
+
   protected VehicleStateDistributionFactory<O, G> vehicleStateFactory;
   protected VehicleStateInitialParameters parameters;
 
@@ -71,6 +75,7 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     VehicleStateInitialParameters parameters, Boolean isDebug,
     Random rng) {
     this.parameters = parameters;
+    this.outlierGate = new OutlierGate<O>(parameters);
     this.vehicleStateFactory = vehicleStateFactory;
     this.inferredGraph = inferredGraph;
     this.isDebug = isDebug;
@@ -89,6 +94,14 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     return this.lastResampleDistribution;
   }
 
+  /**
+   * The number of observations skipped as outliers; see
+   * {@link OutlierGate}.
+   */
+  public long getNumOutliers() {
+    return this.outlierGate.getNumOutliers();
+  }
+
   /**
    * This method takes a prior predictive vehicle state distribution and returns
    * a distribution over its possible transition states, with prior predictive
@@ -268,10 +281,11 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     /*
      * Update parameters
      */
-    updatedState.getPathStateParam().setValue(
-        posteriorPathStateDist.getPathState());
-    updatedState.getPathStateParam().setParameterPrior(
-        posteriorPathStateDist);
+    updatedState.setPathStateParam(
+        SimpleBayesianParameter.<PathState, PathStateMixtureDensityModel, PathStateDistribution>create(
+            posteriorPathStateDist.getPathState(), updatedState
+                .getPathStateParam().getConditionalDistribution(),
+            posteriorPathStateDist));
 
     Vector newObsStateSample;
     
@@ -347,29 +361,23 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     measurementCovarianceEstimator.update(
         currentObsCovDistribution, obs.getProjectedPoint());
 
-    updatedState.getObservationCovarianceParam().setParameterPrior(
-        currentObsCovDistribution);
     final Matrix obsCovSample =
         currentObsCovDistribution.sample(this.random);
-    updatedState.getObservationCovarianceParam().setValue(
-        obsCovSample);
-    updatedState.getObservationCovarianceParam()
-        .setConditionalDistribution(
+    updatedState.setObservationCovarianceParam(
+        SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(obsCovSample,
             new MultivariateGaussian(VectorFactory.getDefault()
                 .createVector(obsCovSample.getNumColumns()),
-                obsCovSample));
+                obsCovSample), currentObsCovDistribution));
 
-    updatedState.getMotionStateParam().setParameterPrior(
-        posteriorPathStateDist.getMotionDistribution());
     final MultivariateGaussian obsMotionDist =
         updatedState.getMotionStateEstimatorPredictor()
             .getObservationDistribution(
                 posteriorPathStateDist.getMotionDistribution(),
                 posteriorPathStateDist.getPathState().getEdge());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsMotionDist);
-    updatedState.getMotionStateParam().setValue(
-        obsMotionDist.getMean());
+    updatedState.setMotionStateParam(
+        SimpleBayesianParameter.<Vector, MultivariateGaussian, MultivariateGaussian>create(
+            obsMotionDist.getMean(), obsMotionDist,
+            posteriorPathStateDist.getMotionDistribution()));
 
     final InferenceGraphEdge fromEdge =
         updatedState.getParentState().getPathStateParam().getValue()
@@ -465,6 +473,11 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
   public void update(
     DataDistribution<VehicleStateDistribution<O>> target, O obs) {
 
+    if (this.outlierGate.isEnabled()
+        && this.outlierGate.skip(target, obs, this.random)) {
+      return;
+    }
+
     /*
      * Compute predictive distributions, and create a distribution out of those and
      * their likelihoods for the new observation.
@@ -528,7 +541,10 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
       } else {
         updatedState.setTransitionStateDistribution(null);
         updatedState.setPriorPredictiveState(null);
-        updatedState.getPathStateParam().setConditionalDistribution(null);
+        updatedState.setPathStateParam(
+            SimpleBayesianParameter.<PathState, PathStateMixtureDensityModel, PathStateDistribution>create(
+                updatedState.getPathStateParam().getValue(), null,
+                updatedState.getPathStateParam().getParameterPrior()));
         // TODO perhaps remove parent's parent here.
       }
       updatedStates.add(updatedState);
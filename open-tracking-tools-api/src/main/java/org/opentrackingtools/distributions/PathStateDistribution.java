@@ -157,7 +157,7 @@ public class PathStateDistribution extends
          */
         final PathEdgeProjection proj =
             PathUtils.getRoadProjection(this.pathState
-                .getGroundState(), this.path.getGeometry(),
+                .getGroundState(), this.path.getLinearReference(),
                 onThisPath.getEdge().getLine(), onThisPath.getEdge()
                     .getDistToStartOfEdge());
         final Matrix C = this.getCovariance();
@@ -282,7 +282,7 @@ public class PathStateDistribution extends
         final PathEdgeProjection proj =
             PathUtils.getRoadProjection(stateBelief
                 .getMotionDistribution().getMean(), path
-                .getGeometry(), onThisPath.getEdge().getLine(),
+                .getLinearReference(), onThisPath.getEdge().getLine(),
                 onThisPath.getEdge().getDistToStartOfEdge());
         final Matrix C = stateBelief.getCovariance();
         covar = PathUtils.getProjectedCovariance(proj, C, true);
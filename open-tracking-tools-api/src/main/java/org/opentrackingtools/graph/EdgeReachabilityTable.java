@@ -0,0 +1,274 @@
+package org.opentrackingtools.graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathInterner;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Doubles;
+
+/**
+ * A table of the edges reachable from each edge within a fixed travel
+ * distance. The distances are measured from the end of the source edge to the
+ * start of the reachable edge, and each reachable edge keeps a back-pointer to
+ * the edge it was reached from, so paths can be rebuilt without running a
+ * search. <br>
+ * Entries are computed with a bounded Dijkstra over
+ * {@link InferenceGraph#getOutgoingTransferableEdges(InferenceGraphEdge)},
+ * either up-front via {@link #precompute(Collection)} or lazily on first
+ * lookup.
+ */
+public class EdgeReachabilityTable {
+
+  /**
+   * The reachable neighborhood of a single edge, stored as parallel arrays
+   * sorted by edge id.
+   */
+  public static class Reachability {
+
+    protected final double[] distances;
+    protected final int[] edgeIds;
+    protected final InferenceGraphEdge[] edges;
+    protected final int[] predecessors;
+
+    protected Reachability(int[] edgeIds, InferenceGraphEdge[] edges,
+      double[] distances, int[] predecessors) {
+      this.edgeIds = edgeIds;
+      this.edges = edges;
+      this.distances = distances;
+      this.predecessors = predecessors;
+    }
+
+    /**
+     * Distance from the end of the source edge to the start of the given
+     * edge, or infinity when it isn't reachable.
+     *
+     * @param edge
+     * @return
+     */
+    public double getDistanceTo(InferenceGraphEdge edge) {
+      final int idx = this.indexOf(edge);
+      return idx < 0 ? Double.POSITIVE_INFINITY : this.distances[idx];
+    }
+
+    /**
+     * The edges traversed after the source edge, up to and including the
+     * given edge, or null when it isn't reachable.
+     *
+     * @param edge
+     * @return
+     */
+    public List<InferenceGraphEdge> getEdgesTo(InferenceGraphEdge edge) {
+      int idx = this.indexOf(edge);
+      if (idx < 0) {
+        return null;
+      }
+      final List<InferenceGraphEdge> result = Lists.newArrayList();
+      while (idx >= 0) {
+        result.add(this.edges[idx]);
+        idx = this.predecessors[idx];
+      }
+      return Lists.reverse(result);
+    }
+
+    public int indexOf(InferenceGraphEdge edge) {
+      return Arrays.binarySearch(this.edgeIds, edge.edgeId);
+    }
+
+    public int size() {
+      return this.edgeIds.length;
+    }
+  }
+
+  private static class SearchNode implements Comparable<SearchNode> {
+
+    final double distance;
+    final InferenceGraphEdge edge;
+    final SearchNode parent;
+
+    SearchNode(InferenceGraphEdge edge, double distance,
+      SearchNode parent) {
+      this.edge = edge;
+      this.distance = distance;
+      this.parent = parent;
+    }
+
+    @Override
+    public int compareTo(SearchNode o) {
+      return Doubles.compare(this.distance, o.distance);
+    }
+  }
+
+  protected final InferenceGraph graph;
+
+  protected final PathInterner interner;
+
+  protected final double maxDistance;
+
+  protected final Map<Integer, Reachability> table = Maps
+      .newConcurrentMap();
+
+  public EdgeReachabilityTable(InferenceGraph graph, double maxDistance) {
+    this(graph, maxDistance, new PathInterner());
+  }
+
+  public EdgeReachabilityTable(InferenceGraph graph,
+    double maxDistance, PathInterner interner) {
+    Preconditions.checkArgument(maxDistance > 0d);
+    this.graph = Preconditions.checkNotNull(graph);
+    this.maxDistance = maxDistance;
+    this.interner = Preconditions.checkNotNull(interner);
+  }
+
+  protected Reachability computeReachability(InferenceGraphEdge source) {
+
+    final Map<Integer, SearchNode> settled = Maps.newHashMap();
+    final PriorityQueue<SearchNode> queue =
+        new PriorityQueue<SearchNode>();
+    for (final InferenceGraphEdge next : this.graph
+        .getOutgoingTransferableEdges(source)) {
+      queue.add(new SearchNode(next, 0d, null));
+    }
+
+    while (!queue.isEmpty()) {
+      final SearchNode node = queue.poll();
+      if (settled.containsKey(node.edge.edgeId)) {
+        continue;
+      }
+      settled.put(node.edge.edgeId, node);
+
+      final double nextDistance = node.distance + node.edge.getLength();
+      if (nextDistance > this.maxDistance) {
+        continue;
+      }
+      for (final InferenceGraphEdge next : this.graph
+          .getOutgoingTransferableEdges(node.edge)) {
+        if (!settled.containsKey(next.edgeId)) {
+          queue.add(new SearchNode(next, nextDistance, node));
+        }
+      }
+    }
+
+    /*
+     * Flatten the search tree into id-sorted arrays.
+     */
+    final int[] edgeIds = new int[settled.size()];
+    int i = 0;
+    for (final Integer id : settled.keySet()) {
+      edgeIds[i++] = id;
+    }
+    Arrays.sort(edgeIds);
+
+    final InferenceGraphEdge[] edges =
+        new InferenceGraphEdge[edgeIds.length];
+    final double[] distances = new double[edgeIds.length];
+    final int[] predecessors = new int[edgeIds.length];
+    for (int j = 0; j < edgeIds.length; j++) {
+      final SearchNode node = settled.get(edgeIds[j]);
+      edges[j] = node.edge;
+      distances[j] = node.distance;
+      predecessors[j] =
+          node.parent == null ? -1 : Arrays.binarySearch(edgeIds,
+              node.parent.edge.edgeId);
+    }
+
+    return new Reachability(edgeIds, edges, distances, predecessors);
+  }
+
+  public InferenceGraph getGraph() {
+    return this.graph;
+  }
+
+  public PathInterner getInterner() {
+    return this.interner;
+  }
+
+  public double getMaxDistance() {
+    return this.maxDistance;
+  }
+
+  /**
+   * Builds the path that starts at the given segment, continues through the
+   * rest of its edge, and ends by traversing the given end edge. Returns null
+   * when the end edge isn't reachable within the given distance. The path is
+   * built on, and shared through, this table's {@link PathInterner}.
+   *
+   * @param startSegment
+   * @param endEdge
+   * @param distance
+   * @return
+   */
+  public Path getPath(InferenceGraphSegment startSegment,
+    InferenceGraphEdge endEdge, double distance) {
+    Preconditions.checkArgument(distance <= this.maxDistance);
+
+    /*
+     * An end segment behind the start segment, on the same edge, can only
+     * be reached by going around.
+     */
+    final boolean endsOnStartEdge =
+        startSegment.edgeId.equals(endEdge.edgeId)
+            && (!(endEdge instanceof InferenceGraphSegment) || startSegment
+                .getSegmentIndex() <= ((InferenceGraphSegment) endEdge)
+                .getSegmentIndex());
+
+    List<InferenceGraphEdge> nextEdges = null;
+    if (!endsOnStartEdge) {
+      final Reachability reachability =
+          this.getReachability(startSegment);
+      if (reachability.getDistanceTo(endEdge) > distance) {
+        return null;
+      }
+      nextEdges = reachability.getEdgesTo(endEdge);
+    }
+
+    final PathInterner.Node root = this.interner.getRoot();
+    PathInterner.Node node = root;
+    for (final InferenceGraphSegment segment : startSegment.getSegments(
+        startSegment.getStartDistance(), Double.POSITIVE_INFINITY)) {
+      node = node.extend(segment, false);
+    }
+    if (nextEdges != null) {
+      for (final InferenceGraphEdge edge : nextEdges) {
+        for (final InferenceGraphSegment segment : edge.getSegments()) {
+          node = node.extend(segment, false);
+        }
+      }
+    }
+
+    if (node == root) {
+      return null;
+    }
+
+    return node.getPath(false);
+  }
+
+  public Reachability getReachability(InferenceGraphEdge edge) {
+    Preconditions.checkArgument(!edge.isNullEdge());
+    Reachability result = this.table.get(edge.edgeId);
+    if (result == null) {
+      result = this.computeReachability(edge);
+      this.table.put(edge.edgeId, result);
+    }
+    return result;
+  }
+
+  /**
+   * Fills the table for all the given edges.
+   *
+   * @param edges
+   */
+  public void precompute(Collection<? extends InferenceGraphEdge> edges) {
+    for (final InferenceGraphEdge edge : edges) {
+      this.getReachability(edge);
+    }
+  }
+
+}
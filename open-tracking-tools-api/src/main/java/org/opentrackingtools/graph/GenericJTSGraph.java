@@ -6,7 +6,6 @@ import gov.sandia.cognition.statistics.DistributionWithMean;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,12 +26,12 @@ import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathInterner;
 import org.opentrackingtools.util.GeoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -72,8 +71,25 @@ public class GenericJTSGraph implements InferenceGraph {
 
   Map<String, InferenceGraphEdge> idToInfEdge = Maps.newHashMap();
 
+  /*
+   * Shares the paths found for all particles.
+   */
+  protected PathInterner pathInterner = new PathInterner();
+
   protected Envelope projEnv = null;
 
+  /*
+   * Optional table of bounded edge reachability.  When set, and
+   * it covers the distance that can be traveled between observations,
+   * it's used in place of the path search.
+   */
+  protected EdgeReachabilityTable reachabilityTable = null;
+
+  /*
+   * Shared, columnar storage for the segments of all edges.
+   */
+  protected InferenceGraphSegmentStore segmentStore = null;
+
   protected GenericJTSGraph() {
   }
 
@@ -92,6 +108,7 @@ public class GenericJTSGraph implements InferenceGraph {
     Collection<LineString> lines, boolean transformShapesToEuclidean) {
     this.graphGenerator = new StrictLineStringGraphGenerator();
     this.edgeIndex = new STRtree();
+    this.segmentStore = new InferenceGraphSegmentStore(lines.size() * 2);
     this.gpsEnv = new Envelope();
     this.projEnv = new Envelope();
     for (final LineString edge : lines) {
@@ -138,14 +155,36 @@ public class GenericJTSGraph implements InferenceGraph {
           this.getInferenceGraphEdge(edge);
       for (final InferenceGraphSegment segment : infEdge
           .getSegments()) {
-        this.edgeIndex.insert(new Envelope(segment.line.p0,
-            segment.line.p1), segment);
+        final InferenceGraphSegmentStore store =
+            segment.getSegmentStore();
+        final int id = segment.getSegmentId();
+        this.edgeIndex.insert(new Envelope(store.getX0(id),
+            store.getX1(id), store.getY0(id), store.getY1(id)), segment);
       }
 
     }
     this.edgeIndex.build();
   }
 
+  /**
+   * Precomputes the edges reachable from every edge in this graph within the
+   * distance traveled at {@link #MAX_DISTANCE_SPEED} over the given time
+   * interval, and uses the result for path finding.
+   * 
+   * @param maxTimeDiff
+   *          the largest time interval (in seconds) between observations
+   * @return
+   */
+  public EdgeReachabilityTable createReachabilityTable(double maxTimeDiff) {
+    final EdgeReachabilityTable table =
+        new EdgeReachabilityTable(this,
+            GenericJTSGraph.MAX_DISTANCE_SPEED * maxTimeDiff,
+            this.pathInterner);
+    table.precompute(this.edgeToInfEdge.values());
+    this.reachabilityTable = table;
+    return table;
+  }
+
   @Override
   public boolean edgeHasReverse(Geometry edge) {
     return this.graphGenerator.get(edge.reverse()) != null;
@@ -178,8 +217,15 @@ public class GenericJTSGraph implements InferenceGraph {
     if (infEdge == null) {
       final Geometry edgeGeom =
           Preconditions.checkNotNull((Geometry) edge.getObject());
-      final int id = edge.getID();
-      infEdge = new InferenceGraphEdge(edgeGeom, edge, id, this);
+      /*
+       * Assign dense ids, since equality and hashing of inference
+       * graph edges are based on them.
+       */
+      final int id = this.edgeToInfEdge.size();
+      edge.setID(id);
+      infEdge =
+          new InferenceGraphEdge(edgeGeom, edge, id, this,
+              this.segmentStore);
 
       this.edgeToInfEdge.put(edge, infEdge);
       this.idToInfEdge.put(infEdge.getEdgeId(), infEdge);
@@ -202,10 +248,7 @@ public class GenericJTSGraph implements InferenceGraph {
     for (final Object obj : this.edgeIndex.query(toEnv)) {
       final InferenceGraphSegment subline =
           (InferenceGraphSegment) obj;
-      Preconditions.checkState(subline.getEndIndex()
-          .getSegmentIndex()
-          - subline.getStartIndex().getSegmentIndex() == 1);
-      if (subline.getLine().distance(toCoord) < radius) {
+      if (subline.distance(toCoord.x, toCoord.y) < radius) {
         streetEdges.add(subline);
       } else {
         continue;
@@ -260,16 +303,15 @@ public class GenericJTSGraph implements InferenceGraph {
     final DirectedEdge bStartEdge,
     InferenceGraphSegment startSegment,
     InferenceGraphSegment endSegment, Set<Node> reachedEndNodes) {
-    final List<PathEdge> pathEdges = Lists.newArrayList();
+    final PathInterner.Node root = this.pathInterner.getRoot();
+    PathInterner.Node pathNode = root;
 
     /*
      * Get only the segments forward from the current segment on the current edge
      */
-    double distance = 0d;
-    for (final InferenceGraphSegment segment : startSegment.getSegments(startSegment.startDistance,
+    for (final InferenceGraphSegment segment : startSegment.getSegments(startSegment.getStartDistance(),
             Double.POSITIVE_INFINITY)) {
-      pathEdges.add(new PathEdge(segment, distance, false));
-      distance += segment.getLine().getLength();
+      pathNode = pathNode.extend(segment, false);
     }
 
     final Iterator<DirectedNode> rNodes = path.riterator();
@@ -283,18 +325,16 @@ public class GenericJTSGraph implements InferenceGraph {
       for (final InferenceGraphSegment segment : infEdge
           .getSegments()) {
 
-        Preconditions.checkState(segment.line.p0.equals(Iterables
-            .getLast(pathEdges).getLine().p1));
+        Preconditions.checkState(segment.getLine().p0.equals(pathNode
+            .getEdge().getLine().p1));
 
-        pathEdges.add(new PathEdge(segment, distance, false));
-        distance += segment.getLine().getLength();
+        pathNode = pathNode.extend(segment, false);
       }
       reachedEndNodes.add(node);
       prevNode = node;
     }
-    if (!pathEdges.isEmpty()) {
-      final Path newPath = new Path(pathEdges, false);
-      return newPath;
+    if (pathNode != root) {
+      return pathNode.getPath(false);
     } else {
       return null;
     }
@@ -355,8 +395,8 @@ public class GenericJTSGraph implements InferenceGraph {
       for (final InferenceGraphSegment segment : this.getNearbyEdges(
           obsDist.getMean(), beliefDistance)) {
         final Path path =
-            new Path(Collections.singletonList(new PathEdge(segment,
-                0d, false)), false);
+            this.pathInterner.getRoot().extend(segment, false)
+                .getPath(false);
         paths.add(path);
       }
       return paths;
@@ -376,6 +416,28 @@ public class GenericJTSGraph implements InferenceGraph {
       return paths;
     }
 
+    /*
+     * When the precomputed reachability covers the furthest we could
+     * have traveled, simply intersect it with the end edges.
+     */
+    final double maxTravelDistance =
+        GenericJTSGraph.MAX_DISTANCE_SPEED
+            * motionEstimator.getCurrentTimeDiff();
+    if (this.reachabilityTable != null
+        && maxTravelDistance <= this.reachabilityTable.getMaxDistance()) {
+      for (final InferenceGraphSegment startEdge : startEdges) {
+        for (final InferenceGraphSegment endEdge : endLines) {
+          final Path newPath =
+              this.reachabilityTable.getPath(startEdge, endEdge,
+                  maxTravelDistance);
+          if (newPath != null) {
+            paths.add(newPath);
+          }
+        }
+      }
+      return paths;
+    }
+
     for (final InferenceGraphSegment startEdge : startEdges) {
       final DirectedEdge bStartEdge =
           ((DirectedEdge) startEdge.getBackingEdge());
@@ -388,17 +450,12 @@ public class GenericJTSGraph implements InferenceGraph {
       for (final InferenceGraphSegment endEdge : endLines) {
 
         if (startEdge.equals(endEdge)) {
-          final List<PathEdge> currentEdgePathEdges =
-              Lists.newArrayList();
-          double distance = 0d;
-          for (final InferenceGraphSegment segment : startEdge.getSegments(startEdge.startDistance,
+          PathInterner.Node node = this.pathInterner.getRoot();
+          for (final InferenceGraphSegment segment : startEdge.getSegments(startEdge.getStartDistance(),
                   Double.POSITIVE_INFINITY)) {
-            currentEdgePathEdges.add(new PathEdge(segment, distance,
-                false));
-            distance += segment.getLine().getLength();
+            node = node.extend(segment, false);
           }
-          final Path pathFromStartEdge =
-              new Path(currentEdgePathEdges, false);
+          final Path pathFromStartEdge = node.getPath(false);
           paths.add(pathFromStartEdge);
           continue;
         }
@@ -473,6 +530,18 @@ public class GenericJTSGraph implements InferenceGraph {
     return this.projEnv;
   }
 
+  public PathInterner getPathInterner() {
+    return this.pathInterner;
+  }
+
+  public EdgeReachabilityTable getReachabilityTable() {
+    return this.reachabilityTable;
+  }
+
+  public InferenceGraphSegmentStore getSegmentStore() {
+    return this.segmentStore;
+  }
+
   @Override
   public Set<InferenceGraphEdge> getTopoEquivEdges(
     InferenceGraphEdge edge) {
@@ -493,4 +562,9 @@ public class GenericJTSGraph implements InferenceGraph {
     return result;
   }
 
+  public void setReachabilityTable(
+    EdgeReachabilityTable reachabilityTable) {
+    this.reachabilityTable = reachabilityTable;
+  }
+
 }
@@ -1,14 +1,16 @@
 package org.opentrackingtools.graph;
 
-import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Nonnull;
 
+import org.opentrackingtools.paths.PathLinearReference;
 import org.opentrackingtools.util.GeoUtils;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
@@ -19,76 +21,112 @@ import com.vividsolutions.jts.linearref.LocationIndexedLine;
 public class InferenceGraphEdge implements
     Comparable<InferenceGraphEdge> {
 
+  /**
+   * The fields of an edge other than its id. An edge's segments share them,
+   * rather than each holding a copy.
+   */
+  protected static class EdgeData {
+
+    protected final Object backingEdge;
+    protected final Geometry geometry;
+    protected final InferenceGraph graph;
+    protected List<InferenceGraphSegment> graphSegments = null;
+    protected final Boolean hasReverse;
+    protected LengthLocationMap lengthLocationMap = null;
+    /*
+     * Built on first use; edges are shared between threads.
+     */
+    protected volatile PathLinearReference linearReference = null;
+    protected final LocationIndexedLine locationIndexedLine;
+
+    protected EdgeData(Object backingEdge, Geometry geometry,
+      InferenceGraph graph, Boolean hasReverse,
+      LocationIndexedLine locationIndexedLine) {
+      this.backingEdge = backingEdge;
+      this.geometry = geometry;
+      this.graph = graph;
+      this.hasReverse = hasReverse;
+      this.locationIndexedLine = locationIndexedLine;
+    }
+  }
+
   /*
    * This is the empty edge, which stands for free movement
    */
   public final static InferenceGraphEdge nullGraphEdge =
       new InferenceGraphEdge();
 
-  protected final Object backingEdge;
+  protected final EdgeData data;
   protected final Integer edgeId;
-  protected final Geometry geometry;
-  protected final Boolean hasReverse;
-  
-  protected List<InferenceGraphSegment> graphSegments;
-  protected LengthLocationMap lengthLocationMap = null;
-  protected LocationIndexedLine locationIndexedLine;
 
   protected InferenceGraphEdge() {
-    this.locationIndexedLine = null;
-    this.graphSegments = null;
     this.edgeId = null;
-    this.backingEdge = null;
-    this.geometry = null;
-    this.hasReverse = null;
+    this.data = new EdgeData(null, null, null, null, null);
   }
 
   public InferenceGraphEdge(@Nonnull Geometry geom,
     @Nonnull Object backingEdge, @Nonnull Integer edgeId,
     @Nonnull InferenceGraph graph) {
+    this(geom, backingEdge, edgeId, graph, null);
+  }
 
-    this.edgeId = Preconditions.checkNotNull(edgeId);
-    this.backingEdge = Preconditions.checkNotNull(backingEdge);
-
-    this.geometry = Preconditions.checkNotNull(geom);
-
-    this.hasReverse = graph.edgeHasReverse(geom);
-
-    final Coordinate startPointCoord =
-        this.geometry.getCoordinates()[0];
+  /**
+   * Creates an edge whose segments are stored in the given segment store,
+   * which is normally shared by all edges of a graph. When the store is null,
+   * the edge gets a store of its own.
+   */
+  public InferenceGraphEdge(@Nonnull Geometry geom,
+    @Nonnull Object backingEdge, @Nonnull Integer edgeId,
+    @Nonnull InferenceGraph graph,
+    InferenceGraphSegmentStore segmentStore) {
 
-    final Coordinate endPointCoord =
-        this.geometry.getCoordinates()[this.geometry.getNumPoints() - 1];
+    this.edgeId = Preconditions.checkNotNull(edgeId);
+    Preconditions.checkNotNull(backingEdge);
+    Preconditions.checkNotNull(geom);
+    Preconditions.checkNotNull(graph);
+    this.data =
+        new EdgeData(backingEdge, geom, graph, graph.edgeHasReverse(geom),
+            new LocationIndexedLine(geom));
 
-    this.locationIndexedLine = new LocationIndexedLine(this.geometry);
-    this.graphSegments = Lists.newArrayList();
     final List<LineSegment> segments =
-        GeoUtils.getSubLineSegments((LineString) this.geometry);
-    InferenceGraphSegment nextSegment = null;
-    for (final LineSegment segment : Lists.reverse(segments)) {
-      final InferenceGraphSegment infSegment =
-          new InferenceGraphSegment(segment, this, nextSegment);
-      nextSegment = infSegment;
-      this.graphSegments.add(infSegment);
+        GeoUtils.getSubLineSegments((LineString) geom);
+    final InferenceGraphSegmentStore store =
+        segmentStore != null ? segmentStore
+            : new InferenceGraphSegmentStore(segments.size());
+    final int firstSegmentId = store.addEdge(edgeId, segments);
+
+    /*
+     * The segments share this list, so it must be assigned before
+     * they're created.
+     */
+    this.data.graphSegments =
+        Lists.newArrayListWithCapacity(segments.size());
+    for (int i = 0; i < segments.size(); i++) {
+      this.data.graphSegments.add(new InferenceGraphSegment(this, store,
+          firstSegmentId + i, i));
     }
-    Collections.reverse(this.graphSegments);
   }
 
+  /**
+   * Creates a view of the given edge, e.g. one of its segments, that shares
+   * its fields.
+   */
   public InferenceGraphEdge(InferenceGraphEdge infEdge) {
-    this.backingEdge = infEdge.backingEdge;
     this.edgeId = infEdge.edgeId;
-    this.geometry = infEdge.geometry;
-    this.hasReverse = infEdge.hasReverse;
-    this.graphSegments = infEdge.graphSegments;
-    this.lengthLocationMap = infEdge.lengthLocationMap;
-    this.locationIndexedLine = infEdge.locationIndexedLine;
+    this.data = infEdge.data;
   }
 
   @Override
   public int compareTo(InferenceGraphEdge o) {
-    return this.getGeometry().compareTo(o.getGeometry());
+    return ComparisonChain.start()
+        .compare(this.edgeId, o.edgeId, Ordering.<Integer> natural().nullsFirst())
+        .result();
   }
 
+  /**
+   * Edges are identified by their graph-assigned id. Ids are only unique
+   * within a graph, so edges from different graphs are never equal.
+   */
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
@@ -101,22 +139,25 @@ public class InferenceGraphEdge implements
       return false;
     }
     final InferenceGraphEdge other = (InferenceGraphEdge) obj;
-    if (this.geometry == null) {
-      if (other.geometry != null) {
+    if (this.data.graph != other.data.graph) {
+      return false;
+    }
+    if (this.edgeId == null) {
+      if (other.edgeId != null) {
         return false;
       }
-    } else if (!this.geometry.equalsExact(other.geometry)) {
+    } else if (!this.edgeId.equals(other.edgeId)) {
       return false;
     }
     return true;
   }
 
   public Object getBackingEdge() {
-    return this.backingEdge;
+    return this.data.backingEdge;
   }
 
   public Coordinate getCenterPointCoord() {
-    return this.geometry.getCentroid().getCoordinate();
+    return this.data.geometry.getCentroid().getCoordinate();
   }
 
   public String getEdgeId() {
@@ -124,29 +165,49 @@ public class InferenceGraphEdge implements
   }
 
   public Geometry getGeometry() {
-    return this.geometry;
+    return this.data.geometry;
+  }
+
+  public InferenceGraph getGraph() {
+    return this.data.graph;
   }
 
   public Double getLength() {
-    if (this.geometry == null) {
+    if (this.data.geometry == null) {
       return null;
     }
-    return this.geometry.getLength();
+    return this.data.geometry.getLength();
   }
 
   public LengthLocationMap getLengthLocationMap() {
-    if (this.lengthLocationMap == null) {
-      this.lengthLocationMap = new LengthLocationMap(this.geometry);
+    if (this.data.lengthLocationMap == null) {
+      this.data.lengthLocationMap =
+          new LengthLocationMap(this.data.geometry);
+    }
+    return this.data.lengthLocationMap;
+  }
+
+  /**
+   * Linear referencing over this edge's geometry, shared by the edge and its
+   * segments.
+   *
+   * @return
+   */
+  public PathLinearReference getLinearReference() {
+    PathLinearReference linearReference = this.data.linearReference;
+    if (linearReference == null) {
+      linearReference = new PathLinearReference(this.data.geometry);
+      this.data.linearReference = linearReference;
     }
-    return this.lengthLocationMap;
+    return linearReference;
   }
 
   public LocationIndexedLine getLocationIndexedLine() {
-    return this.locationIndexedLine;
+    return this.data.locationIndexedLine;
   }
 
   public List<InferenceGraphSegment> getSegments() {
-    return this.graphSegments;
+    return this.data.graphSegments;
   }
 
   public List<InferenceGraphSegment> getSegments(double upToLength) {
@@ -164,11 +225,12 @@ public class InferenceGraphEdge implements
     double lengthEnd) {
     Preconditions.checkState(lengthStart <= lengthEnd);
     final List<InferenceGraphSegment> results = Lists.newArrayList();
-    for (final InferenceGraphSegment segment : this.graphSegments) {
-      if (segment.startDistance >= lengthStart) {
+    for (final InferenceGraphSegment segment : this.data.graphSegments) {
+      final double startDistance = segment.getStartDistance();
+      if (startDistance >= lengthStart) {
         results.add(segment);
       }
-      if (segment.startDistance + segment.line.getLength() > lengthEnd) {
+      if (startDistance + segment.getSegmentLength() > lengthEnd) {
         break;
       }
     }
@@ -180,18 +242,17 @@ public class InferenceGraphEdge implements
     final int prime = 31;
     int result = 1;
     result =
-        prime
-            * result
-            + ((this.geometry == null) ? 0 : this.geometry.hashCode());
+        prime * result
+            + ((this.edgeId == null) ? 0 : this.edgeId.intValue());
     return result;
   }
 
   public boolean hasReverse() {
-    return this.hasReverse;
+    return this.data.hasReverse;
   }
 
   public boolean isNullEdge() {
-    return this.equals(InferenceGraphEdge.nullGraphEdge);
+    return this.edgeId == null;
   }
 
   @Override
@@ -1,76 +1,171 @@
 package org.opentrackingtools.graph;
 
+import gov.sandia.cognition.math.matrix.Matrix;
+
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.opentrackingtools.util.PathUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.primitives.Doubles;
-import com.google.common.primitives.Ints;
+import com.google.common.collect.Ordering;
 import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.linearref.LinearLocation;
 
+/**
+ * A view of a single row in an {@link InferenceGraphSegmentStore}. The
+ * segment's coordinates, length and distance along its edge live in the
+ * store, and its edge's fields are shared with the edge; only the line
+ * itself is materialized, and only when asked for.
+ */
 public class InferenceGraphSegment extends InferenceGraphEdge {
 
-  final protected LinearLocation endIndex;
-  final protected LineSegment line;
-  final protected InferenceGraphSegment nextSegment;
-  final protected Double startDistance;
-  final protected LinearLocation startIndex;
-  
+  /*
+   * Lazily created from the store.  Segments are shared between the
+   * threads updating the particles, hence volatile.
+   */
+  protected volatile LineSegment line = null;
+  /*
+   * Ground projections in the forward and backward direction
+   * of this segment, created on first use.
+   */
+  protected volatile Matrix[] projMatrices = null;
+  /*
+   * Dense id of this segment in the segment store.
+   */
+  final protected int segmentId;
+  /*
+   * Position of this segment within its edge.  Together with
+   * the edge id, it identifies the segment within a graph.
+   */
+  final protected int segmentIndex;
+  final protected InferenceGraphSegmentStore segmentStore;
+
   final public static InferenceGraphSegment nullGraphSegment = new InferenceGraphSegment();
 
   protected InferenceGraphSegment() {
     super();
-    this.endIndex = null;
-    this.startIndex = null;
-    this.startDistance = null;
-    this.nextSegment = null;
-    this.line = null;
-  }
-  
-  public InferenceGraphSegment(LineSegment line,
-    InferenceGraphEdge infEdge, InferenceGraphSegment nextSegment) {
+    this.segmentStore = null;
+    this.segmentId = -1;
+    this.segmentIndex = -1;
+  }
+
+  public InferenceGraphSegment(InferenceGraphEdge infEdge,
+    InferenceGraphSegmentStore segmentStore, int segmentId,
+    int segmentIndex) {
     super(infEdge);
-    this.line = line;
-    this.startIndex =
-        infEdge.getLocationIndexedLine().indexOf(line.p0);
-    this.endIndex =
-        infEdge.getLocationIndexedLine().indexOfAfter(line.p1,
-            this.startIndex);
-    this.startDistance =
-        infEdge.getLengthLocationMap().getLength(this.startIndex);
-    this.nextSegment = nextSegment;
+    this.segmentStore = Preconditions.checkNotNull(segmentStore);
+    Preconditions.checkArgument(segmentStore.getEdgeId(segmentId) ==
+        infEdge.edgeId.intValue());
+    this.segmentId = segmentId;
+    this.segmentIndex = segmentIndex;
   }
 
   @Override
   public int compareTo(InferenceGraphEdge o) {
     ComparisonChain chain = ComparisonChain.start()
-        .compare(this.edgeId, o.edgeId);
-    
+        .compare(this.edgeId, o.edgeId, Ordering.<Integer> natural().nullsFirst());
+
     if (o instanceof InferenceGraphSegment)
-      chain = chain.compare(this.startIndex, ((InferenceGraphSegment)o).startIndex);
-    
+      chain = chain.compare(this.segmentIndex, ((InferenceGraphSegment)o).segmentIndex);
+
     return chain.result();
   }
 
+  /**
+   * Distance from the given point to this segment, computed without
+   * materializing the line.
+   *
+   * @param x
+   * @param y
+   * @return
+   */
+  public double distance(double x, double y) {
+    return this.segmentStore.distance(this.segmentId, x, y);
+  }
+
+  /**
+   * The location of the end of this segment on its edge, as the end of its
+   * own segment rather than the start of the next, so that it still follows
+   * {@link #getStartIndex()} on the last segment.
+   */
   public LinearLocation getEndIndex() {
-    return this.endIndex;
+    return new LinearLocation(this.segmentIndex, 1d);
   }
 
   public LineSegment getLine() {
-    return this.line;
+    LineSegment line = this.line;
+    if (line == null && this.segmentStore != null) {
+      line = this.segmentStore.getLineSegment(this.segmentId);
+      this.line = line;
+    }
+    return line;
   }
 
   public InferenceGraphSegment getNextSegment() {
-    return this.nextSegment;
+    if (this.segmentStore.getNext(this.segmentId) < 0) {
+      return null;
+    }
+    return this.data.graphSegments.get(this.segmentIndex + 1);
+  }
+
+  /**
+   * The road-to-ground projection matrix for this segment, when traversed in
+   * the given direction. The matrix is shared, so it must not be modified.
+   *
+   * @see PathUtils#getProjMatrix(double, double)
+   * @param isBackward
+   * @return
+   */
+  public Matrix getProjMatrix(boolean isBackward) {
+    if (this.projMatrices == null) {
+      final double length = this.getSegmentLength();
+      Preconditions.checkState(length > 0d);
+      final double ux =
+          (this.segmentStore.getX1(this.segmentId) - this.segmentStore
+              .getX0(this.segmentId)) / length;
+      final double uy =
+          (this.segmentStore.getY1(this.segmentId) - this.segmentStore
+              .getY0(this.segmentId)) / length;
+      this.projMatrices =
+          new Matrix[] { PathUtils.getProjMatrix(ux, uy),
+              PathUtils.getProjMatrix(-ux, -uy) };
+    }
+    return this.projMatrices[isBackward ? 1 : 0];
+  }
+
+  public int getSegmentId() {
+    return this.segmentId;
+  }
+
+  public int getSegmentIndex() {
+    return this.segmentIndex;
+  }
+
+  /**
+   * The length of this segment, as opposed to {@link #getLength()}, which is
+   * the length of the whole edge.
+   *
+   * @return
+   */
+  public double getSegmentLength() {
+    return this.segmentStore.getLength(this.segmentId);
+  }
+
+  public InferenceGraphSegmentStore getSegmentStore() {
+    return this.segmentStore;
   }
 
   public double getStartDistance() {
-    return this.startDistance;
+    return this.segmentStore.getStartDistance(this.segmentId);
   }
 
+  /**
+   * The location of the start of this segment on its edge. It's taken from
+   * the segment's index, not by locating its first point on the edge, which
+   * finds the first visit to that point when the edge loops back on itself.
+   */
   public LinearLocation getStartIndex() {
-    return this.startIndex;
+    return new LinearLocation(this.segmentIndex, 0d);
   }
 
   @Override
@@ -78,8 +173,8 @@ public class InferenceGraphSegment extends InferenceGraphEdge {
     final ToStringBuilder builder = new ToStringBuilder(this);
     builder.append("parentEdge", this.getEdgeId());
     if (!this.isNullEdge()) {
-      builder.append("startIndex", this.startIndex.getSegmentIndex());
-      builder.append("line", this.line);
+      builder.append("segmentIndex", this.segmentIndex);
+      builder.append("line", this.getLine());
     }
     return builder.toString();
   }
@@ -88,13 +183,7 @@ public class InferenceGraphSegment extends InferenceGraphEdge {
   public int hashCode() {
     final int prime = 31;
     int result = super.hashCode();
-    
-    result = prime * result
-        + ((startIndex != null) ? Doubles.hashCode(startIndex.getSegmentFraction()) : 0);
-    result = prime * result
-        + ((startIndex != null) ? Ints.hashCode(startIndex.getComponentIndex()) : 0);
-    result = prime * result
-        + ((startIndex != null) ? Ints.hashCode(startIndex.getSegmentIndex()) : 0);
+    result = prime * result + this.segmentIndex;
     return result;
   }
 
@@ -111,19 +200,10 @@ public class InferenceGraphSegment extends InferenceGraphEdge {
 //      return false;
 //    }
     InferenceGraphSegment other = (InferenceGraphSegment) obj;
-    if (startIndex == null) {
-      if (other.startIndex != null) {
-        return false;
-      }
-    } else if (startIndex.compareTo(other.startIndex) != 0) {
+    if (this.segmentIndex != other.segmentIndex) {
       return false;
     }
     return true;
   }
 
-  @Override
-  public boolean isNullEdge() {
-    return this.equals(InferenceGraphSegment.nullGraphSegment);
-  }
-
 }
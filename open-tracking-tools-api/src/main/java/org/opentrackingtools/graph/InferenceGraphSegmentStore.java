@@ -0,0 +1,177 @@
+package org.opentrackingtools.graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineSegment;
+
+/**
+ * Columnar storage for the line segments of a graph's edges. Each segment is
+ * a dense integer id indexing into parallel primitive arrays, and
+ * {@link InferenceGraphSegment}s are lightweight views over these rows. <br>
+ * Segments of an edge are stored contiguously, in order, so the next segment
+ * of a non-terminal segment is simply the following row.
+ */
+public class InferenceGraphSegmentStore {
+
+  /**
+   * The store's arrays, which are replaced, rather than resized in place,
+   * when they fill up.
+   */
+  protected static class Columns {
+
+    protected final int[] edgeIds;
+    protected final double[] lengths;
+    protected final int[] next;
+    protected final double[] startDistances;
+    protected final double[] x0;
+    protected final double[] x1;
+    protected final double[] y0;
+    protected final double[] y1;
+
+    protected Columns(int capacity) {
+      this.x0 = new double[capacity];
+      this.y0 = new double[capacity];
+      this.x1 = new double[capacity];
+      this.y1 = new double[capacity];
+      this.lengths = new double[capacity];
+      this.startDistances = new double[capacity];
+      this.edgeIds = new int[capacity];
+      this.next = new int[capacity];
+    }
+
+    protected Columns(Columns columns, int capacity) {
+      this.x0 = Arrays.copyOf(columns.x0, capacity);
+      this.y0 = Arrays.copyOf(columns.y0, capacity);
+      this.x1 = Arrays.copyOf(columns.x1, capacity);
+      this.y1 = Arrays.copyOf(columns.y1, capacity);
+      this.lengths = Arrays.copyOf(columns.lengths, capacity);
+      this.startDistances = Arrays.copyOf(columns.startDistances, capacity);
+      this.edgeIds = Arrays.copyOf(columns.edgeIds, capacity);
+      this.next = Arrays.copyOf(columns.next, capacity);
+    }
+  }
+
+  /*
+   * Written, after the rows it holds, on every addEdge, so that readers of
+   * a segment id see its row, even when edges are added concurrently.
+   */
+  protected volatile Columns columns;
+
+  protected int size = 0;
+
+  public InferenceGraphSegmentStore(int initialCapacity) {
+    this.columns = new Columns(Math.max(initialCapacity, 1));
+  }
+
+  /**
+   * Appends the given, ordered, segments of an edge.
+   *
+   * @param edgeId
+   * @param lines
+   * @return the id of the first segment
+   */
+  public synchronized int addEdge(int edgeId, List<LineSegment> lines) {
+    Preconditions.checkArgument(!lines.isEmpty());
+    Columns columns = this.columns;
+    final int capacity = this.size + lines.size();
+    if (capacity > columns.x0.length) {
+      columns =
+          new Columns(columns, Math.max(capacity, columns.x0.length * 2));
+    }
+
+    final int firstId = this.size;
+    double startDistance = 0d;
+    for (final LineSegment line : lines) {
+      final int id = this.size++;
+      columns.x0[id] = line.p0.x;
+      columns.y0[id] = line.p0.y;
+      columns.x1[id] = line.p1.x;
+      columns.y1[id] = line.p1.y;
+      columns.lengths[id] = line.getLength();
+      columns.startDistances[id] = startDistance;
+      columns.edgeIds[id] = edgeId;
+      columns.next[id] = id + 1;
+      startDistance += columns.lengths[id];
+    }
+    columns.next[this.size - 1] = -1;
+    this.columns = columns;
+
+    return firstId;
+  }
+
+  /**
+   * Euclidean distance from the given point to the segment.
+   *
+   * @param id
+   * @param x
+   * @param y
+   * @return
+   */
+  public double distance(int id, double x, double y) {
+    final Columns columns = this.columns;
+    final double dx = columns.x1[id] - columns.x0[id];
+    final double dy = columns.y1[id] - columns.y0[id];
+    final double len2 = dx * dx + dy * dy;
+    double t =
+        len2 > 0d ? ((x - columns.x0[id]) * dx + (y - columns.y0[id]) * dy)
+            / len2 : 0d;
+    t = Math.max(0d, Math.min(1d, t));
+    final double px = columns.x0[id] + t * dx - x;
+    final double py = columns.y0[id] + t * dy - y;
+    return Math.sqrt(px * px + py * py);
+  }
+
+  public double distance(int id, Coordinate coord) {
+    return this.distance(id, coord.x, coord.y);
+  }
+
+  public int getEdgeId(int id) {
+    return this.columns.edgeIds[id];
+  }
+
+  public double getLength(int id) {
+    return this.columns.lengths[id];
+  }
+
+  public LineSegment getLineSegment(int id) {
+    final Columns columns = this.columns;
+    return new LineSegment(new Coordinate(columns.x0[id], columns.y0[id]),
+        new Coordinate(columns.x1[id], columns.y1[id]));
+  }
+
+  /**
+   * @param id
+   * @return the id of the next segment on the same edge, or -1
+   */
+  public int getNext(int id) {
+    return this.columns.next[id];
+  }
+
+  public double getStartDistance(int id) {
+    return this.columns.startDistances[id];
+  }
+
+  public double getX0(int id) {
+    return this.columns.x0[id];
+  }
+
+  public double getX1(int id) {
+    return this.columns.x1[id];
+  }
+
+  public double getY0(int id) {
+    return this.columns.y0[id];
+  }
+
+  public double getY1(int id) {
+    return this.columns.y1[id];
+  }
+
+  public synchronized int size() {
+    return this.size;
+  }
+
+}
@@ -134,6 +134,14 @@ public class GpsObservation {
     this.prevObs = null;
   }
 
+  /**
+   * Links this observation to another previous one, e.g. when the one
+   * before it was skipped.
+   */
+  public void setPreviousObservation(GpsObservation prevObs) {
+    this.prevObs = prevObs;
+  }
+
   @Override
   public String toString() {
     final StringBuilder builder = new StringBuilder();
@@ -0,0 +1,572 @@
+package org.opentrackingtools.model;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.MatrixFactory;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
+import gov.sandia.cognition.statistics.DistributionWithMean;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentrackingtools.distributions.OnOffEdgeTransDistribution;
+import org.opentrackingtools.distributions.OnOffEdgeTransPriorDistribution;
+import org.opentrackingtools.distributions.PathStateDistribution;
+import org.opentrackingtools.distributions.PathStateMixtureDensityModel;
+import org.opentrackingtools.distributions.TruncatedRoadGaussian;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.graph.InferenceGraphEdge;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.GeoUtils;
+import org.opentrackingtools.util.model.TransitionProbMatrix;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.statslibextensions.math.matrix.SvdMatrix;
+import com.statslibextensions.statistics.distribution.CountedDataDistribution;
+import com.statslibextensions.statistics.distribution.ScaledInverseGammaCovDistribution;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * A compact binary checkpoint of a vehicle's particle set, from which the
+ * filter can resume without reinitializing, i.e. keeping the learned
+ * covariances and edge transition priors. <br>
+ * Only what an update needs is written: for each particle, its count, its
+ * path (as graph edge ids and segment indices), its path-state and motion
+ * distributions, the values and scaled inverse gamma hyperparameters of its
+ * covariance parameters, and its edge transition probabilities and Dirichlet
+ * hyperparameters, along with the particles' common, latest observation.
+ * Parameters and paths that particles share are written once, and are shared
+ * again when restored. <br>
+ * Everything else is rebuilt on restore, the way
+ * {@link VehicleStateDistribution.VehicleStateDistributionFactory} builds an
+ * initial state: the path-state mixture is the single restored path-state
+ * distribution (it's replaced by the next prediction anyway), and the
+ * conditionals of the parameters are recomputed from their values. Parent
+ * states and debug values aren't kept.
+ */
+public class VehicleStateCheckpoint {
+
+  public static final int MAGIC = 0x4f545443;
+
+  public static final int VERSION = 1;
+
+  protected static final byte GAUSSIAN = 0;
+  protected static final byte TRUNCATED_ROAD_GAUSSIAN = 1;
+
+  protected static final byte HAS_VELOCITY = 1;
+  protected static final byte HAS_HEADING = 2;
+  protected static final byte HAS_ACCURACY = 4;
+  protected static final byte HAS_TRANSFORM = 8;
+
+  protected static final byte PATH_BACKWARD = 1;
+  protected static final byte PATH_SINGLE_EDGE = 2;
+
+  /**
+   * Restores the particles written by {@link #toBytes}.
+   */
+  public static VehicleStateCheckpoint fromBytes(byte[] bytes,
+    InferenceGraph graph) throws IOException {
+    return VehicleStateCheckpoint.read(new DataInputStream(
+        new ByteArrayInputStream(bytes)), graph);
+  }
+
+  /**
+   * Restores the particles written by {@link #write}, on the given graph,
+   * which must be the one they were tracked on.
+   *
+   * @param in
+   * @param graph
+   * @return
+   * @throws IOException
+   */
+  public static VehicleStateCheckpoint
+      read(DataInput in, InferenceGraph graph) throws IOException {
+    if (in.readInt() != VehicleStateCheckpoint.MAGIC) {
+      throw new IOException("not a vehicle state checkpoint");
+    }
+    final int version = in.readByte();
+    if (version != VehicleStateCheckpoint.VERSION) {
+      throw new IOException("unsupported checkpoint version " + version);
+    }
+
+    final GpsObservation observation =
+        VehicleStateCheckpoint.readObservation(in);
+    final int numParticles = in.readInt();
+    final List<Object> shared = Lists.newArrayList();
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            true);
+    for (int i = 0; i < numParticles; i++) {
+      final int count = in.readInt();
+      final VehicleStateDistribution<GpsObservation> state =
+          VehicleStateCheckpoint.readState(in, graph, observation,
+              shared);
+      for (int c = 0; c < count; c++) {
+        particles.increment(state);
+      }
+    }
+    return new VehicleStateCheckpoint(observation, particles);
+  }
+
+  @SuppressWarnings("unchecked")
+  protected static
+      SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>
+      readCovarianceParam(DataInput in, List<Object> shared)
+          throws IOException {
+    final int ref = in.readInt();
+    if (ref < shared.size()) {
+      return (SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>) shared
+          .get(ref);
+    }
+    final double shape = in.readDouble();
+    final double scale = in.readDouble();
+    final Matrix value = VehicleStateCheckpoint.readSymmetricMatrix(in);
+    final int dim = value.getNumColumns();
+    final SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> param =
+        SimpleBayesianParameter
+            .<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> create(
+                value, new MultivariateGaussian(VectorFactory
+                    .getDefault().createVector(dim), value),
+                new ScaledInverseGammaCovDistribution(dim, shape, scale));
+    shared.add(param);
+    return param;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected static
+      SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution>
+      readEdgeTransitionParam(DataInput in, InferenceGraph graph,
+        PathState pathState, Matrix obsCovariance, List<Object> shared)
+          throws IOException {
+    final int ref = in.readInt();
+    if (ref < shared.size()) {
+      return (SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution>) shared
+          .get(ref);
+    }
+    final OnOffEdgeTransPriorDistribution prior =
+        new OnOffEdgeTransPriorDistribution(
+            VehicleStateCheckpoint.readVector(in),
+            VehicleStateCheckpoint.readVector(in));
+    final TransitionProbMatrix value =
+        new TransitionProbMatrix(VehicleStateCheckpoint.readVector(in),
+            VehicleStateCheckpoint.readVector(in));
+    final OnOffEdgeTransDistribution conditional =
+        new OnOffEdgeTransDistribution(graph, pathState, pathState
+            .getEdge().getInferenceGraphSegment(), obsCovariance, prior
+            .getEdgeMotionTransProbPrior().getMean(), prior
+            .getFreeMotionTransProbPrior().getMean());
+    final SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution> param =
+        SimpleBayesianParameter
+            .<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution> create(
+                value, conditional, prior);
+    shared.add(param);
+    return param;
+  }
+
+  protected static MultivariateGaussian readGaussian(DataInput in)
+      throws IOException {
+    final byte type = in.readByte();
+    final Vector mean = VehicleStateCheckpoint.readVector(in);
+    final Matrix covariance =
+        VehicleStateCheckpoint.readSymmetricMatrix(in);
+    if (type == VehicleStateCheckpoint.TRUNCATED_ROAD_GAUSSIAN) {
+      return new TruncatedRoadGaussian(mean, new SvdMatrix(covariance));
+    }
+    return new MultivariateGaussian(mean, covariance);
+  }
+
+  protected static GpsObservation readObservation(DataInput in)
+      throws IOException {
+    final String sourceId = in.readUTF();
+    final Date timestamp = new Date(in.readLong());
+    final Coordinate latLon =
+        new Coordinate(in.readDouble(), in.readDouble());
+    final Coordinate projected =
+        new Coordinate(in.readDouble(), in.readDouble());
+    final byte flags = in.readByte();
+    final Double velocity =
+        (flags & VehicleStateCheckpoint.HAS_VELOCITY) != 0 ? in
+            .readDouble() : null;
+    final Double heading =
+        (flags & VehicleStateCheckpoint.HAS_HEADING) != 0 ? in
+            .readDouble() : null;
+    final Double accuracy =
+        (flags & VehicleStateCheckpoint.HAS_ACCURACY) != 0 ? in
+            .readDouble() : null;
+    final int recordNumber = in.readInt();
+
+    /*
+     * The projected point is restored as written, rather than
+     * re-projected, so that it's exactly the one the particles saw.
+     * Simulated observations aren't projected at all.
+     */
+    final ProjectedCoordinate obsPoint =
+        new ProjectedCoordinate(
+            (flags & VehicleStateCheckpoint.HAS_TRANSFORM) != 0 ? GeoUtils
+                .getTransform(latLon) : null, projected, latLon);
+    return new GpsObservation(sourceId, timestamp, latLon, velocity,
+        heading, accuracy, recordNumber, null, obsPoint);
+  }
+
+  protected static Path readPath(DataInput in, InferenceGraph graph,
+    List<Object> shared) throws IOException {
+    final int ref = in.readInt();
+    if (ref < shared.size()) {
+      return (Path) shared.get(ref);
+    }
+    final int numEdges = in.readInt();
+    final Path path;
+    if (numEdges == 0) {
+      path = Path.nullPath;
+    } else {
+      final byte flags = in.readByte();
+      final List<PathEdge> edges = Lists.newArrayListWithCapacity(numEdges);
+      for (int i = 0; i < numEdges; i++) {
+        final int edgeId = in.readInt();
+        final int segmentIndex = in.readInt();
+        final double distToStartOfEdge = in.readDouble();
+        final boolean isBackward = in.readBoolean();
+        final InferenceGraphEdge edge =
+            graph.getInferenceGraphEdge(String.valueOf(edgeId));
+        if (edge == null || segmentIndex >= edge.getSegments().size()) {
+          throw new IOException("segment " + segmentIndex + " of edge "
+              + edgeId + " isn't in the graph");
+        }
+        final InferenceGraphSegment segment =
+            edge.getSegments().get(segmentIndex);
+        edges.add(new PathEdge(segment, distToStartOfEdge, isBackward));
+      }
+      if ((flags & VehicleStateCheckpoint.PATH_SINGLE_EDGE) != 0) {
+        path = new Path(edges.get(0));
+      } else {
+        path =
+            new Path(edges,
+                (flags & VehicleStateCheckpoint.PATH_BACKWARD) != 0);
+      }
+    }
+    shared.add(path);
+    return path;
+  }
+
+  protected static VehicleStateDistribution<GpsObservation> readState(
+    DataInput in, InferenceGraph graph, GpsObservation observation,
+    List<Object> shared) throws IOException {
+
+    final Path path = VehicleStateCheckpoint.readPath(in, graph, shared);
+    final MultivariateGaussian motionDistribution =
+        VehicleStateCheckpoint.readGaussian(in);
+    final PathStateDistribution pathStateDistribution =
+        new PathStateDistribution(path, motionDistribution);
+    final SimpleBayesianParameter<PathState, PathStateMixtureDensityModel, PathStateDistribution> pathStateParam =
+        SimpleBayesianParameter
+            .<PathState, PathStateMixtureDensityModel, PathStateDistribution> create(
+                pathStateDistribution.getPathState(),
+                new PathStateMixtureDensityModel(Collections
+                    .singletonList(pathStateDistribution),
+                    new double[] { 0d }), pathStateDistribution);
+
+    final MultivariateGaussian observationDistribution =
+        VehicleStateCheckpoint.readGaussian(in);
+    final MultivariateGaussian motionStatePrior =
+        in.readBoolean() ? motionDistribution : VehicleStateCheckpoint
+            .readGaussian(in);
+    final SimpleBayesianParameter<Vector, MultivariateGaussian, MultivariateGaussian> motionStateParam =
+        SimpleBayesianParameter
+            .<Vector, MultivariateGaussian, MultivariateGaussian> create(
+                observationDistribution.getMean(),
+                observationDistribution, motionStatePrior);
+
+    final SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> observationCovParam =
+        VehicleStateCheckpoint.readCovarianceParam(in, shared);
+    final SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> onRoadCovParam =
+        VehicleStateCheckpoint.readCovarianceParam(in, shared);
+    final SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> offRoadCovParam =
+        VehicleStateCheckpoint.readCovarianceParam(in, shared);
+    final SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution> edgeTransitionParam =
+        VehicleStateCheckpoint.readEdgeTransitionParam(in, graph,
+            pathStateDistribution.getPathState(),
+            observationCovParam.getValue(), shared);
+
+    return new VehicleStateDistribution<GpsObservation>(graph,
+        observation, motionStateParam, pathStateParam,
+        observationCovParam, onRoadCovParam, offRoadCovParam,
+        edgeTransitionParam, null);
+  }
+
+  protected static Matrix readSymmetricMatrix(DataInput in)
+      throws IOException {
+    final int dim = in.readByte();
+    final Matrix result = MatrixFactory.getDefault().createMatrix(dim, dim);
+    for (int i = 0; i < dim; i++) {
+      for (int j = i; j < dim; j++) {
+        final double value = in.readDouble();
+        result.setElement(i, j, value);
+        result.setElement(j, i, value);
+      }
+    }
+    return result;
+  }
+
+  protected static Vector readVector(DataInput in) throws IOException {
+    final int dim = in.readByte();
+    final Vector result = VectorFactory.getDefault().createVector(dim);
+    for (int i = 0; i < dim; i++) {
+      result.setElement(i, in.readDouble());
+    }
+    return result;
+  }
+
+  /**
+   * The checkpoint of the given particles, as a byte array.
+   */
+  public static <O extends GpsObservation> byte[] toBytes(
+    DataDistribution<VehicleStateDistribution<O>> particles)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    VehicleStateCheckpoint.write(out, particles);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes a checkpoint of the given particles, which must all be conditional
+   * on the same observation, as they are after an update.
+   *
+   * @param out
+   * @param particles
+   * @throws IOException
+   */
+  public static <O extends GpsObservation> void write(DataOutput out,
+    DataDistribution<VehicleStateDistribution<O>> particles)
+      throws IOException {
+    final VehicleStateParticleArray<O> particleArray =
+        VehicleStateParticleArray.fromDistribution(particles);
+    Preconditions.checkArgument(particleArray.size() > 0);
+
+    out.writeInt(VehicleStateCheckpoint.MAGIC);
+    out.writeByte(VehicleStateCheckpoint.VERSION);
+    VehicleStateCheckpoint.writeObservation(out, particleArray
+        .getState(0).getObservation());
+    out.writeInt(particleArray.size());
+    final Map<Object, Integer> shared =
+        new IdentityHashMap<Object, Integer>();
+    for (int i = 0; i < particleArray.size(); i++) {
+      out.writeInt(particleArray.getCount(i));
+      VehicleStateCheckpoint.writeState(out, particleArray.getState(i),
+          shared);
+    }
+  }
+
+  protected static
+      void
+      writeCovarianceParam(
+        DataOutput out,
+        SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> param,
+        Map<Object, Integer> shared) throws IOException {
+    if (VehicleStateCheckpoint.writeReference(out, param, shared)) {
+      return;
+    }
+    final ScaledInverseGammaCovDistribution prior =
+        (ScaledInverseGammaCovDistribution) param.getParameterPrior();
+    out.writeDouble(prior.getInverseGammaDist().getShape());
+    out.writeDouble(prior.getInverseGammaDist().getScale());
+    VehicleStateCheckpoint.writeSymmetricMatrix(out, param.getValue());
+  }
+
+  protected static
+      void
+      writeEdgeTransitionParam(
+        DataOutput out,
+        SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution> param,
+        Map<Object, Integer> shared) throws IOException {
+    if (VehicleStateCheckpoint.writeReference(out, param, shared)) {
+      return;
+    }
+    final OnOffEdgeTransPriorDistribution prior =
+        param.getParameterPrior();
+    VehicleStateCheckpoint.writeVector(out, prior
+        .getEdgeMotionTransProbPrior().getParameters());
+    VehicleStateCheckpoint.writeVector(out, prior
+        .getFreeMotionTransProbPrior().getParameters());
+    VehicleStateCheckpoint.writeVector(out, param.getValue()
+        .getEdgeMotionTransProbs());
+    VehicleStateCheckpoint.writeVector(out, param.getValue()
+        .getFreeMotionTransProbs());
+  }
+
+  protected static void writeGaussian(DataOutput out,
+    MultivariateGaussian distribution) throws IOException {
+    out.writeByte(distribution instanceof TruncatedRoadGaussian
+        ? VehicleStateCheckpoint.TRUNCATED_ROAD_GAUSSIAN
+        : VehicleStateCheckpoint.GAUSSIAN);
+    VehicleStateCheckpoint.writeVector(out, distribution.getMean());
+    VehicleStateCheckpoint.writeSymmetricMatrix(out,
+        distribution.getCovariance());
+  }
+
+  protected static void writeObservation(DataOutput out,
+    GpsObservation observation) throws IOException {
+    out.writeUTF(observation.getSourceId());
+    out.writeLong(observation.getTimestamp().getTime());
+    out.writeDouble(observation.getObsCoordsLatLon().x);
+    out.writeDouble(observation.getObsCoordsLatLon().y);
+    out.writeDouble(observation.getObsProjected().x);
+    out.writeDouble(observation.getObsProjected().y);
+    final byte flags =
+        (byte) ((observation.getVelocity() != null
+            ? VehicleStateCheckpoint.HAS_VELOCITY : 0)
+            | (observation.getHeading() != null
+                ? VehicleStateCheckpoint.HAS_HEADING : 0) | (observation
+            .getFixQuality() != null ? VehicleStateCheckpoint.HAS_ACCURACY
+            : 0) | (observation.getObsProjected().getTransform() != null
+            ? VehicleStateCheckpoint.HAS_TRANSFORM : 0));
+    out.writeByte(flags);
+    if (observation.getVelocity() != null) {
+      out.writeDouble(observation.getVelocity());
+    }
+    if (observation.getHeading() != null) {
+      out.writeDouble(observation.getHeading());
+    }
+    if (observation.getFixQuality() != null) {
+      out.writeDouble(observation.getFixQuality());
+    }
+    out.writeInt(observation.getRecordNumber());
+  }
+
+  protected static void writePath(DataOutput out, Path path,
+    Map<Object, Integer> shared) throws IOException {
+    if (VehicleStateCheckpoint.writeReference(out, path, shared)) {
+      return;
+    }
+    if (path.isNullPath()) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(path.getPathEdges().size());
+    out.writeByte((path.isBackward() == Boolean.TRUE
+        ? VehicleStateCheckpoint.PATH_BACKWARD : 0)
+        | (path.isSingleEdge() ? VehicleStateCheckpoint.PATH_SINGLE_EDGE
+            : 0));
+    for (final PathEdge edge : path.getPathEdges()) {
+      final InferenceGraphSegment segment =
+          edge.getInferenceGraphSegment();
+      out.writeInt(Integer.parseInt(segment.getEdgeId()));
+      out.writeInt(segment.getSegmentIndex());
+      out.writeDouble(edge.getDistToStartOfEdge());
+      out.writeBoolean(edge.isBackward() == Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Writes a reference to the given object if it was already written,
+   * returning true, or else the index it will be referred to by, returning
+   * false.
+   */
+  protected static boolean writeReference(DataOutput out, Object object,
+    Map<Object, Integer> shared) throws IOException {
+    final Integer ref = shared.get(object);
+    if (ref != null) {
+      out.writeInt(ref);
+      return true;
+    }
+    final int newRef = shared.size();
+    shared.put(object, newRef);
+    out.writeInt(newRef);
+    return false;
+  }
+
+  protected static <O extends GpsObservation> void writeState(
+    DataOutput out, VehicleStateDistribution<O> state,
+    Map<Object, Integer> shared) throws IOException {
+    final PathStateDistribution pathStateDistribution =
+        state.getPathStateParam().getParameterPrior();
+    VehicleStateCheckpoint.writePath(out, pathStateDistribution
+        .getPathState().getPath(), shared);
+    VehicleStateCheckpoint.writeGaussian(out,
+        pathStateDistribution.getMotionDistribution());
+
+    VehicleStateCheckpoint.writeGaussian(out, state
+        .getMotionStateParam().getConditionalDistribution());
+    final boolean sharesMotionDistribution =
+        state.getMotionStateParam().getParameterPrior() == pathStateDistribution
+            .getMotionDistribution();
+    out.writeBoolean(sharesMotionDistribution);
+    if (!sharesMotionDistribution) {
+      VehicleStateCheckpoint.writeGaussian(out, state
+          .getMotionStateParam().getParameterPrior());
+    }
+
+    VehicleStateCheckpoint.writeCovarianceParam(out,
+        state.getObservationCovarianceParam(), shared);
+    VehicleStateCheckpoint.writeCovarianceParam(out,
+        state.getOnRoadModelCovarianceParam(), shared);
+    VehicleStateCheckpoint.writeCovarianceParam(out,
+        state.getOffRoadModelCovarianceParam(), shared);
+    VehicleStateCheckpoint.writeEdgeTransitionParam(out,
+        state.getEdgeTransitionParam(), shared);
+  }
+
+  protected static void writeSymmetricMatrix(DataOutput out,
+    Matrix matrix) throws IOException {
+    Preconditions.checkArgument(matrix.isSquare());
+    final int dim = matrix.getNumRows();
+    out.writeByte(dim);
+    for (int i = 0; i < dim; i++) {
+      for (int j = i; j < dim; j++) {
+        out.writeDouble(matrix.getElement(i, j));
+      }
+    }
+  }
+
+  protected static void writeVector(DataOutput out, Vector vector)
+      throws IOException {
+    final int dim = vector.getDimensionality();
+    out.writeByte(dim);
+    for (int i = 0; i < dim; i++) {
+      out.writeDouble(vector.getElement(i));
+    }
+  }
+
+  protected final GpsObservation observation;
+
+  protected final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles;
+
+  protected VehicleStateCheckpoint(
+    GpsObservation observation,
+    CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles) {
+    this.observation = observation;
+    this.particles = particles;
+  }
+
+  /**
+   * The particles' latest observation, with no previous observation; set it
+   * as the previous observation of the next one.
+   */
+  public GpsObservation getObservation() {
+    return this.observation;
+  }
+
+  public
+      CountedDataDistribution<VehicleStateDistribution<GpsObservation>>
+      getParticles() {
+    return this.particles;
+  }
+
+}
@@ -4,10 +4,10 @@ import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.MatrixFactory;
 import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
 import gov.sandia.cognition.statistics.DistributionWithMean;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
-import gov.sandia.cognition.util.ObjectUtil;
 
 import java.util.Collections;
 import java.util.Random;
@@ -50,6 +50,11 @@ import com.statslibextensions.statistics.distribution.ScaledInverseGammaCovDistr
  * </ul>
  * </li>
  * </ul>
+ * Copies and clones share their parameter objects, which are copy-on-write:
+ * treat them as immutable, and change a parameter by setting a new one, e.g.
+ * {@link #setMotionStateParam}, rather than through its own setters. Clones
+ * are then cheap, and a parameter is only copied when an update actually
+ * changes it.
  * 
  * @author bwillard
  * 
@@ -138,17 +143,64 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
               observationCovParam, onRoadCovParam, offRoadCovParam,
               null, null);
 
+      this.setInitialMotionState(state, parameters.getInitialObsFreq(),
+          parameters.getInitialMotionState(), rng, pathEdge,
+          transitionProbMatrix, initialPriorTransDist);
+
+      return state;
+    }
+
+    /**
+     * An initial state derived from another initial state for the same
+     * observation, e.g. an off-road one from
+     * {@link #createInitialVehicleState(VehicleStateInitialParameters, InferenceGraph, GpsObservation, Random, PathEdge)}.
+     * It shares that state's covariance parameters and transition
+     * probabilities, which are copy-on-write, so only its motion and path
+     * states are built, on the given edge.
+     * 
+     * @param template
+     * @param initialObsFreq
+     * @param initialMotionState
+     *          the initial ground motion state, or null to draw its location
+     *          around the observation
+     * @param rng
+     * @param pathEdge
+     * @return
+     */
+    public VehicleStateDistribution<O> createInitialVehicleState(
+      VehicleStateDistribution<O> template, double initialObsFreq,
+      Vector initialMotionState, Random rng, PathEdge pathEdge) {
+      final VehicleStateDistribution<O> state =
+          new VehicleStateDistribution<O>(template);
+      state.setEdgeTransitionLogLikelihood(0d);
+      state.setPathStateDistLogLikelihood(0d);
+      state.setObsLogLikelihood(0d);
+
+      this.setInitialMotionState(state, initialObsFreq, initialMotionState,
+          rng, pathEdge, template.getEdgeTransitionParam().getValue(),
+          template.getEdgeTransitionParam().getParameterPrior());
+
+      return state;
+    }
+
+    /**
+     * Sets the motion, path-state and edge-transition parameters of a state
+     * that has its covariance parameters, on the given edge.
+     */
+    protected void setInitialMotionState(VehicleStateDistribution<O> state,
+      double initialObsFreq, Vector initialMotionState, Random rng,
+      PathEdge pathEdge, TransitionProbMatrix transitionProbMatrix,
+      OnOffEdgeTransPriorDistribution initialPriorTransDist) {
+
       final MotionStateEstimatorPredictor motionStateEstimatorPredictor =
-          new MotionStateEstimatorPredictor(state, rng,
-              parameters.getInitialObsFreq());
+          new MotionStateEstimatorPredictor(state, rng, initialObsFreq);
 
       final MultivariateGaussian initialMotionStateDist =
           motionStateEstimatorPredictor.createInitialLearnedObject();
-      if (parameters.getInitialMotionState() != null) {
-        Preconditions.checkArgument(parameters
-            .getInitialMotionState().getDimensionality() == 4);
-        initialMotionStateDist.setMean(parameters
-            .getInitialMotionState().clone());
+      if (initialMotionState != null) {
+        Preconditions.checkArgument(initialMotionState
+            .getDimensionality() == 4);
+        initialMotionStateDist.setMean(initialMotionState.clone());
       }
 
       /*
@@ -213,7 +265,7 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
        * for construction.
        */
       final OnOffEdgeTransDistribution initialTransDist =
-          new OnOffEdgeTransDistribution(graph, 
+          new OnOffEdgeTransDistribution(state.getGraph(), 
               state.getPathStateParam().getValue(), 
               pathEdge.getInferenceGraphSegment(),
               state.getObservationCovarianceParam().getValue(),
@@ -224,8 +276,6 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
               initialTransDist, initialPriorTransDist);
 
       state.setEdgeTransitionParam(edgeTransitionParam);
-
-      return state;
     }
   }
 
@@ -245,6 +295,21 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     return VehicleStateDistribution.serialVersionUID;
   }
 
+  /**
+   * Drops the references from the states' parents to their own parents, so
+   * that past states can be collected. The filters only look one state back.
+   */
+  public static <O extends GpsObservation> void truncateHistory(
+    DataDistribution<VehicleStateDistribution<O>> belief) {
+    for (final VehicleStateDistribution<O> state : belief.getDomain()) {
+      final VehicleStateDistribution<O> parentState =
+          state.getParentState();
+      if (parentState != null) {
+        parentState.setParentState(null);
+      }
+    }
+  }
+
   protected static int oneStateCompareTo(
     VehicleStateDistribution<? extends GpsObservation> t,
     VehicleStateDistribution<? extends GpsObservation> o) {
@@ -474,17 +539,15 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     this.motionStateEstimatorPredictor =
         other.motionStateEstimatorPredictor;
 
-    this.motionStateParam =
-        ObjectUtil.cloneSmart(other.motionStateParam);
-    this.pathStateParam = ObjectUtil.cloneSmart(other.pathStateParam);
-    this.observationCovarianceParam =
-        ObjectUtil.cloneSmart(other.observationCovarianceParam);
-    this.onRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(other.onRoadModelCovarianceParam);
-    this.offRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(other.offRoadModelCovarianceParam);
-    this.edgeTransitionParam =
-        ObjectUtil.cloneSmart(other.edgeTransitionParam);
+    /*
+     * The parameters are shared; see the class comment.
+     */
+    this.motionStateParam = other.motionStateParam;
+    this.pathStateParam = other.pathStateParam;
+    this.observationCovarianceParam = other.observationCovarianceParam;
+    this.onRoadModelCovarianceParam = other.onRoadModelCovarianceParam;
+    this.offRoadModelCovarianceParam = other.offRoadModelCovarianceParam;
+    this.edgeTransitionParam = other.edgeTransitionParam;
     this.edgeTransitionLogLikelihood =
         other.edgeTransitionLogLikelihood;
     this.pathStateDistLogLikelihood =
@@ -502,17 +565,15 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     clone.motionStateEstimatorPredictor =
         this.motionStateEstimatorPredictor;
 
-    clone.motionStateParam =
-        ObjectUtil.cloneSmart(this.motionStateParam);
-    clone.pathStateParam = ObjectUtil.cloneSmart(this.pathStateParam);
-    clone.observationCovarianceParam =
-        ObjectUtil.cloneSmart(this.observationCovarianceParam);
-    clone.onRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(this.onRoadModelCovarianceParam);
-    clone.offRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(this.offRoadModelCovarianceParam);
-    clone.edgeTransitionParam =
-        ObjectUtil.cloneSmart(this.edgeTransitionParam);
+    /*
+     * The parameters are shared; see the class comment.
+     */
+    clone.motionStateParam = this.motionStateParam;
+    clone.pathStateParam = this.pathStateParam;
+    clone.observationCovarianceParam = this.observationCovarianceParam;
+    clone.onRoadModelCovarianceParam = this.onRoadModelCovarianceParam;
+    clone.offRoadModelCovarianceParam = this.offRoadModelCovarianceParam;
+    clone.edgeTransitionParam = this.edgeTransitionParam;
     clone.edgeTransitionLogLikelihood =
         this.edgeTransitionLogLikelihood;
     clone.pathStateDistLogLikelihood =
@@ -0,0 +1,236 @@
+package org.opentrackingtools.model;
+
+import gov.sandia.cognition.math.LogMath;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import com.statslibextensions.statistics.distribution.CountedDataDistribution;
+
+/**
+ * A particle container that keeps, in parallel primitive arrays, each
+ * particle's count, log weight and the log likelihood of the latest
+ * observation. <br>
+ * Weighting and resampling work over the arrays alone; the full
+ * {@link VehicleStateDistribution}s are only needed to predict and update
+ * each particle, and {@link #toDistribution()} materializes the usual
+ * {@link CountedDataDistribution} view for output. <br>
+ * Unlike a {@link CountedDataDistribution}, equal states added separately are
+ * kept as separate particles.
+ */
+public class VehicleStateParticleArray<O extends GpsObservation> {
+
+  /**
+   * Copies the given distribution's states, with their counts (or a count of
+   * one, when it isn't counted) and log fractions as their log weights.
+   */
+  public static <O extends GpsObservation> VehicleStateParticleArray<O>
+      fromDistribution(
+        DataDistribution<VehicleStateDistribution<O>> distribution) {
+    final VehicleStateParticleArray<O> result =
+        new VehicleStateParticleArray<O>(distribution.getDomainSize());
+    final boolean isCounted =
+        distribution instanceof CountedDataDistribution<?>;
+    for (final VehicleStateDistribution<O> state : distribution
+        .getDomain()) {
+      final int count =
+          isCounted ? ((CountedDataDistribution<VehicleStateDistribution<O>>) distribution)
+              .getCount(state) : 1;
+      result.add(state, count, distribution.getLogFraction(state));
+    }
+    return result;
+  }
+
+  protected int[] counts;
+  protected double[] logLikelihoods;
+  protected double[] logWeights;
+  protected int size = 0;
+  protected VehicleStateDistribution<O>[] states;
+
+  public VehicleStateParticleArray(int initialCapacity) {
+    this.allocate(Math.max(initialCapacity, 1));
+  }
+
+  /**
+   * Adds a particle for the given state, with the given count and log
+   * weight, which is the weight of all its copies, and no likelihood yet.
+   *
+   * @return the particle's index
+   */
+  public int add(VehicleStateDistribution<O> state, int count,
+    double logWeight) {
+    Preconditions.checkArgument(count > 0);
+    if (this.size == this.states.length) {
+      this.allocate(2 * this.states.length);
+    }
+    final int index = this.size++;
+    this.states[index] = state;
+    this.counts[index] = count;
+    this.logWeights[index] = logWeight;
+    this.logLikelihoods[index] = 0d;
+    return index;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected void allocate(int capacity) {
+    final VehicleStateDistribution<O>[] newStates =
+        new VehicleStateDistribution[capacity];
+    if (this.states != null) {
+      System.arraycopy(this.states, 0, newStates, 0, this.size);
+      this.counts = Arrays.copyOf(this.counts, capacity);
+      this.logLikelihoods = Arrays.copyOf(this.logLikelihoods, capacity);
+      this.logWeights = Arrays.copyOf(this.logWeights, capacity);
+    } else {
+      this.counts = new int[capacity];
+      this.logLikelihoods = new double[capacity];
+      this.logWeights = new double[capacity];
+    }
+    this.states = newStates;
+  }
+
+  public void clear() {
+    Arrays.fill(this.states, 0, this.size, null);
+    this.size = 0;
+  }
+
+  public int getCount(int index) {
+    Preconditions.checkElementIndex(index, this.size);
+    return this.counts[index];
+  }
+
+  /**
+   * The particles' weights, normalized to sum to one, without their
+   * likelihoods.
+   */
+  public double[] getFractions() {
+    final double totalLogWeight = this.getTotalLogWeight();
+    final double[] result = new double[this.size];
+    for (int i = 0; i < this.size; i++) {
+      result[i] = Math.exp(this.logWeights[i] - totalLogWeight);
+    }
+    return result;
+  }
+
+  public double getLogLikelihood(int index) {
+    Preconditions.checkElementIndex(index, this.size);
+    return this.logLikelihoods[index];
+  }
+
+  public double getLogWeight(int index) {
+    Preconditions.checkElementIndex(index, this.size);
+    return this.logWeights[index];
+  }
+
+  public VehicleStateDistribution<O> getState(int index) {
+    Preconditions.checkElementIndex(index, this.size);
+    return this.states[index];
+  }
+
+  /**
+   * The log of the sum of the particles' weights.
+   */
+  public double getTotalLogWeight() {
+    double total = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < this.size; i++) {
+      total = LogMath.add(total, this.logWeights[i]);
+    }
+    return total;
+  }
+
+  public int getTotalCount() {
+    int total = 0;
+    for (int i = 0; i < this.size; i++) {
+      total += this.counts[i];
+    }
+    return total;
+  }
+
+  /**
+   * Draws particle indices in proportion to the particles' weights times
+   * their likelihoods.
+   *
+   * @param random
+   * @param numSamples
+   * @return the sampled indices, in ascending order
+   */
+  public int[] sample(Random random, int numSamples) {
+    Preconditions.checkState(this.size > 0);
+    double totalLogWeight = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < this.size; i++) {
+      totalLogWeight =
+          LogMath.add(totalLogWeight, this.logWeights[i]
+              + this.logLikelihoods[i]);
+    }
+    Preconditions.checkState(!Double.isNaN(totalLogWeight)
+        && totalLogWeight > Double.NEGATIVE_INFINITY);
+
+    final double[] cumulativeWeights = new double[this.size];
+    double cumulativeWeight = 0d;
+    for (int i = 0; i < this.size; i++) {
+      cumulativeWeight +=
+          Math.exp(this.logWeights[i] + this.logLikelihoods[i]
+              - totalLogWeight);
+      cumulativeWeights[i] = cumulativeWeight;
+    }
+
+    final int[] result = new int[numSamples];
+    for (int k = 0; k < numSamples; k++) {
+      final double u = random.nextDouble() * cumulativeWeight;
+      int index = Arrays.binarySearch(cumulativeWeights, u);
+      if (index < 0) {
+        index = -index - 1;
+      }
+      result[k] = Math.min(index, this.size - 1);
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Sets the given particle's log likelihood of a new observation, e.g.
+   * its prior predictive one, by which it's weighted when resampling.
+   */
+  public void setLogLikelihood(int index, double logLikelihood) {
+    Preconditions.checkElementIndex(index, this.size);
+    this.logLikelihoods[index] = logLikelihood;
+  }
+
+  /**
+   * Sets the given particle's log weight.
+   */
+  public void setLogWeight(int index, double logWeight) {
+    Preconditions.checkElementIndex(index, this.size);
+    this.logWeights[index] = logWeight;
+  }
+
+  /**
+   * Replaces the given particle's state.
+   */
+  public void setState(int index, VehicleStateDistribution<O> state) {
+    Preconditions.checkElementIndex(index, this.size);
+    this.states[index] = state;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * A {@link CountedDataDistribution} over the particles' states, with their
+   * counts.
+   */
+  public CountedDataDistribution<VehicleStateDistribution<O>>
+      toDistribution() {
+    final CountedDataDistribution<VehicleStateDistribution<O>> result =
+        new CountedDataDistribution<VehicleStateDistribution<O>>(true);
+    for (int i = 0; i < this.size; i++) {
+      for (int c = 0; c < this.counts[i]; c++) {
+        result.increment(this.states[i]);
+      }
+    }
+    return result;
+  }
+
+}
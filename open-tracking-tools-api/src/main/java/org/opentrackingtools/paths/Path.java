@@ -12,11 +12,11 @@ import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateArrays;
 import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
-import com.vividsolutions.jts.linearref.LengthIndexedLine;
 
 /**
  * Inferred paths are collections of PathEdges that track the distance traveled
@@ -35,14 +35,53 @@ public class Path extends AbstractCloneableSerializable implements
 
   private static final long serialVersionUID = -113041668509555507L;
 
+  /*
+   * The geometry and total distance are derived from the edges on first
+   * use, since most paths are discarded right after they're evaluated.
+   */
+  /**
+   * @deprecated use {@link #getEdgeIds()} instead.
+   */
+  @Deprecated
   public List<String> edgeIds = null;
 
+  /*
+   * Absolute start distances of the edges, and whether they (and the
+   * edge ends) are non-decreasing, so that they can be binary searched.
+   */
+  protected double[] edgeStartDistances = null;
+
+  protected boolean edgeStartDistancesMonotone = false;
+
   protected List<? extends PathEdge> edges = null;
 
   protected Geometry geometry = null;
 
+  /*
+   * The edges don't change, and paths are hashed often.
+   */
+  protected transient Integer hashCode = null;
+
   protected Boolean isBackward = null;
 
+  /*
+   * Built from the geometry on first use and shared by every
+   * projection onto this path.
+   */
+  protected transient PathLinearReference linearReference = null;
+
+  /*
+   * Paths created from a single edge have always had that edge's
+   * forward geometry, regardless of direction.
+   */
+  protected boolean reverseGeometry = false;
+
+  /*
+   * Paths created from a single edge have always had its geometry and
+   * id, however short it is.
+   */
+  protected boolean singleEdge = false;
+
   protected Double totalPathDistance = null;
 
   protected Path() {
@@ -61,10 +100,9 @@ public class Path extends AbstractCloneableSerializable implements
 
     this.edges = edges;
     this.isBackward = isBackward;
-    this.edgeIds = Lists.newArrayList();
 
+    final List<String> ids = Lists.newArrayList();
     PathEdge lastEdge = null;
-    final CoordinateList coords = new CoordinateList();
     for (final PathEdge edge : edges) {
 
       if (lastEdge != null && !edge.equals(lastEdge)) {
@@ -73,24 +111,13 @@ public class Path extends AbstractCloneableSerializable implements
 
       }
 
-      final LineSegment geom = edge.getLine();
-      if (geom.getLength() > 1e-4) {
-        coords.add(geom.p0, false);
-        coords.add(geom.p1, false);
-        if (!edge.equals(lastEdge)) {
-          this.edgeIds.add(edge.getInferenceGraphSegment().getEdgeId());
-        }
+      if (edge.getLength() > 1e-4 && !edge.equals(lastEdge)) {
+        ids.add(edge.getInferenceGraphSegment().getEdgeId());
       }
 
       lastEdge = edge;
     }
-
-    this.geometry =
-        JTSFactoryFinder.getGeometryFactory().createLineString(
-            coords.toCoordinateArray());
-
-    final double direction = isBackward ? -1d : 1d;
-    this.totalPathDistance = direction * this.geometry.getLength();
+    this.edgeIds = ids;
   }
 
   /**
@@ -109,20 +136,14 @@ public class Path extends AbstractCloneableSerializable implements
             * edge.getLength();
     this.edgeIds =
         Lists.newArrayList(edge.getInferenceGraphSegment().getEdgeId());
-    this.geometry =
-        edge.getLine().toGeometry(
-            JTSFactoryFinder.getGeometryFactory());
-
-    if (this.isBackward == Boolean.TRUE) {
-      this.geometry = this.geometry.reverse();
-    }
+    this.reverseGeometry = this.isBackward == Boolean.TRUE;
+    this.singleEdge = true;
   }
 
   public double clampToPath(final double distance) {
     final double dir = this.isBackward() ? -1d : 1d;
-    final LengthIndexedLine lil =
-        new LengthIndexedLine(this.getGeometry());
-    final double clampedIndex = dir * lil.clampIndex(dir * distance);
+    final double clampedIndex =
+        dir * this.getLinearReference().clampIndex(dir * distance);
     return clampedIndex;
   }
 
@@ -156,31 +177,126 @@ public class Path extends AbstractCloneableSerializable implements
     return true;
   }
 
+  /**
+   * Builds the path geometry, skipping degenerate edges and repeated
+   * coordinates, except on a single-edge path, which has its edge's line
+   * whatever its length.
+   */
+  protected Geometry createGeometry() {
+    if (this.singleEdge) {
+      final Geometry result =
+          this.edges.get(0).getLine()
+              .toGeometry(JTSFactoryFinder.getGeometryFactory());
+      return this.reverseGeometry ? result.reverse() : result;
+    }
+    final CoordinateList coords = new CoordinateList();
+    for (final PathEdge edge : this.edges) {
+      final LineSegment geom = edge.getLine();
+      if (geom.getLength() > 1e-4) {
+        coords.add(geom.p0, false);
+        coords.add(geom.p1, false);
+      }
+    }
+    final Geometry result =
+        JTSFactoryFinder.getGeometryFactory().createLineString(
+            coords.toCoordinateArray());
+    return this.reverseGeometry ? result.reverse() : result;
+  }
+
   public PathEdge getEdgeForDistance(double distance, boolean clamp) {
-    final double direction = Math.signum(this.totalPathDistance);
-    final double distDiff = direction * distance - Math.abs(this.totalPathDistance);
+    final int index = this.getEdgeIndexForDistance(distance, clamp);
+    return index < 0 ? null : this.edges.get(index);
+  }
+
+  /**
+   * Returns the index of the last edge in this path that contains the given
+   * distance, or -1 if there isn't one. When the edges' start distances are
+   * monotone, as they are for paths built along the graph, this is a binary
+   * search over {@link #getEdgeStartDistances()}.
+   * 
+   * @param distance
+   * @param clamp
+   * @return
+   */
+  public int getEdgeIndexForDistance(double distance, boolean clamp) {
+    final double totalDistance = this.getTotalPathDistance();
+    final double direction = Math.signum(totalDistance);
+    final double distDiff = direction * distance - Math.abs(totalDistance);
     if (clamp) {
       if (distDiff > MotionStateEstimatorPredictor.getEdgeLengthErrorTolerance()
           || Math.abs(distDiff) <= 1e-5) {
-        return Iterables.getLast(this.edges);
+        return this.edges.size() - 1;
       } else if (direction * distance < 0d) {
-        return Iterables.getFirst(this.edges, null);
+        return 0;
       }
     } 
 
-//    if (Math.abs(distDiff) <= 1e-5) {
-//      return Iterables.getLast(this.edges);
-//    }
+    final double[] startDistances = this.getEdgeStartDistances();
 
-    for (final PathEdge edge : Lists.reverse(this.edges)) {
-      if (edge.isOnEdge(distance)) {
-        return edge;
+    if (!this.edgeStartDistancesMonotone) {
+      for (int i = this.edges.size() - 1; i >= 0; i--) {
+        if (this.edges.get(i).isOnEdge(distance)) {
+          return i;
+        }
       }
+      return -1;
     }
 
-    //    assert Preconditions.checkNotNull(null);
+    /*
+     * Find the last edge starting at or before the distance.
+     */
+    final double posDistance =
+        (this.isBackward == Boolean.TRUE ? -1d : 1d) * distance;
+    int lo = 0;
+    int hi = startDistances.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (startDistances[mid] <= posDistance) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    final int index = lo - 1;
 
-    return null;
+    if (index >= 0 && this.edges.get(index).isOnEdge(distance)) {
+      return index;
+    }
+
+    return -1;
+  }
+
+  /**
+   * The absolute distance from the start of this path to the start of each
+   * of its edges.
+   * 
+   * @return
+   */
+  public double[] getEdgeStartDistances() {
+    if (this.edgeStartDistances == null) {
+      final int size = this.edges.size();
+      final double[] startDistances = new double[size];
+      boolean monotone = true;
+      double lastEnd = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        final PathEdge edge = this.edges.get(i);
+        if (edge.isNullEdge()) {
+          monotone = false;
+          continue;
+        }
+        startDistances[i] = Math.abs(edge.getDistToStartOfEdge());
+        final double end = startDistances[i] + edge.getLength();
+        if ((i > 0 && startDistances[i] < startDistances[i - 1])
+            || end < lastEnd
+            || !edge.isBackward().equals(this.isBackward)) {
+          monotone = false;
+        }
+        lastEnd = end;
+      }
+      this.edgeStartDistancesMonotone = monotone;
+      this.edgeStartDistances = startDistances;
+    }
+    return this.edgeStartDistances;
   }
 
   public List<String> getEdgeIds() {
@@ -188,9 +304,20 @@ public class Path extends AbstractCloneableSerializable implements
   }
 
   public Geometry getGeometry() {
+    if (this.geometry == null && !this.isNullPath()) {
+      this.geometry = this.createGeometry();
+    }
     return this.geometry;
   }
 
+  public PathLinearReference getLinearReference() {
+    if (this.linearReference == null && !this.isNullPath()) {
+      this.linearReference =
+          new PathLinearReference(this.getGeometry());
+    }
+    return this.linearReference;
+  }
+
   public List<? extends PathEdge> getPathEdges() {
     return this.edges;
   }
@@ -230,6 +357,21 @@ public class Path extends AbstractCloneableSerializable implements
     return newPath;
   }
 
+  /**
+   * Produce a path ending at the edge with the given index.
+   * 
+   * @param edgeIndex
+   * @return
+   */
+  public Path getPathTo(int edgeIndex) {
+    Preconditions.checkElementIndex(edgeIndex, this.edges.size());
+    if (edgeIndex == this.edges.size() - 1) {
+      return this;
+    }
+    return new Path(Lists.newArrayList(this.edges.subList(0,
+        edgeIndex + 1)), this.isBackward);
+  }
+
   public Path getPathTo(PathEdge edge) {
 
     final List<PathEdge> newEdges = Lists.newArrayList();
@@ -245,18 +387,43 @@ public class Path extends AbstractCloneableSerializable implements
     return newPath;
   }
 
+  /**
+   * The signed length of the path geometry, computed from the edges without
+   * building the geometry.
+   * 
+   * @return
+   */
   public Double getTotalPathDistance() {
+    if (this.totalPathDistance == null && !this.isNullPath()) {
+      double length = 0d;
+      Coordinate lastCoord = null;
+      for (final PathEdge edge : this.edges) {
+        final LineSegment geom = edge.getLine();
+        if (geom.getLength() > 1e-4) {
+          if (lastCoord != null && !lastCoord.equals2D(geom.p0)) {
+            length += lastCoord.distance(geom.p0);
+          }
+          length += geom.getLength();
+          lastCoord = geom.p1;
+        }
+      }
+      final double direction = this.isBackward ? -1d : 1d;
+      this.totalPathDistance = direction * length;
+    }
     return this.totalPathDistance;
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result =
-        prime * result
-            + ((this.edges == null) ? 0 : this.edges.hashCode());
-    return result;
+    if (this.hashCode == null) {
+      final int prime = 31;
+      int result = 1;
+      result =
+          prime * result
+              + ((this.edges == null) ? 0 : this.edges.hashCode());
+      this.hashCode = result;
+    }
+    return this.hashCode;
   }
 
   public Boolean isBackward() {
@@ -267,13 +434,29 @@ public class Path extends AbstractCloneableSerializable implements
     return this.equals(Path.nullPath);
   }
 
+  /**
+   * Whether this is a single-edge path, created via {@link #Path(PathEdge)},
+   * with its geometry reversed.
+   */
+  public boolean isReverseGeometry() {
+    return this.reverseGeometry;
+  }
+
+  /**
+   * Whether this is a single-edge path, created via {@link #Path(PathEdge)}.
+   */
+  public boolean isSingleEdge() {
+    return this.singleEdge;
+  }
+
   public boolean isOnPath(double distance) {
 
     Preconditions.checkState(!this.isNullPath());
 
-    final double direction = Math.signum(this.totalPathDistance);
+    final double totalDistance = this.getTotalPathDistance();
+    final double direction = Math.signum(totalDistance);
     final double overTheEndDist =
-        direction * distance - Math.abs(this.totalPathDistance);
+        direction * distance - Math.abs(totalDistance);
     if (overTheEndDist > MotionStateEstimatorPredictor
         .getEdgeLengthErrorTolerance()) {
       return false;
@@ -290,8 +473,8 @@ public class Path extends AbstractCloneableSerializable implements
     if (this.isNullPath()) {
       return "Path [null path]";
     } else {
-      return "Path [edges=" + this.edgeIds + ", totalPathDistance="
-          + this.totalPathDistance + "]";
+      return "Path [edges=" + this.getEdgeIds()
+          + ", totalPathDistance=" + this.getTotalPathDistance() + "]";
     }
   }
 
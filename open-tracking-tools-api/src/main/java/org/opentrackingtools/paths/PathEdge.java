@@ -1,9 +1,13 @@
 package org.opentrackingtools.paths;
 
+import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
 
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.util.PathUtils;
+import org.opentrackingtools.util.PathUtils.PathEdgeProjection;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
@@ -19,8 +23,18 @@ public class PathEdge extends AbstractCloneableSerializable implements
   protected Double distFromStartOfGraphEdge = null;
   protected Double distToStartOfEdge = null;
   protected InferenceGraphSegment edge = null;
+  /*
+   * Depends only on the segment, direction and distance to start,
+   * so it's computed once.
+   */
+  protected transient PathEdgeProjection groundProjection = null;
   protected Boolean isBackward = null;
   protected LineSegment line = null;
+  /*
+   * Built from the line on first use, for projections onto this
+   * edge alone.
+   */
+  protected transient PathLinearReference linearReference = null;
 
   protected PathEdge() {
     this.edge = InferenceGraphSegment.nullGraphSegment;
@@ -39,9 +53,7 @@ public class PathEdge extends AbstractCloneableSerializable implements
       this.line = segment.getLine();
     }
     this.edge = segment;
-    this.distFromStartOfGraphEdge =
-        segment.getLengthLocationMap()
-            .getLength(segment.getStartIndex());
+    this.distFromStartOfGraphEdge = segment.getStartDistance();
     this.distToStartOfEdge = startDistance;
     this.isBackward = isBackward;
   }
@@ -179,6 +191,27 @@ public class PathEdge extends AbstractCloneableSerializable implements
     return this.distToStartOfEdge;
   }
 
+  /**
+   * The projection from road-states on this edge to ground-states, in the
+   * path's positive direction. It's cached and shared, so neither its matrix
+   * nor offset may be modified.
+   * 
+   * @return
+   */
+  public PathEdgeProjection getGroundProjection() {
+    if (this.groundProjection == null) {
+      Preconditions.checkState(!this.isNullEdge());
+      final Matrix projMatrix =
+          this.edge.getProjMatrix(this.isBackward);
+      this.groundProjection =
+          new PathEdgeProjection(projMatrix, PathUtils.getProjOffset(
+              this.line.p0.x, this.line.p0.y,
+              projMatrix.getElement(0, 0), projMatrix.getElement(2, 0),
+              this.distToStartOfEdge));
+    }
+    return this.groundProjection;
+  }
+
   public InferenceGraphSegment getInferenceGraphSegment() {
     return this.edge;
   }
@@ -187,6 +220,21 @@ public class PathEdge extends AbstractCloneableSerializable implements
     return this.line.getLength();
   }
 
+  /**
+   * Linear referencing over this edge's line, in its direction of travel.
+   *
+   * @return
+   */
+  public PathLinearReference getLinearReference() {
+    if (this.linearReference == null) {
+      Preconditions.checkState(!this.isNullEdge());
+      this.linearReference =
+          new PathLinearReference(this.line.toGeometry(JTSFactoryFinder
+              .getGeometryFactory()));
+    }
+    return this.linearReference;
+  }
+
   public LineSegment getLine() {
     return this.line;
   }
@@ -0,0 +1,281 @@
+package org.opentrackingtools.paths;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.opentrackingtools.graph.InferenceGraphSegment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * A trie of paths keyed by graph segment and direction, so that identical
+ * paths built on it are usually a single {@link Path}, and paths with a
+ * common prefix share its {@link PathEdge}s. This saves building the same
+ * edges again, and makes comparing paths cheap, since equal paths are
+ * mostly the same object, or at least made of the same edges. Paths are
+ * still compared by value, not by reference, since the trie is shared by
+ * every filter using the graph and is cleared when it gets too big, so two
+ * equal paths may have been built on different tries. <br>
+ * Paths can either be interned after they're built, via
+ * {@link #intern(Path)}, or built directly on the trie by extending
+ * {@link #getRoot()}, which only creates the path edges that haven't been
+ * seen yet. <br>
+ * The trie's links live in a single {@link ConcurrentHashMap}, keyed by the
+ * parent node, segment and direction, so concurrent filters can extend it
+ * without a common lock; when two race to create the same node, both get
+ * the one that was put first. The trie is cleared whenever it grows past its
+ * node budget, so it only holds the paths of the last few updates.
+ */
+public class PathInterner {
+
+  /**
+   * The key of a node's child: nodes are compared by reference.
+   */
+  protected static class ChildKey {
+
+    protected final boolean isBackward;
+    protected final Node parent;
+    protected final InferenceGraphSegment segment;
+
+    protected ChildKey(Node parent, InferenceGraphSegment segment,
+      boolean isBackward) {
+      this.parent = parent;
+      this.segment = segment;
+      this.isBackward = isBackward;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof ChildKey)) {
+        return false;
+      }
+      final ChildKey other = (ChildKey) obj;
+      return this.parent == other.parent
+          && this.isBackward == other.isBackward
+          && this.segment.equals(other.segment);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(this.parent);
+      result = 31 * result + this.segment.hashCode();
+      return 31 * result + (this.isBackward ? 1 : 0);
+    }
+  }
+
+  /**
+   * A node in the trie, i.e. the path made of the edges leading to it.
+   */
+  public class Node {
+
+    protected volatile Path backwardPath = null;
+    /*
+     * The links of the trie this node belongs to, which are replaced when
+     * it's cleared.
+     */
+    protected final ConcurrentMap<ChildKey, Node> children;
+    protected final double distance;
+    protected final PathEdge edge;
+    protected volatile Path forwardPath = null;
+    protected final int length;
+    protected final Node parent;
+
+    protected Node(Node parent, PathEdge edge, double distance,
+      ConcurrentMap<ChildKey, Node> children) {
+      this.parent = parent;
+      this.edge = edge;
+      this.distance = distance;
+      this.children = children;
+      this.length = parent == null ? 0 : parent.length + 1;
+    }
+
+    /**
+     * The node for this path followed by the given segment, traversed in the
+     * given direction.
+     *
+     * @param segment
+     * @param isBackward
+     * @return
+     */
+    public Node extend(InferenceGraphSegment segment, boolean isBackward) {
+      final Node child = this.getChild(segment, isBackward);
+      if (child != null) {
+        return child;
+      }
+      final PathEdge newEdge =
+          new PathEdge(segment, (isBackward ? -1d : 1d) * this.distance,
+              isBackward);
+      return PathInterner.this.addChild(this, newEdge, this.distance
+          + segment.getSegmentLength());
+    }
+
+    protected Node getChild(InferenceGraphSegment segment,
+      boolean isBackward) {
+      return this.children.get(new ChildKey(this, segment, isBackward));
+    }
+
+    public PathEdge getEdge() {
+      return this.edge;
+    }
+
+    /**
+     * The path ending at this node.
+     *
+     * @param isBackward
+     * @return
+     */
+    public Path getPath(boolean isBackward) {
+      Preconditions.checkState(this.parent != null);
+      final Path path = isBackward ? this.backwardPath : this.forwardPath;
+      if (path != null) {
+        return path;
+      }
+      final PathEdge[] edges = new PathEdge[this.length];
+      Node node = this;
+      for (int i = this.length - 1; i >= 0; i--) {
+        edges[i] = node.edge;
+        node = node.parent;
+      }
+      return this.setPath(new Path(Lists.newArrayList(edges), isBackward));
+    }
+
+    /**
+     * Sets the path ending at this node, unless one was set first.
+     *
+     * @return the path that was set
+     */
+    protected Path setPath(Path path) {
+      final AtomicReferenceFieldUpdater<Node, Path> updater =
+          path.isBackward() ? PathInterner.BACKWARD_PATH
+              : PathInterner.FORWARD_PATH;
+      if (updater.compareAndSet(this, null, path)) {
+        return path;
+      }
+      return updater.get(this);
+    }
+  }
+
+  protected static final AtomicReferenceFieldUpdater<Node, Path> BACKWARD_PATH =
+      AtomicReferenceFieldUpdater.newUpdater(Node.class, Path.class,
+          "backwardPath");
+
+  public static final int DEFAULT_MAX_NODES = 1 << 16;
+
+  protected static final AtomicReferenceFieldUpdater<Node, Path> FORWARD_PATH =
+      AtomicReferenceFieldUpdater.newUpdater(Node.class, Path.class,
+          "forwardPath");
+
+  protected final int maxNodes;
+
+  protected final AtomicInteger numNodes = new AtomicInteger();
+
+  protected volatile Node root = this.createRoot();
+
+  public PathInterner() {
+    this(PathInterner.DEFAULT_MAX_NODES);
+  }
+
+  public PathInterner(int maxNodes) {
+    Preconditions.checkArgument(maxNodes > 0);
+    this.maxNodes = maxNodes;
+  }
+
+  /**
+   * Adds the given child to the parent, unless another was added first.
+   *
+   * @return the parent's child
+   */
+  protected Node addChild(Node parent, PathEdge edge, double distance) {
+    final Node child = new Node(parent, edge, distance, parent.children);
+    final Node existing =
+        parent.children.putIfAbsent(new ChildKey(parent,
+            edge.getInferenceGraphSegment(), edge.isBackward()), child);
+    if (existing != null) {
+      return existing;
+    }
+    this.numNodes.incrementAndGet();
+    return child;
+  }
+
+  public void clear() {
+    this.root = this.createRoot();
+    this.numNodes.set(0);
+  }
+
+  protected Node createRoot() {
+    return new Node(null, null, 0d,
+        new ConcurrentHashMap<ChildKey, Node>());
+  }
+
+  public int getNumNodes() {
+    return this.numNodes.get();
+  }
+
+  /**
+   * The empty path, from which all paths are built. It's replaced when the
+   * trie is cleared, so get it anew for every path.
+   *
+   * @return
+   */
+  public Node getRoot() {
+    if (this.numNodes.get() > this.maxNodes) {
+      this.clear();
+    }
+    return this.root;
+  }
+
+  /**
+   * Returns the interned path equal to the given one, interning it if there
+   * isn't one yet. When part of the path was already interned, the result is
+   * rebuilt on the interned edges. Null paths, single-edge paths, whose
+   * geometry is built differently, and paths whose edges don't line up with
+   * those already interned, are returned as-is.
+   *
+   * @param path
+   * @return
+   */
+  public Path intern(Path path) {
+    if (path.isNullPath() || path.singleEdge) {
+      return path;
+    }
+    Node node = this.getRoot();
+    boolean isShared = false;
+    final List<? extends PathEdge> edges = path.getPathEdges();
+    for (final PathEdge edge : edges) {
+      if (edge.isNullEdge()) {
+        return path;
+      }
+      Node child =
+          node.getChild(edge.getInferenceGraphSegment(),
+              edge.isBackward());
+      if (child == null) {
+        child = this.addChild(node, edge, node.distance + edge.getLength());
+      }
+      if (child.edge != edge) {
+        /*
+         * The segment and direction match, since they key the child, so
+         * only the start distance can differ.
+         */
+        if (!child.edge.getDistToStartOfEdge().equals(
+            edge.getDistToStartOfEdge())) {
+          return path;
+        }
+        isShared = true;
+      }
+      node = child;
+    }
+
+    if (isShared) {
+      return node.getPath(path.isBackward());
+    }
+    return node.setPath(path);
+  }
+
+}
@@ -0,0 +1,210 @@
+package org.opentrackingtools.paths;
+
+import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineSegment;
+
+/**
+ * Linear referencing over a path's geometry, kept in primitive arrays: the
+ * vertices, the distance along the geometry to each vertex, and each
+ * segment's length, unit direction and unit normal. <br>
+ * It answers the projection and clamping questions that would otherwise need
+ * a LocationIndexedLine or LengthIndexedLine, with the same results, and is
+ * immutable, so a path can build it once and share it.
+ */
+public class PathLinearReference {
+
+  /**
+   * Clamps a length index to [0, length], where negative indices count back
+   * from the end, as in LengthIndexedLine.
+   *
+   * @param index
+   * @param length
+   * @return
+   */
+  public static double clampIndex(double index, double length) {
+    final double posIndex = index >= 0d ? index : length + index;
+    if (posIndex < 0d) {
+      return 0d;
+    }
+    if (posIndex > length) {
+      return length;
+    }
+    return posIndex;
+  }
+
+  protected final double[] distancesToStart;
+  protected final double length;
+  protected final double[] normalX;
+  protected final double[] normalY;
+  protected final double[] segmentLengths;
+  protected final double[] unitX;
+  protected final double[] unitY;
+  protected final double[] x;
+  protected final double[] y;
+
+  public PathLinearReference(Geometry geometry) {
+    final Coordinate[] coords = geometry.getCoordinates();
+    final int numSegments = Math.max(coords.length - 1, 0);
+
+    this.x = new double[coords.length];
+    this.y = new double[coords.length];
+    this.distancesToStart = new double[coords.length];
+    this.segmentLengths = new double[numSegments];
+    this.unitX = new double[numSegments];
+    this.unitY = new double[numSegments];
+    this.normalX = new double[numSegments];
+    this.normalY = new double[numSegments];
+
+    double distance = 0d;
+    for (int i = 0; i < coords.length; i++) {
+      this.x[i] = coords[i].x;
+      this.y[i] = coords[i].y;
+      this.distancesToStart[i] = distance;
+      if (i < numSegments) {
+        final double dx = coords[i + 1].x - coords[i].x;
+        final double dy = coords[i + 1].y - coords[i].y;
+        final double segLength = Math.sqrt(dx * dx + dy * dy);
+        this.segmentLengths[i] = segLength;
+        if (segLength > 0d) {
+          this.unitX[i] = dx / segLength;
+          this.unitY[i] = dy / segLength;
+        }
+        this.normalX[i] = -this.unitY[i];
+        this.normalY[i] = this.unitX[i];
+        distance += segLength;
+      }
+    }
+    this.length = distance;
+  }
+
+  public double clampIndex(double index) {
+    return PathLinearReference.clampIndex(index, this.length);
+  }
+
+  /**
+   * The point on the given segment closest to (x, y).
+   *
+   * @param segmentIndex
+   * @param x
+   * @param y
+   * @return
+   */
+  public Coordinate closestPoint(int segmentIndex, double x, double y) {
+    final double t = this.segmentFractionLength(segmentIndex, x, y);
+    if (t <= 0d) {
+      return new Coordinate(this.x[segmentIndex], this.y[segmentIndex]);
+    } else if (t >= this.segmentLengths[segmentIndex]) {
+      return new Coordinate(this.x[segmentIndex + 1],
+          this.y[segmentIndex + 1]);
+    }
+    return new Coordinate(this.x[segmentIndex] + t
+        * this.unitX[segmentIndex], this.y[segmentIndex] + t
+        * this.unitY[segmentIndex]);
+  }
+
+  /**
+   * Distance from (x, y) to the given segment.
+   *
+   * @param segmentIndex
+   * @param x
+   * @param y
+   * @return
+   */
+  public double distance(int segmentIndex, double x, double y) {
+    final double t = this.segmentFractionLength(segmentIndex, x, y);
+    final double dx;
+    final double dy;
+    if (t <= 0d) {
+      dx = x - this.x[segmentIndex];
+      dy = y - this.y[segmentIndex];
+    } else if (t >= this.segmentLengths[segmentIndex]) {
+      dx = x - this.x[segmentIndex + 1];
+      dy = y - this.y[segmentIndex + 1];
+    } else {
+      /*
+       * Inside the segment, it's the offset along the normal.
+       */
+      return Math.abs((x - this.x[segmentIndex])
+          * this.normalX[segmentIndex] + (y - this.y[segmentIndex])
+          * this.normalY[segmentIndex]);
+    }
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Distance along the geometry to the start of the given segment.
+   *
+   * @param segmentIndex
+   * @return
+   */
+  public double getDistanceToStart(int segmentIndex) {
+    return this.distancesToStart[segmentIndex];
+  }
+
+  public double getLength() {
+    return this.length;
+  }
+
+  public double getNormalX(int segmentIndex) {
+    return this.normalX[segmentIndex];
+  }
+
+  public double getNormalY(int segmentIndex) {
+    return this.normalY[segmentIndex];
+  }
+
+  public int getNumSegments() {
+    return this.segmentLengths.length;
+  }
+
+  public LineSegment getSegment(int segmentIndex) {
+    return new LineSegment(new Coordinate(this.x[segmentIndex],
+        this.y[segmentIndex]), new Coordinate(this.x[segmentIndex + 1],
+        this.y[segmentIndex + 1]));
+  }
+
+  public double getSegmentLength(int segmentIndex) {
+    return this.segmentLengths[segmentIndex];
+  }
+
+  public double getUnitX(int segmentIndex) {
+    return this.unitX[segmentIndex];
+  }
+
+  public double getUnitY(int segmentIndex) {
+    return this.unitY[segmentIndex];
+  }
+
+  /**
+   * Index of the first segment closest to (x, y).
+   *
+   * @param x
+   * @param y
+   * @return
+   */
+  public int project(double x, double y) {
+    Preconditions.checkState(this.segmentLengths.length > 0);
+    int minIndex = 0;
+    double minDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < this.segmentLengths.length; i++) {
+      final double distance = this.distance(i, x, y);
+      if (distance < minDistance) {
+        minDistance = distance;
+        minIndex = i;
+      }
+    }
+    return minIndex;
+  }
+
+  /**
+   * Length along the segment of the projection of (x, y) onto its line.
+   */
+  private double segmentFractionLength(int segmentIndex, double x,
+    double y) {
+    return (x - this.x[segmentIndex]) * this.unitX[segmentIndex]
+        + (y - this.y[segmentIndex]) * this.unitY[segmentIndex];
+  }
+
+}
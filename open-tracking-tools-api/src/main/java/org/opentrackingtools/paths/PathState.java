@@ -22,6 +22,10 @@ public class PathState extends AbstractVector implements
   private static final long serialVersionUID = 2846671162796173049L;
 
   protected PathEdge edge = null;
+  /*
+   * Index of the edge in the path, or -1 when not yet resolved.
+   */
+  protected int edgeIndex = -1;
   protected Vector edgeState = null;
   protected Vector groundState = null;
   protected Vector motionState = null;
@@ -49,6 +53,7 @@ public class PathState extends AbstractVector implements
 
   public PathState(PathState pathState) {
     this.edge = pathState.edge;
+    this.edgeIndex = pathState.edgeIndex;
 
     this.motionState = pathState.motionState;
     this.groundState = pathState.groundState;
@@ -84,8 +89,13 @@ public class PathState extends AbstractVector implements
      * The edge should always refer to the edge in this path,
      * so if the path gets cloned and that clone makes a clone
      * of the path edges, then we need to find the new edge.
+     * The edge and its index are kept or reset together.
      */
-    clone.edge = null;
+    if (clone.path == null
+        || clone.path.getPathEdges() != this.path.getPathEdges()) {
+      clone.edge = null;
+      clone.edgeIndex = -1;
+    }
     clone.edgeState = ObjectUtil.cloneSmart(this.edgeState);
     clone.motionState = ObjectUtil.cloneSmart(this.motionState);
     clone.groundState = ObjectUtil.cloneSmart(this.groundState);
@@ -222,14 +232,29 @@ public class PathState extends AbstractVector implements
     }
 
     if (this.edge == null) {
-      Preconditions.checkState(!this.path.isNullPath());
+      final int index = this.getEdgeIndex();
       this.edge =
-          this.path.getEdgeForDistance(
-              this.motionState.getElement(0), false);
+          index < 0 ? null : this.path.getPathEdges().get(index);
     }
     return Preconditions.checkNotNull(this.edge);
   }
 
+  /**
+   * The index of {@link #getEdge()} in this state's path, or -1 if the state
+   * isn't on any of its edges.
+   * 
+   * @return
+   */
+  public int getEdgeIndex() {
+    if (this.edgeIndex < 0) {
+      Preconditions.checkState(!this.path.isNullPath());
+      this.edgeIndex =
+          this.path.getEdgeIndexForDistance(
+              this.motionState.getElement(0), false);
+    }
+    return this.edgeIndex;
+  }
+
   public Vector getEdgeState() {
     if (this.edgeState != null) {
       return this.edgeState;
@@ -314,7 +339,7 @@ public class PathState extends AbstractVector implements
       return this;
     }
 
-    final Path newPath = this.path.getPathTo(this.getEdge());
+    final Path newPath = this.path.getPathTo(this.getEdgeIndex());
 
     return new PathState(newPath, this.motionState);
   }
@@ -0,0 +1,121 @@
+package org.opentrackingtools.tracker;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * When {@link ObservationDecimator} releases a vehicle's observation to the
+ * filter: never sooner than the minimum interval after the last one it
+ * released, and then only once the vehicle has moved the minimum distance,
+ * turned by the minimum heading change, or the maximum interval has passed.
+ */
+public class DecimationPolicy {
+
+  /*
+   * Release the mean of the observations held since the last release,
+   * rather than the latest one.
+   */
+  protected boolean coalesce = false;
+
+  /*
+   * Headings are only compared over displacements of at least this many
+   * meters, since shorter ones are mostly noise.
+   */
+  protected double headingDistance = 5d;
+
+  protected long maxInterval = 30000l;
+
+  protected double minDistance = 20d;
+
+  protected double minHeadingChange = 30d;
+
+  protected long minInterval = 1000l;
+
+  public DecimationPolicy() {
+  }
+
+  public DecimationPolicy(long minInterval, long maxInterval,
+    double minDistance, double minHeadingChange, boolean coalesce) {
+    this.setMinInterval(minInterval);
+    this.setMaxInterval(maxInterval);
+    this.setMinDistance(minDistance);
+    this.setMinHeadingChange(minHeadingChange);
+    this.coalesce = coalesce;
+  }
+
+  public double getHeadingDistance() {
+    return this.headingDistance;
+  }
+
+  /**
+   * The longest time, in milliseconds, between released observations.
+   */
+  public long getMaxInterval() {
+    return this.maxInterval;
+  }
+
+  /**
+   * The distance, in meters, from the last released observation past which
+   * an observation is released.
+   */
+  public double getMinDistance() {
+    return this.minDistance;
+  }
+
+  /**
+   * The change in heading, in degrees, past which an observation is
+   * released.
+   */
+  public double getMinHeadingChange() {
+    return this.minHeadingChange;
+  }
+
+  /**
+   * The shortest time, in milliseconds, between released observations,
+   * which bounds the rate the filter runs at.
+   */
+  public long getMinInterval() {
+    return this.minInterval;
+  }
+
+  public boolean isCoalesce() {
+    return this.coalesce;
+  }
+
+  public void setCoalesce(boolean coalesce) {
+    this.coalesce = coalesce;
+  }
+
+  public void setHeadingDistance(double headingDistance) {
+    Preconditions.checkArgument(headingDistance >= 0d);
+    this.headingDistance = headingDistance;
+  }
+
+  public void setMaxInterval(long maxInterval) {
+    Preconditions.checkArgument(maxInterval >= 0l);
+    this.maxInterval = maxInterval;
+  }
+
+  public void setMinDistance(double minDistance) {
+    Preconditions.checkArgument(minDistance >= 0d);
+    this.minDistance = minDistance;
+  }
+
+  public void setMinHeadingChange(double minHeadingChange) {
+    Preconditions.checkArgument(minHeadingChange >= 0d);
+    this.minHeadingChange = minHeadingChange;
+  }
+
+  public void setMinInterval(long minInterval) {
+    Preconditions.checkArgument(minInterval >= 0l);
+    this.minInterval = minInterval;
+  }
+
+  @Override
+  public String toString() {
+    return "DecimationPolicy [minInterval=" + this.minInterval
+        + ", maxInterval=" + this.maxInterval + ", minDistance="
+        + this.minDistance + ", minHeadingChange="
+        + this.minHeadingChange + ", coalesce=" + this.coalesce + "]";
+  }
+
+}
@@ -0,0 +1,71 @@
+package org.opentrackingtools.tracker;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+
+/**
+ * Keeps each vehicle's checkpoint in its own file, in the given directory.
+ * Files are named after the source id, with a hash of it to tell apart ids
+ * that only differ in characters that aren't safe in file names.
+ */
+public class FileVehicleStateStore implements VehicleStateStore {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(FileVehicleStateStore.class);
+
+  protected final File directory;
+
+  public FileVehicleStateStore(File directory) {
+    Preconditions.checkArgument(directory.isDirectory()
+        || directory.mkdirs(), "can't create " + directory);
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  protected File getFile(String sourceId) {
+    return new File(this.directory, sourceId.replaceAll("[^\\w.-]", "_")
+        + "-" + Integer.toHexString(sourceId.hashCode()) + ".ckpt");
+  }
+
+  /**
+   * Writes the checkpoint to a temporary file in the directory, then renames
+   * it over the vehicle's file, so that a failed write never leaves a
+   * partial checkpoint in place of the previous one.
+   */
+  @Override
+  public void put(String sourceId, byte[] checkpoint) throws IOException {
+    final File tempFile =
+        File.createTempFile("ckpt", ".tmp", this.directory);
+    try {
+      Files.write(checkpoint, tempFile);
+      Files.move(tempFile, this.getFile(sourceId));
+    } finally {
+      if (tempFile.exists() && !tempFile.delete()) {
+        log.warn("can't delete " + tempFile);
+      }
+    }
+  }
+
+  @Override
+  public byte[] remove(String sourceId) throws IOException {
+    final File file = this.getFile(sourceId);
+    if (!file.exists()) {
+      return null;
+    }
+    final byte[] checkpoint = Files.toByteArray(file);
+    if (!file.delete()) {
+      throw new IOException("can't delete " + file);
+    }
+    return checkpoint;
+  }
+
+}
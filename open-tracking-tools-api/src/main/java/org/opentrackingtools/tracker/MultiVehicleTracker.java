@@ -0,0 +1,318 @@
+package org.opentrackingtools.tracker;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateCheckpoint;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks any number of vehicles, each with its own particle filter, as their
+ * observations arrive. <br>
+ * Since most vehicles are idle most of the time, a vehicle's particles are
+ * only kept on the heap while it's active: once it hasn't been observed for
+ * the inactivity period (in observation time, i.e. relative to the latest
+ * observation of any vehicle), or when it's the least recently observed
+ * vehicle and the estimated size of the active vehicles' particles is over
+ * the heap budget, its particles are checkpointed to the store, via
+ * {@link VehicleStateCheckpoint}, and dropped. Its next observation restores
+ * them. Only the vehicle's last observation stays in memory, so that the
+ * next one can be linked to it. <br>
+ * Vehicles are kept in the order they were last observed, so the vehicles to
+ * hibernate are found without scanning the active ones. <br>
+ * Not thread-safe.
+ */
+public class MultiVehicleTracker {
+
+  protected static class Vehicle {
+
+    /*
+     * Null while the vehicle is hibernated, and before its first
+     * observation.
+     */
+    protected DataDistribution<VehicleStateDistribution<GpsObservation>> belief =
+        null;
+    protected VehicleStatePLFilter<GpsObservation, InferenceGraph> filter =
+        null;
+    protected GpsObservation lastObservation = null;
+    protected final String sourceId;
+
+    protected Vehicle(String sourceId) {
+      this.sourceId = sourceId;
+    }
+  }
+
+  public static final int DEFAULT_BYTES_PER_PARTICLE = 16 * 1024;
+
+  public static final long DEFAULT_INACTIVITY_PERIOD = 15 * 60 * 1000l;
+
+  private static final Logger log = LoggerFactory
+      .getLogger(MultiVehicleTracker.class);
+
+  /*
+   * In access order, i.e. least recently observed first.
+   */
+  protected final LinkedHashMap<String, Vehicle> activeVehicles =
+      new LinkedHashMap<String, Vehicle>(16, 0.75f, true);
+
+  protected long activeParticles = 0;
+
+  protected int bytesPerParticle =
+      MultiVehicleTracker.DEFAULT_BYTES_PER_PARTICLE;
+
+  protected final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+      new VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+  protected final InferenceGraph graph;
+
+  protected long heapBudget = Long.MAX_VALUE;
+
+  protected final Map<String, Vehicle> hibernatedVehicles = Maps
+      .newHashMap();
+
+  protected long inactivityPeriod =
+      MultiVehicleTracker.DEFAULT_INACTIVITY_PERIOD;
+
+  protected long latestTime = Long.MIN_VALUE;
+
+  protected int numHibernations = 0;
+
+  protected int numRestores = 0;
+
+  protected final VehicleStateInitialParameters parameters;
+
+  protected final VehicleStateStore store;
+
+  public MultiVehicleTracker(InferenceGraph graph,
+    VehicleStateInitialParameters parameters, VehicleStateStore store) {
+    this.graph = Preconditions.checkNotNull(graph);
+    this.parameters = Preconditions.checkNotNull(parameters);
+    this.store = Preconditions.checkNotNull(store);
+  }
+
+  /**
+   * A filter for the observation's vehicle. With a fixed seed, each
+   * vehicle's random number generator is seeded with it plus a hash of the
+   * vehicle's source id, so that vehicles don't all draw the same
+   * sequence.
+   */
+  protected VehicleStatePLFilter<GpsObservation, InferenceGraph>
+      createFilter(GpsObservation initialObs) {
+    final Random rng =
+        this.parameters.getSeed() != 0 ? new Random(
+            this.parameters.getSeed()
+                + initialObs.getSourceId().hashCode()) : new Random();
+    return new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+        initialObs, this.graph, this.factory, this.parameters, false, rng);
+  }
+
+  public int getBytesPerParticle() {
+    return this.bytesPerParticle;
+  }
+
+  /**
+   * The estimated heap used by the active vehicles' particles.
+   */
+  public long getEstimatedActiveBytes() {
+    return this.activeParticles * this.bytesPerParticle;
+  }
+
+  public long getHeapBudget() {
+    return this.heapBudget;
+  }
+
+  public long getInactivityPeriod() {
+    return this.inactivityPeriod;
+  }
+
+  /**
+   * The last observation of the given vehicle, hibernated or not, to be set
+   * as the previous observation of its next one; null when it hasn't been
+   * observed.
+   */
+  public GpsObservation getLastObservation(String sourceId) {
+    Vehicle vehicle = this.activeVehicles.get(sourceId);
+    if (vehicle == null) {
+      vehicle = this.hibernatedVehicles.get(sourceId);
+    }
+    return vehicle != null ? vehicle.lastObservation : null;
+  }
+
+  public int getNumActiveVehicles() {
+    return this.activeVehicles.size();
+  }
+
+  public int getNumHibernatedVehicles() {
+    return this.hibernatedVehicles.size();
+  }
+
+  public int getNumHibernations() {
+    return this.numHibernations;
+  }
+
+  public int getNumRestores() {
+    return this.numRestores;
+  }
+
+  protected void hibernate(Vehicle vehicle) throws IOException {
+    this.store.put(vehicle.sourceId,
+        VehicleStateCheckpoint.toBytes(vehicle.belief));
+    this.activeParticles -= vehicle.belief.getDomainSize();
+    vehicle.belief = null;
+    vehicle.filter = null;
+    this.hibernatedVehicles.put(vehicle.sourceId, vehicle);
+    this.numHibernations++;
+  }
+
+  /**
+   * Hibernates every active vehicle, e.g. before shutting down. A new
+   * tracker on the same store restores each of them on its next
+   * observation.
+   */
+  public void hibernateAll() throws IOException {
+    final Iterator<Vehicle> vehicles =
+        this.activeVehicles.values().iterator();
+    while (vehicles.hasNext()) {
+      final Vehicle vehicle = vehicles.next();
+      vehicles.remove();
+      if (vehicle.belief != null) {
+        this.hibernate(vehicle);
+      }
+    }
+  }
+
+  /**
+   * Hibernates the least recently observed vehicles, other than the given
+   * one, while they're inactive or the active ones are over budget.
+   */
+  protected void hibernateIdle(Vehicle current) throws IOException {
+    final Iterator<Vehicle> vehicles =
+        this.activeVehicles.values().iterator();
+    while (vehicles.hasNext()) {
+      final Vehicle vehicle = vehicles.next();
+      if (vehicle == current) {
+        break;
+      }
+      final boolean isInactive =
+          this.latestTime
+              - vehicle.lastObservation.getTimestamp().getTime() >= this.inactivityPeriod;
+      if (!isInactive
+          && this.getEstimatedActiveBytes() <= this.heapBudget) {
+        break;
+      }
+      vehicles.remove();
+      this.hibernate(vehicle);
+    }
+  }
+
+  /**
+   * Restores a vehicle's particles from its checkpoint, or leaves them null,
+   * to be initialized, when it has none. A vehicle this tracker hasn't seen
+   * may still have been hibernated by an earlier one on the same store, in
+   * which case its last observation is the checkpoint's.
+   */
+  protected void restore(Vehicle vehicle) throws IOException {
+    final byte[] bytes = this.store.remove(vehicle.sourceId);
+    if (bytes == null) {
+      if (vehicle.lastObservation != null) {
+        log.warn("No checkpoint for hibernated vehicle "
+            + vehicle.sourceId + "; reinitializing it");
+      }
+      return;
+    }
+    final VehicleStateCheckpoint checkpoint =
+        VehicleStateCheckpoint.fromBytes(bytes, this.graph);
+    vehicle.belief = checkpoint.getParticles();
+    vehicle.filter = this.createFilter(checkpoint.getObservation());
+    if (vehicle.lastObservation == null) {
+      vehicle.lastObservation = checkpoint.getObservation();
+    }
+    this.numRestores++;
+  }
+
+  /**
+   * The estimated heap used by each particle, which, along with the number
+   * of distinct particles, determines the active vehicles' size for the heap
+   * budget.
+   */
+  public void setBytesPerParticle(int bytesPerParticle) {
+    Preconditions.checkArgument(bytesPerParticle > 0);
+    this.bytesPerParticle = bytesPerParticle;
+  }
+
+  public void setHeapBudget(long heapBudget) {
+    Preconditions.checkArgument(heapBudget > 0);
+    this.heapBudget = heapBudget;
+  }
+
+  /**
+   * How long a vehicle can go without an observation before it's hibernated,
+   * in milliseconds.
+   */
+  public void setInactivityPeriod(long inactivityPeriod) {
+    Preconditions.checkArgument(inactivityPeriod >= 0);
+    this.inactivityPeriod = inactivityPeriod;
+  }
+
+  /**
+   * Filters the given observation, restoring its vehicle if it's hibernated,
+   * here or by an earlier tracker on the same store, or initializing it if
+   * it's new. The observation's previous observation should be its
+   * vehicle's last one, from {@link #getLastObservation}; that's null for a
+   * vehicle that's only in the store.
+   *
+   * @param obs
+   * @return the vehicle's updated particles
+   * @throws IOException
+   *           when a checkpoint can't be written to or read from the store
+   */
+  public DataDistribution<VehicleStateDistribution<GpsObservation>>
+      update(GpsObservation obs) throws IOException {
+    final String sourceId = obs.getSourceId();
+    Vehicle vehicle = this.activeVehicles.get(sourceId);
+    if (vehicle == null) {
+      vehicle = this.hibernatedVehicles.remove(sourceId);
+      if (vehicle == null) {
+        vehicle = new Vehicle(sourceId);
+      }
+      this.restore(vehicle);
+      this.activeVehicles.put(sourceId, vehicle);
+    }
+
+    if (vehicle.belief == null) {
+      vehicle.filter = this.createFilter(obs);
+      vehicle.belief = vehicle.filter.createInitialLearnedObject();
+    } else {
+      this.activeParticles -= vehicle.belief.getDomainSize();
+      /*
+       * Only the current observation needs its predecessor.
+       */
+      vehicle.lastObservation.reset();
+      vehicle.filter.update(vehicle.belief, obs);
+      VehicleStateDistribution.truncateHistory(vehicle.belief);
+    }
+    this.activeParticles += vehicle.belief.getDomainSize();
+    vehicle.lastObservation = obs;
+    this.latestTime =
+        Math.max(this.latestTime, obs.getTimestamp().getTime());
+
+    this.hibernateIdle(vehicle);
+    return vehicle.belief;
+  }
+
+}
@@ -0,0 +1,226 @@
+package org.opentrackingtools.tracker;
+
+import gov.sandia.cognition.math.matrix.Vector;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Thins out each vehicle's observations ahead of the filter, according to a
+ * {@link DecimationPolicy}, so that high-rate devices are filtered at a
+ * bounded rate; at those rates, consecutive GPS errors are highly correlated
+ * anyway, so the dropped observations carry little information. <br>
+ * Released observations are linked to the vehicle's previously released one,
+ * rather than to the one before them in the stream, so the filter sees the
+ * actual time between the observations it's given. When coalescing, a
+ * released observation is the mean, in position and time, of the
+ * observations held since the last release. <br>
+ * Each vehicle's observations must be offered in time order. Not
+ * thread-safe.
+ */
+public class ObservationDecimator {
+
+  protected static class Vehicle {
+
+    /*
+     * The observations offered since the last release, and their sums
+     * for coalescing.
+     */
+    protected GpsObservation lastHeld = null;
+    protected int numHeld = 0;
+    protected double sumLat = 0d;
+    protected double sumLon = 0d;
+    protected long sumTime = 0l;
+    protected double sumX = 0d;
+    protected double sumY = 0d;
+
+    /*
+     * The heading, in radians, of the last displacement between released
+     * observations that was long enough to have one; NaN until then.
+     */
+    protected double lastHeading = Double.NaN;
+    protected GpsObservation lastReleased = null;
+  }
+
+  protected long numOffered = 0;
+
+  protected long numReleased = 0;
+
+  protected final DecimationPolicy policy;
+
+  protected final Map<String, Vehicle> vehicles = Maps.newHashMap();
+
+  public ObservationDecimator(DecimationPolicy policy) {
+    this.policy = Preconditions.checkNotNull(policy);
+  }
+
+  /**
+   * Releases the given vehicle's held observations, if any, e.g. at the end
+   * of its trace.
+   *
+   * @return the released observation, or null when there are none held
+   */
+  public GpsObservation flush(String sourceId) {
+    final Vehicle vehicle = this.vehicles.get(sourceId);
+    if (vehicle == null || vehicle.numHeld == 0) {
+      return null;
+    }
+    return this.release(vehicle);
+  }
+
+  /**
+   * Releases every vehicle's held observations, e.g. at the end of the
+   * input, one per vehicle that has any.
+   */
+  public List<GpsObservation> flushAll() {
+    final List<GpsObservation> released = Lists.newArrayList();
+    for (final Vehicle vehicle : this.vehicles.values()) {
+      if (vehicle.numHeld > 0) {
+        released.add(this.release(vehicle));
+      }
+    }
+    return released;
+  }
+
+  public long getNumOffered() {
+    return this.numOffered;
+  }
+
+  public long getNumReleased() {
+    return this.numReleased;
+  }
+
+  public DecimationPolicy getPolicy() {
+    return this.policy;
+  }
+
+  /**
+   * Offers a vehicle's next observation.
+   *
+   * @param obs
+   * @return the observation to filter, or null when it's held back
+   */
+  public GpsObservation offer(GpsObservation obs) {
+    this.numOffered++;
+    Vehicle vehicle = this.vehicles.get(obs.getSourceId());
+    if (vehicle == null) {
+      vehicle = new Vehicle();
+      this.vehicles.put(obs.getSourceId(), vehicle);
+    }
+
+    vehicle.lastHeld = obs;
+    vehicle.numHeld++;
+    vehicle.sumTime += obs.getTimestamp().getTime();
+    vehicle.sumX += obs.getObsProjected().x;
+    vehicle.sumY += obs.getObsProjected().y;
+    vehicle.sumLat += obs.getObsCoordsLatLon().x;
+    vehicle.sumLon += obs.getObsCoordsLatLon().y;
+
+    if (vehicle.lastReleased == null) {
+      return this.release(vehicle);
+    }
+
+    final long elapsed =
+        obs.getTimestamp().getTime()
+            - vehicle.lastReleased.getTimestamp().getTime();
+    if (elapsed < this.policy.getMinInterval()) {
+      return null;
+    }
+    if (elapsed >= this.policy.getMaxInterval()) {
+      return this.release(vehicle);
+    }
+
+    final Vector displacement =
+        obs.getProjectedPoint().minus(
+            vehicle.lastReleased.getProjectedPoint());
+    final double distance = displacement.norm2();
+    if (distance >= this.policy.getMinDistance()) {
+      return this.release(vehicle);
+    }
+    if (!Double.isNaN(vehicle.lastHeading)
+        && distance >= this.policy.getHeadingDistance()) {
+      double headingChange =
+          Math.abs(Math.atan2(displacement.getElement(1),
+              displacement.getElement(0))
+              - vehicle.lastHeading);
+      if (headingChange > Math.PI) {
+        headingChange = 2d * Math.PI - headingChange;
+      }
+      if (Math.toDegrees(headingChange) >= this.policy
+          .getMinHeadingChange()) {
+        return this.release(vehicle);
+      }
+    }
+    return null;
+  }
+
+  protected GpsObservation release(Vehicle vehicle) {
+    final GpsObservation held = vehicle.lastHeld;
+    final GpsObservation released;
+    if (this.policy.isCoalesce() && vehicle.numHeld > 1) {
+      final int n = vehicle.numHeld;
+      final Coordinate latLon =
+          new Coordinate(vehicle.sumLat / n, vehicle.sumLon / n);
+      final ProjectedCoordinate projected =
+          new ProjectedCoordinate(held.getObsProjected().getTransform(),
+              new Coordinate(vehicle.sumX / n, vehicle.sumY / n), latLon);
+      released =
+          new GpsObservation(held.getSourceId(), new Date(vehicle.sumTime
+              / n), latLon, held.getVelocity(), held.getHeading(),
+              held.getFixQuality(), held.getRecordNumber(),
+              vehicle.lastReleased, projected);
+    } else if (held.getPreviousObservation() != vehicle.lastReleased) {
+      released =
+          new GpsObservation(held.getSourceId(), held.getTimestamp(),
+              held.getObsCoordsLatLon(), held.getVelocity(),
+              held.getHeading(), held.getFixQuality(),
+              held.getRecordNumber(), vehicle.lastReleased,
+              held.getObsProjected());
+    } else {
+      released = held;
+    }
+
+    if (vehicle.lastReleased != null) {
+      final Vector displacement =
+          released.getProjectedPoint().minus(
+              vehicle.lastReleased.getProjectedPoint());
+      if (displacement.norm2() >= this.policy.getHeadingDistance()) {
+        vehicle.lastHeading =
+            Math.atan2(displacement.getElement(1),
+                displacement.getElement(0));
+      }
+      /*
+       * Only the released observation needs its predecessor.
+       */
+      vehicle.lastReleased.reset();
+    }
+
+    vehicle.lastReleased = released;
+    vehicle.lastHeld = null;
+    vehicle.numHeld = 0;
+    vehicle.sumTime = 0l;
+    vehicle.sumX = 0d;
+    vehicle.sumY = 0d;
+    vehicle.sumLat = 0d;
+    vehicle.sumLon = 0d;
+    this.numReleased++;
+    return released;
+  }
+
+  /**
+   * Forgets the given vehicle, dropping any observations held for it.
+   */
+  public void remove(String sourceId) {
+    this.vehicles.remove(sourceId);
+  }
+
+}
@@ -0,0 +1,295 @@
+package org.opentrackingtools.tracker;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.opentrackingtools.model.GpsObservation;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Puts observations back in time order, for streams in which they can
+ * arrive out of order (e.g. over cellular backhaul). <br>
+ * Observations are held until the watermark, i.e. the latest time any
+ * vehicle has been observed at less the watermark delay, passes them, and
+ * are then released in time order, over all vehicles, each linked to its
+ * vehicle's observation released before it. Since the watermark moves with
+ * every vehicle's observations, a vehicle that stops reporting, e.g. when
+ * it's parked, has its last ones released once the others have moved on by
+ * the delay. <br>
+ * An observation that arrives with the same time as, or earlier than, one
+ * of its vehicle's already released is dropped. One that arrives after a
+ * later observation of its vehicle is counted as late; if the watermark
+ * has already passed it, it's released straight away. <br>
+ * The observations released by a call should be consumed before the next
+ * call: the links from the last of them to their predecessors are then
+ * dropped, so that released observations can be collected. <br>
+ * Not thread-safe.
+ */
+public class ObservationReorderBuffer {
+
+  protected static class Vehicle {
+
+    protected final PriorityQueue<GpsObservation> buffered =
+        new PriorityQueue<GpsObservation>(11,
+            ObservationReorderBuffer.timeComparator);
+    protected long latestTime = Long.MIN_VALUE;
+    protected GpsObservation lastReleased = null;
+
+    protected long getNextTime() {
+      return this.buffered.peek().getTimestamp().getTime();
+    }
+  }
+
+  /*
+   * Orders observations by time, then source id. GpsObservation has a
+   * compareTo that does so, but isn't Comparable.
+   */
+  protected static final Comparator<GpsObservation> timeComparator =
+      new Comparator<GpsObservation>() {
+        @Override
+        public int compare(GpsObservation o1, GpsObservation o2) {
+          return o1.compareTo(o2);
+        }
+      };
+
+  /*
+   * Orders vehicles by their earliest held observation.
+   */
+  protected static final Comparator<Vehicle> nextTimeComparator =
+      new Comparator<Vehicle>() {
+        @Override
+        public int compare(Vehicle o1, Vehicle o2) {
+          return o1.buffered.peek().compareTo(o2.buffered.peek());
+        }
+      };
+
+  /*
+   * The vehicles that have observations held, by their earliest one.
+   */
+  protected final PriorityQueue<Vehicle> heldVehicles =
+      new PriorityQueue<Vehicle>(11,
+          ObservationReorderBuffer.nextTimeComparator);
+
+  /*
+   * The vehicles that had observations released by the last call, whose
+   * last released ones' links are dropped by the next.
+   */
+  protected final Set<Vehicle> lastReleasedVehicles = Sets.newHashSet();
+
+  protected long latestTime = Long.MIN_VALUE;
+
+  protected int numBuffered = 0;
+
+  protected long numDropped = 0;
+
+  protected long numLate = 0;
+
+  protected long numOffered = 0;
+
+  protected final Map<String, Vehicle> vehicles = Maps.newHashMap();
+
+  protected final long watermarkDelay;
+
+  /**
+   * @param watermarkDelay
+   *          how long, in milliseconds of observation time, to wait for late
+   *          observations
+   */
+  public ObservationReorderBuffer(long watermarkDelay) {
+    Preconditions.checkArgument(watermarkDelay >= 0l);
+    this.watermarkDelay = watermarkDelay;
+  }
+
+  /**
+   * Drops the links from the observations released by the last call to
+   * their predecessors.
+   */
+  protected void dropLinks() {
+    for (final Vehicle vehicle : this.lastReleasedVehicles) {
+      vehicle.lastReleased.reset();
+    }
+    this.lastReleasedVehicles.clear();
+  }
+
+  /**
+   * Releases all of the given vehicle's held observations, in time order,
+   * e.g. at the end of its trace.
+   */
+  public List<GpsObservation> flush(String sourceId) {
+    final Vehicle vehicle = this.vehicles.get(sourceId);
+    if (vehicle == null || vehicle.buffered.isEmpty()) {
+      return Collections.emptyList();
+    }
+    this.dropLinks();
+    this.heldVehicles.remove(vehicle);
+    final List<GpsObservation> released = Lists.newArrayList();
+    while (!vehicle.buffered.isEmpty()) {
+      this.releaseNext(vehicle, released);
+    }
+    return released;
+  }
+
+  /**
+   * Releases every vehicle's held observations, in time order.
+   */
+  public List<GpsObservation> flushAll() {
+    return this.release(Long.MAX_VALUE);
+  }
+
+  /**
+   * The number of observations currently held, over all vehicles.
+   */
+  public int getNumBuffered() {
+    return this.numBuffered;
+  }
+
+  /**
+   * The number of observations dropped for arriving too late to be put in
+   * order.
+   */
+  public long getNumDropped() {
+    return this.numDropped;
+  }
+
+  /**
+   * The number of observations that arrived after a later one of their
+   * vehicle, but in time to be put in order.
+   */
+  public long getNumLate() {
+    return this.numLate;
+  }
+
+  public long getNumOffered() {
+    return this.numOffered;
+  }
+
+  /**
+   * The time up to which observations have been released, or
+   * {@link Long#MIN_VALUE} before any have been offered.
+   */
+  public long getWatermark() {
+    return this.latestTime == Long.MIN_VALUE ? Long.MIN_VALUE
+        : this.latestTime - this.watermarkDelay;
+  }
+
+  public long getWatermarkDelay() {
+    return this.watermarkDelay;
+  }
+
+  /**
+   * Offers a vehicle's next observation, as it arrives. Its previous
+   * observation, if any, is ignored.
+   *
+   * @param obs
+   * @return the observations, of any vehicle, that the watermark has now
+   *         passed, in time order; often empty
+   */
+  public List<GpsObservation> offer(GpsObservation obs) {
+    this.numOffered++;
+    Vehicle vehicle = this.vehicles.get(obs.getSourceId());
+    if (vehicle == null) {
+      vehicle = new Vehicle();
+      this.vehicles.put(obs.getSourceId(), vehicle);
+    }
+
+    final long time = obs.getTimestamp().getTime();
+    if (vehicle.lastReleased != null
+        && time <= vehicle.lastReleased.getTimestamp().getTime()) {
+      this.numDropped++;
+      return Collections.emptyList();
+    }
+    if (time < vehicle.latestTime) {
+      this.numLate++;
+    }
+    vehicle.latestTime = Math.max(vehicle.latestTime, time);
+    this.latestTime = Math.max(this.latestTime, time);
+
+    if (vehicle.buffered.isEmpty()) {
+      vehicle.buffered.add(obs);
+      this.heldVehicles.add(vehicle);
+    } else if (time < vehicle.getNextTime()) {
+      /*
+       * The vehicle's place in the queue depends on its earliest
+       * observation.
+       */
+      this.heldVehicles.remove(vehicle);
+      vehicle.buffered.add(obs);
+      this.heldVehicles.add(vehicle);
+    } else {
+      vehicle.buffered.add(obs);
+    }
+    this.numBuffered++;
+
+    return this.release(this.getWatermark());
+  }
+
+  /**
+   * Releases the held observations up to the given time, in time order.
+   */
+  protected List<GpsObservation> release(long watermark) {
+    if (this.heldVehicles.isEmpty()
+        || this.heldVehicles.peek().getNextTime() > watermark) {
+      return Collections.emptyList();
+    }
+    this.dropLinks();
+
+    final List<GpsObservation> released = Lists.newArrayList();
+    while (!this.heldVehicles.isEmpty()
+        && this.heldVehicles.peek().getNextTime() <= watermark) {
+      final Vehicle vehicle = this.heldVehicles.poll();
+      this.releaseNext(vehicle, released);
+      if (!vehicle.buffered.isEmpty()) {
+        this.heldVehicles.add(vehicle);
+      }
+    }
+    return released;
+  }
+
+  /**
+   * Releases the vehicle's earliest held observation, linked to its last
+   * released one, unless it has the same time as that one.
+   */
+  protected void releaseNext(Vehicle vehicle, List<GpsObservation> released) {
+    final GpsObservation obs = vehicle.buffered.poll();
+    this.numBuffered--;
+    if (vehicle.lastReleased != null
+        && obs.getTimestamp().getTime() <= vehicle.lastReleased
+            .getTimestamp().getTime()) {
+      this.numDropped++;
+      return;
+    }
+    final GpsObservation linked =
+        obs.getPreviousObservation() == vehicle.lastReleased ? obs
+            : new GpsObservation(obs.getSourceId(), obs.getTimestamp(),
+                obs.getObsCoordsLatLon(), obs.getVelocity(),
+                obs.getHeading(), obs.getFixQuality(),
+                obs.getRecordNumber(), vehicle.lastReleased,
+                obs.getObsProjected());
+    released.add(linked);
+    vehicle.lastReleased = linked;
+    this.lastReleasedVehicles.add(vehicle);
+  }
+
+  /**
+   * Forgets the given vehicle, dropping any observations held for it.
+   */
+  public void remove(String sourceId) {
+    final Vehicle vehicle = this.vehicles.remove(sourceId);
+    if (vehicle != null) {
+      if (!vehicle.buffered.isEmpty()) {
+        this.heldVehicles.remove(vehicle);
+      }
+      this.lastReleasedVehicles.remove(vehicle);
+      this.numBuffered -= vehicle.buffered.size();
+    }
+  }
+
+}
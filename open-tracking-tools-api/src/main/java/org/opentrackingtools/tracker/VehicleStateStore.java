@@ -0,0 +1,22 @@
+package org.opentrackingtools.tracker;
+
+import java.io.IOException;
+
+/**
+ * Where {@link MultiVehicleTracker} keeps the checkpoints of the vehicles it
+ * has hibernated, by source id.
+ */
+public interface VehicleStateStore {
+
+  /**
+   * Stores the given vehicle's checkpoint, replacing any it already has.
+   */
+  public void put(String sourceId, byte[] checkpoint) throws IOException;
+
+  /**
+   * Removes and returns the given vehicle's checkpoint, or null when there
+   * isn't one.
+   */
+  public byte[] remove(String sourceId) throws IOException;
+
+}
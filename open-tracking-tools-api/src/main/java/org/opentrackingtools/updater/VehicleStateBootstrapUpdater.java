@@ -14,12 +14,15 @@ import java.util.Random;
 
 import org.opentrackingtools.VehicleStateInitialParameters;
 import org.opentrackingtools.distributions.OnOffEdgeTransDistribution;
+import org.opentrackingtools.distributions.PathStateDistribution;
+import org.opentrackingtools.distributions.PathStateMixtureDensityModel;
 import org.opentrackingtools.distributions.TruncatedRoadGaussian;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.graph.InferenceGraphSegment;
 import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.SimpleBayesianParameter;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
@@ -249,6 +252,20 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     return this.sampledTransitionError;
   }
 
+  /**
+   * Sets a new motion state parameter, with the given prior mean, on the
+   * state, rather than changing the prior it shares with its parent.
+   */
+  protected static void setMotionStatePriorMean(
+    VehicleStateDistribution<?> state, Vector mean) {
+    final MultivariateGaussian prior =
+        state.getMotionStateParam().getParameterPrior().clone();
+    prior.setMean(mean.clone());
+    state.setMotionStateParam(SimpleBayesianParameter.create(state
+        .getMotionStateParam().getValue(), state.getMotionStateParam()
+        .getConditionalDistribution(), prior));
+  }
+
   public void setRandom(Random rng) {
     this.random = rng;
   }
@@ -293,8 +310,8 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     predictedMotionState.setMean(noisyPredictedState);
     this.sampledTransitionError =
         predictedMotionState.getMean().minus(predictedMean);
-    updatedState.getMotionStateParam().getParameterPrior()
-        .setMean(predictedMotionState.getMean());
+    VehicleStateBootstrapUpdater.setMotionStatePriorMean(updatedState,
+        predictedMotionState.getMean());
     final PathEdge startEdge =
         updatedState.getPathStateParam().getValue().getEdge();
 
@@ -305,17 +322,28 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
         .getInputDimensionality() == 4
         || predictedMotionState.getMean().getElement(0) >= 0d);
 
-    final OnOffEdgeTransDistribution edgeTransDistribution =
-        updatedState.getEdgeTransitionParam()
-            .getConditionalDistribution();
+    final OnOffEdgeTransDistribution edgeTransDistribution;
 
     /*
      * Need this so that the sampler can tell which possible 
      * on-road edges exist at the new projected location.
+     * The state's parameters are shared with the previous state, so
+     * the distribution is replaced rather than changed.
      */
     if (startEdge.isNullEdge()) {
+      edgeTransDistribution =
+          updatedState.getEdgeTransitionParam()
+              .getConditionalDistribution().clone();
       edgeTransDistribution.setMotionState(predictedMotionState
           .getMean());
+      updatedState.setEdgeTransitionParam(SimpleBayesianParameter.create(
+          updatedState.getEdgeTransitionParam().getValue(),
+          edgeTransDistribution, updatedState.getEdgeTransitionParam()
+              .getParameterPrior()));
+    } else {
+      edgeTransDistribution =
+          updatedState.getEdgeTransitionParam()
+              .getConditionalDistribution();
     }
 
     /*
@@ -347,8 +375,8 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
             motionStatePredictor.addStateTransitionError(
                 offRoadPredictedMean, this.random);
         predictedMotionState.setMean(offRoadNoisyPredictedState);
-        updatedState.getMotionStateParam().getParameterPrior()
-            .setMean(predictedMotionState.getMean());
+        VehicleStateBootstrapUpdater.setMotionStatePriorMean(
+            updatedState, predictedMotionState.getMean());
         this.sampledTransitionError =
             offRoadNoisyPredictedState.minus(offRoadPredictedMean);
       }
@@ -410,21 +438,24 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     final MultivariateGaussian obsDist =
         motionStatePredictor.getObservationDistribution(
             predictedMotionState, newPathState.getEdge());
-    updatedState.getMotionStateParam().setValue(obsDist.getMean());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsDist);
     /*
      * Important: we need the motion state prior to be relative to the edge it's
      * on, otherwise, distance along path will add up indefinitely. 
      */
-    updatedState.getMotionStateParam().setParameterPrior(
-        new TruncatedRoadGaussian(newPathState.getEdgeState(),
-            (SvdMatrix)(newPathState.isOnRoad() ? motionStatePredictor
-                .getRoadFilter().getModelCovariance()
-                : motionStatePredictor.getGroundFilter()
-                    .getModelCovariance())));
-
-    updatedState.getPathStateParam().setValue(newPathState);
+    updatedState.setMotionStateParam(
+        SimpleBayesianParameter.<Vector, MultivariateGaussian, MultivariateGaussian>create(
+            obsDist.getMean(), obsDist,
+            new TruncatedRoadGaussian(newPathState.getEdgeState(),
+                (SvdMatrix)(newPathState.isOnRoad() ? motionStatePredictor
+                    .getRoadFilter().getModelCovariance()
+                    : motionStatePredictor.getGroundFilter()
+                        .getModelCovariance()))));
+
+    updatedState.setPathStateParam(
+        SimpleBayesianParameter.<PathState, PathStateMixtureDensityModel, PathStateDistribution>create(
+            newPathState, updatedState.getPathStateParam()
+                .getConditionalDistribution(), updatedState
+                .getPathStateParam().getParameterPrior()));
     updatedState.setParentState(previousState);
 
     return updatedState;
@@ -2,6 +2,7 @@ package org.opentrackingtools.updater;
 
 import gov.sandia.cognition.math.LogMath;
 import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.statistics.DataDistribution;
 import gov.sandia.cognition.statistics.bayesian.BayesianCredibleInterval;
 import gov.sandia.cognition.statistics.bayesian.ParticleFilter;
@@ -12,9 +13,13 @@ import gov.sandia.cognition.util.AbstractCloneableSerializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.opentrackingtools.VehicleStateInitialParameters;
 import org.opentrackingtools.distributions.EvaluatedPathStateDistribution;
@@ -37,7 +42,10 @@ import org.opentrackingtools.util.PathUtils;
 
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Range;
 import com.google.common.collect.Ranges;
@@ -81,6 +89,18 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
 
   protected boolean isDebug;
 
+  protected transient ExecutorService executor = null;
+
+  protected transient DataDistribution<VehicleStateDistribution<O>> initialStateDistribution =
+      null;
+
+  /*
+   * The off-road state built along with the initial state distribution,
+   * from which its on-edge states and the initial particles are derived.
+   */
+  protected transient VehicleStateDistribution<O> initialOffRoadState =
+      null;
+
   public VehicleStatePLPathSamplingUpdater(O obs,
     G inferencedGraph,
     VehicleStateDistributionFactory<O, G> vehicleStateFactory,
@@ -108,6 +128,7 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
     clone.initialObservation = this.initialObservation;
     clone.parameters = this.parameters;
     clone.random = this.random;
+    clone.executor = this.executor;
     return clone;
   }
 
@@ -123,14 +144,160 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
   }
 
   /**
-   * Create vehicle states from the nearby edges.
+   * Create vehicle states from the nearby edges. Each particle's edge is drawn
+   * from {@link #getInitialStateDistribution()}, and its state is then built
+   * anew on that edge, with its own draw of the initial location.
    */
   @Override
   public DataDistribution<VehicleStateDistribution<O>>
       createInitialParticles(int numParticles) {
+    final DataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
+        this.getInitialStateDistribution();
     final DataDistribution<VehicleStateDistribution<O>> retDist =
         new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
+    for (int i = 0; i < numParticles; i++) {
+      retDist.increment(this.createInitialParticle(statesOnEdgeDistribution
+          .sample(this.random)));
+    }
+
+    Preconditions.checkState(retDist.getDomainSize() > 0);
+    return retDist;
+  }
+
+  /**
+   * Creates a node for the given neighbor edge of the parent, with its
+   * predictive and observation distributions and likelihoods set, but not its
+   * transition likelihood. Returns null if there's no predictive
+   * distribution on the edge.
+   */
+  protected PathEdgeNode evaluateNeighbor(PathEdgeNode parentNode,
+    PathEdge neighborPathEdge,
+    MultivariateGaussian priorPredictiveMotionState,
+    Matrix stateTransCov,
+    MotionStateEstimatorPredictor motionStateEstimatorPredictor,
+    GpsObservation obs) {
+
+    final MultivariateGaussian neighborEdgePathState =
+        PathStateEstimatorPredictor.getPathEdgePredictive(
+            priorPredictiveMotionState, stateTransCov, neighborPathEdge,
+            obs.getObsProjected(), null,
+            this.parameters.getInitialObsFreq());
+
+    if (neighborEdgePathState == null) {
+      return null;
+    }
+
+    final MultivariateGaussian neighborEdgeObsDist =
+        motionStateEstimatorPredictor.getObservationDistribution(
+            neighborEdgePathState, neighborPathEdge);
+    final double neighborObsLikelihood =
+        neighborEdgeObsDist.getProbabilityFunction().logEvaluate(
+            obs.getProjectedPoint());
+    final double neighborEdgeLikelihood = 0d;
+//        PathStateEstimatorPredictor
+//            .marginalPredictiveLogLikInternal(
+//                priorPredictiveMotionState,
+//                stateTransCov,
+//                neighborPathEdge, obs.getObsProjected(), null,
+//                this.parameters.getInitialObsFreq());
+
+    final PathEdgeNode neighborPathEdgeNode =
+        new PathEdgeNode(neighborPathEdge, parentNode);
+    neighborPathEdgeNode.setObsLogLikelihood(neighborObsLikelihood);
+    neighborPathEdgeNode.setEdgeLogLikelihood(neighborEdgeLikelihood);
+    neighborPathEdgeNode.setEdgeDistribution(neighborEdgePathState);
+    neighborPathEdgeNode.setEdgeObsDistribution(neighborEdgeObsDist);
+    return neighborPathEdgeNode;
+  }
+
+  /**
+   * Evaluates the neighbor edges of the parent node, via
+   * {@link #evaluateNeighbor}, on the executor when there is one and more
+   * than one neighbor. The resulting nodes are in the same order as the
+   * edges, either way, and neighbors without a predictive distribution are
+   * left out.
+   */
+  protected List<PathEdgeNode> evaluateNeighbors(
+    final PathEdgeNode parentNode, List<PathEdge> neighborPathEdges,
+    final MultivariateGaussian priorPredictiveMotionState,
+    final Matrix stateTransCov,
+    final MotionStateEstimatorPredictor motionStateEstimatorPredictor,
+    final GpsObservation obs) {
+
+    final List<PathEdgeNode> result = Lists.newArrayList();
+
+    if (this.executor == null || neighborPathEdges.size() < 2) {
+      for (final PathEdge neighborPathEdge : neighborPathEdges) {
+        final PathEdgeNode neighborPathEdgeNode =
+            this.evaluateNeighbor(parentNode, neighborPathEdge,
+                priorPredictiveMotionState, stateTransCov,
+                motionStateEstimatorPredictor, obs);
+        if (neighborPathEdgeNode != null) {
+          result.add(neighborPathEdgeNode);
+        }
+      }
+      return result;
+    }
+
+    final List<Future<PathEdgeNode>> futures = Lists.newArrayList();
+    for (final PathEdge neighborPathEdge : neighborPathEdges) {
+      futures.add(this.executor.submit(new Callable<PathEdgeNode>() {
+        @Override
+        public PathEdgeNode call() {
+          return VehicleStatePLPathSamplingUpdater.this.evaluateNeighbor(
+              parentNode, neighborPathEdge, priorPredictiveMotionState,
+              stateTransCov, motionStateEstimatorPredictor, obs);
+        }
+      }));
+    }
+
+    /*
+     * Collect the results in submission order, so that the search
+     * proceeds exactly as it would sequentially.
+     */
+    try {
+      for (final Future<PathEdgeNode> future : futures) {
+        final PathEdgeNode neighborPathEdgeNode = future.get();
+        if (neighborPathEdgeNode != null) {
+          result.add(neighborPathEdgeNode);
+        }
+      }
+    } catch (final InterruptedException e) {
+      for (final Future<PathEdgeNode> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return result;
+  }
+
+  /**
+   * The executor that neighbor edges are evaluated on, if any.
+   */
+  public ExecutorService getExecutor() {
+    return this.executor;
+  }
+
+  public G getInferenceGraph() {
+    return this.inferenceGraph;
+  }
+
+  /**
+   * The initial vehicle states, off-road and on each edge near the initial
+   * observation, weighted by their log likelihoods. It's built once, on first
+   * use, and kept until the initial observation, graph, parameters, random
+   * number generator or state factory change.
+   */
+  public DataDistribution<VehicleStateDistribution<O>>
+      getInitialStateDistribution() {
+    if (this.initialStateDistribution != null) {
+      return this.initialStateDistribution;
+    }
+
     /*
      * Start by creating an off-road vehicle state with which we can obtain the surrounding
      * edges.
@@ -146,82 +313,134 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
         this.inferenceGraph.getNearbyEdges(initialMotionStateDist,
             initialMotionStateDist.getCovariance());
 
-    for (int i = 0; i < numParticles; i++) {
-      /*
-       * From the surrounding edges, we create states on those edges.
-       */
-      final CountedDataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
-          new CountedDataDistribution<VehicleStateDistribution<O>>(
-              true);
-
-      final double nullEdgeLogLikelihood =
-          nullState.getEdgeTransitionParam()
-              .getConditionalDistribution().getProbabilityFunction()
-              .logEvaluate(InferenceGraphEdge.nullGraphEdge);
-      final double nullObsLogLikelihood = this.computeLogLikelihood(nullState,
-                  this.initialObservation);
-      nullState.setEdgeTransitionLogLikelihood(nullEdgeLogLikelihood);
-      nullState.setObsLogLikelihood(nullObsLogLikelihood);
-      final double nullTotalLogLikelihood = nullState.getEdgeTransitionLogLikelihood()
-          + nullState.getPathStateDistLogLikelihood()
-          + nullState.getObsLogLikelihood();
-
-      Preconditions.checkState(Doubles.isFinite(nullTotalLogLikelihood)
-          || !edges.isEmpty(), 
-          "off-road is impossible and there are no edges to be on!");
+    /*
+     * From the surrounding edges, we create states on those edges.
+     */
+    final CountedDataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
+        new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
-      statesOnEdgeDistribution
-          .increment(nullState, nullTotalLogLikelihood);
-      
-      /*
-       * Make sure we're fair about the sampled initial location and
-       * set it here.  Otherwise, if we don't do this, each call
-       * to createInitialVehicleState will sample a new location.
-       */
-      VehicleStateInitialParameters newParams = new VehicleStateInitialParameters(this.parameters);
-      newParams.setInitialMotionState(initialMotionStateDist.sample(this.random));
+    final double nullEdgeLogLikelihood =
+        nullState.getEdgeTransitionParam()
+            .getConditionalDistribution().getProbabilityFunction()
+            .logEvaluate(InferenceGraphEdge.nullGraphEdge);
+    final double nullObsLogLikelihood = this.computeLogLikelihood(nullState,
+                this.initialObservation);
+    nullState.setEdgeTransitionLogLikelihood(nullEdgeLogLikelihood);
+    nullState.setObsLogLikelihood(nullObsLogLikelihood);
+    final double nullTotalLogLikelihood = nullState.getEdgeTransitionLogLikelihood()
+        + nullState.getPathStateDistLogLikelihood()
+        + nullState.getObsLogLikelihood();
+
+    Preconditions.checkState(Doubles.isFinite(nullTotalLogLikelihood)
+        || !edges.isEmpty(), 
+        "off-road is impossible and there are no edges to be on!");
+
+    statesOnEdgeDistribution
+        .increment(nullState, nullTotalLogLikelihood);
+    
+    /*
+     * Make sure we're fair about the sampled initial location and
+     * set it here.  Otherwise, if we don't do this, each call
+     * to createInitialVehicleState will sample a new location.
+     */
+    final Vector initialMotionState =
+        initialMotionStateDist.sample(this.random);
 
-      for (final InferenceGraphSegment segment : edges) {
+    for (final InferenceGraphSegment segment : edges) {
 
-        final PathEdge pathEdge = new PathEdge(segment, 0d, false);
+      final VehicleStateDistribution<O> stateOnEdge =
+          this.createInitialStateOnEdge(nullState, initialMotionState,
+              new PathEdge(segment, 0d, false));
 
-        final VehicleStateDistribution<O> stateOnEdge =
-            this.vehicleStateFactory.createInitialVehicleState(
-                newParams, this.inferenceGraph,
-                this.initialObservation, this.random, pathEdge);
+      final double logLikelihood = stateOnEdge.getEdgeTransitionLogLikelihood()
+          + stateOnEdge.getPathStateDistLogLikelihood() 
+          + stateOnEdge.getObsLogLikelihood();
 
-        final double edgeLikelihood =
-            stateOnEdge.getEdgeTransitionParam()
-                .getConditionalDistribution()
-                .getProbabilityFunction()
-                .logEvaluate(pathEdge.getInferenceGraphSegment());
-        final double obsLikelihood =
-                this.computeLogLikelihood(stateOnEdge,
-                    this.initialObservation);
-        
-        stateOnEdge.setEdgeTransitionLogLikelihood(edgeLikelihood);
-        stateOnEdge.setObsLogLikelihood(obsLikelihood);
-        
-        final double logLikelihood = stateOnEdge.getEdgeTransitionLogLikelihood()
-            + stateOnEdge.getPathStateDistLogLikelihood() 
-            + stateOnEdge.getObsLogLikelihood();
+      statesOnEdgeDistribution
+          .increment(stateOnEdge, logLikelihood);
+    }
 
-        statesOnEdgeDistribution
-            .increment(stateOnEdge, logLikelihood);
+    if (this.isDebug) {
+      for (final VehicleStateDistribution<O> state : statesOnEdgeDistribution
+          .getDomain()) {
+        state.setTransitionStateDistribution(statesOnEdgeDistribution);
       }
+    }
 
-      VehicleStateDistribution<O> sampledDist = statesOnEdgeDistribution.sample(this.random);
-      if (this.isDebug)
-        sampledDist.setTransitionStateDistribution(statesOnEdgeDistribution);
-      retDist.increment(sampledDist);
+    this.initialOffRoadState = nullState;
+    this.initialStateDistribution = statesOnEdgeDistribution;
+    return statesOnEdgeDistribution;
+  }
+
+  /**
+   * A new initial state on the same edge as the given candidate, so that
+   * particles drawn from one candidate don't all start at the same
+   * location: each gets its own draw of the observation error or, on an
+   * edge, its own sample of the initial location. It's derived from the
+   * initial off-road state, sharing its covariance parameters.
+   */
+  protected VehicleStateDistribution<O> createInitialParticle(
+    VehicleStateDistribution<O> candidate) {
+    final Path path = candidate.getPathStateParam().getValue().getPath();
+    final VehicleStateDistribution<O> nullState =
+        this.getInitialOffRoadState();
+    final VehicleStateDistribution<O> particle;
+    if (path.isNullPath()) {
+      particle =
+          this.vehicleStateFactory.createInitialVehicleState(nullState,
+              this.parameters.getInitialObsFreq(), null, this.random,
+              PathEdge.nullPathEdge);
+      particle.setEdgeTransitionLogLikelihood(candidate
+          .getEdgeTransitionLogLikelihood());
+      particle.setObsLogLikelihood(this.computeLogLikelihood(particle,
+          this.initialObservation));
+    } else {
+      particle =
+          this.createInitialStateOnEdge(nullState, nullState
+              .getMotionStateParam().getParameterPrior()
+              .sample(this.random), path.getPathEdges().get(0));
+    }
+    if (this.isDebug) {
+      particle.setTransitionStateDistribution(candidate
+          .getTransitionStateDistribution());
     }
+    return particle;
+  }
 
-    Preconditions.checkState(retDist.getDomainSize() > 0);
-    return retDist;
+  /**
+   * An initial state on the given edge, derived from the given off-road
+   * state, with its edge-transition and observation log likelihoods set.
+   *
+   * @param nullState
+   * @param initialMotionState
+   *          the initial ground motion state, before it's projected onto
+   *          the edge
+   * @param pathEdge
+   */
+  protected VehicleStateDistribution<O> createInitialStateOnEdge(
+    VehicleStateDistribution<O> nullState, Vector initialMotionState,
+    PathEdge pathEdge) {
+    final VehicleStateDistribution<O> stateOnEdge =
+        this.vehicleStateFactory.createInitialVehicleState(nullState,
+            this.parameters.getInitialObsFreq(), initialMotionState,
+            this.random, pathEdge);
+
+    stateOnEdge.setEdgeTransitionLogLikelihood(stateOnEdge
+        .getEdgeTransitionParam().getConditionalDistribution()
+        .getProbabilityFunction()
+        .logEvaluate(pathEdge.getInferenceGraphSegment()));
+    stateOnEdge.setObsLogLikelihood(this.computeLogLikelihood(stateOnEdge,
+        this.initialObservation));
+    return stateOnEdge;
   }
 
-  public G getInferenceGraph() {
-    return this.inferenceGraph;
+  /**
+   * The off-road state that {@link #getInitialStateDistribution()} was built
+   * from.
+   */
+  protected VehicleStateDistribution<O> getInitialOffRoadState() {
+    this.getInitialStateDistribution();
+    return this.initialOffRoadState;
   }
 
   public InferenceGraph getInferredGraph() {
@@ -249,20 +468,34 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
     return this.vehicleStateFactory;
   }
 
+  /**
+   * Sets an executor on which to evaluate the neighbor edges in the path
+   * search in parallel. It can be shared between updaters, and isn't shut
+   * down by this one. When null, the default, they're evaluated in the
+   * calling thread.
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
   public void setInferenceGraph(G inferenceGraph) {
     this.inferenceGraph = inferenceGraph;
+    this.initialStateDistribution = null;
   }
 
   public void setInitialObservation(O initialObservation) {
     this.initialObservation = initialObservation;
+    this.initialStateDistribution = null;
   }
 
   public void setParameters(VehicleStateInitialParameters parameters) {
     this.parameters = parameters;
+    this.initialStateDistribution = null;
   }
 
   public void setRandom(Random random) {
     this.random = random;
+    this.initialStateDistribution = null;
   }
 
   public void setSeed(long seed) {
@@ -272,6 +505,7 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
   public void setVehicleStateFactory(
     VehicleStateDistributionFactory<O, G> vehicleStateFactory) {
     this.vehicleStateFactory = vehicleStateFactory;
+    this.initialStateDistribution = null;
   }
 
   @Override
@@ -355,9 +589,23 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
           motionStateEstimatorPredictor
               .createPredictiveDistribution(onRoadPriorMotionState);
 
+      /*
+       * With a beam width or cutoff, nodes are expanded best-first, by their
+       * total log likelihood, and only the best beam-width of them are kept
+       * open. Otherwise they're expanded in their natural order, as always.
+       */
       final Set<PathEdgeNode> closedPathEdgeSet = Sets.newHashSet();
-      final PriorityQueue<PathEdgeNode> openPathEdgeQueue =
-          Queues.newPriorityQueue();
+      final Queue<PathEdgeNode> openPathEdgeQueue;
+      if (this.parameters.getPathSearchBeamWidth() < Integer.MAX_VALUE
+          || this.parameters.getPathSearchLogLikelihoodCutoff() < Double.POSITIVE_INFINITY) {
+        openPathEdgeQueue =
+            MinMaxPriorityQueue
+                .orderedBy(Ordering.<PathEdgeNode> natural().reverse())
+                .maximumSize(this.parameters.getPathSearchBeamWidth())
+                .create();
+      } else {
+        openPathEdgeQueue = Queues.newPriorityQueue();
+      }
 
       PathEdgeNode currentPathEdgeNode =
           new PathEdgeNode(new PathEdge(priorPathStateDist
@@ -418,6 +666,11 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
       currentPathEdgeNode.setEdgeDistribution(initialEdgePathState);
       currentPathEdgeNode.setEdgeObsDistribution(initialEdgeObsDist);
 
+      final double logLikelihoodCutoff =
+          this.parameters.getPathSearchLogLikelihoodCutoff();
+      double bestLogLikelihood =
+          currentPathEdgeNode.getEdgeTotalLogLikelihood();
+
       /*
        * We're going to evaluate all paths up to some bayesian credible interval of
        * the distance component in the path state, and within another interval
@@ -450,6 +703,15 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
       while (!openPathEdgeQueue.isEmpty()) {
         currentPathEdgeNode = openPathEdgeQueue.poll();
 
+        /*
+         * With a cutoff, nodes come out in order of likelihood, so once one
+         * is too far below the best, so is everything left in the queue.
+         */
+        if (currentPathEdgeNode.getEdgeTotalLogLikelihood() < bestLogLikelihood
+            - logLikelihoodCutoff) {
+          break;
+        }
+
         final MultivariateGaussian currentObsDist =
             currentPathEdgeNode.getEdgeObsDistribution();
         final Range<Double> currentEdgeRange =
@@ -520,55 +782,34 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
 
         }
 
-        for (final PathEdge neighborPathEdge : neighborPathEdges) {
+        final List<PathEdgeNode> neighborPathEdgeNodes =
+            this.evaluateNeighbors(currentPathEdgeNode,
+                neighborPathEdges, onRoadPriorPredictiveMotionState,
+                onRoadStateTransCov, motionStateEstimatorPredictor, obs);
 
-          final PathEdgeNode neighborPathEdgeNode =
-              new PathEdgeNode(neighborPathEdge, currentPathEdgeNode);
+        /*
+         * The transition function is shared, so it's evaluated here, in
+         * sibling order, rather than with the rest of each neighbor.
+         */
+        edgeTransProbFunction.setFromEdge(currentPathEdgeNode.getPathEdge().getInferenceGraphSegment());
 
-          final MultivariateGaussian neighborEdgePathState =
-              PathStateEstimatorPredictor.getPathEdgePredictive(
-                  onRoadPriorPredictiveMotionState, 
-                  onRoadStateTransCov,
-                  neighborPathEdge,
-                  obs.getObsProjected(), null,
-                  this.parameters.getInitialObsFreq());
-          
-          if (neighborEdgePathState == null)
-            continue;
+        for (final PathEdgeNode neighborPathEdgeNode : neighborPathEdgeNodes) {
 
-          final MultivariateGaussian neighborEdgeObsDist =
-              motionStateEstimatorPredictor
-                  .getObservationDistribution(neighborEdgePathState,
-                      neighborPathEdge);
-          final double neighborObsLikelihood =
-              neighborEdgeObsDist.getProbabilityFunction()
-                  .logEvaluate(
-                      state.getObservation().getProjectedPoint());
-          final double neighborEdgeLikelihood = 
-              0d;
-//              PathStateEstimatorPredictor
-//                  .marginalPredictiveLogLikInternal(
-//                      onRoadPriorPredictiveMotionState,
-//                      onRoadStateTransCov,
-//                      neighborPathEdge, obs.getObsProjected(), null,
-//                      this.parameters.getInitialObsFreq());
-          
-          edgeTransProbFunction.setFromEdge(currentPathEdgeNode.getPathEdge().getInferenceGraphSegment());
-          
           final double neighborTransitionLogLikelihood =
              edgeTransProbFunction.logEvaluate(
-                      neighborPathEdge.getInferenceGraphSegment());
+                      neighborPathEdgeNode.getPathEdge().getInferenceGraphSegment());
 
-          neighborPathEdgeNode
-              .setObsLogLikelihood(neighborObsLikelihood);
-          neighborPathEdgeNode
-              .setEdgeLogLikelihood(neighborEdgeLikelihood);
           neighborPathEdgeNode
               .setTransitionLogLikelihood(neighborTransitionLogLikelihood);
-          neighborPathEdgeNode
-              .setEdgeDistribution(neighborEdgePathState);
-          neighborPathEdgeNode
-              .setEdgeObsDistribution(neighborEdgeObsDist);
+
+          final double neighborTotalLogLikelihood =
+              neighborPathEdgeNode.getEdgeTotalLogLikelihood();
+          if (neighborTotalLogLikelihood < bestLogLikelihood
+              - logLikelihoodCutoff) {
+            continue;
+          }
+          bestLogLikelihood =
+              Math.max(bestLogLikelihood, neighborTotalLogLikelihood);
 
           if (closedPathEdgeSet.contains(neighborPathEdgeNode)) {
             continue;
@@ -1,12 +1,15 @@
 package org.opentrackingtools.updater;
 
 import gov.sandia.cognition.math.LogMath;
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.statistics.DataDistribution;
 import gov.sandia.cognition.statistics.bayesian.ParticleFilter;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -50,6 +53,24 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
 
   protected VehicleStateDistributionFactory<O, G> vehicleStateFactory;
 
+  protected transient DataDistribution<VehicleStateDistribution<O>> initialStateDistribution =
+      null;
+
+  /*
+   * The off-road state built along with the initial state distribution,
+   * from which its on-edge states and the initial particles are derived.
+   */
+  protected transient VehicleStateDistribution<O> initialOffRoadState =
+      null;
+
+  /*
+   * The number of updates, and of those that took the stationary fast
+   * path.
+   */
+  protected long numStationaryUpdates = 0;
+
+  protected long numUpdates = 0;
+
   public VehicleStatePLUpdater(O obs, G inferencedGraph,
     VehicleStateDistributionFactory<O, G> vehicleStateFactory,
     VehicleStateInitialParameters parameters, Random rng) {
@@ -89,14 +110,60 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
   }
 
   /**
-   * Create vehicle states from the nearby edges.
+   * Create vehicle states from the nearby edges. Each particle's edge is drawn
+   * from {@link #getInitialStateDistribution()}, and its state is then built
+   * anew on that edge, with its own draw of the initial observation error.
    */
   @Override
   public DataDistribution<VehicleStateDistribution<O>>
       createInitialParticles(int numParticles) {
+    final DataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
+        this.getInitialStateDistribution();
     final CountedDataDistribution<VehicleStateDistribution<O>> retDist =
         new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
+    for (int i = 0; i < numParticles; i++) {
+      retDist.increment(this.createInitialParticle(statesOnEdgeDistribution
+          .sample(this.random)));
+    }
+
+    Preconditions.checkState(retDist.getTotalCount() == numParticles);
+
+    return retDist;
+  }
+
+  /**
+   * A new initial state on the same edge as the given candidate, so that
+   * particles drawn from one candidate don't all start at the same
+   * location. It's derived from the initial off-road state, sharing its
+   * covariance parameters.
+   */
+  protected VehicleStateDistribution<O> createInitialParticle(
+    VehicleStateDistribution<O> candidate) {
+    final Path path = candidate.getPathStateParam().getValue().getPath();
+    return this.vehicleStateFactory.createInitialVehicleState(
+        this.getInitialOffRoadState(), this.parameters.getInitialObsFreq(),
+        this.parameters.getInitialMotionState(), this.random, path
+            .isNullPath() ? PathEdge.nullPathEdge : path.getPathEdges()
+            .get(0));
+  }
+
+  public G getInferenceGraph() {
+    return this.inferenceGraph;
+  }
+
+  /**
+   * The initial vehicle states, off-road and on each edge near the initial
+   * observation, weighted by their log likelihoods. It's built once, on first
+   * use, and kept until the initial observation, graph, parameters, random
+   * number generator or state factory change.
+   */
+  public DataDistribution<VehicleStateDistribution<O>>
+      getInitialStateDistribution() {
+    if (this.initialStateDistribution != null) {
+      return this.initialStateDistribution;
+    }
+
     /*
      * Start by creating an off-road vehicle state with which we can obtain the surrounding
      * edges.
@@ -112,59 +179,70 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
         this.inferenceGraph.getNearbyEdges(initialMotionStateDist,
             initialMotionStateDist.getCovariance());
 
-    for (int i = 0; i < numParticles; i++) {
-      /*
-       * From the surrounding edges, we create states on those edges.
-       */
-      final DataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
-          new CountedDataDistribution<VehicleStateDistribution<O>>(
-              true);
-
-      final double nullLogLikelihood =
-          nullState.getEdgeTransitionParam()
-              .getConditionalDistribution().getProbabilityFunction()
-              .logEvaluate(InferenceGraphEdge.nullGraphEdge)
-              + this.computeLogLikelihood(nullState,
-                  this.initialObservation);
-      
-      Preconditions.checkState(Doubles.isFinite(nullLogLikelihood)
-          || !edges.isEmpty(), 
-          "off-road is impossible and there are no edges to be on!");
-
-      statesOnEdgeDistribution
-          .increment(nullState, nullLogLikelihood);
-
-      for (final InferenceGraphSegment segment : edges) {
-
-        final PathEdge pathEdge = new PathEdge(segment, 0d, false);
-
-        final VehicleStateDistribution<O> stateOnEdge =
-            this.vehicleStateFactory.createInitialVehicleState(
-                this.parameters, this.inferenceGraph,
-                this.initialObservation, this.random, pathEdge);
-
-        final double logLikelihood =
-            stateOnEdge.getEdgeTransitionParam()
-                .getConditionalDistribution()
-                .getProbabilityFunction()
-                .logEvaluate(pathEdge.getInferenceGraphSegment())
-                + this.computeLogLikelihood(stateOnEdge,
-                    this.initialObservation);
+    /*
+     * From the surrounding edges, we create states on those edges.
+     */
+    final CountedDataDistribution<VehicleStateDistribution<O>> statesOnEdgeDistribution =
+        new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
-        statesOnEdgeDistribution
-            .increment(stateOnEdge, logLikelihood);
-      }
+    final double nullLogLikelihood =
+        nullState.getEdgeTransitionParam()
+            .getConditionalDistribution().getProbabilityFunction()
+            .logEvaluate(InferenceGraphEdge.nullGraphEdge)
+            + this.computeLogLikelihood(nullState,
+                this.initialObservation);
+    
+    Preconditions.checkState(Doubles.isFinite(nullLogLikelihood)
+        || !edges.isEmpty(), 
+        "off-road is impossible and there are no edges to be on!");
+
+    statesOnEdgeDistribution.increment(nullState, nullLogLikelihood);
+
+    for (final InferenceGraphSegment segment : edges) {
+
+      final PathEdge pathEdge = new PathEdge(segment, 0d, false);
+
+      final VehicleStateDistribution<O> stateOnEdge =
+          this.vehicleStateFactory.createInitialVehicleState(nullState,
+              this.parameters.getInitialObsFreq(),
+              this.parameters.getInitialMotionState(), this.random,
+              pathEdge);
+
+      final double logLikelihood =
+          stateOnEdge.getEdgeTransitionParam()
+              .getConditionalDistribution()
+              .getProbabilityFunction()
+              .logEvaluate(pathEdge.getInferenceGraphSegment())
+              + this.computeLogLikelihood(stateOnEdge,
+                  this.initialObservation);
 
-      retDist.increment(statesOnEdgeDistribution.sample(this.random));
+      statesOnEdgeDistribution.increment(stateOnEdge, logLikelihood);
     }
 
-    Preconditions.checkState(retDist.getTotalCount() == numParticles);
+    this.initialOffRoadState = nullState;
+    this.initialStateDistribution = statesOnEdgeDistribution;
+    return statesOnEdgeDistribution;
+  }
 
-    return retDist;
+  /**
+   * The off-road state that {@link #getInitialStateDistribution()} was built
+   * from.
+   */
+  protected VehicleStateDistribution<O> getInitialOffRoadState() {
+    this.getInitialStateDistribution();
+    return this.initialOffRoadState;
   }
 
-  public G getInferenceGraph() {
-    return this.inferenceGraph;
+  /**
+   * The number of particle updates that found the vehicle stationary, and so
+   * skipped the path search; see {@link #isStationary}.
+   */
+  public long getNumStationaryUpdates() {
+    return this.numStationaryUpdates;
+  }
+
+  public long getNumUpdates() {
+    return this.numUpdates;
   }
 
   public InferenceGraph getInferredGraph() {
@@ -192,20 +270,83 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
     return this.vehicleStateFactory;
   }
 
+  /**
+   * Whether the given state's observation is of a stationary vehicle: it
+   * reports a speed of at most
+   * {@link VehicleStateInitialParameters#getStationaryMaxVelocity()} or, when
+   * it doesn't report one, the state's estimated speed is at most that, and
+   * it's within
+   * {@link VehicleStateInitialParameters#getStationaryObsNoiseMultiple()}
+   * standard deviations of the state's observation noise of where the state
+   * is predicted to be at the observation's time. <br>
+   * Since a stationary update keeps the state where it was, a vehicle that
+   * creeps along, by less than the noise between each pair of observations,
+   * is still found to move once it's far enough from there.
+   */
+  protected boolean isStationary(VehicleStateDistribution<O> state) {
+    final double noiseMultiple =
+        this.parameters.getStationaryObsNoiseMultiple();
+    if (noiseMultiple <= 0d) {
+      return false;
+    }
+    final O obs = state.getObservation();
+    final GpsObservation prevObs = obs.getPreviousObservation();
+    if (prevObs == null) {
+      return false;
+    }
+
+    final Vector groundMean =
+        state.getPathStateParam().getParameterPrior()
+            .getGroundDistribution().getMean();
+    final Vector groundVelocity =
+        MotionStateEstimatorPredictor.getVg().times(groundMean);
+    final Double velocity = obs.getVelocity();
+    final double speed =
+        velocity != null && !velocity.isNaN() && !velocity.isInfinite()
+            ? Math.abs(velocity) : groundVelocity.norm2();
+    if (speed > this.parameters.getStationaryMaxVelocity()) {
+      return false;
+    }
+
+    /*
+     * The state's location and the observation are both about as noisy as
+     * an observation, so their difference has twice the observation
+     * covariance.
+     */
+    final double timeDiff =
+        (obs.getTimestamp().getTime() - prevObs.getTimestamp()
+            .getTime()) / 1000d;
+    final Vector predictedLocation =
+        MotionStateEstimatorPredictor.getOg().times(groundMean)
+            .plus(groundVelocity.scale(timeDiff));
+    final Vector displacement =
+        obs.getProjectedPoint().minus(predictedLocation);
+    final Matrix displacementCov =
+        state.getObservationCovarianceParam().getValue().scale(2d);
+    final double mahalanobisSq =
+        displacement.times(displacementCov.inverse()).dotProduct(
+            displacement);
+    return mahalanobisSq <= noiseMultiple * noiseMultiple;
+  }
+
   public void setInferenceGraph(G inferenceGraph) {
     this.inferenceGraph = inferenceGraph;
+    this.initialStateDistribution = null;
   }
 
   public void setInitialObservation(O initialObservation) {
     this.initialObservation = initialObservation;
+    this.initialStateDistribution = null;
   }
 
   public void setParameters(VehicleStateInitialParameters parameters) {
     this.parameters = parameters;
+    this.initialStateDistribution = null;
   }
 
   public void setRandom(Random random) {
     this.random = random;
+    this.initialStateDistribution = null;
   }
 
   public void setSeed(long seed) {
@@ -215,6 +356,7 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
   public void setVehicleStateFactory(
     VehicleStateDistributionFactory<O, G> vehicleStateFactory) {
     this.vehicleStateFactory = vehicleStateFactory;
+    this.initialStateDistribution = null;
   }
 
   @Override
@@ -232,6 +374,12 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
     predictedState
         .setMotionStateEstimatorPredictor(motionStateEstimatorPredictor);
 
+    this.numUpdates++;
+    if (this.isStationary(predictedState)) {
+      this.numStationaryUpdates++;
+      return this.stationaryUpdate(predictedState);
+    }
+
     final Collection<? extends Path> paths =
         this.inferenceGraph.getPaths(predictedState,
             predictedState.getObservation());
@@ -361,4 +509,40 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
     return predictedState;
   }
 
+  /**
+   * The update for a stationary vehicle: rather than searching for paths and
+   * predicting along each, the current path state, with its velocity set to
+   * zero, is predicted forward as the only one. The prediction stays put but
+   * still picks up the motion model's process noise, so the vehicle can pull
+   * away again. The filter's own update still refines it, and the covariance
+   * parameters, with the new observation.
+   */
+  protected VehicleStateDistribution<O> stationaryUpdate(
+    VehicleStateDistribution<O> predictedState) {
+    final PathStateDistribution priorPathStateDist =
+        predictedState.getPathStateParam().getParameterPrior();
+    final MultivariateGaussian zeroVelocityMotionState =
+        priorPathStateDist.getMotionDistribution().clone();
+    final Vector mean = zeroVelocityMotionState.getMean().clone();
+    mean.setElement(1, 0d);
+    if (mean.getDimensionality() == 4) {
+      mean.setElement(3, 0d);
+    }
+    zeroVelocityMotionState.setMean(mean);
+    final MultivariateGaussian stationaryMotionState =
+        predictedState.getMotionStateEstimatorPredictor()
+            .createPredictiveDistribution(zeroVelocityMotionState);
+
+    final PathStateDistribution stationaryPathStateDist =
+        new PathStateDistribution(priorPathStateDist.getPathState()
+            .getPath(), stationaryMotionState);
+    predictedState.setPathStateParam(SimpleBayesianParameter.create(
+        priorPathStateDist.getPathState(),
+        new PathStateMixtureDensityModel(Collections
+            .singletonList(stationaryPathStateDist), new double[] { 0d }),
+        priorPathStateDist));
+
+    return predictedState;
+  }
+
 }
@@ -0,0 +1,175 @@
+package org.opentrackingtools.util;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.MatrixFactory;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides which observations a particle filter skips as gross outliers:
+ * those more than
+ * {@link VehicleStateInitialParameters#getOutlierNoiseMultiple()} standard
+ * deviations from the particles' predictive observation distribution, up to
+ * {@link VehicleStateInitialParameters#getOutlierMaxConsecutive()} in a
+ * row. <br>
+ * The particles don't see a skipped observation, so the next one that's
+ * filtered is relinked to the last one they did see. Not thread-safe.
+ */
+public class OutlierGate<O extends GpsObservation> implements
+    Serializable {
+
+  private static final Logger _log = LoggerFactory
+      .getLogger(OutlierGate.class);
+
+  private static final long serialVersionUID = -3416412386514271245L;
+
+  /*
+   * The observations skipped, in all and since the last one that was
+   * filtered.
+   */
+  protected int numConsecutiveOutliers = 0;
+
+  protected long numOutliers = 0;
+
+  protected final VehicleStateInitialParameters parameters;
+
+  public OutlierGate(VehicleStateInitialParameters parameters) {
+    this.parameters = Preconditions.checkNotNull(parameters);
+  }
+
+  public long getNumOutliers() {
+    return this.numOutliers;
+  }
+
+  /**
+   * Whether the observation is a gross outlier for the given particles.
+   * Their predictive observation distribution is the moment-matched mixture
+   * of each particle's ground state, predicted forward by its motion model,
+   * projected to a location, plus its observation noise. On-road states are
+   * only uncertain along their road, so each also allows for the vehicle
+   * having turned, with an isotropic variance of the square of the distance
+   * it's predicted to travel. <br>
+   * It's a cheap check, which saves searching for paths to, and evaluating
+   * every particle against, an observation that's far off anyway.
+   *
+   * @param states
+   * @param weights
+   *          the states' fractions of the particles
+   * @param obs
+   * @param rng
+   */
+  public boolean isOutlier(List<VehicleStateDistribution<O>> states,
+    double[] weights, O obs, Random rng) {
+    final double timeDiff = this.parameters.getInitialObsFreq();
+
+    final Vector[] means = new Vector[states.size()];
+    final Vector mean = VectorFactory.getDefault().createVector(2);
+    final Matrix covariance = MatrixFactory.getDefault().createMatrix(2, 2);
+    for (int i = 0; i < states.size(); i++) {
+      final VehicleStateDistribution<O> state = states.get(i);
+      final MotionStateEstimatorPredictor motionStateEstimatorPredictor =
+          new MotionStateEstimatorPredictor(state, rng, timeDiff);
+      final MultivariateGaussian groundPrediction =
+          motionStateEstimatorPredictor.createPredictiveDistribution(state
+              .getPathStateParam().getParameterPrior()
+              .getGroundDistribution());
+      final MultivariateGaussian obsPrediction =
+          motionStateEstimatorPredictor.getObservationDistribution(
+              groundPrediction, null);
+      means[i] = obsPrediction.getMean();
+
+      final Matrix stateCovariance = obsPrediction.getCovariance();
+      final double distance =
+          MotionStateEstimatorPredictor.getVg()
+              .times(groundPrediction.getMean()).norm2()
+              * timeDiff;
+      stateCovariance.setElement(0, 0, stateCovariance.getElement(0, 0)
+          + distance * distance);
+      stateCovariance.setElement(1, 1, stateCovariance.getElement(1, 1)
+          + distance * distance);
+
+      mean.plusEquals(means[i].scale(weights[i]));
+      covariance.plusEquals(stateCovariance.scale(weights[i]));
+    }
+    for (int i = 0; i < states.size(); i++) {
+      final Vector spread = means[i].minus(mean);
+      covariance.plusEquals(spread.outerProduct(spread).scale(weights[i]));
+    }
+
+    final Vector error = obs.getProjectedPoint().minus(mean);
+    final double mahalanobisSq =
+        error.times(covariance.inverse()).dotProduct(error);
+    final double noiseMultiple = this.parameters.getOutlierNoiseMultiple();
+    return mahalanobisSq > noiseMultiple * noiseMultiple;
+  }
+
+  /**
+   * Whether the gate is on, i.e. whether there's any point in calling
+   * {@link #skip}.
+   */
+  public boolean isEnabled() {
+    return this.parameters.getOutlierNoiseMultiple() > 0d;
+  }
+
+  /**
+   * Whether to skip the observation, rather than update the particles with
+   * it. When it's not skipped, but some before it were, it's relinked to
+   * the particles' observation.
+   *
+   * @param target
+   *          the particles, which must all have the same observation
+   * @param obs
+   * @param rng
+   */
+  public boolean skip(DataDistribution<VehicleStateDistribution<O>> target,
+    O obs, Random rng) {
+    final List<VehicleStateDistribution<O>> states =
+        new ArrayList<VehicleStateDistribution<O>>(target.getDomain());
+    final double[] weights = new double[states.size()];
+    for (int i = 0; i < states.size(); i++) {
+      weights[i] = target.getFraction(states.get(i));
+    }
+    return this.skip(states, weights, obs, rng);
+  }
+
+  /**
+   * @see #skip(DataDistribution, GpsObservation, Random)
+   */
+  public boolean skip(List<VehicleStateDistribution<O>> states,
+    double[] weights, O obs, Random rng) {
+    if (this.numConsecutiveOutliers < this.parameters
+        .getOutlierMaxConsecutive()
+        && this.isOutlier(states, weights, obs, rng)) {
+      this.numConsecutiveOutliers++;
+      this.numOutliers++;
+      _log.debug("skipping outlier observation " + obs);
+      return true;
+    }
+    if (this.numConsecutiveOutliers > 0) {
+      /*
+       * The particles' motion is relative to the last observation they
+       * saw, not to the skipped ones.
+       */
+      obs.setPreviousObservation(states.get(0).getObservation());
+      this.numConsecutiveOutliers = 0;
+    }
+    return false;
+  }
+
+}
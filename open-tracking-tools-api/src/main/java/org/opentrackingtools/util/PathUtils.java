@@ -8,6 +8,7 @@ import gov.sandia.cognition.math.matrix.decomposition.AbstractSingularValueDecom
 import gov.sandia.cognition.math.matrix.mtj.decomposition.SingularValueDecompositionMTJ;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
+import java.util.List;
 import java.util.Map.Entry;
 
 import javax.annotation.Nonnull;
@@ -21,6 +22,7 @@ import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathLinearReference;
 import org.opentrackingtools.paths.PathState;
 
 import com.google.common.base.Preconditions;
@@ -32,6 +34,7 @@ import com.statslibextensions.statistics.distribution.SvdMultivariateGaussian;
 import com.statslibextensions.util.ExtMatrixUtils;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateArrays;
+import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.geom.LineString;
@@ -255,8 +258,8 @@ public class PathUtils {
     @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
     final MultivariateGaussian projBelief =
         PathUtils.getRoadBeliefFromGround(belief,
-            graphEdge.getGeometry(), false, null, 0d, useAbsVelocity,
-            sourceLocation, timeDiff);
+            graphEdge.getLinearReference(), false, null, 0d,
+            useAbsVelocity, sourceLocation, timeDiff);
 
     belief.setMean(projBelief.getMean());
     belief.setCovariance(projBelief.getCovariance());
@@ -298,8 +301,9 @@ public class PathUtils {
     final double distToStartOfEdge =
         pathEdge != null ? pathEdge.getDistToStartOfEdge() : 0d;
     final MultivariateGaussian projBelief =
-        PathUtils.getRoadBeliefFromGround(belief, path.getGeometry(),
-            path.isBackward(), lineSegment, distToStartOfEdge,
+        PathUtils.getRoadBeliefFromGround(belief,
+            path.getLinearReference(), path.isBackward(), lineSegment,
+            distToStartOfEdge,
             useAbsVelocity, sourceLocation, timeDiff);
 
     belief.setMean(projBelief.getMean());
@@ -377,8 +381,45 @@ public class PathUtils {
   public static PathEdgeProjection getGroundProjection(
     Vector locVelocity, PathEdge edge, boolean allowExtensions) {
 
-    return PathUtils.posVelProjectionPair(edge.getLine(),
-        Math.abs(edge.getDistToStartOfEdge()));
+    return edge.getGroundProjection();
+  }
+
+  /**
+   * The 4x2 matrix taking a road-state (distance, velocity) along a line with
+   * the given unit direction to a ground-state (x, x-velocity, y, y-velocity).
+   * 
+   * @param ux
+   * @param uy
+   * @return
+   */
+  public static Matrix getProjMatrix(double ux, double uy) {
+    final Matrix P = MatrixFactory.getDefault().createMatrix(4, 2);
+    P.setElement(0, 0, ux);
+    P.setElement(1, 1, ux);
+    P.setElement(2, 0, uy);
+    P.setElement(3, 1, uy);
+    return P;
+  }
+
+  /**
+   * The ground-state offset of the origin of a road-state along a line
+   * starting at (x0, y0), with the given unit direction, that is
+   * distToStartOfLine along the path.
+   * 
+   * @param x0
+   * @param y0
+   * @param ux
+   * @param uy
+   * @param distToStartOfLine
+   * @return
+   */
+  public static Vector getProjOffset(double x0, double y0, double ux,
+    double uy, double distToStartOfLine) {
+    final double distToStart = Math.abs(distToStartOfLine);
+    final Vector a = VectorFactory.getDefault().createVector(4);
+    a.setElement(0, x0 - ux * distToStart);
+    a.setElement(2, y0 - uy * distToStart);
+    return a;
   }
 
   /**
@@ -499,6 +540,9 @@ public class PathUtils {
    * <br>
    * XXX: the absolute velocity method has precedence over the
    * location/time adjustment method.
+   * <br>
+   * This builds a linear reference for the geometry on every call. Paths and
+   * edges keep their own, so prefer the overloads that take them.
    * 
    * @param state
    * @param pathGeometry
@@ -515,11 +559,34 @@ public class PathUtils {
     boolean pathIsBackwards, @Nullable LineSegment edgeSegment,
     double edgeDistanceToStartOnPath, boolean useAbsVelocity,
     @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
+    return PathUtils.getRoadBeliefFromGround(belief,
+        new PathLinearReference(pathGeometry), pathIsBackwards,
+        edgeSegment, edgeDistanceToStartOnPath, useAbsVelocity,
+        sourceLocation, timeDiff);
+  }
+
+  /**
+   * @see #getRoadBeliefFromGround(MultivariateGaussian, Geometry, boolean, LineSegment, double, boolean, Vector, Double)
+   * @param belief
+   * @param pathReference
+   * @param pathIsBackwards
+   * @param edgeSegment
+   * @param edgeDistanceToStartOnPath
+   * @param useAbsVelocity
+   * @param sourceLocation
+   * @param timeDiff
+   * @return motion-state distribution on the road
+   */
+  public static MultivariateGaussian getRoadBeliefFromGround(
+    MultivariateGaussian belief, PathLinearReference pathReference,
+    boolean pathIsBackwards, @Nullable LineSegment edgeSegment,
+    double edgeDistanceToStartOnPath, boolean useAbsVelocity,
+    @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
 
     Preconditions.checkArgument(belief.getInputDimensionality() == 4);
 
     final PathEdgeProjection projPair =
-        PathUtils.getRoadProjection(belief.getMean(), pathGeometry,
+        PathUtils.getRoadProjection(belief.getMean(), pathReference,
             edgeSegment, edgeDistanceToStartOnPath);
 
     if (projPair == null) {
@@ -577,9 +644,6 @@ public class PathUtils {
           * newVelocity);
     }
 
-    assert LengthLocationMap.getLocation(pathGeometry,
-        projMean.getElement(0)) != null;
-
     final MultivariateGaussian result = belief.clone();
     result.setMean(projMean);
     result.setCovariance(projCov);
@@ -602,8 +666,9 @@ public class PathUtils {
     @Nullable Double timeDiff) {
     Preconditions.checkArgument(belief.getInputDimensionality() == 4);
     final MultivariateGaussian tmpMg =
-        PathUtils.getRoadBeliefFromGround(belief, edge.getGeometry(),
-            false, null, 0, useAbsVelocity, sourceLocation, timeDiff);
+        PathUtils.getRoadBeliefFromGround(belief,
+            edge.getLinearReference(), false, null, 0, useAbsVelocity,
+            sourceLocation, timeDiff);
     return tmpMg;
   }
 
@@ -620,9 +685,9 @@ public class PathUtils {
     @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
     Preconditions.checkArgument(belief.getInputDimensionality() == 4);
     final MultivariateGaussian tmpMg =
-        PathUtils.getRoadBeliefFromGround(belief, path.getGeometry(),
-            path.isBackward(), null, 0, useAbsVelocity,
-            sourceLocation, timeDiff);
+        PathUtils.getRoadBeliefFromGround(belief,
+            path.getLinearReference(), path.isBackward(), null, 0,
+            useAbsVelocity, sourceLocation, timeDiff);
     return tmpMg;
   }
 
@@ -640,13 +705,10 @@ public class PathUtils {
     boolean useAbsVelocity, @Nullable Vector sourceLocation,
     @Nullable Double timeDiff) {
     Preconditions.checkArgument(belief.getInputDimensionality() == 4);
-    final Geometry lineGeom =
-        edge.getLine().toGeometry(
-            JTSFactoryFinder.getGeometryFactory());
     final MultivariateGaussian tmpMg =
-        PathUtils.getRoadBeliefFromGround(belief, lineGeom,
-            edge.isBackward(), null, 0, useAbsVelocity,
-            sourceLocation, timeDiff);
+        PathUtils.getRoadBeliefFromGround(belief,
+            edge.getLinearReference(), edge.isBackward(), null, 0,
+            useAbsVelocity, sourceLocation, timeDiff);
     tmpMg.getMean().setElement(0,
         tmpMg.getMean().getElement(0) + edge.getDistToStartOfEdge());
     return tmpMg;
@@ -696,7 +758,10 @@ public class PathUtils {
    * projection's direction and the velocity magnitude of the original 4D
    * vector. This must be done by the user with the results of this method. <br>
    * <br>
-   * The returned projection is always in the positive direction.
+   * The returned projection is always in the positive direction. Without an
+   * edge segment, this builds a linear reference for the geometry on every
+   * call; see {@link #getRoadProjection(Vector, PathLinearReference,
+   * LineSegment, double)}.
    * 
    * @param locVelocity
    * @param path
@@ -707,6 +772,27 @@ public class PathUtils {
     @Nonnull Vector locVelocity, @Nonnull Geometry pathGeometry,
     @Nullable LineSegment edgeSegment,
     double edgeDistanceToStartOnPath) {
+    return PathUtils.getRoadProjection(locVelocity,
+        edgeSegment != null ? null : new PathLinearReference(
+            pathGeometry), edgeSegment, edgeDistanceToStartOnPath);
+  }
+
+  /**
+   * Like {@link #getRoadProjection(Vector, Geometry, LineSegment, double)},
+   * but snaps to the path through its linear reference, which is only needed
+   * when no edge segment is given.
+   * 
+   * @param locVelocity
+   * @param pathReference
+   * @param edgeSegment
+   * @param edgeDistanceToStartOnPath
+   * @return
+   */
+  public static PathEdgeProjection getRoadProjection(
+    @Nonnull Vector locVelocity,
+    @Nullable PathLinearReference pathReference,
+    @Nullable LineSegment edgeSegment,
+    double edgeDistanceToStartOnPath) {
 
     Preconditions.checkArgument(locVelocity.getDimensionality() == 4);
 
@@ -721,34 +807,35 @@ public class PathUtils {
             .times(locVelocity));
     final double distanceToStartOfSegmentOnGeometry;
     final LineSegment pathLineSegment;
+    final Coordinate pointOnLine;
     if (edgeSegment != null) {
       distanceToStartOfSegmentOnGeometry =
           Math.abs(edgeDistanceToStartOnPath);
       pathLineSegment = edgeSegment;
+
+      /*
+       * Get position on line segment.  If we don't
+       * then the results will simply be wrong.
+       */
+      pointOnLine =
+          pathLineSegment.closestPoint(new Coordinate(locVelocity
+              .getElement(0), locVelocity.getElement(2)));
     } else {
-      final LocationIndexedLine locIndex =
-          new LocationIndexedLine(pathGeometry);
-      final LinearLocation lineLocation =
-          locIndex.project(currentPos);
+      Preconditions.checkNotNull(pathReference);
       /*
        * Get the segment we're projected onto, and the distance offset
        * of the path.
        */
-      pathLineSegment = lineLocation.getSegment(pathGeometry);
-
-      final LengthIndexedLine lengthIndex =
-          new LengthIndexedLine(pathGeometry);
+      final int segmentIndex =
+          pathReference.project(currentPos.x, currentPos.y);
+      pathLineSegment = pathReference.getSegment(segmentIndex);
       distanceToStartOfSegmentOnGeometry =
-          lengthIndex.indexOf(pathLineSegment.p0);
-    }
+          pathReference.getDistanceToStart(segmentIndex);
 
-    /*
-     * Get position on line segment.  If we don't
-     * then the results will simply be wrong.
-     */
-    final Coordinate pointOnLine =
-        pathLineSegment.closestPoint(new Coordinate(locVelocity
-            .getElement(0), locVelocity.getElement(2)));
+      pointOnLine =
+          pathReference.closestPoint(segmentIndex,
+              locVelocity.getElement(0), locVelocity.getElement(2));
+    }
     final Vector adjMean = locVelocity.clone();
     adjMean.setElement(0, pointOnLine.x);
     adjMean.setElement(2, pointOnLine.y);
@@ -781,6 +868,9 @@ public class PathUtils {
    * <br>
    * XXX: the absolute velocity method has precedence over the
    * location/time adjustment method.
+   * <br>
+   * This builds a linear reference for the geometry on every call. Paths and
+   * edges keep their own, so prefer the overloads that take them.
    * 
    * @param state
    * @param pathGeometry
@@ -797,11 +887,34 @@ public class PathUtils {
     @Nullable LineSegment edgeSegment,
     double edgeDistanceToStartOnPath, boolean useAbsVelocity,
     @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
+    return PathUtils.getRoadStateFromGround(state,
+        new PathLinearReference(pathGeometry), pathIsBackwards,
+        edgeSegment, edgeDistanceToStartOnPath, useAbsVelocity,
+        sourceLocation, timeDiff);
+  }
+
+  /**
+   * @see #getRoadStateFromGround(Vector, Geometry, boolean, LineSegment, double, boolean, Vector, Double)
+   * @param state
+   * @param pathReference
+   * @param pathIsBackwards
+   * @param edgeSegment
+   * @param edgeDistanceToStartOnPath
+   * @param useAbsVelocity
+   * @param sourceLocation
+   * @param timeDiff
+   * @return
+   */
+  public static Vector getRoadStateFromGround(Vector state,
+    PathLinearReference pathReference, boolean pathIsBackwards,
+    @Nullable LineSegment edgeSegment,
+    double edgeDistanceToStartOnPath, boolean useAbsVelocity,
+    @Nullable Vector sourceLocation, @Nullable Double timeDiff) {
 
     Preconditions.checkArgument(state.getDimensionality() == 4);
 
     final PathEdgeProjection projPair =
-        PathUtils.getRoadProjection(state, pathGeometry, edgeSegment,
+        PathUtils.getRoadProjection(state, pathReference, edgeSegment,
             edgeDistanceToStartOnPath);
 
     final Vector adjState = projPair.getStateOnSegment();
@@ -840,9 +953,6 @@ public class PathUtils {
           * newVelocity);
     }
 
-    assert LengthLocationMap.getLocation(pathGeometry,
-        projMean.getElement(0)) != null;
-
     return projMean;
   }
 
@@ -861,7 +971,7 @@ public class PathUtils {
     Path path, boolean useAbsVelocity, Vector prevState,
     Double timeDiff) {
     return PathUtils.getRoadStateFromGround(state,
-        path.getGeometry(), path.isBackward(), null, 0,
+        path.getLinearReference(), path.isBackward(), null, 0,
         useAbsVelocity, prevState, timeDiff);
   }
 
@@ -916,12 +1026,9 @@ public class PathUtils {
      * When there is no exactly orthogonal line to the edge
      * we must clip the result.
      */
-    final Geometry segmentGeom =
-        edge.getLine().toGeometry(
-            JTSFactoryFinder.getGeometryFactory());
-    final LengthIndexedLine lil = new LengthIndexedLine(segmentGeom);
     final double clampedIndex =
-        lil.clampIndex(projMean.getElement(0));
+        PathLinearReference.clampIndex(projMean.getElement(0),
+            edge.getLength());
     projMean.setElement(0, clampedIndex);
 
     if (edge.isBackward()) {
@@ -954,9 +1061,6 @@ public class PathUtils {
           * newVelocity);
     }
 
-    assert LengthLocationMap.getLocation(segmentGeom,
-        projMean.getElement(0)) != null;
-
     return projMean;
   }
 
@@ -1241,6 +1345,120 @@ public class PathUtils {
 
   }
 
+  /**
+   * Returns the path connecting the two passed paths and distances, like
+   * {@link #mergePaths(Geometry, double, Geometry, double)}, but by matching
+   * the from-path's trailing edges against the to-path's leading edges (in
+   * either direction of the to-path) instead of intersecting geometries. When
+   * the paths don't overlap that way, or the from-distance is past the end of
+   * the from-path, the geometric merge is used.
+   * 
+   * @param from
+   * @param distFrom
+   * @param to
+   * @param distTo
+   * @return
+   */
+  public static PathUtils.PathMergeResults mergePaths(Path from,
+    double distFrom, Path to, double distTo) {
+    Preconditions.checkArgument(!from.isNullPath() && !to.isNullPath());
+
+    final Geometry fromGeom = from.getGeometry();
+    final Geometry toGeom = to.getGeometry();
+
+    /*
+     * Only paths whose geometry follows their edges can
+     * be merged by edge; single-edge paths may not.
+     * The from-path is cut at the end of the overlap, which
+     * keeps all of it only when the from-distance is on it.
+     */
+    if (distFrom <= fromGeom.getLength()
+        && PathUtils.followsEdges(from, fromGeom)
+        && PathUtils.followsEdges(to, toGeom)) {
+      final List<? extends PathEdge> fromEdges = from.getPathEdges();
+      final List<? extends PathEdge> toEdges = to.getPathEdges();
+
+      int overlap = PathUtils.getEdgeOverlap(fromEdges, toEdges, false);
+      if (overlap > 0 && distTo > 0d) {
+        final CoordinateList coords =
+            new CoordinateList(fromGeom.getCoordinates(), false);
+        for (int i = overlap; i < toEdges.size(); i++) {
+          final LineSegment line = toEdges.get(i).getLine();
+          if (line.getLength() > 1e-4) {
+            coords.add(line.p0, false);
+            coords.add(line.p1, false);
+          }
+        }
+        return new PathUtils.PathMergeResults(JTSFactoryFinder
+            .getGeometryFactory().createLineString(
+                coords.toCoordinateArray()), false);
+      }
+
+      overlap = PathUtils.getEdgeOverlap(fromEdges, toEdges, true);
+      if (overlap > 0 && distTo < toGeom.getLength()) {
+        final CoordinateList coords =
+            new CoordinateList(fromGeom.getCoordinates(), false);
+        for (int i = toEdges.size() - 1 - overlap; i >= 0; i--) {
+          final LineSegment line = toEdges.get(i).getLine();
+          if (line.getLength() > 1e-4) {
+            coords.add(line.p1, false);
+            coords.add(line.p0, false);
+          }
+        }
+        return new PathUtils.PathMergeResults(JTSFactoryFinder
+            .getGeometryFactory().createLineString(
+                coords.toCoordinateArray()), true);
+      }
+    }
+
+    return PathUtils.mergePaths(fromGeom, distFrom, toGeom, distTo);
+  }
+
+  /**
+   * Whether the geometry runs from the start of the path's first edge to the
+   * end of its last edge.
+   */
+  private static boolean followsEdges(Path path, Geometry geom) {
+    final Coordinate[] coords = geom.getCoordinates();
+    if (coords.length == 0) {
+      return false;
+    }
+    return coords[0].equals2D(path.getPathEdges().get(0).getLine().p0)
+        && coords[coords.length - 1].equals2D(Iterables.getLast(
+            path.getPathEdges()).getLine().p1);
+  }
+
+  /**
+   * The length of the longest run of the from-edges' tail that matches the
+   * head of the to-edges, compared by graph segment and direction. When
+   * reversed is set, the to-edges are matched as if traversed backwards.
+   */
+  private static int getEdgeOverlap(List<? extends PathEdge> fromEdges,
+    List<? extends PathEdge> toEdges, boolean reversed) {
+    final int n = fromEdges.size();
+    final int m = toEdges.size();
+    for (int k = Math.min(n, m); k > 0; k--) {
+      boolean matches = true;
+      for (int i = 0; i < k && matches; i++) {
+        final PathEdge fromEdge = fromEdges.get(n - k + i);
+        final PathEdge toEdge =
+            reversed ? toEdges.get(m - 1 - i) : toEdges.get(i);
+        /*
+         * Same direction, unless the to-path is reversed.
+         */
+        matches =
+            fromEdge.getInferenceGraphSegment().equals(
+                toEdge.getInferenceGraphSegment())
+                && (fromEdge.isBackward().booleanValue() ^ toEdge
+                    .isBackward().booleanValue()) == reversed;
+      }
+      if (matches) {
+        return k;
+      }
+    }
+    return 0;
+  }
+
   /**
    * Note: it's very important that the position be "normalized" relative to the
    * edge w.r.t. the velocity. That way, when we predict the next location, the
@@ -1291,38 +1509,23 @@ public class PathUtils {
   }
 
   /**
-   * TODO FIXME associate these values with segments? Returns the matrix and
-   * offset vector for projection onto the given edge. distEnd is the distance
+   * Returns the matrix and offset vector for projection onto the given edge.
+   * See {@link PathEdge#getGroundProjection()} for the cached version. distEnd is the distance
    * from the start of the path to the end of the given edge. NOTE: These
    * results are only in the positive direction. Convert on your end.
    */
   public static PathEdgeProjection posVelProjectionPair(
     LineSegment lineSegment, double distToStartOfLine) {
 
-    Preconditions.checkState(lineSegment.getLength() > 0d);
-
-    final Vector start = GeoUtils.getVector(lineSegment.p0);
-    final Vector end = GeoUtils.getVector(lineSegment.p1);
-
-    final double length = start.euclideanDistance(end);
-
-    final double distToStart = Math.abs(distToStartOfLine);
-
-    final Vector P1 = end.minus(start).scale(1 / length);
-    final Vector s1 = start.minus(P1.scale(distToStart));
-
-    final Matrix P = MatrixFactory.getDefault().createMatrix(4, 2);
-    P.setColumn(0,
-        P1.stack(MotionStateEstimatorPredictor.getZeros2d()));
-    P.setColumn(1,
-        MotionStateEstimatorPredictor.getZeros2d().stack(P1));
+    final double length = lineSegment.getLength();
+    Preconditions.checkState(length > 0d);
 
-    final Vector a =
-        s1.stack(MotionStateEstimatorPredictor.getZeros2d());
+    final double ux = (lineSegment.p1.x - lineSegment.p0.x) / length;
+    final double uy = (lineSegment.p1.y - lineSegment.p0.y) / length;
 
-    return new PathEdgeProjection(MotionStateEstimatorPredictor
-        .getU().times(P), MotionStateEstimatorPredictor.getU().times(
-        a));
+    return new PathEdgeProjection(PathUtils.getProjMatrix(ux, uy),
+        PathUtils.getProjOffset(lineSegment.p0.x, lineSegment.p0.y, ux,
+            uy, distToStartOfLine));
   }
 
   public static Vector stateDiff(PathState fromState,
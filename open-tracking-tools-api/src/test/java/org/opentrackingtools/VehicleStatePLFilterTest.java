@@ -1,6 +1,8 @@
 package org.opentrackingtools;
 
+import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
 
 import java.util.Collections;
 import java.util.Date;
@@ -16,7 +18,12 @@ import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.ProjectedCoordinate;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.opentrackingtools.model.VehicleStateParticleArray;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+import org.opentrackingtools.util.TrueObservation;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 import org.testng.internal.junit.ArrayAsserts;
@@ -226,4 +233,165 @@ public class VehicleStatePLFilterTest {
         bestVehicleState.getPathStateParam().getValue()
             .getMotionState().toArray(), 1e-1);
   }
+
+  /**
+   * Starting off-road, as in {@link #update2()}, check that an observation
+   * far from where the particles predict is skipped, leaving them as they
+   * were, and that the next, plausible, one is filtered as usual.
+   */
+  @Test
+  public void updateOutlier() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(1, 0), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 0),
+            new Coordinate(1, 1), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 1),
+            new Coordinate(1, 2), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 2),
+            new Coordinate(1, 3), }));
+    final InferenceGraph graph = new GenericJTSGraph(edges, false);
+
+    final Random rng = new Random(102343292l);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 1,
+            4, 0);
+    parameters.setOutlierNoiseMultiple(5d);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    final GpsObservation initialObs =
+        new GpsObservation("test", new Date(0l), initialObsCoord,
+            null, null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+    final VehicleStateDistribution<GpsObservation> currentState =
+        factory.createInitialVehicleState(parameters, graph,
+            initialObs, rng, PathEdge.nullPathEdge);
+
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            initialObs, graph, factory, parameters, false, rng);
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            Collections.singletonList(currentState), true);
+
+    final Coordinate outlierObsCoord = new Coordinate(500, 500);
+    final GpsObservation outlierObs =
+        new GpsObservation("test", new Date(4l), outlierObsCoord, null,
+            null, null, 1, null, new ProjectedCoordinate(null,
+                outlierObsCoord, null));
+    filter.update(particles, outlierObs);
+
+    AssertJUnit.assertEquals(1l, filter.getNumOutliers());
+    AssertJUnit.assertSame(currentState, particles.getMaxValueKey());
+
+    final Coordinate newObsCoord = new Coordinate(1, 3);
+    final GpsObservation newObs =
+        new GpsObservation("test", new Date(8l), newObsCoord, null,
+            null, null, 2, null, new ProjectedCoordinate(null,
+                newObsCoord, null));
+    filter.update(particles, newObs);
+
+    AssertJUnit.assertEquals(1l, filter.getNumOutliers());
+    /*
+     * The particles never saw the outlier, so the new observation follows
+     * the initial one.
+     */
+    AssertJUnit.assertSame(initialObs, newObs.getPreviousObservation());
+    AssertJUnit.assertEquals(new LineSegment(new Coordinate(1, 2),
+        new Coordinate(1, 3)), particles.getMaxValueKey()
+        .getPathStateParam().getParameterPrior().getPathState().getEdge()
+        .getLine());
+  }
+
+  /**
+   * Filter the same simulated trace with the same seed, once over a
+   * {@link CountedDataDistribution} and once over a
+   * {@link VehicleStateParticleArray}. The two resample their particles in
+   * different orders, so they can't be compared particle by particle, but
+   * they should keep the same number of particles and agree on the
+   * vehicle's location.
+   */
+  @Test
+  public void updateParticleArray() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(25, 30);
+    final Simulation sim =
+        new Simulation("array-test", graph, new SimulationParameters(
+            new Coordinate(0d, 0d), new Date(0l), 600,
+            parameters.getInitialObsFreq(), false, false, parameters),
+            parameters);
+
+    VehicleStateDistribution<GpsObservation> trueState =
+        sim.computeInitialState();
+    final TrueObservation initialObs =
+        new TrueObservation(trueState.getObservation(), trueState);
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> distributionFilter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            initialObs, graph, factory, parameters, false, new Random(
+                parameters.getSeed()));
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        distributionFilter.getUpdater().createInitialParticles(
+            parameters.getNumParticles());
+
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> arrayFilter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            initialObs, graph, factory, parameters, false, new Random(
+                parameters.getSeed()));
+    final VehicleStateParticleArray<GpsObservation> particleArray =
+        VehicleStateParticleArray.fromDistribution(arrayFilter
+            .getUpdater().createInitialParticles(
+                parameters.getNumParticles()));
+
+    for (int i = 0; i < 10; i++) {
+      trueState = sim.stepSimulation(trueState);
+      final TrueObservation obs =
+          new TrueObservation(trueState.getObservation(), trueState);
+      distributionFilter.update(particles, obs);
+      arrayFilter.update(particleArray, obs);
+
+      AssertJUnit.assertEquals(parameters.getNumParticles(),
+          particleArray.getTotalCount());
+      final Vector distributionLocation =
+          VehicleStatePLFilterTest.getMeanLocation(particles);
+      final Vector arrayLocation =
+          VehicleStatePLFilterTest.getMeanLocation(particleArray
+              .toDistribution());
+      AssertJUnit.assertEquals(distributionLocation.getElement(0),
+          arrayLocation.getElement(0), 10d);
+      AssertJUnit.assertEquals(distributionLocation.getElement(2),
+          arrayLocation.getElement(2), 10d);
+    }
+  }
+
+  private static Vector getMeanLocation(
+    DataDistribution<VehicleStateDistribution<GpsObservation>> particles) {
+    Vector mean = VectorFactory.getDefault().createVector(4);
+    for (final VehicleStateDistribution<GpsObservation> state : particles
+        .getDomain()) {
+      mean =
+          mean.plus(state.getPathStateParam().getValue().getGroundState()
+              .scale(particles.getFraction(state)));
+    }
+    return mean;
+  }
 }
@@ -20,6 +20,7 @@ import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 import org.testng.collections.Sets;
 
@@ -242,6 +243,84 @@ public class GenericJTSGraphTest {
     return false;
   }
 
+  @Test
+  public void testReachabilityTable() {
+
+    final List<LineString> graphEdges = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+          .createLineString(
+              new Coordinate[] { new Coordinate(i, 0),
+                  new Coordinate(i + 1, 0) }));
+    }
+
+    final InferenceGraph graph =
+        new GenericJTSGraph(graphEdges, false);
+
+    final List<InferenceGraphSegment> segments = Lists.newArrayList();
+    for (final LineString edge : graphEdges) {
+      segments.add(Iterables.getOnlyElement(graph.getNearbyEdges(
+          edge.getCentroid().getCoordinate(), 0.1d)));
+    }
+
+    final EdgeReachabilityTable table =
+        new EdgeReachabilityTable(graph, 1.5d);
+    final EdgeReachabilityTable.Reachability reachability =
+        table.getReachability(segments.get(0));
+
+    AssertJUnit.assertEquals(2, reachability.size());
+    AssertJUnit.assertEquals(0d,
+        reachability.getDistanceTo(segments.get(1)), 1e-7);
+    AssertJUnit.assertEquals(1d,
+        reachability.getDistanceTo(segments.get(2)), 1e-7);
+    AssertJUnit.assertEquals(Double.POSITIVE_INFINITY,
+        reachability.getDistanceTo(segments.get(3)));
+    AssertJUnit.assertEquals(2,
+        reachability.getEdgesTo(segments.get(2)).size());
+
+    final Path path = table.getPath(segments.get(0), segments.get(2), 1.5d);
+    AssertJUnit.assertEquals(3d, path.getTotalPathDistance(), 1e-7);
+    AssertJUnit.assertNull(table.getPath(segments.get(0),
+        segments.get(3), 1.5d));
+  }
+
+  /**
+   * An edge that passes through its own start point again still locates
+   * each segment by its index, not by the first visit to its start point.
+   */
+  @Test
+  public void testLoopingEdgeIndices() {
+
+    final List<LineString> graphEdges = Lists.newArrayList();
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(1, 0), new Coordinate(1, 1),
+                new Coordinate(0, 0), new Coordinate(-1, 0) }));
+
+    final InferenceGraph graph =
+        new GenericJTSGraph(graphEdges, false);
+    final InferenceGraphSegment nearby =
+        Iterables.getFirst(graph.getNearbyEdges(new Coordinate(0.5d, 0d),
+            0.1d), null);
+    final List<InferenceGraphSegment> segments = nearby.getSegments();
+    AssertJUnit.assertEquals(4, segments.size());
+
+    for (int i = 0; i < segments.size(); i++) {
+      final InferenceGraphSegment segment = segments.get(i);
+      AssertJUnit.assertEquals(i, segment.getStartIndex()
+          .getSegmentIndex());
+      AssertJUnit.assertTrue(segment.getStartIndex().compareTo(
+          segment.getEndIndex()) < 0);
+      if (i > 0) {
+        AssertJUnit.assertTrue(segments.get(i - 1).getEndIndex()
+            .compareTo(segment.getStartIndex()) <= 0);
+      }
+    }
+    AssertJUnit.assertTrue(segments.get(3).getLine().p0
+        .equals2D(segments.get(0).getLine().p0));
+  }
+
   @Test
   public void testNoding() {
 
@@ -0,0 +1,119 @@
+package org.opentrackingtools.model;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+import org.opentrackingtools.util.TrueObservation;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.statslibextensions.statistics.distribution.CountedDataDistribution;
+import com.statslibextensions.statistics.distribution.ScaledInverseGammaCovDistribution;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class VehicleStateCheckpointTest {
+
+  /**
+   * Checkpoint the particles partway through a simulated trace, and check
+   * that the restored ones have the same paths, motion states and
+   * parameters, and that the filter can continue from them.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters params =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Simulation sim =
+        new Simulation("checkpoint-test", graph, new SimulationParameters(
+            new Coordinate(0d, 0d), new Date(0l), 600,
+            params.getInitialObsFreq(), false, false, params), params);
+
+    VehicleStateDistribution<GpsObservation> trueState =
+        sim.computeInitialState();
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            new TrueObservation(trueState.getObservation(), trueState),
+            graph,
+            new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>(),
+            params, false, new Random(params.getSeed()));
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        filter.getUpdater().createInitialParticles(
+            params.getNumParticles());
+    for (int i = 0; i < 5; i++) {
+      trueState = sim.stepSimulation(trueState);
+      filter.update(particles, new TrueObservation(
+          trueState.getObservation(), trueState));
+    }
+
+    final byte[] bytes = VehicleStateCheckpoint.toBytes(particles);
+    final VehicleStateCheckpoint checkpoint =
+        VehicleStateCheckpoint.fromBytes(bytes, graph);
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> restored =
+        checkpoint.getParticles();
+
+    AssertJUnit.assertEquals(trueState.getObservation().getTimestamp(),
+        checkpoint.getObservation().getTimestamp());
+    AssertJUnit.assertEquals(trueState.getObservation()
+        .getProjectedPoint(), checkpoint.getObservation()
+        .getProjectedPoint());
+
+    final VehicleStateParticleArray<GpsObservation> original =
+        VehicleStateParticleArray.fromDistribution(particles);
+    final VehicleStateParticleArray<GpsObservation> copy =
+        VehicleStateParticleArray.fromDistribution(restored);
+    AssertJUnit.assertEquals(original.getTotalCount(),
+        copy.getTotalCount());
+    AssertJUnit.assertTrue(copy.size() <= original.size());
+    for (int i = 0; i < copy.size(); i++) {
+      final VehicleStateDistribution<GpsObservation> state =
+          copy.getState(i);
+      final PathState pathState = state.getPathStateParam().getValue();
+      boolean found = false;
+      for (int j = 0; j < original.size() && !found; j++) {
+        final VehicleStateDistribution<GpsObservation> other =
+            original.getState(j);
+        final PathState otherPathState =
+            other.getPathStateParam().getValue();
+        found =
+            pathState.getPath().equals(otherPathState.getPath())
+                && pathState.getMotionState().equals(
+                    otherPathState.getMotionState())
+                && state.getObservationCovarianceParam().getValue()
+                    .equals(
+                        other.getObservationCovarianceParam().getValue())
+                && ((ScaledInverseGammaCovDistribution) state
+                    .getOnRoadModelCovarianceParam().getParameterPrior())
+                    .getInverseGammaDist().getShape() == ((ScaledInverseGammaCovDistribution) other
+                    .getOnRoadModelCovarianceParam().getParameterPrior())
+                    .getInverseGammaDist().getShape()
+                && state
+                    .getEdgeTransitionParam()
+                    .getParameterPrior()
+                    .getEdgeMotionTransProbPrior()
+                    .getParameters()
+                    .equals(
+                        other.getEdgeTransitionParam()
+                            .getParameterPrior()
+                            .getEdgeMotionTransProbPrior()
+                            .getParameters());
+      }
+      AssertJUnit.assertTrue(found);
+    }
+
+    trueState = sim.stepSimulation(trueState);
+    filter.update(restored, new TrueObservation(
+        trueState.getObservation(), trueState));
+    AssertJUnit.assertEquals(params.getNumParticles(),
+        VehicleStateParticleArray.fromDistribution(restored)
+            .getTotalCount());
+  }
+}
@@ -0,0 +1,70 @@
+package org.opentrackingtools.model;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.util.TestUtils;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.statslibextensions.statistics.distribution.CountedDataDistribution;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class VehicleStateParticleArrayTest {
+
+  /**
+   * A counted distribution's counts become the particles' weights, and
+   * resampling weights them by their likelihoods as well.
+   */
+  @Test
+  public void testWeightsAndLikelihoods() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Random rng = new Random(parameters.getSeed());
+    final Coordinate coord = new Coordinate(50d, 0d);
+    final GpsObservation obs =
+        new GpsObservation("test", new Date(0l), coord, null, null, null,
+            0, null, new ProjectedCoordinate(null, coord, coord));
+    final VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final VehicleStateDistribution<GpsObservation> state1 =
+        factory.createInitialVehicleState(parameters, graph, obs, rng,
+            PathEdge.nullPathEdge);
+    final VehicleStateDistribution<GpsObservation> state2 =
+        factory.createInitialVehicleState(parameters, graph, obs, rng,
+            PathEdge.nullPathEdge);
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> distribution =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            true);
+    distribution.increment(state1);
+    distribution.increment(state2);
+    distribution.increment(state2);
+    distribution.increment(state2);
+
+    final VehicleStateParticleArray<GpsObservation> particles =
+        VehicleStateParticleArray.fromDistribution(distribution);
+    AssertJUnit.assertEquals(2, particles.size());
+    AssertJUnit.assertEquals(4, particles.getTotalCount());
+    final int index1 = particles.getState(0) == state1 ? 0 : 1;
+    final double[] fractions = particles.getFractions();
+    AssertJUnit.assertEquals(0.25d, fractions[index1], 1e-9d);
+    AssertJUnit.assertEquals(0.75d, fractions[1 - index1], 1e-9d);
+    AssertJUnit.assertEquals(0d, particles.getLogLikelihood(index1), 0d);
+
+    /*
+     * Only the less likely particle can explain the observation.
+     */
+    particles.setLogLikelihood(1 - index1, Double.NEGATIVE_INFINITY);
+    for (final int index : particles.sample(rng, 10)) {
+      AssertJUnit.assertEquals(index1, index);
+    }
+    AssertJUnit.assertEquals(0.25d, particles.getFractions()[index1],
+        1e-9d);
+  }
+
+}
@@ -40,7 +40,8 @@ public class PathStateTest {
                 new Coordinate(0, 30) });
     Mockito.stub(this.graph.edgeHasReverse(e2)).toReturn(false);
     final InferenceGraphEdge ie2_rev =
-        new InferenceGraphEdge(e2.reverse(), e2.reverse(), -2,
+        new InferenceGraphEdge(e2.reverse(), e2.reverse(),
+            TestUtils.getTmpEdgeId(e2.reverse()),
             this.graph);
 
     final Geometry e3 =
@@ -49,7 +50,8 @@ public class PathStateTest {
                 new Coordinate(0, 40) });
     Mockito.stub(this.graph.edgeHasReverse(e3)).toReturn(false);
     final InferenceGraphEdge ie3_rev =
-        new InferenceGraphEdge(e3.reverse(), e3.reverse(), -3,
+        new InferenceGraphEdge(e3.reverse(), e3.reverse(),
+            TestUtils.getTmpEdgeId(e3.reverse()),
             this.graph);
 
     final List<PathEdge> edges2_rev =
@@ -63,6 +65,32 @@ public class PathStateTest {
 
   }
 
+  /**
+   * A clone resolves to the edge at the same index of its own path as the
+   * original, whether or not the original had resolved it.
+   */
+  @Test
+  public void testCloneEdge() {
+    final Path p1 =
+        this.makeTmpPath(false, new Coordinate(0, 10),
+            new Coordinate(0, 20), new Coordinate(0, 30));
+    final PathState resolved =
+        new PathState(p1, VectorFactory.getDenseDefault()
+            .createVector2D(15d, 1d));
+    final PathState unresolved = resolved.clone();
+    AssertJUnit.assertEquals(1, resolved.getEdgeIndex());
+    final PathEdge edge = resolved.getEdge();
+
+    for (final PathState state : Lists.newArrayList(resolved.clone(),
+        unresolved)) {
+      AssertJUnit.assertEquals(1, state.getEdgeIndex());
+      AssertJUnit.assertSame(
+          state.getPath().getPathEdges().get(state.getEdgeIndex()),
+          state.getEdge());
+      AssertJUnit.assertEquals(edge, state.getEdge());
+    }
+  }
+
   @Test
   public void testDistanceBetween1() {
     /*
@@ -661,7 +689,8 @@ public class PathStateTest {
                 new Coordinate(0, 40) });
     Mockito.stub(this.graph.edgeHasReverse(e3)).toReturn(false);
     final InferenceGraphEdge ie3 =
-        new InferenceGraphEdge(e3, e3, 3, this.graph);
+        new InferenceGraphEdge(e3, e3, TestUtils.getTmpEdgeId(e3),
+            this.graph);
 
     final Path p1 =
         this.makeTmpPath(false, new Coordinate(0, 10),
@@ -721,7 +750,8 @@ public class PathStateTest {
                 new Coordinate(0, 40) });
     Mockito.stub(this.graph.edgeHasReverse(e3)).toReturn(false);
     final InferenceGraphEdge ie3_rev =
-        new InferenceGraphEdge(e3.reverse(), e3.reverse(), -3,
+        new InferenceGraphEdge(e3.reverse(), e3.reverse(),
+            TestUtils.getTmpEdgeId(e3.reverse()),
             this.graph);
     new LineSegment(ie3_rev.getGeometry().getCoordinates()[0],
         ie3_rev.getGeometry().getCoordinates()[1]);
@@ -777,6 +807,55 @@ public class PathStateTest {
         this._numericError);
   }
 
+  @Test
+  public void testEdgePathCombine() {
+
+    final Path path1 =
+        this.makeTmpPath(false, new Coordinate(0, 0),
+            new Coordinate(10, 0), new Coordinate(20, 0));
+
+    final Path path2 =
+        this.makeTmpPath(false, new Coordinate(10, 0),
+            new Coordinate(20, 0), new Coordinate(30, 0));
+
+    final Geometry expRes =
+        JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(10, 0), new Coordinate(20, 0),
+                new Coordinate(30, 0) });
+
+    final PathUtils.PathMergeResults res1 =
+        PathUtils.mergePaths(path1, 15d, path2, 5d);
+
+    AssertJUnit.assertTrue(res1.getPath().equalsExact(expRes));
+    AssertJUnit.assertTrue(!res1.isToIsReversed());
+
+    final Path path2Rev =
+        this.makeTmpPath(true, new Coordinate(10, 0),
+            new Coordinate(20, 0), new Coordinate(30, 0));
+
+    final PathUtils.PathMergeResults res2 =
+        PathUtils.mergePaths(path1, 15d, path2Rev, 5d);
+
+    AssertJUnit.assertTrue(res2.getPath().equalsExact(expRes));
+    AssertJUnit.assertTrue(res2.isToIsReversed());
+
+    /*
+     * Past the end of the from-path, only the to-path is left, as with the
+     * geometric merge.
+     */
+    final PathUtils.PathMergeResults res3 =
+        PathUtils.mergePaths(path1, 25d, path2, 5d);
+    final PathUtils.PathMergeResults expRes3 =
+        PathUtils.mergePaths(path1.getGeometry(), 25d,
+            path2.getGeometry(), 5d);
+
+    AssertJUnit.assertTrue(res3.getPath().equalsExact(expRes3.getPath()));
+    AssertJUnit.assertTrue(res3.getPath().equalsExact(path2.getGeometry()));
+    AssertJUnit.assertEquals(expRes3.isToIsReversed(),
+        res3.isToIsReversed());
+  }
+
   @Test
   public void testNonPathCombine1() {
 
@@ -412,4 +412,68 @@ public class PathTest {
 
   }
 
+  /**
+   * A single-edge path has its edge's geometry and id, however short the
+   * edge, while a path built from a list of edges skips degenerate ones.
+   * Either way the deprecated edge id field is filled in on construction.
+   */
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testDegenerateSingleEdge() {
+    final Path tmpPath =
+        TestUtils.makeTmpPath(this.graph, false, new Coordinate(0, 0),
+            new Coordinate(0, 5e-5d));
+    final PathEdge edge = Iterables.getOnlyElement(tmpPath.getPathEdges());
+
+    final Path path = new Path(edge);
+    AssertJUnit.assertTrue(path.isSingleEdge());
+    AssertJUnit.assertEquals(1, path.edgeIds.size());
+    AssertJUnit.assertEquals(2, path.getGeometry().getNumPoints());
+    AssertJUnit.assertEquals(5e-5d, path.getGeometry().getLength(), 1e-12d);
+
+    AssertJUnit.assertFalse(tmpPath.isSingleEdge());
+    AssertJUnit.assertNotNull(tmpPath.edgeIds);
+    AssertJUnit.assertTrue(tmpPath.edgeIds.isEmpty());
+    AssertJUnit.assertTrue(tmpPath.getGeometry().isEmpty());
+  }
+
+  @Test
+  public void testInterning() {
+    final PathInterner interner = new PathInterner();
+
+    final Path path1 =
+        TestUtils.makeTmpPath(this.graph, false, new Coordinate(0, 0),
+            new Coordinate(10, 0), new Coordinate(20, 0));
+    final Path path2 =
+        TestUtils.makeTmpPath(this.graph, false, new Coordinate(0, 0),
+            new Coordinate(10, 0), new Coordinate(20, 0));
+    AssertJUnit.assertNotSame(path1, path2);
+
+    final Path interned1 = interner.intern(path1);
+    AssertJUnit.assertSame(path1, interned1);
+    AssertJUnit.assertSame(interned1, interner.intern(path2));
+
+    /*
+     * Building the same path on the trie returns the interned path,
+     * and extensions share its edges.
+     */
+    PathInterner.Node node = interner.getRoot();
+    for (final PathEdge edge : path2.getPathEdges()) {
+      node =
+          node.extend(edge.getInferenceGraphSegment(),
+              edge.isBackward());
+    }
+    AssertJUnit.assertSame(interned1, node.getPath(false));
+
+    final Path extended =
+        TestUtils.makeTmpPath(this.graph, false, new Coordinate(0, 0),
+            new Coordinate(10, 0), new Coordinate(20, 0),
+            new Coordinate(30, 0));
+    final Path internedExtended = interner.intern(extended);
+    AssertJUnit.assertEquals(extended, internedExtended);
+    AssertJUnit.assertSame(path1.getPathEdges().get(1),
+        internedExtended.getPathEdges().get(1));
+    AssertJUnit.assertEquals(3, interner.getNumNodes());
+  }
+
 }
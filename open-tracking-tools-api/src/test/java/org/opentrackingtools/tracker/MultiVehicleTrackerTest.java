@@ -0,0 +1,225 @@
+package org.opentrackingtools.tracker;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateParticleArray;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+import org.testng.AssertJUnit;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class MultiVehicleTrackerTest {
+
+  /*
+   * The store's directory, if the test made one, which is deleted after it.
+   */
+  protected File directory = null;
+
+  @AfterMethod
+  public void deleteDirectory() {
+    if (this.directory == null) {
+      return;
+    }
+    for (final File file : this.directory.listFiles()) {
+      file.delete();
+    }
+    this.directory.delete();
+    this.directory = null;
+  }
+
+  /**
+   * With a fixed seed, each vehicle's filter gets its own random numbers,
+   * and the same ones each time it's created.
+   */
+  @Test
+  public void testFilterSeeds() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters params =
+        TestUtils.createPlanarGridParameters(10, 30);
+    this.directory = Files.createTempDir();
+    final MultiVehicleTracker tracker =
+        new MultiVehicleTracker(graph, params, new FileVehicleStateStore(
+            this.directory));
+    final Coordinate coord = new Coordinate(0d, 0d);
+    final GpsObservation obsA =
+        new GpsObservation("a", new Date(0l), coord, null, null, null, 0,
+            null, new ProjectedCoordinate(null, coord, coord));
+    final GpsObservation obsB =
+        new GpsObservation("b", new Date(0l), coord, null, null, null, 1,
+            null, new ProjectedCoordinate(null, coord, coord));
+
+    final long drawA =
+        tracker.createFilter(obsA).getRandom().nextLong();
+    AssertJUnit.assertEquals(drawA, tracker.createFilter(obsA).getRandom()
+        .nextLong());
+    AssertJUnit.assertFalse(drawA == tracker.createFilter(obsB)
+        .getRandom().nextLong());
+  }
+
+  /**
+   * Putting a vehicle's checkpoint replaces its previous one, and leaves no
+   * temporary files behind.
+   */
+  @Test
+  public void testStorePut() throws Exception {
+    this.directory = Files.createTempDir();
+    final FileVehicleStateStore store =
+        new FileVehicleStateStore(this.directory);
+    store.put("a", new byte[] { 1, 2, 3 });
+    store.put("a", new byte[] { 4 });
+    AssertJUnit.assertEquals(1, this.directory.listFiles().length);
+    AssertJUnit.assertTrue(Arrays.equals(new byte[] { 4 },
+        store.remove("a")));
+    AssertJUnit.assertEquals(0, this.directory.listFiles().length);
+    AssertJUnit.assertNull(store.remove("a"));
+  }
+
+  /**
+   * A vehicle that goes unobserved while another one moves on is hibernated,
+   * and restored, with all its particles, on its next observation.
+   */
+  @Test
+  public void testHibernation() throws Exception {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters params =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Simulation simA =
+        new Simulation("a", graph, new SimulationParameters(
+            new Coordinate(0d, 0d), new Date(0l), 600,
+            params.getInitialObsFreq(), false, false, params), params);
+    final Simulation simB =
+        new Simulation("b", graph, new SimulationParameters(
+            new Coordinate(200d, 200d), new Date(0l), 600,
+            params.getInitialObsFreq(), false, false, params), params);
+
+    this.directory = Files.createTempDir();
+    final MultiVehicleTracker tracker =
+        new MultiVehicleTracker(graph, params, new FileVehicleStateStore(
+            this.directory));
+    tracker.setInactivityPeriod(2 * params.getInitialObsFreq() * 1000l);
+
+    VehicleStateDistribution<GpsObservation> stateA =
+        simA.computeInitialState();
+    tracker.update(stateA.getObservation());
+    for (int i = 0; i < 2; i++) {
+      stateA = simA.stepSimulation(stateA);
+      tracker.update(stateA.getObservation());
+    }
+
+    VehicleStateDistribution<GpsObservation> stateB =
+        simB.computeInitialState();
+    tracker.update(stateB.getObservation());
+    while (stateB.getObservation().getTimestamp().getTime()
+        - stateA.getObservation().getTimestamp().getTime() < tracker
+          .getInactivityPeriod()) {
+      AssertJUnit.assertEquals(0, tracker.getNumHibernations());
+      stateB = simB.stepSimulation(stateB);
+      tracker.update(stateB.getObservation());
+    }
+
+    AssertJUnit.assertEquals(1, tracker.getNumHibernations());
+    AssertJUnit.assertEquals(1, tracker.getNumActiveVehicles());
+    AssertJUnit.assertEquals(1, tracker.getNumHibernatedVehicles());
+    AssertJUnit.assertEquals(1, this.directory.listFiles().length);
+    AssertJUnit.assertSame(stateA.getObservation(),
+        tracker.getLastObservation("a"));
+
+    stateA = simA.stepSimulation(stateA);
+    final int totalCount =
+        VehicleStateParticleArray.fromDistribution(
+            tracker.update(stateA.getObservation())).getTotalCount();
+
+    AssertJUnit.assertEquals(1, tracker.getNumRestores());
+    AssertJUnit.assertEquals(2, tracker.getNumActiveVehicles());
+    AssertJUnit.assertEquals(0, tracker.getNumHibernatedVehicles());
+    AssertJUnit.assertEquals(0, this.directory.listFiles().length);
+    AssertJUnit.assertEquals(params.getNumParticles(), totalCount);
+
+    tracker.hibernateAll();
+    AssertJUnit.assertEquals(2, tracker.getNumHibernatedVehicles());
+    AssertJUnit.assertEquals(0l, tracker.getEstimatedActiveBytes());
+  }
+
+  /**
+   * Vehicles hibernated before a tracker is shut down are restored, with all
+   * their particles, by a new tracker on the same store, and carry on from
+   * their checkpoints rather than being reinitialized.
+   */
+  @Test
+  public void testResume() throws Exception {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters params =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Simulation simA =
+        new Simulation("a", graph, new SimulationParameters(
+            new Coordinate(0d, 0d), new Date(0l), 600,
+            params.getInitialObsFreq(), false, false, params), params);
+    final Simulation simB =
+        new Simulation("b", graph, new SimulationParameters(
+            new Coordinate(200d, 200d), new Date(0l), 600,
+            params.getInitialObsFreq(), false, false, params), params);
+
+    this.directory = Files.createTempDir();
+    final MultiVehicleTracker tracker =
+        new MultiVehicleTracker(graph, params, new FileVehicleStateStore(
+            this.directory));
+    VehicleStateDistribution<GpsObservation> stateA =
+        simA.computeInitialState();
+    VehicleStateDistribution<GpsObservation> stateB =
+        simB.computeInitialState();
+    tracker.update(stateA.getObservation());
+    tracker.update(stateB.getObservation());
+    for (int i = 0; i < 2; i++) {
+      stateA = simA.stepSimulation(stateA);
+      tracker.update(stateA.getObservation());
+      stateB = simB.stepSimulation(stateB);
+      tracker.update(stateB.getObservation());
+    }
+    tracker.hibernateAll();
+    AssertJUnit.assertEquals(2, this.directory.listFiles().length);
+
+    final MultiVehicleTracker resumed =
+        new MultiVehicleTracker(graph, params, new FileVehicleStateStore(
+            this.directory));
+    AssertJUnit.assertNull(resumed.getLastObservation("a"));
+
+    stateA = simA.stepSimulation(stateA);
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> beliefA =
+        resumed.update(stateA.getObservation());
+    AssertJUnit.assertEquals(1, resumed.getNumRestores());
+    AssertJUnit.assertEquals(1, this.directory.listFiles().length);
+    AssertJUnit.assertEquals(params.getNumParticles(),
+        VehicleStateParticleArray.fromDistribution(beliefA)
+            .getTotalCount());
+    /*
+     * The restored particles were updated, so they're the children of the
+     * checkpointed ones, rather than initial ones.
+     */
+    for (final VehicleStateDistribution<GpsObservation> state : beliefA
+        .getDomain()) {
+      AssertJUnit.assertNotNull(state.getParentState());
+    }
+
+    stateB = simB.stepSimulation(stateB);
+    resumed.update(stateB.getObservation());
+    AssertJUnit.assertEquals(2, resumed.getNumRestores());
+    AssertJUnit.assertEquals(2, resumed.getNumActiveVehicles());
+    AssertJUnit.assertEquals(0, this.directory.listFiles().length);
+    AssertJUnit.assertSame(stateB.getObservation(),
+        resumed.getLastObservation("b"));
+  }
+}
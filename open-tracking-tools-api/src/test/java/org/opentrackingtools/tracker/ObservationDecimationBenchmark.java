@@ -0,0 +1,200 @@
+package org.opentrackingtools.tracker;
+
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Compares filtering a simulated 10 Hz trace over a grid in full with
+ * filtering it through an {@link ObservationDecimator}, decimating and
+ * coalescing: the number of updates, the time they take, and the mean
+ * distance from the weighted particle location to the true one at each
+ * filtered observation. <br>
+ * The simulation only steps in whole seconds, so the true trajectory is
+ * simulated at 1 Hz and interpolated; the GPS errors are autocorrelated, as
+ * they are at high rates. Not part of the test suite; run it directly, with
+ * the minimum intervals, in milliseconds, to try as arguments (e.g.
+ * "1000 3000").
+ */
+public class ObservationDecimationBenchmark {
+
+  private static final int RATE = 10;
+
+  /*
+   * The correlation between consecutive 10 Hz GPS errors.
+   */
+  private static final double ERROR_CORRELATION = 0.95d;
+
+  public static void main(String[] args) throws Exception {
+    final List<String> settings = Lists.newArrayList(args);
+    if (settings.isEmpty()) {
+      settings.add("1000");
+      settings.add("3000");
+    }
+
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(4);
+    final VehicleStateInitialParameters params =
+        TestUtils.createPlanarGridParameters(25, 1);
+    final Simulation sim =
+        new Simulation("decimation-benchmark", graph,
+            new SimulationParameters(new Coordinate(0d, 0d), new Date(0l),
+                600, 1d, false, false, params), params);
+
+    final List<Vector> trueLocations = Lists.newArrayList();
+    VehicleStateDistribution<GpsObservation> trueState =
+        sim.computeInitialState();
+    trueLocations.add(trueState.getPathStateParam().getValue()
+        .getGroundState());
+    while (trueState.getObservation().getTimestamp().getTime() < sim
+        .getSimParameters().getEndTime().getTime()) {
+      trueState = sim.stepSimulation(trueState);
+      trueLocations.add(trueState.getPathStateParam().getValue()
+          .getGroundState());
+    }
+
+    /*
+     * The 10 Hz trace, with AR(1) errors of the observation covariance's
+     * marginal variance.
+     */
+    final Random rng = new Random(params.getSeed());
+    final double sigma = Math.sqrt(params.getObsCov().getElement(0));
+    final double innovation =
+        sigma
+            * Math.sqrt(1d
+                - ObservationDecimationBenchmark.ERROR_CORRELATION
+                * ObservationDecimationBenchmark.ERROR_CORRELATION);
+    final List<GpsObservation> observations = Lists.newArrayList();
+    double errorX = sigma * rng.nextGaussian();
+    double errorY = sigma * rng.nextGaussian();
+    GpsObservation prevObs = null;
+    final int numObs =
+        (trueLocations.size() - 1) * ObservationDecimationBenchmark.RATE
+            + 1;
+    for (int i = 0; i < numObs; i++) {
+      final long time = i * 1000l / ObservationDecimationBenchmark.RATE;
+      final Vector location =
+          ObservationDecimationBenchmark.getTrueLocation(trueLocations,
+              time);
+      final Coordinate obsCoord =
+          new Coordinate(location.getElement(0) + errorX,
+              location.getElement(2) + errorY);
+      final GpsObservation obs =
+          new GpsObservation("decimation-benchmark", new Date(time),
+              obsCoord, null, null, null, i, prevObs,
+              new ProjectedCoordinate(null, obsCoord, obsCoord));
+      observations.add(obs);
+      prevObs = obs;
+      errorX =
+          ObservationDecimationBenchmark.ERROR_CORRELATION * errorX
+              + innovation * rng.nextGaussian();
+      errorY =
+          ObservationDecimationBenchmark.ERROR_CORRELATION * errorY
+              + innovation * rng.nextGaussian();
+    }
+
+    ObservationDecimationBenchmark.run("full rate", graph, params,
+        observations, trueLocations, null);
+    for (final String setting : settings) {
+      final long minInterval = Long.parseLong(setting);
+      ObservationDecimationBenchmark.run("decimated, minInterval="
+          + setting, graph, params, observations, trueLocations,
+          new DecimationPolicy(minInterval, 30000l, 20d, 30d, false));
+      ObservationDecimationBenchmark.run("coalesced, minInterval="
+          + setting, graph, params, observations, trueLocations,
+          new DecimationPolicy(minInterval, 30000l, 20d, 30d, true));
+    }
+  }
+
+  /**
+   * The true ground state at the given time, interpolated between the 1 Hz
+   * simulated ones.
+   */
+  private static Vector getTrueLocation(List<Vector> trueLocations,
+    long time) {
+    final int index = (int) (time / 1000l);
+    if (index >= trueLocations.size() - 1) {
+      return trueLocations.get(trueLocations.size() - 1);
+    }
+    final double fraction = (time % 1000l) / 1000d;
+    return trueLocations.get(index).scale(1d - fraction)
+        .plus(trueLocations.get(index + 1).scale(fraction));
+  }
+
+  private static void run(String name, InferenceGraph graph,
+    VehicleStateInitialParameters params,
+    List<GpsObservation> observations, List<Vector> trueLocations,
+    DecimationPolicy policy) {
+
+    final List<GpsObservation> filtered = Lists.newArrayList();
+    if (policy != null) {
+      final ObservationDecimator decimator =
+          new ObservationDecimator(policy);
+      for (final GpsObservation obs : observations) {
+        final GpsObservation released = decimator.offer(obs);
+        if (released != null) {
+          filtered.add(released);
+        }
+      }
+    } else {
+      filtered.addAll(observations);
+    }
+
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            filtered.get(0),
+            graph,
+            new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>(),
+            params, false, new Random(params.getSeed()));
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        filter.createInitialLearnedObject();
+
+    long time = 0l;
+    double locationError = 0d;
+    for (int i = 1; i < filtered.size(); i++) {
+      final GpsObservation obs = filtered.get(i);
+      final long start = System.nanoTime();
+      filter.update(particles, obs);
+      time += System.nanoTime() - start;
+
+      final Vector trueLocation =
+          ObservationDecimationBenchmark.getTrueLocation(trueLocations, obs
+              .getTimestamp().getTime());
+      double meanX = 0d;
+      double meanY = 0d;
+      for (final VehicleStateDistribution<GpsObservation> state : particles
+          .getDomain()) {
+        final double weight = particles.getFraction(state);
+        final Vector location =
+            state.getPathStateParam().getValue().getGroundState();
+        meanX += weight * location.getElement(0);
+        meanY += weight * location.getElement(2);
+      }
+      locationError +=
+          Math.hypot(meanX - trueLocation.getElement(0), meanY
+              - trueLocation.getElement(2));
+    }
+
+    final int updates = filtered.size() - 1;
+    System.out.println(name + ": " + updates + " updates of "
+        + (observations.size() - 1) + " observations, "
+        + (time / 1000000l) + " ms (" + (time / updates / 1000l)
+        + " us/update), mean location error="
+        + (locationError / updates));
+  }
+}
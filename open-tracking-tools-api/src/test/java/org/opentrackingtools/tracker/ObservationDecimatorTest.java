@@ -0,0 +1,221 @@
+package org.opentrackingtools.tracker;
+
+import java.util.Date;
+import java.util.List;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class ObservationDecimatorTest {
+
+  private static GpsObservation createObservation(String sourceId,
+    long time, double x, double y, GpsObservation prevObs) {
+    final Coordinate coord = new Coordinate(x, y);
+    return new GpsObservation(sourceId, new Date(time), coord, null, null,
+        null, (int) time, prevObs, new ProjectedCoordinate(null, coord,
+            coord));
+  }
+
+  /**
+   * Nothing is released sooner than the minimum interval after the last
+   * release, however far the vehicle moved, and something is once the
+   * maximum interval has passed, however little it moved. The released
+   * observation is linked to the last released one, not to its own
+   * predecessor.
+   */
+  @Test
+  public void testIntervals() {
+    final ObservationDecimator decimator =
+        new ObservationDecimator(new DecimationPolicy(1000l, 5000l, 1e6d,
+            181d, false));
+
+    final GpsObservation first =
+        ObservationDecimatorTest.createObservation("a", 0l, 0d, 0d, null);
+    AssertJUnit.assertSame(first, decimator.offer(first));
+    GpsObservation prevObs =
+        ObservationDecimatorTest.createObservation("a", 500l, 1e7d, 0d,
+            first);
+    AssertJUnit.assertNull(decimator.offer(prevObs));
+    for (long time = 1000l; time < 5000l; time += 1000l) {
+      prevObs =
+          ObservationDecimatorTest.createObservation("a", time, 0d, 0d,
+              prevObs);
+      AssertJUnit.assertNull(decimator.offer(prevObs));
+    }
+
+    final GpsObservation released =
+        decimator.offer(ObservationDecimatorTest.createObservation("a",
+            5000l, 0d, 0d, prevObs));
+    AssertJUnit.assertNotNull(released);
+    AssertJUnit.assertEquals(5000l, released.getTimestamp().getTime());
+    AssertJUnit.assertSame(first, released.getPreviousObservation());
+    AssertJUnit.assertEquals(7l, decimator.getNumOffered());
+    AssertJUnit.assertEquals(2l, decimator.getNumReleased());
+  }
+
+  /**
+   * Past the minimum interval, an observation is released once it's the
+   * minimum distance from the last released one.
+   */
+  @Test
+  public void testMinDistance() {
+    final ObservationDecimator decimator =
+        new ObservationDecimator(new DecimationPolicy(1000l, 60000l, 20d,
+            181d, false));
+
+    final GpsObservation first =
+        ObservationDecimatorTest.createObservation("a", 0l, 0d, 0d, null);
+    AssertJUnit.assertSame(first, decimator.offer(first));
+    final GpsObservation near =
+        ObservationDecimatorTest.createObservation("a", 1000l, 10d, 0d,
+            first);
+    AssertJUnit.assertNull(decimator.offer(near));
+    final GpsObservation far =
+        ObservationDecimatorTest.createObservation("a", 2000l, 25d, 0d,
+            near);
+    final GpsObservation released = decimator.offer(far);
+    AssertJUnit.assertNotNull(released);
+    AssertJUnit.assertEquals(25d, released.getObsProjected().x, 0d);
+    AssertJUnit.assertSame(first, released.getPreviousObservation());
+  }
+
+  /**
+   * Once there's a heading between released observations, an observation
+   * far enough from the last released one to have a heading is released
+   * when it turns by the minimum heading change, and held when it keeps on.
+   */
+  @Test
+  public void testHeadingChange() {
+    final ObservationDecimator decimator =
+        new ObservationDecimator(new DecimationPolicy(1000l, 60000l, 50d,
+            30d, false));
+
+    final GpsObservation first =
+        ObservationDecimatorTest.createObservation("a", 0l, 0d, 0d, null);
+    AssertJUnit.assertSame(first, decimator.offer(first));
+    /*
+     * With no heading yet, a turn alone doesn't release anything.
+     */
+    final GpsObservation turned =
+        ObservationDecimatorTest.createObservation("a", 1000l, 0d, 10d,
+            first);
+    AssertJUnit.assertNull(decimator.offer(turned));
+    final GpsObservation east =
+        ObservationDecimatorTest.createObservation("a", 2000l, 60d, 0d,
+            turned);
+    AssertJUnit.assertNotNull(decimator.offer(east));
+
+    /*
+     * Too short a displacement to have a heading.
+     */
+    final GpsObservation jitter =
+        ObservationDecimatorTest.createObservation("a", 3000l, 60d, 2d,
+            east);
+    AssertJUnit.assertNull(decimator.offer(jitter));
+    final GpsObservation north =
+        ObservationDecimatorTest.createObservation("a", 4000l, 60d, 10d,
+            jitter);
+    AssertJUnit.assertNotNull(decimator.offer(north));
+    final GpsObservation stillNorth =
+        ObservationDecimatorTest.createObservation("a", 5000l, 61d, 20d,
+            north);
+    AssertJUnit.assertNull(decimator.offer(stillNorth));
+  }
+
+  /**
+   * When coalescing, the released observation is the mean, in position and
+   * time, of the ones held since the last release, including itself.
+   */
+  @Test
+  public void testCoalesce() {
+    final ObservationDecimator decimator =
+        new ObservationDecimator(new DecimationPolicy(3000l, 3000l, 1e6d,
+            181d, true));
+
+    final GpsObservation first =
+        ObservationDecimatorTest.createObservation("a", 0l, 0d, 0d, null);
+    AssertJUnit.assertSame(first, decimator.offer(first));
+    GpsObservation prevObs = first;
+    final double[][] points = { { 10d, 0d }, { 20d, 2d }, { 30d, 4d } };
+    GpsObservation released = null;
+    for (int i = 0; i < points.length; i++) {
+      prevObs =
+          ObservationDecimatorTest.createObservation("a",
+              (i + 1) * 1000l, points[i][0], points[i][1], prevObs);
+      released = decimator.offer(prevObs);
+    }
+
+    AssertJUnit.assertNotNull(released);
+    AssertJUnit.assertNotSame(prevObs, released);
+    AssertJUnit.assertEquals(2000l, released.getTimestamp().getTime());
+    AssertJUnit.assertEquals(20d, released.getObsProjected().x, 1e-9d);
+    AssertJUnit.assertEquals(2d, released.getObsProjected().y, 1e-9d);
+    AssertJUnit.assertEquals(20d, released.getObsCoordsLatLon().x, 1e-9d);
+    AssertJUnit.assertEquals(2d, released.getObsCoordsLatLon().y, 1e-9d);
+    AssertJUnit.assertEquals(prevObs.getRecordNumber(),
+        released.getRecordNumber());
+    AssertJUnit.assertSame(first, released.getPreviousObservation());
+  }
+
+  /**
+   * Flushing releases a vehicle's latest held observation, linked to its
+   * last released one, and flushing them all does so for every vehicle
+   * that has any held.
+   */
+  @Test
+  public void testFlush() {
+    final ObservationDecimator decimator =
+        new ObservationDecimator(new DecimationPolicy(1000l, 60000l, 1e6d,
+            181d, false));
+
+    final GpsObservation first =
+        ObservationDecimatorTest.createObservation("a", 0l, 0d, 0d, null);
+    decimator.offer(first);
+    GpsObservation prevObs = first;
+    for (long time = 1000l; time <= 2000l; time += 1000l) {
+      prevObs =
+          ObservationDecimatorTest.createObservation("a", time, 0d, 0d,
+              prevObs);
+      AssertJUnit.assertNull(decimator.offer(prevObs));
+    }
+    final GpsObservation flushed = decimator.flush("a");
+    AssertJUnit.assertNotNull(flushed);
+    AssertJUnit.assertEquals(2000l, flushed.getTimestamp().getTime());
+    AssertJUnit.assertSame(first, flushed.getPreviousObservation());
+    AssertJUnit.assertNull(decimator.flush("a"));
+    AssertJUnit.assertNull(decimator.flush("b"));
+
+    AssertJUnit.assertNull(decimator.offer(ObservationDecimatorTest
+        .createObservation("a", 3000l, 0d, 0d, flushed)));
+    final GpsObservation firstB =
+        ObservationDecimatorTest.createObservation("b", 0l, 0d, 0d, null);
+    decimator.offer(firstB);
+    AssertJUnit.assertNull(decimator.offer(ObservationDecimatorTest
+        .createObservation("b", 1000l, 0d, 0d, firstB)));
+    decimator.offer(ObservationDecimatorTest.createObservation("c", 0l,
+        0d, 0d, null));
+
+    final List<Long> times = Lists.newArrayList();
+    final List<String> sourceIds = Lists.newArrayList();
+    for (final GpsObservation obs : decimator.flushAll()) {
+      times.add(obs.getTimestamp().getTime());
+      sourceIds.add(obs.getSourceId());
+    }
+    AssertJUnit.assertEquals(2, sourceIds.size());
+    AssertJUnit.assertTrue(sourceIds.contains("a"));
+    AssertJUnit.assertTrue(sourceIds.contains("b"));
+    AssertJUnit.assertEquals(3000l, times.get(sourceIds.indexOf("a"))
+        .longValue());
+    AssertJUnit.assertEquals(1000l, times.get(sourceIds.indexOf("b"))
+        .longValue());
+    AssertJUnit.assertTrue(decimator.flushAll().isEmpty());
+    AssertJUnit.assertEquals(7l, decimator.getNumOffered());
+    AssertJUnit.assertEquals(6l, decimator.getNumReleased());
+  }
+
+}
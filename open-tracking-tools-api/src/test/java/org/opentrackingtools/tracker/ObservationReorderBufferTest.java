@@ -0,0 +1,147 @@
+package org.opentrackingtools.tracker;
+
+import java.util.Date;
+import java.util.List;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class ObservationReorderBufferTest {
+
+  private static GpsObservation createObservation(String sourceId,
+    long time, GpsObservation prevObs) {
+    final Coordinate coord = new Coordinate(time, 0d);
+    return new GpsObservation(sourceId, new Date(time), coord, null, null,
+        null, (int) time, prevObs, new ProjectedCoordinate(null, coord,
+            coord));
+  }
+
+  /**
+   * Observations that arrive out of order, within the watermark delay, are
+   * released in time order, each linked to the one released before it
+   * rather than to the one that arrived before it; one that arrives after
+   * the watermark has passed it is dropped.
+   */
+  @Test
+  public void testReorder() {
+    final ObservationReorderBuffer buffer =
+        new ObservationReorderBuffer(2000l);
+    final List<Long> releasedTimes = Lists.newArrayList();
+
+    /*
+     * The arrivals are linked in arrival order, starting from a stale
+     * observation that the buffer should ignore.
+     */
+    GpsObservation arrived =
+        ObservationReorderBufferTest.createObservation("a", 0l, null);
+    GpsObservation lastReleased = null;
+    for (final long time : new long[] { 1000l, 3000l, 2000l, 4000l,
+        6000l, 5000l, 8000l, 3500l }) {
+      arrived =
+          ObservationReorderBufferTest.createObservation("a", time,
+              arrived);
+      /*
+       * Links are dropped by the next call, so each call's released
+       * observations are checked before it.
+       */
+      for (final GpsObservation obs : buffer.offer(arrived)) {
+        AssertJUnit.assertSame(lastReleased, obs.getPreviousObservation());
+        lastReleased = obs;
+        releasedTimes.add(obs.getTimestamp().getTime());
+      }
+    }
+    AssertJUnit.assertEquals(2, buffer.getNumLate());
+    AssertJUnit.assertEquals(1, buffer.getNumDropped());
+    AssertJUnit.assertEquals(1, buffer.getNumBuffered());
+
+    for (final GpsObservation obs : buffer.flush("a")) {
+      AssertJUnit.assertSame(lastReleased, obs.getPreviousObservation());
+      lastReleased = obs;
+      releasedTimes.add(obs.getTimestamp().getTime());
+    }
+    AssertJUnit.assertEquals(0, buffer.getNumBuffered());
+
+    AssertJUnit.assertEquals(Lists.newArrayList(1000l, 2000l, 3000l,
+        4000l, 5000l, 6000l, 8000l), releasedTimes);
+  }
+
+  /**
+   * A vehicle that stops reporting has its last observation released once
+   * another vehicle has moved on by the watermark delay, rather than at the
+   * end of the trace, and the released observations are in time order over
+   * both vehicles.
+   */
+  @Test
+  public void testParkedVehicle() {
+    final ObservationReorderBuffer buffer =
+        new ObservationReorderBuffer(2000l);
+    AssertJUnit.assertTrue(buffer.offer(
+        ObservationReorderBufferTest.createObservation("parked", 1000l,
+            null)).isEmpty());
+
+    final List<String> releasedIds = Lists.newArrayList();
+    final List<Long> releasedTimes = Lists.newArrayList();
+    for (long time = 0l; time <= 4000l; time += 1000l) {
+      for (final GpsObservation obs : buffer.offer(ObservationReorderBufferTest
+          .createObservation("moving", time, null))) {
+        releasedIds.add(obs.getSourceId());
+        releasedTimes.add(obs.getTimestamp().getTime());
+      }
+    }
+    AssertJUnit.assertEquals(Lists.newArrayList("moving", "moving",
+        "parked", "moving"), releasedIds);
+    AssertJUnit.assertEquals(Lists.newArrayList(0l, 1000l, 1000l, 2000l),
+        releasedTimes);
+    AssertJUnit.assertEquals(2, buffer.getNumBuffered());
+    AssertJUnit.assertEquals(2000l, buffer.getWatermark());
+
+    /*
+     * The parked vehicle's observation has been released, so an earlier
+     * one can't be put in order.
+     */
+    AssertJUnit.assertTrue(buffer.offer(
+        ObservationReorderBufferTest.createObservation("parked", 500l,
+            null)).isEmpty());
+    AssertJUnit.assertEquals(1, buffer.getNumDropped());
+  }
+
+  /**
+   * Flushing them all releases every vehicle's held observations in time
+   * order, each linked to its own vehicle's last released one.
+   */
+  @Test
+  public void testFlushAll() {
+    final ObservationReorderBuffer buffer =
+        new ObservationReorderBuffer(10000l);
+    final long[] times = { 3000l, 1000l, 2000l, 5000l, 4000l };
+    final String[] sourceIds = { "a", "b", "a", "b", "c" };
+    for (int i = 0; i < times.length; i++) {
+      AssertJUnit.assertTrue(buffer.offer(
+          ObservationReorderBufferTest.createObservation(sourceIds[i],
+              times[i], null)).isEmpty());
+    }
+
+    final List<Long> releasedTimes = Lists.newArrayList();
+    final List<GpsObservation> released = buffer.flushAll();
+    for (final GpsObservation obs : released) {
+      releasedTimes.add(obs.getTimestamp().getTime());
+    }
+    AssertJUnit.assertEquals(Lists.newArrayList(1000l, 2000l, 3000l,
+        4000l, 5000l), releasedTimes);
+    AssertJUnit.assertNull(released.get(0).getPreviousObservation());
+    AssertJUnit.assertNull(released.get(1).getPreviousObservation());
+    AssertJUnit.assertSame(released.get(1), released.get(2)
+        .getPreviousObservation());
+    AssertJUnit.assertNull(released.get(3).getPreviousObservation());
+    AssertJUnit.assertSame(released.get(0), released.get(4)
+        .getPreviousObservation());
+    AssertJUnit.assertEquals(0, buffer.getNumBuffered());
+    AssertJUnit.assertTrue(buffer.flushAll().isEmpty());
+  }
+
+}
@@ -0,0 +1,134 @@
+package org.opentrackingtools.updater;
+
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLPathSamplingFilter;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+import org.opentrackingtools.util.TrueObservation;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Compares the exhaustive path search in
+ * {@link VehicleStatePLPathSamplingUpdater} with beam-limited ones, on the
+ * same simulated trace over a grid: time per update, the mean distance from
+ * the weighted particle location to the true one, and the fraction of
+ * particle weight on the true edge. Not part of the test suite; run it
+ * directly, with the beam widths and log-likelihood cutoffs to try as
+ * arguments (e.g. "8:10 4:5").
+ */
+public class PathSamplingBeamBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final List<String> settings = Lists.newArrayList(args);
+    if (settings.isEmpty()) {
+      settings.add("16:20");
+      settings.add("4:5");
+    }
+
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(4);
+    final VehicleStateInitialParameters simParams =
+        TestUtils.createPlanarGridParameters(25, 30);
+    final Simulation sim =
+        new Simulation("beam-benchmark", graph, new SimulationParameters(
+            new Coordinate(0d, 0d), new Date(0l), 3600,
+            simParams.getInitialObsFreq(), false, false, simParams),
+            simParams);
+
+    /*
+     * Simulate the trace once, so every setting sees the same one.
+     */
+    final List<VehicleStateDistribution<GpsObservation>> trueStates =
+        Lists.newArrayList();
+    VehicleStateDistribution<GpsObservation> trueState =
+        sim.computeInitialState();
+    trueStates.add(trueState);
+    while (trueState.getObservation().getTimestamp().getTime() < sim
+        .getSimParameters().getEndTime().getTime()) {
+      trueState = sim.stepSimulation(trueState);
+      trueStates.add(trueState);
+    }
+
+    PathSamplingBeamBenchmark.run("exhaustive", graph,
+        TestUtils.createPlanarGridParameters(25, 30), trueStates);
+    for (final String setting : settings) {
+      final String[] parts = setting.split(":");
+      final VehicleStateInitialParameters params =
+          TestUtils.createPlanarGridParameters(25, 30);
+      params.setPathSearchBeamWidth(Integer.parseInt(parts[0]));
+      params.setPathSearchLogLikelihoodCutoff(Double
+          .parseDouble(parts[1]));
+      PathSamplingBeamBenchmark.run("beam=" + parts[0] + ", cutoff="
+          + parts[1], graph, params, trueStates);
+    }
+  }
+
+  private static void run(String name, InferenceGraph graph,
+    VehicleStateInitialParameters params,
+    List<VehicleStateDistribution<GpsObservation>> trueStates) {
+
+    final VehicleStateDistribution<GpsObservation> initialState =
+        trueStates.get(0);
+    final VehicleStatePLPathSamplingFilter<GpsObservation, InferenceGraph> filter =
+        new VehicleStatePLPathSamplingFilter<GpsObservation, InferenceGraph>(
+            new TrueObservation(initialState.getObservation(),
+                initialState),
+            graph,
+            new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>(),
+            params, false, new Random(params.getSeed()));
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        filter.getUpdater().createInitialParticles(
+            params.getNumParticles());
+
+    long time = 0l;
+    double locationError = 0d;
+    double onTrueEdge = 0d;
+    for (int i = 1; i < trueStates.size(); i++) {
+      final VehicleStateDistribution<GpsObservation> trueState =
+          trueStates.get(i);
+      final long start = System.nanoTime();
+      filter.update(particles, new TrueObservation(
+          trueState.getObservation(), trueState));
+      time += System.nanoTime() - start;
+
+      final PathState truePathState =
+          trueState.getPathStateParam().getValue();
+      final Vector trueLocation = truePathState.getGroundState();
+      double meanX = 0d;
+      double meanY = 0d;
+      for (final VehicleStateDistribution<GpsObservation> state : particles
+          .getDomain()) {
+        final double weight = particles.getFraction(state);
+        final PathState pathState = state.getPathStateParam().getValue();
+        final Vector location = pathState.getGroundState();
+        meanX += weight * location.getElement(0);
+        meanY += weight * location.getElement(2);
+        if (pathState.getEdge().getInferenceGraphSegment()
+            .equals(truePathState.getEdge().getInferenceGraphSegment())) {
+          onTrueEdge += weight;
+        }
+      }
+      locationError +=
+          Math.hypot(meanX - trueLocation.getElement(0), meanY
+              - trueLocation.getElement(2));
+    }
+
+    final int updates = trueStates.size() - 1;
+    System.out.println(name + ": " + (time / updates / 1000l)
+        + " us/update, mean location error=" + (locationError / updates)
+        + ", weight on true edge=" + (onTrueEdge / updates));
+  }
+}
@@ -0,0 +1,160 @@
+package org.opentrackingtools.updater;
+
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.util.GeoUtils;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+import org.opentrackingtools.util.TestUtils;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Compares the {@link VehicleStatePLUpdater} with and without its stationary
+ * fast path, on the same simulated trace over a grid, which ends with the
+ * vehicle parked for a while (noisy observations around its last true
+ * location, reporting no speed): time per update, overall and while parked,
+ * the mean distance from the weighted particle location to the true one, and
+ * how often the fast path fired. Not part of the test suite; run it
+ * directly, with the noise multiples to try as arguments (e.g. "2 3").
+ */
+public class StationaryUpdateBenchmark {
+
+  private static final int NUM_PARKED = 60;
+
+  public static void main(String[] args) throws Exception {
+    final List<String> settings = Lists.newArrayList(args);
+    if (settings.isEmpty()) {
+      settings.add("3");
+    }
+
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(4);
+    final VehicleStateInitialParameters simParams =
+        TestUtils.createPlanarGridParameters(25, 30);
+    final Simulation sim =
+        new Simulation("stationary-benchmark", graph,
+            new SimulationParameters(new Coordinate(0d, 0d), new Date(0l),
+                1800, simParams.getInitialObsFreq(), false, false,
+                simParams), simParams);
+
+    /*
+     * Simulate the trace once, so every setting sees the same one.
+     */
+    final List<GpsObservation> observations = Lists.newArrayList();
+    final List<Vector> trueLocations = Lists.newArrayList();
+    VehicleStateDistribution<GpsObservation> trueState =
+        sim.computeInitialState();
+    observations.add(trueState.getObservation());
+    trueLocations.add(trueState.getPathStateParam().getValue()
+        .getGroundState());
+    while (trueState.getObservation().getTimestamp().getTime() < sim
+        .getSimParameters().getEndTime().getTime()) {
+      trueState = sim.stepSimulation(trueState);
+      observations.add(trueState.getObservation());
+      trueLocations.add(trueState.getPathStateParam().getValue()
+          .getGroundState());
+    }
+    final int numMoving = observations.size();
+
+    GpsObservation prevObs = trueState.getObservation();
+    for (int i = 0; i < StationaryUpdateBenchmark.NUM_PARKED; i++) {
+      final Vector obsPoint =
+          sim.sampleObservation(trueState.getPathStateParam().getValue(),
+              trueState.getObservationCovarianceParam().getValue());
+      final Coordinate obsCoord = GeoUtils.getCoordinates(obsPoint);
+      final GpsObservation obs =
+          new GpsObservation(prevObs.getSourceId(), new Date(prevObs
+              .getTimestamp().getTime()
+              + Math.round(simParams.getInitialObsFreq()) * 1000), obsCoord,
+              0d, null, null, prevObs.getRecordNumber() + 1, prevObs,
+              new ProjectedCoordinate(null, obsCoord, obsCoord));
+      observations.add(obs);
+      trueLocations.add(trueState.getPathStateParam().getValue()
+          .getGroundState());
+      prevObs = obs;
+    }
+
+    StationaryUpdateBenchmark.run("no fast path", graph,
+        TestUtils.createPlanarGridParameters(25, 30), observations,
+        trueLocations, numMoving);
+    for (final String setting : settings) {
+      final VehicleStateInitialParameters params =
+          TestUtils.createPlanarGridParameters(25, 30);
+      params.setStationaryObsNoiseMultiple(Double.parseDouble(setting));
+      StationaryUpdateBenchmark.run("noise multiple=" + setting, graph,
+          params, observations, trueLocations, numMoving);
+    }
+  }
+
+  private static void run(String name, InferenceGraph graph,
+    VehicleStateInitialParameters params,
+    List<GpsObservation> observations, List<Vector> trueLocations,
+    int numMoving) {
+
+    final VehicleStatePLFilter<GpsObservation, InferenceGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, InferenceGraph>(
+            observations.get(0),
+            graph,
+            new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>(),
+            params, false, new Random(params.getSeed()));
+    final VehicleStatePLUpdater<GpsObservation, InferenceGraph> updater =
+        (VehicleStatePLUpdater<GpsObservation, InferenceGraph>) filter
+            .getUpdater();
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        updater.createInitialParticles(params.getNumParticles());
+
+    long time = 0l;
+    long parkedTime = 0l;
+    double locationError = 0d;
+    double parkedLocationError = 0d;
+    for (int i = 1; i < observations.size(); i++) {
+      final long start = System.nanoTime();
+      filter.update(particles, observations.get(i));
+      final long elapsed = System.nanoTime() - start;
+
+      final Vector trueLocation = trueLocations.get(i);
+      double meanX = 0d;
+      double meanY = 0d;
+      for (final VehicleStateDistribution<GpsObservation> state : particles
+          .getDomain()) {
+        final double weight = particles.getFraction(state);
+        final Vector location =
+            state.getPathStateParam().getValue().getGroundState();
+        meanX += weight * location.getElement(0);
+        meanY += weight * location.getElement(2);
+      }
+      final double error =
+          Math.hypot(meanX - trueLocation.getElement(0), meanY
+              - trueLocation.getElement(2));
+
+      time += elapsed;
+      locationError += error;
+      if (i >= numMoving) {
+        parkedTime += elapsed;
+        parkedLocationError += error;
+      }
+    }
+
+    final int updates = observations.size() - 1;
+    final int parkedUpdates = observations.size() - numMoving;
+    System.out.println(name + ": " + (time / updates / 1000l)
+        + " us/update (" + (parkedTime / parkedUpdates / 1000l)
+        + " parked), mean location error=" + (locationError / updates)
+        + " (" + (parkedLocationError / parkedUpdates)
+        + " parked), stationary particle updates="
+        + updater.getNumStationaryUpdates() + "/"
+        + updater.getNumUpdates());
+  }
+}
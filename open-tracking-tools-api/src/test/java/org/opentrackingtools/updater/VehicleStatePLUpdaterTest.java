@@ -2,6 +2,7 @@ package org.opentrackingtools.updater;
 
 import gov.sandia.cognition.math.LogMath;
 import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
 import java.util.Date;
 import java.util.List;
@@ -18,6 +19,7 @@ import org.opentrackingtools.model.ProjectedCoordinate;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.util.TestUtils;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
@@ -126,4 +128,235 @@ public class VehicleStatePLUpdaterTest {
         offRoadLogWeightTotal, 1e-5);
   }
 
+  private static GpsObservation createObservation(double x, double y,
+    Double velocity, GpsObservation prevObs) {
+    return VehicleStatePLUpdaterTest.createObservation(x, y, velocity,
+        prevObs, 30000l);
+  }
+
+  private static GpsObservation createObservation(double x, double y,
+    Double velocity, GpsObservation prevObs, long timeDiff) {
+    final Coordinate coord = new Coordinate(x, y);
+    final long time =
+        prevObs != null ? prevObs.getTimestamp().getTime() + timeDiff : 0l;
+    return new GpsObservation("test", new Date(time), coord, velocity,
+        null, null, prevObs != null ? prevObs.getRecordNumber() + 1 : 0,
+        prevObs, new ProjectedCoordinate(null, coord, coord));
+  }
+
+  /**
+   * A copy of the state, for the given observation.
+   */
+  private static VehicleStateDistribution<GpsObservation> withObservation(
+    VehicleStateDistribution<GpsObservation> state, GpsObservation obs) {
+    final VehicleStateDistribution<GpsObservation> result = state.clone();
+    result.setObservation(obs);
+    return result;
+  }
+
+  /**
+   * The initial particles are all derived from one off-road state, so they
+   * share its covariance parameters, but each has its own motion state.
+   */
+  @Test
+  public void testInitialParticlesShareParameters() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Random rng = new Random(parameters.getSeed());
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final VehicleStatePLUpdater<GpsObservation, InferenceGraph> updater =
+        new VehicleStatePLUpdater<GpsObservation, InferenceGraph>(
+            VehicleStatePLUpdaterTest.createObservation(50d, 0d, null,
+                null), graph, factory, parameters, rng);
+    final VehicleStateDistribution<GpsObservation> offRoadState =
+        updater.getInitialOffRoadState();
+
+    final List<VehicleStateDistribution<GpsObservation>> particles =
+        Lists.newArrayList(updater.createInitialParticles(10).getDomain());
+    AssertJUnit.assertFalse(particles.isEmpty());
+    for (final VehicleStateDistribution<GpsObservation> particle : particles) {
+      AssertJUnit.assertSame(offRoadState.getObservationCovarianceParam(),
+          particle.getObservationCovarianceParam());
+      AssertJUnit.assertSame(offRoadState.getOnRoadModelCovarianceParam(),
+          particle.getOnRoadModelCovarianceParam());
+      AssertJUnit.assertSame(
+          offRoadState.getOffRoadModelCovarianceParam(),
+          particle.getOffRoadModelCovarianceParam());
+      AssertJUnit.assertNotSame(offRoadState.getMotionStateParam(),
+          particle.getMotionStateParam());
+    }
+  }
+
+  /**
+   * An observation is only taken to be of a stationary vehicle when the
+   * check is on, it has a predecessor, it's within the noise multiple of
+   * where the vehicle is predicted to be, and it doesn't report moving.
+   */
+  @Test
+  public void testIsStationary() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(10, 30);
+    final Random rng = new Random(parameters.getSeed());
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final GpsObservation prevObs =
+        VehicleStatePLUpdaterTest.createObservation(50d, 0d, null, null);
+    final VehicleStatePLUpdater<GpsObservation, InferenceGraph> updater =
+        new VehicleStatePLUpdater<GpsObservation, InferenceGraph>(
+            prevObs, graph, factory, parameters, rng);
+    /*
+     * A vehicle at the previous observation, with no velocity.
+     */
+    final VehicleStateDistribution<GpsObservation> state =
+        factory.createInitialVehicleState(parameters, graph, prevObs, rng,
+            PathEdge.nullPathEdge);
+
+    /*
+     * The displacement's standard deviation is sqrt(2 * 70) ~ 11.8m per
+     * axis.
+     */
+    final VehicleStateDistribution<GpsObservation> nearState =
+        VehicleStatePLUpdaterTest.withObservation(state,
+            VehicleStatePLUpdaterTest.createObservation(55d, 3d, null,
+                prevObs));
+    AssertJUnit.assertFalse(updater.isStationary(nearState));
+
+    parameters.setStationaryObsNoiseMultiple(3d);
+    AssertJUnit.assertTrue(updater.isStationary(nearState));
+
+    AssertJUnit.assertFalse(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(state, VehicleStatePLUpdaterTest
+            .createObservation(150d, 0d, null, prevObs))));
+    AssertJUnit.assertFalse(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(state, VehicleStatePLUpdaterTest
+            .createObservation(55d, 3d, 5d, prevObs))));
+    AssertJUnit.assertTrue(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(state, VehicleStatePLUpdaterTest
+            .createObservation(55d, 3d, 0.2d, prevObs))));
+    AssertJUnit.assertFalse(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(state, VehicleStatePLUpdaterTest
+            .createObservation(55d, 3d, null, null))));
+  }
+
+  /**
+   * A vehicle that creeps along at 1m/s, observed every second, with no
+   * reported speed, moves less than the observation noise between
+   * observations, but it isn't taken to be stationary: not while it's
+   * estimated to be moving, nor, once it's been taken to be stationary,
+   * when it's well away from where it stopped.
+   */
+  @Test
+  public void testIsStationarySlowVehicle() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(10, 1);
+    parameters.setStationaryObsNoiseMultiple(3d);
+    final Random rng = new Random(parameters.getSeed());
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final GpsObservation firstObs =
+        VehicleStatePLUpdaterTest.createObservation(49d, 0d, null, null,
+            1000l);
+    final GpsObservation prevObs =
+        VehicleStatePLUpdaterTest.createObservation(50d, 0d, null,
+            firstObs, 1000l);
+    final VehicleStatePLUpdater<GpsObservation, InferenceGraph> updater =
+        new VehicleStatePLUpdater<GpsObservation, InferenceGraph>(
+            firstObs, graph, factory, parameters, rng);
+
+    /*
+     * Its velocity is estimated from its last two observations.
+     */
+    final VehicleStateDistribution<GpsObservation> movingState =
+        factory.createInitialVehicleState(parameters, graph, prevObs, rng,
+            PathEdge.nullPathEdge);
+    AssertJUnit.assertFalse(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(movingState, VehicleStatePLUpdaterTest
+            .createObservation(51d, 0d, null, prevObs, 1000l))));
+
+    /*
+     * It was taken to be stationary at the first observation, and has
+     * crept on since.
+     */
+    final VehicleStateDistribution<GpsObservation> stoppedState =
+        factory.createInitialVehicleState(parameters, graph, firstObs, rng,
+            PathEdge.nullPathEdge);
+    AssertJUnit.assertTrue(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(stoppedState, prevObs)));
+    final GpsObservation creptObs =
+        VehicleStatePLUpdaterTest.createObservation(129d, 0d, null,
+            VehicleStatePLUpdaterTest.createObservation(128d, 0d, null,
+                firstObs, 79000l), 1000l);
+    AssertJUnit.assertFalse(updater.isStationary(VehicleStatePLUpdaterTest
+        .withObservation(stoppedState, creptObs)));
+  }
+
+  /**
+   * Only the updates of stationary observations are counted as such, and
+   * they keep the vehicle in place, with no velocity, but with more
+   * uncertainty than before.
+   */
+  @Test
+  public void testStationaryUpdate() {
+    final InferenceGraph graph = TestUtils.createPlanarGridGraph(2);
+    final VehicleStateInitialParameters parameters =
+        TestUtils.createPlanarGridParameters(10, 30);
+    parameters.setStationaryObsNoiseMultiple(3d);
+    final Random rng = new Random(parameters.getSeed());
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+
+    final GpsObservation prevObs =
+        VehicleStatePLUpdaterTest.createObservation(50d, 0d, null, null);
+    final VehicleStatePLUpdater<GpsObservation, InferenceGraph> updater =
+        new VehicleStatePLUpdater<GpsObservation, InferenceGraph>(
+            prevObs, graph, factory, parameters, rng);
+    final VehicleStateDistribution<GpsObservation> state =
+        factory.createInitialVehicleState(parameters, graph, prevObs, rng,
+            PathEdge.nullPathEdge);
+
+    final VehicleStateDistribution<GpsObservation> parkedState =
+        state.clone();
+    parkedState.setObservation(VehicleStatePLUpdaterTest
+        .createObservation(55d, 3d, null, prevObs));
+    final PathStateMixtureDensityModel parkedDist =
+        updater.update(parkedState).getPathStateParam()
+            .getConditionalDistribution();
+    AssertJUnit.assertEquals(1l, updater.getNumStationaryUpdates());
+    AssertJUnit.assertEquals(1l, updater.getNumUpdates());
+
+    AssertJUnit.assertEquals(1, parkedDist.getDistributionCount());
+    final MultivariateGaussian priorMotionState =
+        state.getPathStateParam().getParameterPrior()
+            .getMotionDistribution();
+    final MultivariateGaussian parkedMotionState =
+        parkedDist.getDistributions().get(0).getMotionDistribution();
+    AssertJUnit.assertEquals(0d, parkedMotionState.getMean()
+        .getElement(1), 0d);
+    AssertJUnit.assertEquals(0d, parkedMotionState.getMean()
+        .getElement(3), 0d);
+    AssertJUnit.assertEquals(priorMotionState.getMean().getElement(0),
+        parkedMotionState.getMean().getElement(0), 1e-9d);
+    AssertJUnit.assertEquals(priorMotionState.getMean().getElement(2),
+        parkedMotionState.getMean().getElement(2), 1e-9d);
+    AssertJUnit.assertTrue(parkedMotionState.getCovariance().getElement(
+        0, 0) > priorMotionState.getCovariance().getElement(0, 0));
+    AssertJUnit.assertTrue(parkedMotionState.getCovariance().getElement(
+        2, 2) > priorMotionState.getCovariance().getElement(2, 2));
+
+    final VehicleStateDistribution<GpsObservation> movingState =
+        state.clone();
+    movingState.setObservation(VehicleStatePLUpdaterTest
+        .createObservation(150d, 0d, null, prevObs));
+    updater.update(movingState);
+    AssertJUnit.assertEquals(1l, updater.getNumStationaryUpdates());
+    AssertJUnit.assertEquals(2l, updater.getNumUpdates());
+  }
+
 }
@@ -0,0 +1,116 @@
+package org.opentrackingtools.util;
+
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.mockito.Mockito;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.graph.InferenceGraphEdge;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathEdge;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Times the edge-based {@link PathUtils#mergePaths(Path, double, Path, double)}
+ * against the geometric
+ * {@link PathUtils#mergePaths(Geometry, double, Geometry, double)} on two
+ * long, overlapping paths. Not part of the test suite; run it directly,
+ * optionally under a profiler.
+ */
+public class PathMergeBenchmark {
+
+  public static void main(String[] args) {
+    final int numSegments =
+        args.length > 0 ? Integer.parseInt(args[0]) : 300;
+    final int iterations =
+        args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+    /*
+     * A zig-zag edge, so that no two segments are collinear.
+     */
+    final Coordinate[] coords = new Coordinate[numSegments + 1];
+    for (int i = 0; i <= numSegments; i++) {
+      coords[i] = new Coordinate(i * 10, (i % 2) * 5);
+    }
+    final LineString geom =
+        JTSFactoryFinder.getGeometryFactory().createLineString(coords);
+    final InferenceGraph graph = Mockito.mock(InferenceGraph.class);
+    Mockito.stub(graph.edgeHasReverse(geom)).toReturn(false);
+    final InferenceGraphEdge edge =
+        new InferenceGraphEdge(geom, geom, 0, graph);
+
+    final List<InferenceGraphSegment> segments = edge.getSegments();
+    final Path from =
+        PathMergeBenchmark.makePath(segments.subList(0,
+            2 * numSegments / 3));
+    final Path to =
+        PathMergeBenchmark.makePath(segments.subList(numSegments / 3,
+            numSegments));
+    final double distFrom = from.getGeometry().getLength() - 1d;
+    final double distTo = 1d;
+
+    final Geometry expected =
+        PathUtils.mergePaths(from.getGeometry(), distFrom,
+            to.getGeometry(), distTo).getPath();
+    if (!expected.equalsExact(PathUtils.mergePaths(from, distFrom, to,
+        distTo).getPath())) {
+      throw new IllegalStateException("merge results differ");
+    }
+
+    /*
+     * Warm up, then time.
+     */
+    PathMergeBenchmark.run(from, distFrom, to, distTo, iterations / 10,
+        true);
+    PathMergeBenchmark.run(from, distFrom, to, distTo, iterations / 10,
+        false);
+
+    final long edgeTime =
+        PathMergeBenchmark.run(from, distFrom, to, distTo, iterations,
+            true);
+    final long geomTime =
+        PathMergeBenchmark.run(from, distFrom, to, distTo, iterations,
+            false);
+
+    System.out.println("segments=" + numSegments + ", iterations="
+        + iterations);
+    System.out.println("edge-based:     " + (edgeTime / iterations)
+        + " ns/op");
+    System.out.println("geometry-based: " + (geomTime / iterations)
+        + " ns/op");
+  }
+
+  private static Path makePath(List<InferenceGraphSegment> segments) {
+    final List<PathEdge> pathEdges = Lists.newArrayList();
+    double distToStart = 0d;
+    for (final InferenceGraphSegment segment : segments) {
+      pathEdges.add(new PathEdge(segment, distToStart, false));
+      distToStart += segment.getSegmentLength();
+    }
+    return new Path(pathEdges, false);
+  }
+
+  private static long run(Path from, double distFrom, Path to,
+    double distTo, int iterations, boolean byEdge) {
+    final Geometry fromGeom = from.getGeometry();
+    final Geometry toGeom = to.getGeometry();
+    final long start = System.nanoTime();
+    int points = 0;
+    for (int i = 0; i < iterations; i++) {
+      final PathUtils.PathMergeResults result =
+          byEdge ? PathUtils.mergePaths(from, distFrom, to, distTo)
+              : PathUtils.mergePaths(fromGeom, distFrom, toGeom, distTo);
+      points += result.getPath().getNumPoints();
+    }
+    final long time = System.nanoTime() - start;
+    if (points == 0) {
+      throw new IllegalStateException();
+    }
+    return time;
+  }
+}
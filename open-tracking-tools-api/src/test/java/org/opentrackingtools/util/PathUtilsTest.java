@@ -5,10 +5,13 @@ import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.mockito.Mockito;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathLinearReference;
+import org.testng.AssertJUnit;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import org.testng.internal.junit.ArrayAsserts;
@@ -17,6 +20,10 @@ import com.google.common.collect.Iterables;
 import com.statslibextensions.math.matrix.SvdMatrix;
 import com.statslibextensions.statistics.distribution.SvdMultivariateGaussian;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.linearref.LengthIndexedLine;
+import com.vividsolutions.jts.linearref.LinearLocation;
+import com.vividsolutions.jts.linearref.LocationIndexedLine;
 
 public class PathUtilsTest {
 
@@ -80,4 +87,70 @@ public class PathUtilsTest {
         groundTo.toArray(), projBelief.getMean().toArray(), 1e-1);
   }
 
+  @Test
+  public void testLinearReference() {
+    final Geometry geom =
+        JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { new Coordinate(0d, 0d),
+                new Coordinate(10d, 0d), new Coordinate(10d, 10d),
+                new Coordinate(20d, 20d) });
+    final PathLinearReference ref = new PathLinearReference(geom);
+    final LocationIndexedLine locIndex = new LocationIndexedLine(geom);
+    final LengthIndexedLine lengthIndex = new LengthIndexedLine(geom);
+
+    final Coordinate[] points =
+        new Coordinate[] { new Coordinate(-1d, 1d),
+            new Coordinate(5d, -3d), new Coordinate(12d, 5d),
+            new Coordinate(11d, 11d), new Coordinate(30d, 18d) };
+    for (final Coordinate point : points) {
+      final LinearLocation loc = locIndex.project(point);
+      final int segmentIndex = ref.project(point.x, point.y);
+      AssertJUnit.assertEquals(loc.getSegmentIndex(), segmentIndex);
+      AssertJUnit.assertEquals(
+          lengthIndex.indexOf(loc.getSegment(geom).p0),
+          ref.getDistanceToStart(segmentIndex), 1e-9);
+      AssertJUnit.assertEquals(0d, loc.getSegment(geom).closestPoint(point)
+          .distance(ref.closestPoint(segmentIndex, point.x, point.y)),
+          1e-9);
+    }
+
+    for (final double index : new double[] { -50d, -5d, 0d, 7d, 100d }) {
+      AssertJUnit.assertEquals(lengthIndex.clampIndex(index),
+          ref.clampIndex(index), 1e-9);
+    }
+  }
+
+  /**
+   * Projecting onto a path edge, or a graph edge, reuses its linear
+   * reference, and gives the same belief as projecting onto its geometry.
+   */
+  @Test
+  public void testCachedLinearReference() {
+    final InferenceGraph graph = Mockito.mock(InferenceGraph.class);
+    final Path path =
+        TestUtils.makeTmpPath(graph, true, new Coordinate(0d, 0d),
+            new Coordinate(10d, 0d), new Coordinate(10d, 10d));
+    final PathEdge pathEdge = Iterables.getFirst(path.getPathEdges(), null);
+    AssertJUnit.assertSame(pathEdge.getLinearReference(),
+        pathEdge.getLinearReference());
+    AssertJUnit.assertSame(pathEdge.getInferenceGraphSegment()
+        .getLinearReference(), pathEdge.getInferenceGraphSegment()
+        .getLinearReference());
+
+    final MultivariateGaussian belief =
+        new SvdMultivariateGaussian(VectorFactory.getDefault()
+            .copyArray(new double[] { 12d, 0d, 3d, 1d }), new SvdMatrix(
+            MatrixFactory.getDefault().createIdentity(4, 4)));
+    final MultivariateGaussian fromEdge =
+        PathUtils.getRoadBeliefFromGround(belief, pathEdge, false, null,
+            null);
+    final MultivariateGaussian fromGeometry =
+        PathUtils.getRoadBeliefFromGround(belief, pathEdge.getLine()
+            .toGeometry(JTSFactoryFinder.getGeometryFactory()),
+            pathEdge.isBackward(), null, 0d, false, null, null);
+    ArrayAsserts.assertArrayEquals(fromGeometry.getMean().toArray(),
+        fromEdge.getMean().minus(
+            VectorFactory.getDefault().createVector2D(
+                pathEdge.getDistToStartOfEdge(), 0d)).toArray(), 1e-9);
+  }
 }
@@ -1,9 +1,12 @@
 package org.opentrackingtools.util;
 
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.FactoryRegistryException;
@@ -19,6 +22,8 @@ import org.opengis.feature.Feature;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.GenericJTSGraph;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.graph.InferenceGraphSegment;
@@ -27,6 +32,7 @@ import org.opentrackingtools.paths.PathEdge;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
@@ -36,6 +42,64 @@ import com.vividsolutions.jts.geom.MultiLineString;
 
 public class TestUtils {
 
+  /*
+   * Inference graph edges are identified by id, so, like a graph
+   * would, hand out one id per distinct geometry.
+   */
+  private static final Map<List<Coordinate>, Integer> tmpEdgeIds = Maps
+      .newHashMap();
+
+  public static synchronized int getTmpEdgeId(Geometry geom) {
+    final List<Coordinate> key = Arrays.asList(geom.getCoordinates());
+    Integer id = TestUtils.tmpEdgeIds.get(key);
+    if (id == null) {
+      id = 1000 + TestUtils.tmpEdgeIds.size();
+      TestUtils.tmpEdgeIds.put(key, id);
+    }
+    return id;
+  }
+
+  /**
+   * A planar grid of 100m edges, numCells by numCells, with its lower-left
+   * corner at the origin.
+   * 
+   * @param numCells
+   * @return
+   */
+  public static InferenceGraph createPlanarGridGraph(int numCells) {
+    final List<LineString> edges = Lists.newArrayList();
+    for (int i = 0; i <= numCells; i++) {
+      for (int j = 0; j < numCells; j++) {
+        edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { new Coordinate(j * 100d, i * 100d),
+                new Coordinate((j + 1) * 100d, i * 100d) }));
+        edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { new Coordinate(i * 100d, j * 100d),
+                new Coordinate(i * 100d, (j + 1) * 100d) }));
+      }
+    }
+    return new GenericJTSGraph(edges, false);
+  }
+
+  /**
+   * The parameters that the simulation-based tests and benchmarks run on a
+   * {@link #createPlanarGridGraph(int)} graph with.
+   * 
+   * @param numParticles
+   * @param initialObsFreq
+   * @return
+   */
+  public static VehicleStateInitialParameters createPlanarGridParameters(
+    int numParticles, double initialObsFreq) {
+    return new VehicleStateInitialParameters(null, VectorFactory
+        .getDefault().createVector2D(70d, 70d), 20, VectorFactory
+        .getDefault().createVector1D(6.25e-4), 20, VectorFactory
+        .getDefault().createVector2D(6.25e-4, 6.25e-4), 20,
+        VectorFactory.getDefault().createVector2D(1d, Double.MAX_VALUE),
+        VectorFactory.getDefault().createVector2D(Double.MAX_VALUE, 1d),
+        numParticles, initialObsFreq, 2159585l);
+  }
+
   /**
    * Using the startCoord, a graph is created from an approximately 100m x 100m
    * grid.
@@ -153,7 +217,8 @@ public class TestUtils {
         Mockito.stub(graph.edgeHasReverse(geom)).toReturn(false);
 
         final InferenceGraphEdge ie =
-            new InferenceGraphEdge(geom, geom, 1000 + i, graph);
+            new InferenceGraphEdge(geom, geom,
+                TestUtils.getTmpEdgeId(geom), graph);
 
         edges.add(ie);
       }
@@ -11,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import com.vividsolutions.jts.geom.LineString;
 
@@ -21,13 +22,16 @@ import org.geotools.graph.traverse.standard.AStarIterator.AStarFunctions;
 import org.netlib.blas.BLAS;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.graph.CustomAStarShortestPathFinder;
+import org.opentrackingtools.graph.EdgeReachabilityTable;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.graph.InferenceGraphSegmentStore;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathInterner;
 import org.opentrackingtools.paths.otp.MultiDestinationAStar;
 import org.opentrackingtools.util.GeoUtils;
 import org.opentripplanner.routing.algorithm.GenericAStar;
@@ -201,8 +205,8 @@ public class OtpGraph implements InferenceGraph {
    */
   private final Graph baseGraph;
 
-  private final Map<VertexPair, InferenceGraphEdge> edgeToInfo = Maps
-      .newConcurrentMap();
+  private final ConcurrentMap<VertexPair, InferenceGraphEdge> edgeToInfo =
+      Maps.newConcurrentMap();
 
   private final Multimap<Geometry, Edge> geomBaseEdgeMap =
       HashMultimap.create();
@@ -212,6 +216,24 @@ public class OtpGraph implements InferenceGraph {
 
   private final GraphServiceImpl gs;
 
+  /*
+   * Optional table of bounded edge reachability.  When set, and
+   * it covers the distance that can be traveled between observations,
+   * it's used in place of the A* search.
+   */
+  private EdgeReachabilityTable reachabilityTable = null;
+
+  /*
+   * Shares the paths found for all particles.
+   */
+  private final PathInterner pathInterner = new PathInterner();
+
+  /*
+   * Shared, columnar storage for the segments of all edges.
+   */
+  private final InferenceGraphSegmentStore segmentStore =
+      new InferenceGraphSegmentStore(1 << 16);
+
   //  private Set<Path> computePaths(PathKey key) {
   //
   //    /*
@@ -472,10 +494,37 @@ public class OtpGraph implements InferenceGraph {
         this.turnVertexIndex, this.geomTurnEdgeMap);
     this.createGeoToolsGraph(this.baseGraph);
 
+    /*
+     * The indices are otherwise built on their first query, which isn't
+     * safe when several filters share this graph.
+     */
+    this.baseEdgeIndex.build();
+    this.turnEdgeIndex.build();
+    this.turnVertexIndex.build();
+
     OtpGraph.log.info("Graph loaded..");
   }
   
   
+  /**
+   * Creates a reachability table for the distance traveled at the maximum
+   * speed over the given time interval, and uses it for path finding. Only
+   * the edges instantiated so far are precomputed; the rest are filled in on
+   * first use.
+   * 
+   * @param maxTimeDiff
+   *          the largest time interval (in seconds) between observations
+   * @return
+   */
+  public EdgeReachabilityTable createReachabilityTable(double maxTimeDiff) {
+    final EdgeReachabilityTable table =
+        new EdgeReachabilityTable(this, OtpGraph.MAX_DISTANCE_SPEED
+            * maxTimeDiff, this.pathInterner);
+    table.precompute(Lists.newArrayList(this.getInferenceGraphEdges()));
+    this.reachabilityTable = table;
+    return table;
+  }
+
   /**
    * TODO: create the geotools graph as an object during the OTP graph build?
    * 
@@ -603,8 +652,8 @@ public class OtpGraph implements InferenceGraph {
     return result;
   }
 
-  Map<org.geotools.graph.structure.Edge, InferenceGraphEdge> edgeToInfEdge = Maps.newHashMap();
-  Map<String, InferenceGraphEdge> idToInfEdge = Maps.newHashMap();
+  ConcurrentMap<org.geotools.graph.structure.Edge, InferenceGraphEdge> edgeToInfEdge = Maps.newConcurrentMap();
+  ConcurrentMap<String, InferenceGraphEdge> idToInfEdge = Maps.newConcurrentMap();
 
   public InferenceGraphEdge getInferenceGraphEdge(Edge edge) {
     edge = this.getBaseEdge(edge);
@@ -617,8 +666,15 @@ public class OtpGraph implements InferenceGraph {
       final Integer edgeId = this.baseGraph.getIdForEdge(edge);
       edgeInfo =
           new InferenceGraphEdge(edge.getGeometry(), edge, edgeId,
-              this);
-      this.edgeToInfo.put(key, edgeInfo);
+              this, this.segmentStore);
+      /*
+       * Another thread may have gotten here first.
+       */
+      final InferenceGraphEdge existing =
+          this.edgeToInfo.putIfAbsent(key, edgeInfo);
+      if (existing != null) {
+        edgeInfo = existing;
+      }
     }
 
     return edgeInfo;
@@ -686,8 +742,13 @@ public class OtpGraph implements InferenceGraph {
 
     if (edgeInfo == null) {
       edgeInfo =
-          new InferenceGraphEdge(edge.getGeometry(), edge, id, this);
-      this.edgeToInfo.put(key, edgeInfo);
+          new InferenceGraphEdge(edge.getGeometry(), edge, id, this,
+              this.segmentStore);
+      final InferenceGraphEdge existing =
+          this.edgeToInfo.putIfAbsent(key, edgeInfo);
+      if (existing != null) {
+        edgeInfo = existing;
+      }
     }
 
     return edgeInfo;
@@ -719,7 +780,7 @@ public class OtpGraph implements InferenceGraph {
           //          Preconditions.checkState(segment.getEndIndex()
           //              .getSegmentIndex()
           //              - segment.getStartIndex().getSegmentIndex() == 1);
-          if (segment.getLine().distance(toCoord) < radius) {
+          if (segment.distance(toCoord.x, toCoord.y) < radius) {
             streetEdges.add(segment);
           }
         }
@@ -891,9 +952,9 @@ public class OtpGraph implements InferenceGraph {
        * Always consider not moving
        */
       final Path path =
-          new Path(Collections.singletonList(new PathEdge(
-              currentPathEdge.getInferenceGraphSegment(),
-              0d, false)), false);
+          this.pathInterner.getRoot()
+              .extend(currentPathEdge.getInferenceGraphSegment(), false)
+              .getPath(false);
       paths.add(path);
 
       final PlainStreetEdgeWithOSMData edge =
@@ -929,8 +990,8 @@ public class OtpGraph implements InferenceGraph {
       for (final InferenceGraphSegment segment : this.getNearbyEdges(
           obsDist.getMean(), beliefDistance)) {
         final Path path =
-            new Path(Collections.singletonList(new PathEdge(segment,
-                0d, false)), false);
+            this.pathInterner.getRoot().extend(segment, false)
+                .getPath(false);
         paths.add(path);
       }
 
@@ -950,6 +1011,28 @@ public class OtpGraph implements InferenceGraph {
 
     final Collection<InferenceGraphSegment> endLines =
         this.getNearbyEdges(toCoord, obsStdDevDistance);
+
+    /*
+     * When the precomputed reachability covers the furthest we could
+     * have traveled, simply intersect it with the end edges.
+     */
+    final double maxTravelDistance =
+        OtpGraph.MAX_DISTANCE_SPEED
+            * motionEstimator.getCurrentTimeDiff();
+    if (this.reachabilityTable != null
+        && maxTravelDistance <= this.reachabilityTable.getMaxDistance()) {
+      for (final InferenceGraphSegment endSeg : endLines) {
+        final Path newPath =
+            this.reachabilityTable.getPath(
+                currentPathEdge.getInferenceGraphSegment(), endSeg,
+                maxTravelDistance);
+        if (newPath != null) {
+          paths.add(newPath);
+        }
+      }
+      return paths;
+    }
+
     final Set<Edge> endEdges = Sets.newHashSet();
     for (final InferenceGraphSegment endSeg : endLines) {
       final PlainStreetEdgeWithOSMData endEdge =
@@ -989,7 +1072,7 @@ public class OtpGraph implements InferenceGraph {
                   false);
           
           if (forwardResult != null) {
-            paths.add(forwardResult);
+            paths.add(this.pathInterner.intern(forwardResult));
           }
         }
       }
@@ -999,19 +1082,28 @@ public class OtpGraph implements InferenceGraph {
   }
 
   private InferenceGraphEdge getInferenceGraphEdge(org.geotools.graph.structure.Edge edge) {
-    InferenceGraphEdge infEdge = this.edgeToInfEdge.get(edge);
+    final InferenceGraphEdge infEdge = this.edgeToInfEdge.get(edge);
+    if (infEdge != null) {
+      return infEdge;
+    }
 
-    if (infEdge == null) {
-      final Geometry edgeGeom =
-          Preconditions.checkNotNull((Geometry) edge.getObject());
-      final int id = edge.getID();
-      infEdge = new InferenceGraphEdge(edgeGeom, edge, id, this);
+    final Geometry edgeGeom =
+        Preconditions.checkNotNull((Geometry) edge.getObject());
+    final InferenceGraphEdge newInfEdge =
+        new InferenceGraphEdge(edgeGeom, edge, edge.getID(), this);
 
-      this.edgeToInfEdge.put(edge, infEdge);
-      this.idToInfEdge.put(infEdge.getEdgeId(), infEdge);
+    /*
+     * Another thread may have created this edge in the meantime, in which
+     * case its instance is the one to use.
+     */
+    final InferenceGraphEdge existingInfEdge =
+        this.edgeToInfEdge.putIfAbsent(edge, newInfEdge);
+    if (existingInfEdge != null) {
+      return existingInfEdge;
     }
+    this.idToInfEdge.putIfAbsent(newInfEdge.getEdgeId(), newInfEdge);
 
-    return infEdge;
+    return newInfEdge;
   }
 
   @SuppressWarnings("unchecked")
@@ -1028,7 +1120,7 @@ public class OtpGraph implements InferenceGraph {
     for (final InferenceGraphSegment segment : startSegment.getSegments(startSegment.getStartDistance(),
             Double.POSITIVE_INFINITY)) {
       pathEdges.add(new PathEdge(segment, distance, false));
-      distance += segment.getLine().getLength();
+      distance += segment.getSegmentLength();
     }
 
     final Iterator<DirectedNode> rNodes = path.riterator();
@@ -1046,7 +1138,7 @@ public class OtpGraph implements InferenceGraph {
             .getLast(pathEdges).getLine().p1));
 
         pathEdges.add(new PathEdge(segment, distance, false));
-        distance += segment.getLine().getLength();
+        distance += segment.getSegmentLength();
       }
       reachedEndNodes.add(node);
       prevNode = node;
@@ -1076,6 +1168,18 @@ public class OtpGraph implements InferenceGraph {
     return results;
   }
 
+  public PathInterner getPathInterner() {
+    return this.pathInterner;
+  }
+
+  public EdgeReachabilityTable getReachabilityTable() {
+    return this.reachabilityTable;
+  }
+
+  public InferenceGraphSegmentStore getSegmentStore() {
+    return this.segmentStore;
+  }
+
   public Graph getTurnGraph() {
     return this.turnGraph;
   }
@@ -1088,4 +1192,9 @@ public class OtpGraph implements InferenceGraph {
     return this.baseGraph.getVertices().size();
   }
 
+  public void setReachabilityTable(
+    EdgeReachabilityTable reachabilityTable) {
+    this.reachabilityTable = reachabilityTable;
+  }
+
 }
@@ -0,0 +1,202 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Reads the results written by a {@link BinaryResultWriter}, in order or
+ * by index. <br>
+ * Run directly, it prints the records of the given files as CSV.
+ */
+public class BinaryResultReader implements Closeable {
+
+  /**
+   * One result record; see {@link BinaryResultWriter} for the fields.
+   */
+  public static class Result {
+    public double distance;
+    public int edgeId;
+    public byte flags;
+    public double lat;
+    public double logLikelihood;
+    public double lon;
+    public double positionVariance;
+    public int sourceIndex;
+    public long timestamp;
+    public double velocity;
+    public double velocityVariance;
+
+    public boolean isBackward() {
+      return (this.flags & BinaryResultWriter.FLAG_BACKWARD) != 0;
+    }
+
+    public boolean isOnRoad() {
+      return (this.flags & BinaryResultWriter.FLAG_ON_ROAD) != 0;
+    }
+  }
+
+  protected static final int BLOCK_RECORDS = 4096;
+
+  public static void main(String[] args) throws IOException {
+    System.out.println("sourceId,timestamp,edgeId,lat,lon,velocity,"
+        + "distance,positionVariance,velocityVariance,logLikelihood,"
+        + "onRoad,backward");
+    final Result result = new Result();
+    for (final String fileName : args) {
+      final BinaryResultReader reader =
+          new BinaryResultReader(new File(fileName));
+      try {
+        while (reader.next(result)) {
+          System.out.println(reader.getSourceIds().get(result.sourceIndex)
+              + "," + result.timestamp + "," + result.edgeId + ","
+              + result.lat + "," + result.lon + "," + result.velocity
+              + "," + result.distance + "," + result.positionVariance
+              + "," + result.velocityVariance + ","
+              + result.logLikelihood + "," + result.isOnRoad() + ","
+              + result.isBackward());
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  protected final ByteBuffer block;
+  protected long blockStart = 0;
+  protected final FileChannel channel;
+  protected final RandomAccessFile file;
+  protected long nextIndex = 0;
+  protected final long numRecords;
+  protected final List<String> sourceIds;
+
+  public BinaryResultReader(File file) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+
+    final ByteBuffer header =
+        ByteBuffer.allocate(BinaryResultWriter.HEADER_SIZE);
+    this.readFully(header, 0l);
+    if (header.getInt(0) != BinaryResultWriter.MAGIC) {
+      throw new IOException(file + " isn't a binary result file");
+    }
+    if (header.getShort(4) != BinaryResultWriter.VERSION
+        || header.getShort(6) != BinaryResultWriter.RECORD_SIZE) {
+      throw new IOException("Unsupported version " + header.getShort(4)
+          + " of " + file);
+    }
+
+    final ByteBuffer trailer = ByteBuffer.allocate(8);
+    this.readFully(trailer, this.channel.size() - 8);
+    final long tableOffset = trailer.getLong(0);
+    this.numRecords =
+        (tableOffset - BinaryResultWriter.HEADER_SIZE)
+            / BinaryResultWriter.RECORD_SIZE;
+
+    this.channel.position(tableOffset);
+    final DataInputStream in =
+        new DataInputStream(Channels.newInputStream(this.channel));
+    final int numSourceIds = in.readInt();
+    final List<String> ids = Lists.newArrayListWithCapacity(numSourceIds);
+    for (int i = 0; i < numSourceIds; i++) {
+      ids.add(in.readUTF());
+    }
+    this.sourceIds = Collections.unmodifiableList(ids);
+
+    this.block =
+        ByteBuffer.allocate(BinaryResultReader.BLOCK_RECORDS
+            * BinaryResultWriter.RECORD_SIZE);
+    this.block.limit(0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+    this.file.close();
+  }
+
+  public long getNumRecords() {
+    return this.numRecords;
+  }
+
+  /**
+   * The source ids, by the index the records refer to them with.
+   */
+  public List<String> getSourceIds() {
+    return this.sourceIds;
+  }
+
+  /**
+   * Reads the next record, in file order.
+   *
+   * @return false when there are no more
+   */
+  public boolean next(Result result) throws IOException {
+    if (this.nextIndex >= this.numRecords) {
+      return false;
+    }
+    this.read(this.nextIndex, result);
+    return true;
+  }
+
+  /**
+   * Reads the record with the given index. Records are read a block at a
+   * time, so reading nearby records is cheap.
+   */
+  public void read(long index, Result result) throws IOException {
+    Preconditions.checkArgument(index >= 0 && index < this.numRecords);
+    final int blockRecords =
+        this.block.limit() / BinaryResultWriter.RECORD_SIZE;
+    if (index < this.blockStart || index >= this.blockStart + blockRecords) {
+      this.blockStart = index;
+      final int numToRead =
+          (int) Math.min(BinaryResultReader.BLOCK_RECORDS, this.numRecords
+              - index);
+      this.block.clear();
+      this.block.limit(numToRead * BinaryResultWriter.RECORD_SIZE);
+      this.readFully(this.block, BinaryResultWriter.HEADER_SIZE + index
+          * BinaryResultWriter.RECORD_SIZE);
+    }
+
+    int offset =
+        (int) (index - this.blockStart) * BinaryResultWriter.RECORD_SIZE;
+    result.timestamp = this.block.getLong(offset);
+    result.sourceIndex = this.block.getInt(offset += 8);
+    result.edgeId = this.block.getInt(offset += 4);
+    result.lat = this.block.getDouble(offset += 4);
+    result.lon = this.block.getDouble(offset += 8);
+    result.velocity = this.block.getDouble(offset += 8);
+    result.distance = this.block.getDouble(offset += 8);
+    result.positionVariance = this.block.getDouble(offset += 8);
+    result.velocityVariance = this.block.getDouble(offset += 8);
+    result.logLikelihood = this.block.getDouble(offset += 8);
+    result.flags = this.block.get(offset += 8);
+    this.nextIndex = index + 1;
+  }
+
+  /**
+   * Fills the buffer, up to its limit, from the given file position.
+   */
+  protected void readFully(ByteBuffer buffer, long position)
+      throws IOException {
+    long filePosition = position;
+    while (buffer.hasRemaining()) {
+      final int numRead = this.channel.read(buffer, filePosition);
+      if (numRead < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      filePosition += numRead;
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+package org.opentrackingtools.util.tracerunner;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.opengis.referencing.operation.NoninvertibleTransformException;
+import org.opengis.referencing.operation.TransformException;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.GeoUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Writes results as fixed-width binary records, a small fraction of the
+ * size of the JSON output and much quicker to write and read back with a
+ * {@link BinaryResultReader}. <br>
+ * The file is a header (magic number, version and record size), the
+ * records, a table of the source ids the records refer to by index, and
+ * finally the offset of that table. Each record holds, big-endian:
+ * <ul>
+ * <li>the observation's timestamp, in milliseconds (long)</li>
+ * <li>the index of the observation's source id (int)</li>
+ * <li>the graph edge id, or -1 when off-road (int)</li>
+ * <li>the mean location, in the same lat/lon order as the JSON output
+ * (two doubles)</li>
+ * <li>the ground speed (double)</li>
+ * <li>the distance from the start of the graph edge, or NaN when off-road
+ * (double)</li>
+ * <li>the sums of the ground position variances and of the ground velocity
+ * variances (two doubles)</li>
+ * <li>the observation log-likelihood (double)</li>
+ * <li>flags: on-road and backward (byte)</li>
+ * </ul>
+ */
+public class BinaryResultWriter implements ResultWriter {
+
+  public static final byte FLAG_BACKWARD = 2;
+  public static final byte FLAG_ON_ROAD = 1;
+  public static final int MAGIC = 0x4f545452;
+  public static final int HEADER_SIZE = 8;
+  public static final int RECORD_SIZE = 8 + 4 + 4 + 7 * 8 + 1;
+  public static final short VERSION = 1;
+
+  protected long numRecords = 0;
+  protected final DataOutputStream out;
+  protected final Map<String, Integer> sourceIndices = Maps.newHashMap();
+  protected final List<String> sourceIds = Lists.newArrayList();
+
+  public BinaryResultWriter(File file) throws IOException {
+    this.out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            file), 1 << 16));
+    this.out.writeInt(BinaryResultWriter.MAGIC);
+    this.out.writeShort(BinaryResultWriter.VERSION);
+    this.out.writeShort(BinaryResultWriter.RECORD_SIZE);
+  }
+
+  /**
+   * Writes the source id table and its offset.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      final long tableOffset =
+          BinaryResultWriter.HEADER_SIZE + this.numRecords
+              * BinaryResultWriter.RECORD_SIZE;
+      this.out.writeInt(this.sourceIds.size());
+      for (final String sourceId : this.sourceIds) {
+        this.out.writeUTF(sourceId);
+      }
+      this.out.writeLong(tableOffset);
+    } finally {
+      this.out.close();
+    }
+  }
+
+  protected int getSourceIndex(String sourceId) {
+    Integer index = this.sourceIndices.get(sourceId);
+    if (index == null) {
+      index = this.sourceIds.size();
+      this.sourceIds.add(sourceId);
+      this.sourceIndices.put(sourceId, index);
+    }
+    return index;
+  }
+
+  @Override
+  public void write(VehicleStateDistribution<GpsObservation> state)
+      throws IOException {
+    final GpsObservation obs = state.getObservation();
+    final PathState pathState = state.getPathStateParam().getValue();
+    final Vector groundState = pathState.getGroundState();
+    final Matrix groundCov =
+        state.getPathStateParam().getParameterPrior()
+            .getGroundDistribution().getCovariance();
+
+    double lat = Double.NaN;
+    double lon = Double.NaN;
+    try {
+      final Coordinate gpsMean =
+          GeoUtils.convertToLatLon(state.getMeanLocation(), obs
+              .getObsProjected().getTransform());
+      lat = gpsMean.x;
+      lon = gpsMean.y;
+    } catch (final NoninvertibleTransformException e) {
+      e.printStackTrace();
+    } catch (final TransformException e) {
+      e.printStackTrace();
+    }
+
+    int edgeId = -1;
+    double distance = Double.NaN;
+    byte flags = 0;
+    if (pathState.isOnRoad()) {
+      final PathEdge edge = pathState.getEdge();
+      edgeId =
+          edge.getInferenceGraphSegment().getSegmentStore()
+              .getEdgeId(edge.getInferenceGraphSegment().getSegmentId());
+      /*
+       * The distance into the segment, in the direction of travel.
+       */
+      final double segmentDistance =
+          (edge.isBackward() ? -1d : 1d) * pathState.getElement(0)
+              - Math.abs(edge.getDistToStartOfEdge());
+      distance =
+          edge.getDistFromStartOfGraphEdge()
+              + (edge.isBackward() ? edge.getLength() - segmentDistance
+                  : segmentDistance);
+      flags |= BinaryResultWriter.FLAG_ON_ROAD;
+      if (edge.isBackward()) {
+        flags |= BinaryResultWriter.FLAG_BACKWARD;
+      }
+    }
+
+    this.out.writeLong(obs.getTimestamp().getTime());
+    this.out.writeInt(this.getSourceIndex(obs.getSourceId()));
+    this.out.writeInt(edgeId);
+    this.out.writeDouble(lat);
+    this.out.writeDouble(lon);
+    this.out.writeDouble(Math.hypot(groundState.getElement(1),
+        groundState.getElement(3)));
+    this.out.writeDouble(distance);
+    this.out.writeDouble(groundCov.getElement(0, 0)
+        + groundCov.getElement(2, 2));
+    this.out.writeDouble(groundCov.getElement(1, 1)
+        + groundCov.getElement(3, 3));
+    this.out.writeDouble(state.getObsLogLikelihood());
+    this.out.writeByte(flags);
+    this.numRecords++;
+  }
+
+}
@@ -0,0 +1,51 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads observations with opencsv, which handles quoting in full, at the
+ * cost of a String per field.
+ */
+public class CsvObservationReader implements ObservationReader {
+
+  protected final ObservationColumns columns;
+  protected final CSVReader reader;
+  protected boolean isHeaderSkipped;
+
+  public CsvObservationReader(Reader reader, ObservationColumns columns) {
+    this.reader = new CSVReader(reader, columns.getDelimiter());
+    this.columns = columns;
+    this.isHeaderSkipped = !columns.hasHeader();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+
+  @Override
+  public boolean next(ObservationRecord record) throws IOException,
+      ParseException {
+    if (!this.isHeaderSkipped) {
+      this.reader.readNext();
+      this.isHeaderSkipped = true;
+    }
+    String[] line;
+    do {
+      line = this.reader.readNext();
+      if (line == null) {
+        return false;
+      }
+      /*
+       * Skip blank lines.
+       */
+    } while (line.length == 1 && line[0].isEmpty());
+    record.set(line, this.columns);
+    return true;
+  }
+
+}
@@ -0,0 +1,58 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+
+/**
+ * Writes results with the JsonUtils serializers: as a pretty-printed JSON
+ * array, or one compact result per line. Each result is flushed as it's
+ * written.
+ */
+public class JsonResultWriter implements ResultWriter {
+
+  protected final JsonGenerator jgen;
+  protected final boolean lineDelimited;
+
+  public JsonResultWriter(File file, boolean lineDelimited,
+    ObjectMapper objectMapper) throws IOException {
+    /*
+     * Line-delimited results need a mapper that doesn't indent them.
+     */
+    final ObjectMapper outputMapper =
+        lineDelimited ? TraceRunner.createObjectMapper(false)
+            : objectMapper;
+    this.jgen =
+        outputMapper.getJsonFactory().createJsonGenerator(file,
+            JsonEncoding.UTF8);
+    this.lineDelimited = lineDelimited;
+    if (!lineDelimited) {
+      this.jgen.useDefaultPrettyPrinter();
+      this.jgen.writeStartArray();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!this.lineDelimited) {
+      this.jgen.writeEndArray();
+    }
+    this.jgen.close();
+  }
+
+  @Override
+  public void write(VehicleStateDistribution<GpsObservation> state)
+      throws IOException {
+    this.jgen.writeObject(state);
+    if (this.lineDelimited) {
+      this.jgen.writeRaw('\n');
+    }
+    this.jgen.flush();
+  }
+
+}
@@ -192,14 +192,18 @@ public class JsonUtils {
               JsonUtils.getDoubleArray(root
                   .findValue("offRoadStateCov")));
 
+      /*
+       * Serialized parameters name the transition probabilities after their
+       * getters.
+       */
       final Vector offProbs =
           VectorFactory.getDefault().copyValues(
-              JsonUtils.getDoubleArray(root
-                  .findValue("offTransitionProbs")));
+              JsonUtils.getDoubleArray(JsonUtils.findValue(root,
+                  "offTransitionProbs", "offTransitionProbsPrior")));
       final Vector onProbs =
           VectorFactory.getDefault().copyValues(
-              JsonUtils.getDoubleArray(root
-                  .findValue("onTransitionProbs")));
+              JsonUtils.getDoubleArray(JsonUtils.findValue(root,
+                  "onTransitionProbs", "onTransitionProbsPrior")));
 
       final VehicleStateInitialParameters result =
           new VehicleStateInitialParameters(null, obsCov, root
@@ -210,6 +214,43 @@ public class JsonUtils {
               root.findValue("initialObsFreq").getIntValue(), root
                   .findValue("seed").getLongValue());
 
+      /*
+       * The rest are optional, and keep their defaults when they're missing.
+       * Non-finite values are serialized as strings, which asDouble parses.
+       */
+      final JsonNode outlierNoiseMultiple =
+          root.findValue("outlierNoiseMultiple");
+      if (outlierNoiseMultiple != null) {
+        result.setOutlierNoiseMultiple(outlierNoiseMultiple.asDouble());
+      }
+      final JsonNode outlierMaxConsecutive =
+          root.findValue("outlierMaxConsecutive");
+      if (outlierMaxConsecutive != null) {
+        result.setOutlierMaxConsecutive(outlierMaxConsecutive.asInt());
+      }
+      final JsonNode stationaryObsNoiseMultiple =
+          root.findValue("stationaryObsNoiseMultiple");
+      if (stationaryObsNoiseMultiple != null) {
+        result.setStationaryObsNoiseMultiple(stationaryObsNoiseMultiple
+            .asDouble());
+      }
+      final JsonNode stationaryMaxVelocity =
+          root.findValue("stationaryMaxVelocity");
+      if (stationaryMaxVelocity != null) {
+        result.setStationaryMaxVelocity(stationaryMaxVelocity.asDouble());
+      }
+      final JsonNode pathSearchBeamWidth =
+          root.findValue("pathSearchBeamWidth");
+      if (pathSearchBeamWidth != null) {
+        result.setPathSearchBeamWidth(pathSearchBeamWidth.asInt());
+      }
+      final JsonNode pathSearchLogLikelihoodCutoff =
+          root.findValue("pathSearchLogLikelihoodCutoff");
+      if (pathSearchLogLikelihoodCutoff != null) {
+        result.setPathSearchLogLikelihoodCutoff(pathSearchLogLikelihoodCutoff
+            .asDouble());
+      }
+
       return result;
     }
 
@@ -247,6 +288,19 @@ public class JsonUtils {
 
   }
 
+  /**
+   * The value of the first of the given fields that's found.
+   */
+  private static JsonNode findValue(JsonNode root, String... fieldNames) {
+    for (final String fieldName : fieldNames) {
+      final JsonNode value = root.findValue(fieldName);
+      if (value != null) {
+        return value;
+      }
+    }
+    return null;
+  }
+
   private static double[] getDoubleArray(JsonNode node) {
 
     if (!(node instanceof ArrayNode)) {
@@ -0,0 +1,378 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads observations straight from a memory-mapped trace file, parsing the
+ * fields from its bytes, so that the only objects made per line are the
+ * source ids not seen before. <br>
+ * The file is mapped a segment at a time, so it can be larger than a single
+ * mapping allows; a line that doesn't fit in the rest of a segment starts
+ * the next one. <br>
+ * Unlike {@link CsvObservationReader}, quotes are only stripped from around
+ * a field: quoted delimiters and line breaks aren't supported. Text is
+ * expected to be UTF-8 (or ASCII).
+ */
+public class MappedObservationReader implements ObservationReader {
+
+  /**
+   * A run of bytes, used to look up source ids without decoding them.
+   */
+  protected static class ByteKey {
+
+    protected byte[] bytes;
+    protected int hash;
+    protected int length;
+
+    protected ByteKey(byte[] bytes, int length, int hash) {
+      this.bytes = bytes;
+      this.length = length;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof ByteKey)) {
+        return false;
+      }
+      final ByteKey other = (ByteKey) obj;
+      if (this.length != other.length || this.hash != other.hash) {
+        return false;
+      }
+      for (int i = 0; i < this.length; i++) {
+        if (this.bytes[i] != other.bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+
+  public static final long DEFAULT_SEGMENT_SIZE = 1l << 28;
+
+  /*
+   * The source id cache is cleared when it gets this large, in case the ids
+   * are unique per line.
+   */
+  protected static final int MAX_CACHED_SOURCE_IDS = 1 << 16;
+
+  /*
+   * Exact powers of ten, for the fast path of parseDouble.
+   */
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    MappedObservationReader.POWERS_OF_TEN[0] = 1d;
+    for (int i = 1; i < MappedObservationReader.POWERS_OF_TEN.length; i++) {
+      MappedObservationReader.POWERS_OF_TEN[i] =
+          10d * MappedObservationReader.POWERS_OF_TEN[i - 1];
+    }
+  }
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  protected MappedByteBuffer buffer;
+  protected long bufferOffset = 0;
+  protected final FileChannel channel;
+  protected final ObservationColumns columns;
+  protected final int[] fieldEnds;
+  protected final int[] fieldStarts;
+  protected final RandomAccessFile file;
+  protected final long fileSize;
+  protected int lineEnd;
+  protected long lineNumber = 0;
+  protected int lineStart;
+  protected int position = 0;
+  protected final ByteKey probe = new ByteKey(new byte[64], 0, 0);
+  protected final long segmentSize;
+  protected final Map<ByteKey, String> sourceIds = Maps.newHashMap();
+
+  public MappedObservationReader(File file, ObservationColumns columns)
+      throws IOException {
+    this(file, columns, MappedObservationReader.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize
+   *          the most bytes mapped at once, which is also the longest line
+   *          that can be read
+   */
+  public MappedObservationReader(File file, ObservationColumns columns,
+    long segmentSize) throws IOException {
+    Preconditions.checkArgument(segmentSize > 0
+        && segmentSize <= Integer.MAX_VALUE);
+    this.columns = columns;
+    this.segmentSize = segmentSize;
+    this.fieldStarts = new int[columns.getMaxColumn() + 1];
+    this.fieldEnds = new int[columns.getMaxColumn() + 1];
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.fileSize = this.channel.size();
+    this.map(0l);
+  }
+
+  @Override
+  public void close() throws IOException {
+    /*
+     * The mapping itself goes when the buffer is collected.
+     */
+    this.buffer = null;
+    this.channel.close();
+    this.file.close();
+  }
+
+  /**
+   * Finds the next line, remapping when it runs past the current segment.
+   *
+   * @return false at the end of the file
+   */
+  protected boolean findLine() throws IOException {
+    while (true) {
+      final int limit = this.buffer.limit();
+      for (int i = this.position; i < limit; i++) {
+        if (this.buffer.get(i) == '\n') {
+          this.lineStart = this.position;
+          this.lineEnd =
+              i > this.position && this.buffer.get(i - 1) == '\r' ? i - 1
+                  : i;
+          this.position = i + 1;
+          return true;
+        }
+      }
+      if (this.bufferOffset + limit >= this.fileSize) {
+        if (this.position < limit) {
+          /*
+           * The last line, without a line break.
+           */
+          this.lineStart = this.position;
+          this.lineEnd =
+              this.buffer.get(limit - 1) == '\r' ? limit - 1 : limit;
+          this.position = limit;
+          return true;
+        }
+        return false;
+      }
+      if (this.position == 0) {
+        throw new IOException("Line " + (this.lineNumber + 1)
+            + " is longer than the segment size " + this.segmentSize);
+      }
+      this.map(this.bufferOffset + this.position);
+    }
+  }
+
+  /**
+   * The source id in the given bytes, decoded only the first time it's
+   * seen.
+   */
+  protected String getSourceId(int start, int end) {
+    final int length = end - start;
+    if (this.probe.bytes.length < length) {
+      this.probe.bytes =
+          new byte[Math.max(length, 2 * this.probe.bytes.length)];
+    }
+    int hash = 1;
+    for (int i = 0; i < length; i++) {
+      final byte b = this.buffer.get(start + i);
+      this.probe.bytes[i] = b;
+      hash = 31 * hash + b;
+    }
+    this.probe.length = length;
+    this.probe.hash = hash;
+
+    String sourceId = this.sourceIds.get(this.probe);
+    if (sourceId == null) {
+      sourceId =
+          new String(this.probe.bytes, 0, length, MappedObservationReader.UTF8);
+      if (this.sourceIds.size() >=
+          MappedObservationReader.MAX_CACHED_SOURCE_IDS) {
+        this.sourceIds.clear();
+      }
+      this.sourceIds.put(
+          new ByteKey(Arrays.copyOf(this.probe.bytes, length), length, hash),
+          sourceId);
+    }
+    return sourceId;
+  }
+
+  protected void map(long offset) throws IOException {
+    final long size = Math.min(this.segmentSize, this.fileSize - offset);
+    this.buffer =
+        this.channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    this.bufferOffset = offset;
+    this.position = 0;
+  }
+
+  @Override
+  public boolean next(ObservationRecord record) throws IOException,
+      ParseException {
+    while (this.findLine()) {
+      this.lineNumber++;
+      if (this.lineEnd == this.lineStart
+          || (this.lineNumber == 1 && this.columns.hasHeader())) {
+        continue;
+      }
+      this.parseLine(record);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Parses a decimal number from the given bytes. Numbers of up to 18
+   * significant digits and small exponents, i.e. the usual coordinates and
+   * velocities, are parsed without any allocation; they're exact in a
+   * double and scaled by an exact power of ten, so the result is rounded
+   * once, like Double.parseDouble's. Anything else goes to
+   * Double.parseDouble.
+   */
+  protected double parseDouble(int start, int end) throws ParseException {
+    int i = start;
+    boolean isNegative = false;
+    if (i < end && (this.buffer.get(i) == '-' || this.buffer.get(i) == '+')) {
+      isNegative = this.buffer.get(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int numDigits = 0;
+    int exponent = 0;
+    boolean hasDigits = false;
+    boolean isFraction = false;
+    boolean isFastPath = true;
+    for (; i < end; i++) {
+      final byte b = this.buffer.get(i);
+      if (b >= '0' && b <= '9') {
+        hasDigits = true;
+        if (mantissa > 0 || b != '0') {
+          if (++numDigits > 18) {
+            isFastPath = false;
+            break;
+          }
+        }
+        mantissa = 10 * mantissa + (b - '0');
+        if (isFraction) {
+          exponent--;
+        }
+      } else if (b == '.' && !isFraction) {
+        isFraction = true;
+      } else if ((b == 'e' || b == 'E') && hasDigits) {
+        int expSign = 1;
+        int j = i + 1;
+        if (j < end
+            && (this.buffer.get(j) == '-' || this.buffer.get(j) == '+')) {
+          expSign = this.buffer.get(j) == '-' ? -1 : 1;
+          j++;
+        }
+        if (j == end || end - j > 3) {
+          isFastPath = false;
+          break;
+        }
+        int exp = 0;
+        for (; j < end; j++) {
+          final int digit = this.buffer.get(j) - '0';
+          if (digit < 0 || digit > 9) {
+            isFastPath = false;
+            break;
+          }
+          exp = 10 * exp + digit;
+        }
+        exponent += expSign * exp;
+        i = end;
+        break;
+      } else {
+        isFastPath = false;
+        break;
+      }
+    }
+
+    if (isFastPath && hasDigits && mantissa < (1l << 53)
+        && Math.abs(exponent) < MappedObservationReader.POWERS_OF_TEN.length) {
+      double value = mantissa;
+      if (exponent < 0) {
+        value /= MappedObservationReader.POWERS_OF_TEN[-exponent];
+      } else {
+        value *= MappedObservationReader.POWERS_OF_TEN[exponent];
+      }
+      return isNegative ? -value : value;
+    }
+
+    final String text = this.toString(start, end);
+    try {
+      return Double.parseDouble(text);
+    } catch (final NumberFormatException e) {
+      throw new ParseException("Line " + this.lineNumber
+          + ": unparseable number \"" + text + "\"", start - this.lineStart);
+    }
+  }
+
+  protected void parseLine(ObservationRecord record) throws ParseException {
+    final byte delimiter = (byte) this.columns.getDelimiter();
+    final int maxColumn = this.fieldStarts.length - 1;
+    int column = 0;
+    int fieldStart = this.lineStart;
+    for (int i = this.lineStart; i <= this.lineEnd
+        && column <= maxColumn; i++) {
+      if (i == this.lineEnd || this.buffer.get(i) == delimiter) {
+        int start = fieldStart;
+        int end = i;
+        if (end - start >= 2 && this.buffer.get(start) == '"'
+            && this.buffer.get(end - 1) == '"') {
+          start++;
+          end--;
+        }
+        this.fieldStarts[column] = start;
+        this.fieldEnds[column] = end;
+        column++;
+        fieldStart = i + 1;
+      }
+    }
+    if (column <= maxColumn) {
+      throw new ParseException("Line " + this.lineNumber + ": expected "
+          + (maxColumn + 1) + " columns, found " + column, 0);
+    }
+
+    record.sourceId =
+        this.getSourceId(this.fieldStarts[this.columns.getSourceIdColumn()],
+            this.fieldEnds[this.columns.getSourceIdColumn()]);
+    record.timestamp =
+        TimestampParser.get().parse(this.buffer,
+            this.fieldStarts[this.columns.getTimestampColumn()],
+            this.fieldEnds[this.columns.getTimestampColumn()]);
+    record.lat =
+        this.parseDouble(this.fieldStarts[this.columns.getLatColumn()],
+            this.fieldEnds[this.columns.getLatColumn()]);
+    record.lon =
+        this.parseDouble(this.fieldStarts[this.columns.getLonColumn()],
+            this.fieldEnds[this.columns.getLonColumn()]);
+    record.velocity =
+        this.columns.hasVelocity() ? this.parseDouble(
+            this.fieldStarts[this.columns.getVelocityColumn()],
+            this.fieldEnds[this.columns.getVelocityColumn()]) : Double.NaN;
+  }
+
+  protected String toString(int start, int end) {
+    final byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = this.buffer.get(i);
+    }
+    return new String(bytes, MappedObservationReader.UTF8);
+  }
+
+}
@@ -0,0 +1,70 @@
+package org.opentrackingtools.util.tracerunner;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Where the observation fields are in the lines of a trace file. The
+ * defaults are those of the traces TraceRunner has always read: a header,
+ * then ';'-separated lines with the source id, latitude, longitude,
+ * timestamp ("yyyy-MM-dd HH:mm:ss") and velocity in columns 3 to 7. <br>
+ * A negative velocity column means there isn't one.
+ */
+public class ObservationColumns {
+
+  public char delimiter = ';';
+  public boolean hasHeader = true;
+  public int latColumn = 4;
+  public int lonColumn = 5;
+  public int sourceIdColumn = 3;
+  public int timestampColumn = 6;
+  public int velocityColumn = 7;
+
+  public ObservationColumns() {
+  }
+
+  public char getDelimiter() {
+    return this.delimiter;
+  }
+
+  public int getLatColumn() {
+    return this.latColumn;
+  }
+
+  public int getLonColumn() {
+    return this.lonColumn;
+  }
+
+  /**
+   * The last column holding an observation field.
+   */
+  public int getMaxColumn() {
+    Preconditions.checkState(this.sourceIdColumn >= 0
+        && this.latColumn >= 0 && this.lonColumn >= 0
+        && this.timestampColumn >= 0);
+    return Math.max(
+        Math.max(this.sourceIdColumn, this.timestampColumn),
+        Math.max(Math.max(this.latColumn, this.lonColumn),
+            this.velocityColumn));
+  }
+
+  public int getSourceIdColumn() {
+    return this.sourceIdColumn;
+  }
+
+  public int getTimestampColumn() {
+    return this.timestampColumn;
+  }
+
+  public int getVelocityColumn() {
+    return this.velocityColumn;
+  }
+
+  public boolean hasHeader() {
+    return this.hasHeader;
+  }
+
+  public boolean hasVelocity() {
+    return this.velocityColumn >= 0;
+  }
+
+}
@@ -0,0 +1,161 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.tracker.ObservationDecimator;
+import org.opentrackingtools.tracker.ObservationReorderBuffer;
+import org.opentrackingtools.util.tracerunner.TraceRunner.TraceRunnerConfig;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The observations of a trace's records, as they're to be filtered: when
+ * configured, they're put back in time order, by an
+ * {@link ObservationReorderBuffer}, then thinned out, by an
+ * {@link ObservationDecimator}. Each observation's previous observation is
+ * its vehicle's previous one out of the pipeline. <br>
+ * At the end of the records, the observations still held by either stage
+ * are released, the reorder buffer's first. <br>
+ * An observation should be consumed before the next one is taken, since
+ * links from past observations to their predecessors are dropped as it
+ * goes.
+ */
+public class ObservationPipeline extends AbstractIterator<GpsObservation> {
+
+  protected final ObservationDecimator decimator;
+
+  protected final InferenceGraph graph;
+
+  protected boolean isDecimatorFlushed = false;
+
+  /*
+   * Each vehicle's last observation, to link its next one to, when
+   * there's no reorder buffer to do so.
+   */
+  protected final Map<String, GpsObservation> lastObservations = Maps
+      .newHashMap();
+
+  protected int numRecords = 0;
+
+  protected final LinkedList<GpsObservation> pending = Lists
+      .newLinkedList();
+
+  protected final Iterator<ObservationRecord> records;
+
+  protected final ObservationReorderBuffer reorderBuffer;
+
+  public ObservationPipeline(TraceRunnerConfig config,
+    InferenceGraph graph, Iterator<ObservationRecord> records) {
+    this.graph = graph;
+    this.records = records;
+    this.decimator =
+        config.getDecimation() != null ? new ObservationDecimator(
+            config.getDecimation()) : null;
+    this.reorderBuffer =
+        config.getReorderDelaySeconds() > 0
+            ? new ObservationReorderBuffer(
+                config.getReorderDelaySeconds() * 1000l) : null;
+  }
+
+  @Override
+  protected GpsObservation computeNext() {
+    while (this.pending.isEmpty()) {
+      final List<GpsObservation> ordered;
+      if (this.records.hasNext()) {
+        final ObservationRecord record = this.records.next();
+        if (this.reorderBuffer != null) {
+          ordered =
+              this.reorderBuffer.offer(TraceRunner.parseObservation(
+                  record, this.numRecords++, null, this.graph));
+        } else {
+          final GpsObservation prevObs =
+              this.lastObservations.get(record.sourceId);
+          final GpsObservation obs =
+              TraceRunner.parseObservation(record, this.numRecords++,
+                  prevObs, this.graph);
+          if (prevObs != null) {
+            /*
+             * Only the new observation needs its predecessor.
+             */
+            prevObs.reset();
+          }
+          this.lastObservations.put(record.sourceId, obs);
+          ordered = Collections.singletonList(obs);
+        }
+      } else if (this.reorderBuffer != null
+          && this.reorderBuffer.getNumBuffered() > 0) {
+        /*
+         * The reorder buffer's held observations go through the decimator
+         * like any others, before it's flushed in turn.
+         */
+        ordered = this.reorderBuffer.flushAll();
+      } else if (this.decimator != null && !this.isDecimatorFlushed) {
+        this.isDecimatorFlushed = true;
+        this.pending.addAll(this.decimator.flushAll());
+        continue;
+      } else {
+        return this.endOfData();
+      }
+
+      for (final GpsObservation obs : ordered) {
+        final GpsObservation released =
+            this.decimator != null ? this.decimator.offer(obs) : obs;
+        if (released != null) {
+          this.pending.add(released);
+        }
+      }
+    }
+    return this.pending.removeFirst();
+  }
+
+  /**
+   * Null when decimation is off.
+   */
+  public ObservationDecimator getDecimator() {
+    return this.decimator;
+  }
+
+  /**
+   * The number of records read so far.
+   */
+  public int getNumRecords() {
+    return this.numRecords;
+  }
+
+  /**
+   * Null when reordering is off.
+   */
+  public ObservationReorderBuffer getReorderBuffer() {
+    return this.reorderBuffer;
+  }
+
+  /**
+   * What the reorder buffer and decimator have done, if they're on.
+   */
+  public String getSummary() {
+    final StringBuilder summary = new StringBuilder();
+    if (this.reorderBuffer != null) {
+      summary.append(this.reorderBuffer.getNumLate())
+          .append(" late and ")
+          .append(this.reorderBuffer.getNumDropped())
+          .append(" dropped observation(s)");
+    }
+    if (this.decimator != null) {
+      if (summary.length() > 0) {
+        summary.append("; ");
+      }
+      summary.append("filtered ").append(this.decimator.getNumReleased())
+          .append(" of ").append(this.decimator.getNumOffered())
+          .append(" observation(s)");
+    }
+    return summary.toString();
+  }
+}
@@ -0,0 +1,20 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Reads the observations of a trace file, one line at a time.
+ */
+public interface ObservationReader extends Closeable {
+
+  /**
+   * Fills in the given record from the next line.
+   *
+   * @return false when there are no more lines
+   */
+  public boolean next(ObservationRecord record) throws IOException,
+      ParseException;
+
+}
@@ -0,0 +1,93 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.text.ParseException;
+import java.util.Comparator;
+
+/**
+ * The fields of one line of a trace file, before it's turned into a
+ * GpsObservation. Readers fill in a record they're given, so that one can
+ * be reused for every line.
+ */
+public class ObservationRecord {
+
+  /**
+   * Orders records by source id, then timestamp, i.e. into per-vehicle,
+   * time-ordered runs.
+   */
+  public static final Comparator<ObservationRecord> BY_SOURCE_AND_TIME =
+      new Comparator<ObservationRecord>() {
+        @Override
+        public int compare(ObservationRecord o1, ObservationRecord o2) {
+          final int sourceComp = o1.sourceId.compareTo(o2.sourceId);
+          if (sourceComp != 0) {
+            return sourceComp;
+          }
+          return ObservationRecord.BY_TIME.compare(o1, o2);
+        }
+      };
+
+  public static final Comparator<ObservationRecord> BY_TIME =
+      new Comparator<ObservationRecord>() {
+        @Override
+        public int compare(ObservationRecord o1, ObservationRecord o2) {
+          return o1.timestamp < o2.timestamp ? -1
+              : (o1.timestamp == o2.timestamp ? 0 : 1);
+        }
+      };
+
+  public double lat;
+  public double lon;
+  public String sourceId;
+  public long timestamp;
+  public double velocity;
+
+  public ObservationRecord() {
+  }
+
+  public ObservationRecord(ObservationRecord other) {
+    this.set(other);
+  }
+
+  /**
+   * Fills in this record from the fields of a parsed line.
+   */
+  public void set(String[] line, ObservationColumns columns)
+      throws ParseException {
+    if (line.length <= columns.getMaxColumn()) {
+      throw new ParseException("Expected "
+          + (columns.getMaxColumn() + 1) + " columns, found "
+          + line.length, 0);
+    }
+    this.sourceId = line[columns.getSourceIdColumn()];
+    this.timestamp =
+        TimestampParser.get().parse(line[columns.getTimestampColumn()]);
+    try {
+      this.lat = Double.parseDouble(line[columns.getLatColumn()]);
+      this.lon = Double.parseDouble(line[columns.getLonColumn()]);
+      this.velocity =
+          columns.hasVelocity() ? Double.parseDouble(line[columns
+              .getVelocityColumn()]) : Double.NaN;
+    } catch (final NumberFormatException e) {
+      final ParseException parseException =
+          new ParseException(e.getMessage(), 0);
+      parseException.initCause(e);
+      throw parseException;
+    }
+  }
+
+  public void set(ObservationRecord other) {
+    this.sourceId = other.sourceId;
+    this.timestamp = other.timestamp;
+    this.lat = other.lat;
+    this.lon = other.lon;
+    this.velocity = other.velocity;
+  }
+
+  @Override
+  public String toString() {
+    return "ObservationRecord [sourceId=" + this.sourceId
+        + ", timestamp=" + this.timestamp + ", lat=" + this.lat
+        + ", lon=" + this.lon + ", velocity=" + this.velocity + "]";
+  }
+
+}
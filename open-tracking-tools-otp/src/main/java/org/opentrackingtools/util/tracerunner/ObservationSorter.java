@@ -0,0 +1,324 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Splits observations from any number of vehicles, in any order, into
+ * per-vehicle, time-ordered runs, holding only a bounded number of records
+ * in memory. <br>
+ * Records are collected until the buffer is full, then sorted by source id
+ * and timestamp and spilled to a temporary chunk file. {@link #split}
+ * merges the chunks and writes each vehicle's records to a run file of its
+ * own, which is handed off as soon as it's complete. Records with equal
+ * timestamps keep the order they were added in. <br>
+ * At most a fixed number of chunks are open, and buffered, at once: when
+ * there are more, consecutive ones are first merged into larger chunks, over
+ * as many passes as it takes.
+ */
+public class ObservationSorter implements Closeable {
+
+  /**
+   * Receives each vehicle's run file, which it then owns.
+   */
+  public static interface RunHandler {
+    public void handleRun(String sourceId, File run, int numRecords)
+        throws IOException;
+  }
+
+  /**
+   * The next record of a chunk, in the merge.
+   */
+  protected static class ChunkHead {
+    protected final int index;
+    protected final RecordFileReader reader;
+    protected final ObservationRecord record = new ObservationRecord();
+
+    protected ChunkHead(int index, RecordFileReader reader) {
+      this.index = index;
+      this.reader = reader;
+    }
+
+    protected boolean advance() throws IOException {
+      return this.reader.next(this.record);
+    }
+  }
+
+  public static final int DEFAULT_MAX_FAN_IN = 64;
+
+  private static final Logger log = LoggerFactory
+      .getLogger(ObservationSorter.class);
+
+  protected final List<ObservationRecord> buffer;
+  protected final List<File> chunks = Lists.newArrayList();
+  protected final int maxFanIn;
+  protected final int maxRecordsInMemory;
+  protected long numRecords = 0;
+  protected final File tempDirectory;
+
+  /**
+   * @param tempDirectory
+   *          where the chunk and run files go; the default temporary
+   *          directory when null
+   * @param maxRecordsInMemory
+   *          the most records buffered before they're spilled
+   */
+  public ObservationSorter(File tempDirectory, int maxRecordsInMemory) {
+    this(tempDirectory, maxRecordsInMemory,
+        ObservationSorter.DEFAULT_MAX_FAN_IN);
+  }
+
+  /**
+   * @param tempDirectory
+   *          where the chunk and run files go; the default temporary
+   *          directory when null
+   * @param maxRecordsInMemory
+   *          the most records buffered before they're spilled
+   * @param maxFanIn
+   *          the most chunks merged at once
+   */
+  public ObservationSorter(File tempDirectory, int maxRecordsInMemory,
+    int maxFanIn) {
+    Preconditions.checkArgument(maxRecordsInMemory > 0);
+    Preconditions.checkArgument(maxFanIn > 1);
+    this.tempDirectory = tempDirectory;
+    this.maxRecordsInMemory = maxRecordsInMemory;
+    this.maxFanIn = maxFanIn;
+    this.buffer =
+        Lists.newArrayListWithCapacity(Math.min(maxRecordsInMemory,
+            1 << 16));
+  }
+
+  /**
+   * Adds a copy of the given record.
+   */
+  public void add(ObservationRecord record) throws IOException {
+    this.buffer.add(new ObservationRecord(record));
+    this.numRecords++;
+    if (this.buffer.size() >= this.maxRecordsInMemory) {
+      this.spill();
+    }
+  }
+
+  /**
+   * Adds every record the reader has left. The reader isn't closed.
+   *
+   * @return the number of records added
+   */
+  public long addAll(ObservationReader reader) throws IOException,
+      ParseException {
+    final ObservationRecord record = new ObservationRecord();
+    long count = 0;
+    while (reader.next(record)) {
+      this.add(record);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Drops the buffered records and deletes the chunk files.
+   */
+  @Override
+  public void close() {
+    this.buffer.clear();
+    for (final File chunk : this.chunks) {
+      if (!chunk.delete()) {
+        log.warn("Couldn't delete " + chunk);
+      }
+    }
+    this.chunks.clear();
+  }
+
+  public int getNumChunks() {
+    return this.chunks.size();
+  }
+
+  public long getNumRecords() {
+    return this.numRecords;
+  }
+
+  protected void spill() throws IOException {
+    if (this.buffer.isEmpty()) {
+      return;
+    }
+    /*
+     * Collections.sort is stable, so equal records keep their order.
+     */
+    Collections.sort(this.buffer, ObservationRecord.BY_SOURCE_AND_TIME);
+    final File chunk =
+        File.createTempFile("observations", ".chunk", this.tempDirectory);
+    this.chunks.add(chunk);
+    final RecordFileWriter writer = new RecordFileWriter(chunk);
+    try {
+      for (final ObservationRecord record : this.buffer) {
+        writer.write(record);
+      }
+    } finally {
+      writer.close();
+    }
+    this.buffer.clear();
+  }
+
+  /**
+   * Closes the run and hands it off.
+   */
+  protected void finishRun(RecordFileWriter runWriter, String sourceId,
+    File run, RunHandler handler) throws IOException {
+    runWriter.close();
+    handler.handleRun(sourceId, run, runWriter.getNumRecords());
+  }
+
+  /**
+   * Merges the given chunks, in order, into a new one.
+   */
+  protected File mergeChunks(List<File> group) throws IOException {
+    final File merged =
+        File.createTempFile("observations", ".chunk", this.tempDirectory);
+    final List<RecordFileReader> readers = Lists.newArrayList();
+    final RecordFileWriter writer = new RecordFileWriter(merged);
+    boolean isComplete = false;
+    try {
+      final PriorityQueue<ChunkHead> heads =
+          ObservationSorter.openChunks(group, readers);
+      while (!heads.isEmpty()) {
+        final ChunkHead head = heads.poll();
+        writer.write(head.record);
+        if (head.advance()) {
+          heads.add(head);
+        }
+      }
+      isComplete = true;
+    } finally {
+      writer.close();
+      for (final RecordFileReader reader : readers) {
+        reader.close();
+      }
+      if (!isComplete) {
+        merged.delete();
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Opens the given chunks, adding their readers to the list, and queues
+   * their first records.
+   */
+  protected static PriorityQueue<ChunkHead> openChunks(List<File> group,
+    List<RecordFileReader> readers) throws IOException {
+    final PriorityQueue<ChunkHead> heads =
+        new PriorityQueue<ChunkHead>(Math.max(group.size(), 1),
+            new Comparator<ChunkHead>() {
+              @Override
+              public int compare(ChunkHead o1, ChunkHead o2) {
+                final int recordComp =
+                    ObservationRecord.BY_SOURCE_AND_TIME.compare(o1.record,
+                        o2.record);
+                /*
+                 * Earlier chunks hold earlier records.
+                 */
+                return recordComp != 0 ? recordComp : o1.index - o2.index;
+              }
+            });
+    for (int i = 0; i < group.size(); i++) {
+      final RecordFileReader reader = new RecordFileReader(group.get(i));
+      readers.add(reader);
+      final ChunkHead head = new ChunkHead(i, reader);
+      if (head.advance()) {
+        heads.add(head);
+      }
+    }
+    return heads;
+  }
+
+  /**
+   * Merges everything added so far into per-vehicle runs, in source id
+   * order, passing each to the handler as soon as it's written. The chunk
+   * files are deleted afterwards.
+   */
+  public void split(RunHandler handler) throws IOException {
+    final List<RecordFileReader> readers = Lists.newArrayList();
+    RecordFileWriter runWriter = null;
+    File run = null;
+    String runSourceId = null;
+    try {
+      this.spill();
+
+      /*
+       * Merge consecutive chunks, so that the chunks stay in the order
+       * their records were added, until few enough are left to open at
+       * once.
+       */
+      while (this.chunks.size() > this.maxFanIn) {
+        /*
+         * The merged chunks are added as they're written, so that they're
+         * deleted on failure, and replace the pass's chunks once it's done.
+         */
+        final int numChunks = this.chunks.size();
+        for (int i = 0; i < numChunks; i += this.maxFanIn) {
+          final List<File> group =
+              Lists.newArrayList(this.chunks.subList(i,
+                  Math.min(i + this.maxFanIn, numChunks)));
+          this.chunks.add(group.size() > 1 ? this.mergeChunks(group)
+              : group.get(0));
+        }
+        final List<File> passChunks = this.chunks.subList(0, numChunks);
+        for (final File chunk : passChunks) {
+          if (!this.chunks.subList(numChunks, this.chunks.size()).contains(
+              chunk)
+              && !chunk.delete()) {
+            log.warn("Couldn't delete " + chunk);
+          }
+        }
+        passChunks.clear();
+      }
+
+      final PriorityQueue<ChunkHead> heads =
+          ObservationSorter.openChunks(this.chunks, readers);
+      while (!heads.isEmpty()) {
+        final ChunkHead head = heads.poll();
+        if (!head.record.sourceId.equals(runSourceId)) {
+          if (runWriter != null) {
+            this.finishRun(runWriter, runSourceId, run, handler);
+            runWriter = null;
+          }
+          runSourceId = head.record.sourceId;
+          run = File.createTempFile("run", ".observations", this.tempDirectory);
+          runWriter = new RecordFileWriter(run);
+        }
+        runWriter.write(head.record);
+        if (head.advance()) {
+          heads.add(head);
+        }
+      }
+
+      if (runWriter != null) {
+        this.finishRun(runWriter, runSourceId, run, handler);
+        runWriter = null;
+      }
+    } finally {
+      if (runWriter != null) {
+        runWriter.close();
+        run.delete();
+      }
+      for (final RecordFileReader reader : readers) {
+        reader.close();
+      }
+      this.close();
+    }
+  }
+
+}
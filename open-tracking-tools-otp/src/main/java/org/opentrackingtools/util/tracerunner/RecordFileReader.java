@@ -0,0 +1,46 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the records written by a {@link RecordFileWriter}. Consecutive
+ * records with the same source id share its String.
+ */
+public class RecordFileReader implements ObservationReader {
+
+  protected final DataInputStream in;
+  protected String lastSourceId = null;
+
+  public RecordFileReader(File file) throws IOException {
+    this.in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(
+            file), 1 << 16));
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  @Override
+  public boolean next(ObservationRecord record) throws IOException {
+    if (this.in.read() < 0) {
+      return false;
+    }
+    final String sourceId = this.in.readUTF();
+    if (!sourceId.equals(this.lastSourceId)) {
+      this.lastSourceId = sourceId;
+    }
+    record.sourceId = this.lastSourceId;
+    record.timestamp = this.in.readLong();
+    record.lat = this.in.readDouble();
+    record.lon = this.in.readDouble();
+    record.velocity = this.in.readDouble();
+    return true;
+  }
+
+}
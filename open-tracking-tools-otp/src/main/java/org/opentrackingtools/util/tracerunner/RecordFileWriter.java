@@ -0,0 +1,45 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes observation records to a file in a simple binary form, for
+ * {@link RecordFileReader}: for each record, a marker byte, the source id
+ * (modified UTF-8), the timestamp, latitude, longitude and velocity.
+ */
+public class RecordFileWriter implements Closeable {
+
+  protected final DataOutputStream out;
+  protected int numRecords = 0;
+
+  public RecordFileWriter(File file) throws IOException {
+    this.out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            file), 1 << 16));
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.out.close();
+  }
+
+  public int getNumRecords() {
+    return this.numRecords;
+  }
+
+  public void write(ObservationRecord record) throws IOException {
+    this.out.writeByte(1);
+    this.out.writeUTF(record.sourceId);
+    this.out.writeLong(record.timestamp);
+    this.out.writeDouble(record.lat);
+    this.out.writeDouble(record.lon);
+    this.out.writeDouble(record.velocity);
+    this.numRecords++;
+  }
+
+}
@@ -0,0 +1,17 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+
+/**
+ * Writes the filter's results, one state per observation.
+ */
+public interface ResultWriter extends Closeable {
+
+  public void write(VehicleStateDistribution<GpsObservation> state)
+      throws IOException;
+
+}
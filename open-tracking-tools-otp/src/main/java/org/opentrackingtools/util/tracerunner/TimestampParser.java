@@ -0,0 +1,119 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Calendar;
+
+/**
+ * Parses "yyyy-MM-dd HH:mm:ss" timestamps, in the default time zone, from
+ * text or straight from bytes. <br>
+ * Any non-digits separate the fields, field widths aren't checked, and
+ * anything after the seconds (e.g. fractional seconds) is ignored. Out of
+ * range fields roll over, as with a lenient SimpleDateFormat. <br>
+ * Instances aren't thread-safe; {@link #get()} returns one for the current
+ * thread. Each keeps the time of the last hour it saw, since consecutive
+ * observations are usually within the same hour, and only goes through its
+ * Calendar for a new one.
+ */
+public class TimestampParser {
+
+  private static final ThreadLocal<TimestampParser> instances =
+      new ThreadLocal<TimestampParser>() {
+        @Override
+        protected TimestampParser initialValue() {
+          return new TimestampParser();
+        }
+      };
+
+  /**
+   * The parser for the current thread.
+   */
+  public static TimestampParser get() {
+    return TimestampParser.instances.get();
+  }
+
+  private int cachedDay = -1;
+  private int cachedHour = -1;
+  private long cachedHourMillis;
+  private int cachedMonth = -1;
+  private int cachedYear = -1;
+  private final Calendar calendar = Calendar.getInstance();
+  private final int[] fields = new int[6];
+
+  protected TimestampParser() {
+  }
+
+  /**
+   * Parses the timestamp in the given bytes of the buffer, without changing
+   * its position.
+   *
+   * @return the time in milliseconds
+   */
+  public long parse(ByteBuffer buffer, int start, int end)
+      throws ParseException {
+    int numFields = 0;
+    int value = -1;
+    for (int i = start; i < end && numFields < this.fields.length; i++) {
+      final int digit = buffer.get(i) - '0';
+      if (digit >= 0 && digit <= 9) {
+        value = (value < 0 ? 0 : 10 * value) + digit;
+      } else if (value >= 0) {
+        this.fields[numFields++] = value;
+        value = -1;
+      }
+    }
+    if (value >= 0 && numFields < this.fields.length) {
+      this.fields[numFields++] = value;
+    }
+    if (numFields < this.fields.length) {
+      throw new ParseException("Unparseable timestamp at byte " + start,
+          start);
+    }
+    return this.toMillis();
+  }
+
+  /**
+   * @return the time in milliseconds
+   */
+  public long parse(CharSequence text) throws ParseException {
+    int numFields = 0;
+    int value = -1;
+    for (int i = 0; i < text.length() && numFields < this.fields.length; i++) {
+      final int digit = text.charAt(i) - '0';
+      if (digit >= 0 && digit <= 9) {
+        value = (value < 0 ? 0 : 10 * value) + digit;
+      } else if (value >= 0) {
+        this.fields[numFields++] = value;
+        value = -1;
+      }
+    }
+    if (value >= 0 && numFields < this.fields.length) {
+      this.fields[numFields++] = value;
+    }
+    if (numFields < this.fields.length) {
+      throw new ParseException("Unparseable timestamp: \"" + text + "\"",
+          0);
+    }
+    return this.toMillis();
+  }
+
+  private long toMillis() {
+    final int year = this.fields[0];
+    final int month = this.fields[1];
+    final int day = this.fields[2];
+    final int hour = this.fields[3];
+    if (year != this.cachedYear || month != this.cachedMonth
+        || day != this.cachedDay || hour != this.cachedHour) {
+      this.calendar.clear();
+      this.calendar.set(year, month - 1, day, hour, 0, 0);
+      this.cachedHourMillis = this.calendar.getTimeInMillis();
+      this.cachedYear = year;
+      this.cachedMonth = month;
+      this.cachedDay = day;
+      this.cachedHour = hour;
+    }
+    return this.cachedHourMillis + 60000l * this.fields[4] + 1000l
+        * this.fields[5];
+  }
+
+}
@@ -6,10 +6,20 @@ import gov.sandia.cognition.statistics.bayesian.ParticleFilter;
 
 import java.io.File;
 import java.io.FileReader;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.codehaus.jackson.JsonParser.Feature;
 import org.codehaus.jackson.Version;
@@ -24,6 +34,9 @@ import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.tracker.DecimationPolicy;
+import org.opentrackingtools.tracker.FileVehicleStateStore;
+import org.opentrackingtools.tracker.MultiVehicleTracker;
 import org.opentrackingtools.util.GeoUtils;
 import org.opentrackingtools.util.tracerunner.JsonUtils.PathStateSerializer;
 import org.opentrackingtools.util.tracerunner.JsonUtils.VectorDeserializer;
@@ -33,10 +46,12 @@ import org.opentrackingtools.util.tracerunner.JsonUtils.VehicleStateSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import au.com.bytecode.opencsv.CSVReader;
-
-import com.google.common.collect.Iterables;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import com.vividsolutions.jts.geom.Coordinate;
 
 public class TraceRunner {
@@ -48,42 +63,203 @@ public class TraceRunner {
     public String outputFileName;
     public String traceFileName;
 
+    /*
+     * Stream observations and results, rather than loading the whole trace
+     * and writing all the results at the end.
+     */
+    public boolean streaming = false;
+
+    /*
+     * When streaming, write one compact JSON result per line, rather than
+     * a JSON array.
+     */
+    public boolean lineDelimited = false;
+
+    /*
+     * "json" (the default), or "binary" for BinaryResultWriter's compact
+     * records.
+     */
+    public String outputFormat = "json";
+
+    /*
+     * Filter every vehicle in the trace file, or in the files of the trace
+     * directory, writing each one's results to its own file in the output
+     * directory.
+     */
+    public boolean batch = false;
+    public String outputDirectory;
+
+    /*
+     * The number of vehicles filtered at once in batch mode; the number of
+     * processors when not positive.
+     */
+    public int numThreads = 0;
+
+    /*
+     * Where the observation fields are in the trace file(s).
+     */
+    public ObservationColumns columns = new ObservationColumns();
+
+    /*
+     * Read the trace file(s) with a MappedObservationReader, rather than a
+     * CsvObservationReader.
+     */
+    public boolean mappedReader = false;
+
+    /*
+     * In batch mode, the most observations held in memory while they're
+     * grouped by vehicle and sorted; the rest are spilled to files in the
+     * temp directory (the default one when not set). When not positive,
+     * every trace is held in memory.
+     */
+    public int sortBufferSize = 1 << 20;
+    public String tempDirectory;
+
+    /*
+     * Filter a time-ordered trace of many vehicles, as it's read, with a
+     * MultiVehicleTracker, writing each vehicle's result after each of its
+     * observations. Vehicles that aren't observed for the inactivity
+     * period, or that are the least recently observed ones while the
+     * active ones are over the heap budget (unlimited when not positive),
+     * are hibernated to the hibernation directory (a new temp directory
+     * when not set).
+     */
+    public boolean multiVehicle = false;
+    public String hibernationDirectory;
+    public int inactivitySeconds = 900;
+    public int heapBudgetMb = 0;
+
+    /*
+     * When set, each vehicle's observations are thinned out, per this
+     * policy, before they're filtered.
+     */
+    public DecimationPolicy decimation;
+
+    /*
+     * When positive, the observations are put back in time order, waiting
+     * up to this long, in observation time, for late ones.
+     */
+    public int reorderDelaySeconds = 0;
+
     public TraceRunnerConfig() {
     }
 
+    public ObservationColumns getColumns() {
+      return this.columns;
+    }
+
     public VehicleStateInitialParameters getInitialParameters() {
       return this.initialParameters;
     }
 
+    public DecimationPolicy getDecimation() {
+      return this.decimation;
+    }
+
+    public int getHeapBudgetMb() {
+      return this.heapBudgetMb;
+    }
+
+    public String getHibernationDirectory() {
+      return this.hibernationDirectory;
+    }
+
+    public int getInactivitySeconds() {
+      return this.inactivitySeconds;
+    }
+
+    public int getReorderDelaySeconds() {
+      return this.reorderDelaySeconds;
+    }
+
     public String getOtpGraphLocation() {
       return this.otpGraphLocation;
     }
 
+    public String getOutputDirectory() {
+      return this.outputDirectory;
+    }
+
     public String getOutputFileName() {
       return this.outputFileName;
     }
 
+    public int getNumThreads() {
+      return this.numThreads > 0 ? this.numThreads : Runtime.getRuntime()
+          .availableProcessors();
+    }
+
+    public int getSortBufferSize() {
+      return this.sortBufferSize;
+    }
+
+    public String getTempDirectory() {
+      return this.tempDirectory;
+    }
+
     public String getTraceFileName() {
       return this.traceFileName;
     }
 
+    public String getOutputFormat() {
+      return this.outputFormat;
+    }
+
+    public boolean isBatch() {
+      return this.batch;
+    }
+
+    public boolean isBinaryOutput() {
+      return "binary".equalsIgnoreCase(this.outputFormat);
+    }
+
+    public boolean isLineDelimited() {
+      return this.lineDelimited;
+    }
+
+    public boolean isMappedReader() {
+      return this.mappedReader;
+    }
+
+    public boolean isMultiVehicle() {
+      return this.multiVehicle;
+    }
+
+    public boolean isStreaming() {
+      return this.streaming;
+    }
+
   }
 
-  private static final SimpleDateFormat sdf = new SimpleDateFormat(
-      "yyyy-MM-dd hh:mm:ss");
+  /**
+   * The filter's results for one vehicle in batch mode.
+   */
+  public static class VehicleResult {
+
+    public String error;
+    public long elapsedMillis;
+    public int numObservations;
+    public String sourceId;
+
+    public VehicleResult(String sourceId) {
+      this.sourceId = sourceId;
+    }
+
+    public double getObservationsPerSecond() {
+      return this.elapsedMillis > 0 ? 1000d * this.numObservations
+          / this.elapsedMillis : Double.NaN;
+    }
+  }
 
   private static final Logger log = LoggerFactory
       .getLogger(TraceRunner.class);
 
 
-  public static void main(String[] args) throws Exception {
-
-    /*
-     * Read config file and parse observations
-     */
-    final String configFileName = args[0];
-    final File configFile = new File(configFileName);
+  public static ObjectMapper createObjectMapper() {
+    return TraceRunner.createObjectMapper(true);
+  }
 
+  public static ObjectMapper createObjectMapper(boolean indentOutput) {
     final Version version = new Version(1, 0, 0, "SNAPSHOT");
     SimpleModule module = new SimpleModule("MyModuleName", version);
     module =
@@ -107,8 +283,20 @@ public class TraceRunner {
     final ObjectMapper objectMapper = new ObjectMapper();
     objectMapper.registerModule(module);
     objectMapper.configure(SerializationConfig.Feature.INDENT_OUTPUT,
-        true);
+        indentOutput);
     objectMapper.configure(Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+    return objectMapper;
+  }
+
+  public static void main(String[] args) throws Exception {
+
+    /*
+     * Read config file and parse observations
+     */
+    final String configFileName = args[0];
+    final File configFile = new File(configFileName);
+
+    final ObjectMapper objectMapper = TraceRunner.createObjectMapper();
 
     final TraceRunnerConfig config =
         objectMapper.readValue(configFile, TraceRunnerConfig.class);
@@ -120,10 +308,6 @@ public class TraceRunner {
 
     System.out.println("Loaded config:" + ip);
 
-    final List<GpsObservation> observations = Lists.newArrayList();
-    final CSVReader gpsReader =
-        new CSVReader(new FileReader(config.getTraceFileName()), ';');
-
     // TODO take json observations
     //      observations = objectMapper.readValue(
     //          configFile, new TypeReference<List<GpsObservation>>() {});
@@ -132,52 +316,95 @@ public class TraceRunner {
     final InferenceGraph graph =
         new OtpGraph(config.getOtpGraphLocation());
 
-    // skip header
-    gpsReader.readNext();
-
-    String[] line = gpsReader.readNext();
-    int recordNumber = 0;
-    GpsObservation prevObs = null;
-    do {
-      final String sourceId = line[3];
-      final Date timestamp = TraceRunner.sdf.parse(line[6]);
-      final double velocity = Double.parseDouble(line[7]);
-      final double heading = Double.NaN;
-      final double accuracy = Double.NaN;
-      final Coordinate latLng =
-          new Coordinate(Double.parseDouble(line[4]),
-              Double.parseDouble(line[5]));
-
-      if (!graph.getGPSGraphExtent().contains(latLng)) {
-        log.warn("Coordinate doesn't exist within extent of OTP graph:" + latLng 
-            + " in " + graph.getGPSGraphExtent());
-      }
-      
-      final org.opentrackingtools.model.ProjectedCoordinate obsPoint =
-          GeoUtils.convertToEuclidean(latLng);
-
-      final GpsObservation obs =
-          new GpsObservation(sourceId, timestamp, latLng, velocity,
-              heading, accuracy, recordNumber, prevObs, obsPoint);
+    if (config.isBatch()) {
+      TraceRunner.runBatch(config, ip, graph, objectMapper);
+      return;
+    }
 
-      observations.add(obs);
+    if (config.isMultiVehicle()) {
+      TraceRunner.runMultiVehicle(config, ip, graph, objectMapper);
+      return;
+    }
 
-      ++recordNumber;
-      prevObs = obs;
+    if (config.isStreaming()) {
+      TraceRunner.runStreaming(config, ip, graph, objectMapper);
+      return;
+    }
 
-    } while ((line = gpsReader.readNext()) != null);
+    /*
+     * The observations go through the same pipeline as in the other modes,
+     * so that they're reordered and decimated as configured.
+     */
+    final ObservationReader gpsReader =
+        TraceRunner.createObservationReader(config, new File(
+            config.getTraceFileName()));
+    final ObservationPipeline observations =
+        new ObservationPipeline(config, graph,
+            TraceRunner.readRecords(gpsReader));
 
-    gpsReader.close();
+    final List<VehicleStateDistribution<GpsObservation>> results =
+        Lists.newArrayList();
+    try {
+      if (observations.hasNext()) {
+        /*
+         * Create the filter
+         */
+        final GpsObservation initialObs = observations.next();
+
+        final ParticleFilter<GpsObservation, VehicleStateDistribution<GpsObservation>> filter =
+            TraceRunner.createFilter(config, ip, graph, initialObs, true);
+        final DataDistribution<VehicleStateDistribution<GpsObservation>> priorBelief =
+            filter.createInitialLearnedObject();
+
+        /*
+         * Filter observations as they come out of the pipeline, which
+         * drops their links to their predecessors as it goes.
+         */
+        while (observations.hasNext()) {
+          final GpsObservation obs = observations.next();
+
+          // just the "best" particle for now
+          results.add(priorBelief.getMaxValueKey());
+
+          filter.update(priorBelief, obs);
+        }
+      } else {
+        log.warn("No observations in " + config.getTraceFileName());
+      }
+    } finally {
+      gpsReader.close();
+    }
 
-    System.out.println("Loaded " + observations.size()
+    System.out.println("Loaded " + observations.getNumRecords()
         + " observation(s)");
+    if (observations.getSummary().length() > 0) {
+      System.out.println(observations.getSummary());
+    }
+    System.out.println("Finished processing observations");
 
-    /*
-     * Create the filter
-     */
-    final GpsObservation initialObs =
-        Iterables.getFirst(observations, null);
+    final File outputFile = new File(config.getOutputFileName());
+    if (config.isBinaryOutput()) {
+      final ResultWriter writer = new BinaryResultWriter(outputFile);
+      try {
+        for (final VehicleStateDistribution<GpsObservation> result : results) {
+          writer.write(result);
+        }
+      } finally {
+        writer.close();
+      }
+    } else {
+      objectMapper.writeValue(outputFile, results);
+    }
+
+    System.out.println("Output written to "
+        + config.getOutputFileName());
+  }
 
+  protected static
+      ParticleFilter<GpsObservation, VehicleStateDistribution<GpsObservation>>
+      createFilter(TraceRunnerConfig config,
+        VehicleStateInitialParameters ip, InferenceGraph graph,
+        GpsObservation initialObs, boolean isDebug) {
     Random rng;
     if (ip.getSeed() != 0) {
       rng = new Random(ip.getSeed());
@@ -198,32 +425,460 @@ public class TraceRunner {
             initialObs,
             graph,
             new VehicleStateDistributionFactory<GpsObservation, InferenceGraph>(),
-            ip, true, rng);
+            ip, isDebug, rng);
     //        (ParticleFilter) ctor.newInstance(initialObs, graph, ip, true, 
     //            rng);
     filter.setNumParticles(config.getInitialParameters().getNumParticles());
 
     filter.getRandom().setSeed(ip.getSeed());
-    final DataDistribution<VehicleStateDistribution<GpsObservation>> priorBelief =
-        filter.createInitialLearnedObject();
+    return filter;
+  }
+
+  /**
+   * The reader for the given trace file, as configured.
+   */
+  protected static ObservationReader createObservationReader(
+    TraceRunnerConfig config, File file) throws IOException {
+    if (config.isMappedReader()) {
+      return new MappedObservationReader(file, config.getColumns());
+    }
+    return new CsvObservationReader(new FileReader(file),
+        config.getColumns());
+  }
+
+  /**
+   * Creates an observation from a record of the trace.
+   */
+  protected static GpsObservation parseObservation(
+    ObservationRecord record, int recordNumber, GpsObservation prevObs,
+    InferenceGraph graph) {
+    final String sourceId = record.sourceId;
+    final Date timestamp = new Date(record.timestamp);
+    final double velocity = record.velocity;
+    final double heading = Double.NaN;
+    final double accuracy = Double.NaN;
+    final Coordinate latLng = new Coordinate(record.lat, record.lon);
+
+    if (!graph.getGPSGraphExtent().contains(latLng)) {
+      log.warn("Coordinate doesn't exist within extent of OTP graph:" + latLng 
+          + " in " + graph.getGPSGraphExtent());
+    }
+    
+    final org.opentrackingtools.model.ProjectedCoordinate obsPoint =
+        GeoUtils.convertToEuclidean(latLng);
+
+    return new GpsObservation(sourceId, timestamp, latLng, velocity,
+        heading, accuracy, recordNumber, prevObs, obsPoint);
+  }
+
+  /**
+   * Opens a writer for results on the given file, in the configured format.
+   */
+  protected static ResultWriter createResultWriter(
+    TraceRunnerConfig config, File file, ObjectMapper objectMapper)
+      throws IOException {
+    if (config.isBinaryOutput()) {
+      return new BinaryResultWriter(file);
+    }
+    return new JsonResultWriter(file, config.isLineDelimited(),
+        objectMapper);
+  }
+
+  /**
+   * Filters the given records' observations, one at a time, writing each
+   * result as soon as it's computed.
+   *
+   * @return the number of observations
+   */
+  protected static int filterObservations(TraceRunnerConfig config,
+    VehicleStateInitialParameters ip, InferenceGraph graph,
+    Iterator<ObservationRecord> records, ResultWriter writer)
+      throws IOException {
+    final ObservationPipeline observations =
+        new ObservationPipeline(config, graph, records);
+    if (!observations.hasNext()) {
+      return observations.getNumRecords();
+    }
+    GpsObservation prevObs = observations.next();
 
-    final List<VehicleStateDistribution<GpsObservation>> results =
-        Lists.newArrayList();
     /*
-     * Filter observations
+     * Debug distributions reference earlier states, so they're left off.
      */
-    for (final GpsObservation obs : Iterables.skip(observations, 1)) {
+    final ParticleFilter<GpsObservation, VehicleStateDistribution<GpsObservation>> filter =
+        TraceRunner.createFilter(config, ip, graph, prevObs, false);
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> belief =
+        filter.createInitialLearnedObject();
+
+    while (observations.hasNext()) {
+      final GpsObservation obs = observations.next();
+      /*
+       * Only the current observation needs its predecessor.
+       */
+      prevObs.reset();
+
       // just the "best" particle for now
-      results.add(priorBelief.getMaxValueKey());
+      writer.write(belief.getMaxValueKey());
 
-      filter.update(priorBelief, obs);
+      filter.update(belief, obs);
+      VehicleStateDistribution.truncateHistory(belief);
+      prevObs = obs;
+    }
+    if (observations.getSummary().length() > 0) {
+      log.info(prevObs.getSourceId() + ": "
+          + observations.getSummary());
     }
+    return observations.getNumRecords();
+  }
 
-    System.out.println("Finished processing observations");
+  /**
+   * The reader's records, each in a new ObservationRecord. Read and parse
+   * errors are rethrown unchecked.
+   */
+  protected static Iterator<ObservationRecord> readRecords(
+    final ObservationReader reader) {
+    return new AbstractIterator<ObservationRecord>() {
+      @Override
+      protected ObservationRecord computeNext() {
+        final ObservationRecord record = new ObservationRecord();
+        try {
+          return reader.next(record) ? record : this.endOfData();
+        } catch (final IOException e) {
+          throw Throwables.propagate(e);
+        } catch (final ParseException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+    };
+  }
 
-    final File outputFile = new File(config.getOutputFileName());
-    objectMapper.writeValue(outputFile, results);
+  /**
+   * Fails when the given source id's output file name is already taken by
+   * another vehicle, rather than have one's results overwrite the other's.
+   *
+   * @param outputFileNames
+   *          the source ids of the output file names taken so far
+   */
+  protected static void checkOutputFileName(TraceRunnerConfig config,
+    Map<String, String> outputFileNames, String sourceId) {
+    final String name = TraceRunner.getOutputFileName(config, sourceId);
+    final String otherSourceId = outputFileNames.put(name, sourceId);
+    Preconditions.checkState(otherSourceId == null,
+        "source ids %s and %s both map to output file %s", otherSourceId,
+        sourceId, name);
+  }
+
+  /**
+   * Filters one vehicle's records, writing its results to the file named by
+   * {@link #getOutputFileName} in the output directory.
+   */
+  protected static VehicleResult filterVehicle(TraceRunnerConfig config,
+    VehicleStateInitialParameters ip, InferenceGraph graph,
+    ObjectMapper objectMapper, File outputDirectory, String sourceId,
+    Iterator<ObservationRecord> records) throws IOException {
+    final VehicleResult result = new VehicleResult(sourceId);
+    final File outputFile =
+        new File(outputDirectory, TraceRunner.getOutputFileName(config,
+            sourceId));
+    final long vehicleStart = System.currentTimeMillis();
+    final ResultWriter writer =
+        TraceRunner.createResultWriter(config, outputFile, objectMapper);
+    try {
+      result.numObservations =
+          TraceRunner.filterObservations(config, ip, graph, records,
+              writer);
+    } finally {
+      writer.close();
+    }
+    result.elapsedMillis = System.currentTimeMillis() - vehicleStart;
+    return result;
+  }
+
+  /**
+   * "[source id].json" (or ".bin", for binary output), with any characters
+   * that can't be in a file name replaced. When some were, a hash of the
+   * source id is appended, so that e.g. "a/b" and "a:b" don't share a file.
+   */
+  protected static String getOutputFileName(TraceRunnerConfig config,
+    String sourceId) {
+    final String name = sourceId.replaceAll("[^\\w.-]", "_");
+    return (name.equals(sourceId) ? name : name + "-"
+        + Integer.toHexString(sourceId.hashCode()))
+        + (config.isBinaryOutput() ? ".bin" : ".json");
+  }
+
+  /**
+   * The trace file, or every file in the trace directory.
+   */
+  protected static List<File> getTraceFiles(TraceRunnerConfig config) {
+    final File traceFile = new File(config.getTraceFileName());
+    final List<File> files = Lists.newArrayList();
+    if (traceFile.isDirectory()) {
+      for (final File file : traceFile.listFiles()) {
+        if (file.isFile()) {
+          files.add(file);
+        }
+      }
+      Collections.sort(files);
+    } else {
+      files.add(traceFile);
+    }
+    return files;
+  }
+
+  /**
+   * Groups the records of the trace file(s) by their source id, in memory,
+   * and puts each vehicle's records in timestamp order. Only used without a
+   * sort buffer size, since every trace is then held at once.
+   */
+  protected static Map<String, List<ObservationRecord>>
+      readTracesBySource(TraceRunnerConfig config) throws IOException {
+    final Map<String, List<ObservationRecord>> traces =
+        Maps.newLinkedHashMap();
+    for (final File file : TraceRunner.getTraceFiles(config)) {
+      final ObservationReader gpsReader =
+          TraceRunner.createObservationReader(config, file);
+      try {
+        final Iterator<ObservationRecord> records =
+            TraceRunner.readRecords(gpsReader);
+        while (records.hasNext()) {
+          final ObservationRecord record = records.next();
+          List<ObservationRecord> trace = traces.get(record.sourceId);
+          if (trace == null) {
+            trace = Lists.newArrayList();
+            traces.put(record.sourceId, trace);
+          }
+          trace.add(record);
+        }
+      } finally {
+        gpsReader.close();
+      }
+    }
+    for (final List<ObservationRecord> trace : traces.values()) {
+      /*
+       * Stable, so records with equal timestamps keep their order.
+       */
+      Collections.sort(trace, ObservationRecord.BY_TIME);
+    }
+    return traces;
+  }
 
+  /**
+   * Loads the graph once and filters every vehicle in the trace(s) with its
+   * own filter, several vehicles at a time, writing each vehicle's results
+   * to "[source id].json" (or ".bin") in the output directory, and a
+   * throughput report to "report.json" there. <br>
+   * With a sort buffer size, the traces are split into per-vehicle runs out
+   * of core by an {@link ObservationSorter}, and each vehicle is filtered
+   * as soon as its run is written; otherwise they're grouped in memory.
+   */
+  protected static void runBatch(final TraceRunnerConfig config,
+    final VehicleStateInitialParameters ip, final InferenceGraph graph,
+    final ObjectMapper objectMapper) throws IOException,
+      InterruptedException, ParseException {
+
+    final File outputDirectory = new File(config.getOutputDirectory());
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IOException("Couldn't create output directory "
+          + outputDirectory);
+    }
+
+    final long start = System.currentTimeMillis();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(config.getNumThreads());
+    final Map<String, Future<VehicleResult>> futures =
+        Maps.newLinkedHashMap();
+    final Map<String, String> outputFileNames = Maps.newHashMap();
+    try {
+      if (config.getSortBufferSize() > 0) {
+        final ObservationSorter sorter =
+            new ObservationSorter(config.getTempDirectory() != null
+                ? new File(config.getTempDirectory()) : null,
+                config.getSortBufferSize());
+        try {
+          for (final File file : TraceRunner.getTraceFiles(config)) {
+            final ObservationReader gpsReader =
+                TraceRunner.createObservationReader(config, file);
+            try {
+              sorter.addAll(gpsReader);
+            } finally {
+              gpsReader.close();
+            }
+          }
+          System.out.println("Sorting " + sorter.getNumRecords()
+              + " observation(s) from " + sorter.getNumChunks()
+              + " chunk(s)");
+
+          sorter.split(new ObservationSorter.RunHandler() {
+            @Override
+            public void handleRun(final String sourceId, final File run,
+              int numRecords) {
+              TraceRunner.checkOutputFileName(config, outputFileNames,
+                  sourceId);
+              futures.put(sourceId,
+                  executor.submit(new Callable<VehicleResult>() {
+                    @Override
+                    public VehicleResult call() throws Exception {
+                      final RecordFileReader reader =
+                          new RecordFileReader(run);
+                      try {
+                        return TraceRunner.filterVehicle(config, ip,
+                            graph, objectMapper, outputDirectory,
+                            sourceId, TraceRunner.readRecords(reader));
+                      } finally {
+                        reader.close();
+                        run.delete();
+                      }
+                    }
+                  }));
+            }
+          });
+        } finally {
+          sorter.close();
+        }
+      } else {
+        for (final Entry<String, List<ObservationRecord>> trace : TraceRunner
+            .readTracesBySource(config).entrySet()) {
+          TraceRunner.checkOutputFileName(config, outputFileNames,
+              trace.getKey());
+          futures.put(trace.getKey(),
+              executor.submit(new Callable<VehicleResult>() {
+                @Override
+                public VehicleResult call() throws Exception {
+                  return TraceRunner.filterVehicle(config, ip, graph,
+                      objectMapper, outputDirectory, trace.getKey(), trace
+                          .getValue().iterator());
+                }
+              }));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    System.out.println("Loaded " + futures.size() + " vehicle(s)");
+
+    final List<VehicleResult> results = Lists.newArrayList();
+    int numObservations = 0;
+    int numFailed = 0;
+    for (final Entry<String, Future<VehicleResult>> future : futures
+        .entrySet()) {
+      VehicleResult result;
+      try {
+        result = future.getValue().get();
+        numObservations += result.numObservations;
+      } catch (final ExecutionException e) {
+        log.error("Failed to filter " + future.getKey(), e.getCause());
+        result = new VehicleResult(future.getKey());
+        result.error = String.valueOf(e.getCause());
+        ++numFailed;
+      }
+      results.add(result);
+    }
+    final long elapsedMillis = System.currentTimeMillis() - start;
+
+    final Map<String, Object> report = Maps.newLinkedHashMap();
+    report.put("numVehicles", futures.size());
+    report.put("numFailed", numFailed);
+    report.put("numObservations", numObservations);
+    report.put("numThreads", config.getNumThreads());
+    report.put("elapsedMillis", elapsedMillis);
+    report.put("observationsPerSecond", elapsedMillis > 0 ? 1000d
+        * numObservations / elapsedMillis : Double.NaN);
+    report.put("vehicles", results);
+    final File reportFile = new File(outputDirectory, "report.json");
+    objectMapper.writeValue(reportFile, report);
+
+    System.out.println("Finished processing " + numObservations
+        + " observation(s) of " + futures.size() + " vehicle(s) ("
+        + numFailed + " failed) in " + elapsedMillis + " ms: "
+        + report.get("observationsPerSecond") + " observations/s");
+    System.out.println("Output written to " + outputDirectory);
+  }
+
+  /**
+   * Filters the trace one observation at a time, writing each result as
+   * soon as it's computed, so that memory use doesn't grow with the length
+   * of the trace and the output can be followed as it's written.
+   */
+  protected static void runStreaming(TraceRunnerConfig config,
+    VehicleStateInitialParameters ip, InferenceGraph graph,
+    ObjectMapper objectMapper) throws IOException {
+
+    final ObservationReader gpsReader =
+        TraceRunner.createObservationReader(config, new File(
+            config.getTraceFileName()));
+    final ResultWriter writer =
+        TraceRunner.createResultWriter(config,
+            new File(config.getOutputFileName()), objectMapper);
+
+    try {
+      final int numObservations =
+          TraceRunner.filterObservations(config, ip, graph,
+              TraceRunner.readRecords(gpsReader), writer);
+      if (numObservations == 0) {
+        log.warn("No observations in " + config.getTraceFileName());
+      }
+
+      System.out.println("Finished processing " + numObservations
+          + " observation(s)");
+    } finally {
+      writer.close();
+      gpsReader.close();
+    }
+
+    System.out.println("Output written to "
+        + config.getOutputFileName());
+  }
+
+  /**
+   * Filters a trace of many vehicles, in time order (or put back in it,
+   * when reordering is on), one observation at a time, writing each
+   * vehicle's updated result as soon as it's computed. Idle vehicles are
+   * hibernated to disk, and restored on their next observation.
+   */
+  protected static void runMultiVehicle(TraceRunnerConfig config,
+    VehicleStateInitialParameters ip, InferenceGraph graph,
+    ObjectMapper objectMapper) throws IOException {
+
+    final File hibernationDirectory =
+        config.getHibernationDirectory() != null ? new File(
+            config.getHibernationDirectory()) : Files.createTempDir();
+    final MultiVehicleTracker tracker =
+        new MultiVehicleTracker(graph, ip, new FileVehicleStateStore(
+            hibernationDirectory));
+    tracker.setInactivityPeriod(config.getInactivitySeconds() * 1000l);
+    if (config.getHeapBudgetMb() > 0) {
+      tracker.setHeapBudget(((long) config.getHeapBudgetMb()) << 20);
+    }
+
+    final ObservationReader gpsReader =
+        TraceRunner.createObservationReader(config, new File(
+            config.getTraceFileName()));
+    final ResultWriter writer =
+        TraceRunner.createResultWriter(config,
+            new File(config.getOutputFileName()), objectMapper);
+
+    final ObservationPipeline observations =
+        new ObservationPipeline(config, graph,
+            TraceRunner.readRecords(gpsReader));
+    try {
+      while (observations.hasNext()) {
+        writer.write(tracker.update(observations.next())
+            .getMaxValueKey());
+      }
+    } finally {
+      writer.close();
+      gpsReader.close();
+    }
+
+    System.out.println("Finished processing "
+        + observations.getNumRecords() + " observation(s); "
+        + tracker.getNumActiveVehicles() + " active and "
+        + tracker.getNumHibernatedVehicles() + " hibernated vehicle(s), "
+        + tracker.getNumHibernations() + " hibernation(s), "
+        + tracker.getNumRestores() + " restore(s)");
+    if (observations.getSummary().length() > 0) {
+      System.out.println(observations.getSummary());
+    }
     System.out.println("Output written to "
         + config.getOutputFileName());
   }
@@ -0,0 +1,195 @@
+package org.opentrackingtools.util.tracerunner;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.util.GeoUtils;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class BinaryResultReaderTest {
+
+  private static VehicleStateDistribution<GpsObservation> createState(
+    InferenceGraph graph, ProjectedCoordinate projected, String sourceId,
+    long time, PathEdge pathEdge, double logLikelihood) {
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(null, VectorFactory
+            .getDefault().createVector2D(0.02d, 0.02d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector1D(1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault().createVector2D(
+                1e-4d, 1e-4d), Integer.MAX_VALUE, VectorFactory
+                .getDefault().createVector2D(1, Double.MAX_VALUE),
+            VectorFactory.getDefault().createVector2D(Double.MAX_VALUE, 1),
+            1, 4, 0);
+    final GpsObservation obs =
+        new GpsObservation(sourceId, new Date(time), projected
+            .getReferenceLatLon(), null, null, null, 0, null, projected);
+    final VehicleStateDistribution<GpsObservation> state =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>()
+            .createInitialVehicleState(parameters, graph, obs, new Random(
+                time), pathEdge);
+    state.setObsLogLikelihood(logLikelihood);
+    return state;
+  }
+
+  /**
+   * Write off- and on-road states of several vehicles, and check that
+   * every field, and the source id table, reads back as written.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    final ProjectedCoordinate projected =
+        GeoUtils.convertToEuclidean(new Coordinate(40.7d, -74d));
+    /*
+     * The vehicles are observed halfway along the one edge.
+     */
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(projected.x - 50d, projected.y),
+            new Coordinate(projected.x + 50d, projected.y) }));
+    final InferenceGraph graph = new GenericJTSGraph(edges, false);
+    final InferenceGraphSegment segment =
+        Iterables.getOnlyElement(graph.getNearbyEdges(projected, 0.5d));
+
+    final List<VehicleStateDistribution<GpsObservation>> states =
+        Lists.newArrayList();
+    states.add(BinaryResultReaderTest.createState(graph, projected, "a",
+        1000l, PathEdge.nullPathEdge, -1d));
+    states.add(BinaryResultReaderTest.createState(graph, projected, "b",
+        2000l, new PathEdge(segment, 0d, false), -2d));
+    states.add(BinaryResultReaderTest.createState(graph, projected, "a",
+        3000l, new PathEdge(segment, 0d, false), -3d));
+    states.add(BinaryResultReaderTest.createState(graph, projected, "c/d",
+        4000l, PathEdge.nullPathEdge, -4d));
+
+    final File file = File.createTempFile("results", ".bin");
+    try {
+      final BinaryResultWriter writer = new BinaryResultWriter(file);
+      try {
+        for (final VehicleStateDistribution<GpsObservation> state : states) {
+          writer.write(state);
+        }
+      } finally {
+        writer.close();
+      }
+      AssertJUnit.assertEquals(BinaryResultWriter.HEADER_SIZE
+          + states.size() * BinaryResultWriter.RECORD_SIZE + 4 + 3 * 2
+          + "a".length() + "b".length() + "c/d".length() + 8, file
+          .length());
+
+      final BinaryResultReader reader = new BinaryResultReader(file);
+      try {
+        AssertJUnit.assertEquals(states.size(), reader.getNumRecords());
+        AssertJUnit.assertEquals(Lists.newArrayList("a", "b", "c/d"),
+            reader.getSourceIds());
+
+        final BinaryResultReader.Result result =
+            new BinaryResultReader.Result();
+        for (final VehicleStateDistribution<GpsObservation> state : states) {
+          AssertJUnit.assertTrue(reader.next(result));
+          final GpsObservation obs = state.getObservation();
+          AssertJUnit.assertEquals(obs.getTimestamp().getTime(),
+              result.timestamp);
+          AssertJUnit.assertEquals(obs.getSourceId(), reader
+              .getSourceIds().get(result.sourceIndex));
+
+          final Coordinate latLon =
+              GeoUtils.convertToLatLon(state.getMeanLocation(), obs
+                  .getObsProjected());
+          AssertJUnit.assertEquals(latLon.x, result.lat, 0d);
+          AssertJUnit.assertEquals(latLon.y, result.lon, 0d);
+          AssertJUnit.assertEquals(obs.getObsCoordsLatLon().x, result.lat,
+              1e-4d);
+          AssertJUnit.assertEquals(obs.getObsCoordsLatLon().y, result.lon,
+              1e-4d);
+
+          final Vector groundState =
+              state.getPathStateParam().getValue().getGroundState();
+          AssertJUnit.assertEquals(Math.hypot(groundState.getElement(1),
+              groundState.getElement(3)), result.velocity, 0d);
+          final Matrix groundCov =
+              state.getPathStateParam().getParameterPrior()
+                  .getGroundDistribution().getCovariance();
+          AssertJUnit.assertEquals(groundCov.getElement(0, 0)
+              + groundCov.getElement(2, 2), result.positionVariance, 0d);
+          AssertJUnit.assertEquals(groundCov.getElement(1, 1)
+              + groundCov.getElement(3, 3), result.velocityVariance, 0d);
+          AssertJUnit.assertEquals(state.getObsLogLikelihood(),
+              result.logLikelihood, 0d);
+          AssertJUnit.assertFalse(result.isBackward());
+
+          if (state.getPathStateParam().getValue().isOnRoad()) {
+            AssertJUnit.assertTrue(result.isOnRoad());
+            AssertJUnit.assertEquals(segment.getSegmentStore().getEdgeId(
+                segment.getSegmentId()), result.edgeId);
+            AssertJUnit.assertEquals(state.getPathStateParam().getValue()
+                .getElement(0), result.distance, 1e-9d);
+          } else {
+            AssertJUnit.assertFalse(result.isOnRoad());
+            AssertJUnit.assertEquals(-1, result.edgeId);
+            AssertJUnit.assertTrue(Double.isNaN(result.distance));
+          }
+        }
+        AssertJUnit.assertFalse(reader.next(result));
+
+        /*
+         * Records can also be read out of order.
+         */
+        reader.read(1l, result);
+        AssertJUnit.assertEquals(2000l, result.timestamp);
+        AssertJUnit.assertEquals("b", reader.getSourceIds().get(
+            result.sourceIndex));
+      } finally {
+        reader.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * A writer closed without any results leaves a file with no records and
+   * an empty source id table.
+   */
+  @Test
+  public void testEmpty() throws Exception {
+    final File file = File.createTempFile("results", ".bin");
+    try {
+      new BinaryResultWriter(file).close();
+      AssertJUnit.assertEquals(BinaryResultWriter.HEADER_SIZE + 4 + 8,
+          file.length());
+
+      final BinaryResultReader reader = new BinaryResultReader(file);
+      try {
+        AssertJUnit.assertEquals(0l, reader.getNumRecords());
+        AssertJUnit.assertTrue(reader.getSourceIds().isEmpty());
+        AssertJUnit.assertFalse(reader.next(new BinaryResultReader.Result()));
+      } finally {
+        reader.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+}
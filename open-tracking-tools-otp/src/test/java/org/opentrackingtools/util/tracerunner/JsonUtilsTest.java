@@ -0,0 +1,69 @@
+package org.opentrackingtools.util.tracerunner;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+public class JsonUtilsTest {
+
+  private static VehicleStateInitialParameters createParameters() {
+    return new VehicleStateInitialParameters(null, VectorFactory
+        .getDefault().createVector2D(70d, 70d), 20, VectorFactory
+        .getDefault().createVector1D(6.25e-4), 20, VectorFactory
+        .getDefault().createVector2D(6.25e-4, 6.25e-4), 20,
+        VectorFactory.getDefault().createVector2D(1d, 0.5d), VectorFactory
+            .getDefault().createVector2D(0.5d, 1d), 25, 30, 2159585l);
+  }
+
+  /**
+   * Serialized parameters read back the same, including the optional ones,
+   * and optional ones that are missing keep their defaults.
+   */
+  @Test
+  public void testInitialParametersRoundTrip() throws Exception {
+    final ObjectMapper objectMapper = TraceRunner.createObjectMapper();
+    final VehicleStateInitialParameters parameters =
+        JsonUtilsTest.createParameters();
+    final VehicleStateInitialParameters defaults =
+        objectMapper.readValue(objectMapper.writeValueAsString(parameters),
+            VehicleStateInitialParameters.class);
+    AssertJUnit.assertEquals(parameters.getOutlierNoiseMultiple(),
+        defaults.getOutlierNoiseMultiple(), 0d);
+    AssertJUnit.assertEquals(parameters.getPathSearchBeamWidth(),
+        defaults.getPathSearchBeamWidth());
+    AssertJUnit.assertEquals(Double.POSITIVE_INFINITY,
+        defaults.getPathSearchLogLikelihoodCutoff(), 0d);
+
+    parameters.setOutlierNoiseMultiple(4d);
+    parameters.setOutlierMaxConsecutive(5);
+    parameters.setStationaryObsNoiseMultiple(3d);
+    parameters.setStationaryMaxVelocity(0.25d);
+    parameters.setPathSearchBeamWidth(16);
+    parameters.setPathSearchLogLikelihoodCutoff(12d);
+    final VehicleStateInitialParameters restored =
+        objectMapper.readValue(objectMapper.writeValueAsString(parameters),
+            VehicleStateInitialParameters.class);
+
+    AssertJUnit.assertEquals(parameters.getObsCov(), restored.getObsCov());
+    AssertJUnit.assertEquals(parameters.getOffTransitionProbsPrior(),
+        restored.getOffTransitionProbsPrior());
+    AssertJUnit.assertEquals(parameters.getOnTransitionProbsPrior(),
+        restored.getOnTransitionProbsPrior());
+    AssertJUnit.assertEquals(parameters.getNumParticles(),
+        restored.getNumParticles());
+    AssertJUnit.assertEquals(parameters.getSeed(), restored.getSeed());
+    AssertJUnit.assertEquals(4d, restored.getOutlierNoiseMultiple(), 0d);
+    AssertJUnit.assertEquals(5, restored.getOutlierMaxConsecutive());
+    AssertJUnit.assertEquals(3d, restored.getStationaryObsNoiseMultiple(),
+        0d);
+    AssertJUnit.assertEquals(0.25d, restored.getStationaryMaxVelocity(),
+        0d);
+    AssertJUnit.assertEquals(16, restored.getPathSearchBeamWidth());
+    AssertJUnit.assertEquals(12d,
+        restored.getPathSearchLogLikelihoodCutoff(), 0d);
+  }
+
+}
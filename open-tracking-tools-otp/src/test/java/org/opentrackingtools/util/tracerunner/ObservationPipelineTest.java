@@ -0,0 +1,97 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.tracker.DecimationPolicy;
+import org.opentrackingtools.util.tracerunner.TraceRunner.TraceRunnerConfig;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class ObservationPipelineTest {
+
+  private static ObservationRecord createRecord(String sourceId,
+    long time) {
+    final ObservationRecord record = new ObservationRecord();
+    record.sourceId = sourceId;
+    record.timestamp = time;
+    record.lat = 40.7d;
+    record.lon = -74d;
+    return record;
+  }
+
+  /**
+   * With both reordering and decimation on, the observations still held by
+   * either stage at the end of the trace are released: the reorder
+   * buffer's, through the decimator, then the decimator's. Each vehicle's
+   * observations come out in time order, each linked to the one that came
+   * out before it.
+   */
+  @Test
+  public void testEndOfTrace() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(40.69d, -74.01d),
+            new Coordinate(40.71d, -73.99d) }));
+    final InferenceGraph graph = new GenericJTSGraph(edges, true);
+
+    final TraceRunnerConfig config = new TraceRunnerConfig();
+    config.reorderDelaySeconds = 2;
+    config.decimation =
+        new DecimationPolicy(2000l, 2000l, 1e6d, 181d, false);
+
+    /*
+     * Vehicle a's last two observations are still in the reorder buffer at
+     * the end, and the last of those is then held by the decimator, as is
+     * vehicle b's last one.
+     */
+    final List<ObservationRecord> records = Lists.newArrayList();
+    records.add(ObservationPipelineTest.createRecord("a", 0l));
+    records.add(ObservationPipelineTest.createRecord("b", 0l));
+    records.add(ObservationPipelineTest.createRecord("a", 1000l));
+    records.add(ObservationPipelineTest.createRecord("b", 1000l));
+    records.add(ObservationPipelineTest.createRecord("a", 3000l));
+    records.add(ObservationPipelineTest.createRecord("a", 2000l));
+    records.add(ObservationPipelineTest.createRecord("a", 4000l));
+    records.add(ObservationPipelineTest.createRecord("a", 5000l));
+
+    final ObservationPipeline pipeline =
+        new ObservationPipeline(config, graph, records.iterator());
+    final Map<String, GpsObservation> lastObservations = Maps.newHashMap();
+    final Map<String, List<Long>> times = Maps.newHashMap();
+    times.put("a", Lists.<Long> newArrayList());
+    times.put("b", Lists.<Long> newArrayList());
+    while (pipeline.hasNext()) {
+      final GpsObservation obs = pipeline.next();
+      /*
+       * Links are dropped as the pipeline goes, so they're checked as each
+       * observation is taken.
+       */
+      AssertJUnit.assertSame(lastObservations.get(obs.getSourceId()),
+          obs.getPreviousObservation());
+      lastObservations.put(obs.getSourceId(), obs);
+      times.get(obs.getSourceId()).add(obs.getTimestamp().getTime());
+    }
+
+    AssertJUnit.assertEquals(
+        Lists.newArrayList(0l, 2000l, 4000l, 5000l), times.get("a"));
+    AssertJUnit.assertEquals(Lists.newArrayList(0l, 1000l), times.get("b"));
+    AssertJUnit.assertEquals(records.size(), pipeline.getNumRecords());
+    AssertJUnit.assertEquals(1l, pipeline.getReorderBuffer().getNumLate());
+    AssertJUnit.assertEquals(0, pipeline.getReorderBuffer()
+        .getNumBuffered());
+    AssertJUnit.assertEquals(records.size(), pipeline.getDecimator()
+        .getNumOffered());
+    AssertJUnit.assertEquals(6l, pipeline.getDecimator().getNumReleased());
+  }
+
+}
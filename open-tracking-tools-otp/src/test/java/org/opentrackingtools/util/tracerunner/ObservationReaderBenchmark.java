@@ -0,0 +1,120 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Compares the time to read a trace file with opencsv and SimpleDateFormat,
+ * as TraceRunner used to, with a {@link CsvObservationReader} and with a
+ * {@link MappedObservationReader}. Not part of the test suite; run it
+ * directly, with the trace file and, to generate it when it doesn't exist,
+ * the number of lines (e.g. "/tmp/trace.csv 40000000" for about 3GB). <br>
+ * On a generated 5M line (512MB) trace, on one core under JDK 17, the
+ * second run read about 400k lines/s the old way, 660k with a
+ * CsvObservationReader and 1.48M with a MappedObservationReader.
+ */
+public class ObservationReaderBenchmark {
+
+  private static void generate(File file, long numLines)
+      throws IOException {
+    final SimpleDateFormat format =
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    final Random rng = new Random(0l);
+    final BufferedWriter writer =
+        new BufferedWriter(new FileWriter(file), 1 << 20);
+    try {
+      writer.write("id;route;trip;vehicle;lat;lon;time;speed\n");
+      long time = new Date(112, 0, 1).getTime();
+      for (long i = 0; i < numLines; i++) {
+        time += rng.nextInt(2000);
+        writer.write(i + ";" + rng.nextInt(200) + ";" + rng.nextInt(5000)
+            + ";vehicle" + rng.nextInt(1000) + ";"
+            + (41.6 + 0.5 * rng.nextDouble()) + ";"
+            + (-87.9 + 0.5 * rng.nextDouble()) + ";"
+            + format.format(new Date(time)) + ";" + 30d
+            * rng.nextDouble() + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final File file = new File(args[0]);
+    if (!file.exists()) {
+      ObservationReaderBenchmark.generate(file, Long.parseLong(args[1]));
+    }
+
+    for (int run = 0; run < 2; run++) {
+      ObservationReaderBenchmark.runLegacy(file);
+      ObservationReaderBenchmark.run("csv", file, new CsvObservationReader(
+          new FileReader(file), new ObservationColumns()));
+      ObservationReaderBenchmark.run("mapped", file,
+          new MappedObservationReader(file, new ObservationColumns()));
+    }
+  }
+
+  private static void report(String name, File file, long numLines,
+    double checksum, long nanos) {
+    final double seconds = nanos / 1e9;
+    System.out.println(name + ": " + numLines + " lines in " + seconds
+        + " s, " + (long) (numLines / seconds) + " lines/s, "
+        + (long) (file.length() / seconds / (1 << 20)) + " MB/s (checksum "
+        + checksum + ")");
+  }
+
+  private static void run(String name, File file, ObservationReader reader)
+      throws IOException, ParseException {
+    final long start = System.nanoTime();
+    final ObservationRecord record = new ObservationRecord();
+    long numLines = 0;
+    double checksum = 0d;
+    try {
+      while (reader.next(record)) {
+        numLines++;
+        checksum +=
+            record.lat + record.lon + record.velocity + record.timestamp
+                * 1e-9 + record.sourceId.length();
+      }
+    } finally {
+      reader.close();
+    }
+    ObservationReaderBenchmark.report(name, file, numLines, checksum,
+        System.nanoTime() - start);
+  }
+
+  private static void runLegacy(File file) throws IOException,
+      ParseException {
+    final long start = System.nanoTime();
+    final SimpleDateFormat sdf =
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    final CSVReader reader = new CSVReader(new FileReader(file), ';');
+    long numLines = 0;
+    double checksum = 0d;
+    try {
+      reader.readNext();
+      String[] line;
+      while ((line = reader.readNext()) != null) {
+        numLines++;
+        checksum +=
+            Double.parseDouble(line[4]) + Double.parseDouble(line[5])
+                + Double.parseDouble(line[7])
+                + sdf.parse(line[6]).getTime() * 1e-9 + line[3].length();
+      }
+    } finally {
+      reader.close();
+    }
+    ObservationReaderBenchmark.report("legacy", file, numLines, checksum,
+        System.nanoTime() - start);
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class ObservationReaderTest {
+
+  private static final String trace = "id;a;b;vehicle;lat;lon;time;speed\n"
+      + "1;x;y;v1;41.8781136;-87.6297982;2012-01-05 12:30:15;3.5\r\n"
+      + "2;x;y;\"v2\";41.88;-87.63;2012-01-05 23:59:59;1e1\n" + "\n"
+      + "3;x;y;v1;-0.000123;87;2012-01-06 00:00:00;0\n"
+      + "4;x;y;v1;41.12345678901234567890;-87.6;2012-12-31 01:02:03;12.";
+
+  private static File createTrace(String contents) throws IOException {
+    final File file = File.createTempFile("trace", ".csv");
+    file.deleteOnExit();
+    final Writer writer =
+        new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(contents);
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private static List<ObservationRecord> readAll(ObservationReader reader)
+      throws IOException, ParseException {
+    final List<ObservationRecord> records = Lists.newArrayList();
+    try {
+      final ObservationRecord record = new ObservationRecord();
+      while (reader.next(record)) {
+        records.add(new ObservationRecord(record));
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+
+  @Test
+  public void testMappedMatchesCsv() throws IOException, ParseException {
+    final File file =
+        ObservationReaderTest.createTrace(ObservationReaderTest.trace);
+    final ObservationColumns columns = new ObservationColumns();
+    final List<ObservationRecord> expected =
+        ObservationReaderTest.readAll(new CsvObservationReader(
+            new FileReader(file), columns));
+    AssertJUnit.assertEquals(4, expected.size());
+
+    /*
+     * Small segments, so that lines straddle them.
+     */
+    for (final long segmentSize : new long[] { 70, 100, 1 << 20 }) {
+      final List<ObservationRecord> actual =
+          ObservationReaderTest.readAll(new MappedObservationReader(file,
+              columns, segmentSize));
+      AssertJUnit.assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        AssertJUnit.assertEquals(expected.get(i).toString(), actual.get(i)
+            .toString());
+      }
+    }
+  }
+
+  @Test
+  public void testTimestamps() throws ParseException {
+    final SimpleDateFormat format =
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    for (final String text : new String[] { "2012-01-05 12:30:15",
+        "2012-01-05 00:00:00", "2012-03-11 03:15:00",
+        "2012-11-04 01:59:59", "1999-12-31 23:59:59" }) {
+      AssertJUnit.assertEquals(text, format.parse(text).getTime(),
+          TimestampParser.get().parse(text));
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testLineLongerThanSegment() throws IOException,
+      ParseException {
+    final File file =
+        ObservationReaderTest.createTrace(ObservationReaderTest.trace);
+    ObservationReaderTest.readAll(new MappedObservationReader(file,
+        new ObservationColumns(), 40));
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ObservationSorterTest {
+
+  @Test
+  public void testSplit() throws IOException {
+    ObservationSorterTest.checkSplit(new ObservationSorter(null, 10));
+  }
+
+  /**
+   * With more chunks than can be merged at once, they're merged over
+   * several passes, with the same result.
+   */
+  @Test
+  public void testMultiPassSplit() throws IOException {
+    ObservationSorterTest.checkSplit(new ObservationSorter(null, 10, 4));
+  }
+
+  private static void checkSplit(ObservationSorter sorter)
+      throws IOException {
+    final Random rng = new Random(7l);
+    final Map<String, Integer> expectedCounts = Maps.newHashMap();
+    final ObservationRecord record = new ObservationRecord();
+    for (int i = 0; i < 500; i++) {
+      record.sourceId = "v" + rng.nextInt(13);
+      record.timestamp = rng.nextInt(50);
+      record.lat = i;
+      sorter.add(record);
+      final Integer count = expectedCounts.get(record.sourceId);
+      expectedCounts.put(record.sourceId, count == null ? 1 : count + 1);
+    }
+    AssertJUnit.assertEquals(50, sorter.getNumChunks());
+
+    final List<String> sourceIds = Lists.newArrayList();
+    sorter.split(new ObservationSorter.RunHandler() {
+      @Override
+      public void handleRun(String sourceId, File run, int numRecords)
+          throws IOException {
+        sourceIds.add(sourceId);
+        AssertJUnit.assertEquals(expectedCounts.get(sourceId).intValue(),
+            numRecords);
+
+        final RecordFileReader reader = new RecordFileReader(run);
+        final ObservationRecord runRecord = new ObservationRecord();
+        long lastTimestamp = Long.MIN_VALUE;
+        double lastIndex = -1d;
+        int count = 0;
+        while (reader.next(runRecord)) {
+          AssertJUnit.assertEquals(sourceId, runRecord.sourceId);
+          AssertJUnit.assertTrue(runRecord.timestamp >= lastTimestamp);
+          /*
+           * Equal timestamps keep the order they were added in.
+           */
+          if (runRecord.timestamp == lastTimestamp) {
+            AssertJUnit.assertTrue(runRecord.lat > lastIndex);
+          }
+          lastTimestamp = runRecord.timestamp;
+          lastIndex = runRecord.lat;
+          count++;
+        }
+        reader.close();
+        run.delete();
+        AssertJUnit.assertEquals(numRecords, count);
+      }
+    });
+
+    AssertJUnit.assertEquals(expectedCounts.size(), sourceIds.size());
+    AssertJUnit.assertEquals(0, sorter.getNumChunks());
+  }
+
+}